@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+/**
+ * Maven coordinates of one file in a repository. Snapshot versions may be timestamped, like
+ * {@code 1.0-20130512.101010-3}; the directory still uses the base version {@code 1.0-SNAPSHOT}.
+ */
+public class Artifact {
+  private static final String SNAPSHOT = "SNAPSHOT";
+
+  private final String groupId;
+  private final String artifactId;
+  private final String version;
+  private final String classifier;
+  private final String extension;
+
+  public Artifact(String groupId, String artifactId, String version) {
+    this(groupId, artifactId, version, "", "jar");
+  }
+
+  public Artifact(String groupId, String artifactId, String version, String classifier, String extension) {
+    this.groupId = groupId;
+    this.artifactId = artifactId;
+    this.version = version;
+    this.classifier = classifier == null ? "" : classifier;
+    this.extension = extension == null ? "jar" : extension;
+  }
+
+  /**
+   * @param coordinates {@code group:artifact:version}, {@code group:artifact:extension:version} or
+   *                    {@code group:artifact:extension:classifier:version}
+   */
+  public static Artifact parse(String coordinates) {
+    String[] parts = coordinates.trim().split(":");
+    for (String part : parts) {
+      if (part.length() == 0)
+        throw new IllegalArgumentException("Bad artifact coordinates '" + coordinates + "'");
+    }
+    if (parts.length == 3)
+      return new Artifact(parts[0], parts[1], parts[2]);
+    if (parts.length == 4)
+      return new Artifact(parts[0], parts[1], parts[3], "", parts[2]);
+    if (parts.length == 5)
+      return new Artifact(parts[0], parts[1], parts[4], parts[3], parts[2]);
+    throw new IllegalArgumentException("Bad artifact coordinates '" + coordinates + "'");
+  }
+
+  public String getGroupId() {
+    return groupId;
+  }
+
+  public String getArtifactId() {
+    return artifactId;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  public String getClassifier() {
+    return classifier;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+
+  public boolean isSnapshot() {
+    return getBaseVersion().endsWith(SNAPSHOT);
+  }
+
+  public String getBaseVersion() {
+    int buildStart = version.lastIndexOf('-');
+    int timestampStart = buildStart < 0 ? -1 : version.lastIndexOf('-', buildStart - 1);
+    if (timestampStart > 0 && isTimestamp(version.substring(timestampStart + 1, buildStart)))
+      return version.substring(0, timestampStart + 1) + SNAPSHOT;
+    return version;
+  }
+
+  /**
+   * @return Coordinates without version, used to decide which version of a dependency wins.
+   */
+  public String getKey() {
+    return groupId + ":" + artifactId + ":" + extension + (classifier.length() == 0 ? "" : ":" + classifier);
+  }
+
+  public Artifact withVersion(String newVersion) {
+    return new Artifact(groupId, artifactId, newVersion, classifier, extension);
+  }
+
+  public Artifact getPomArtifact() {
+    return new Artifact(groupId, artifactId, version, "", "pom");
+  }
+
+  public String getDirectoryPath() {
+    return groupId.replace('.', '/') + "/" + artifactId + "/" + getBaseVersion();
+  }
+
+  public String getPath() {
+    return getDirectoryPath() + "/" + getFileName();
+  }
+
+  public String getFileName() {
+    return artifactId + "-" + version + (classifier.length() == 0 ? "" : "-" + classifier) + "." + extension;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof Artifact && toString().equals(other.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return groupId + ":" + artifactId + ":" + extension + (classifier.length() == 0 ? "" : ":" + classifier) + ":" +
+      version;
+  }
+
+  private static boolean isTimestamp(String text) {
+    return text.length() == 15 && text.charAt(8) == '.' && text.replace(".", "").matches("[0-9]{14}");
+  }
+}
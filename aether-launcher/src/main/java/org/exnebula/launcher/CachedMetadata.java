@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.*;
+
+/**
+ * Local copy of a metadata file with {@code <file>.cache} recording when it was last confirmed with the repository
+ * and the {@code ETag} and {@code Last-Modified} it had, so the next fetch can be conditional or skipped altogether.
+ */
+class CachedMetadata {
+  static final String CACHE = ".cache";
+
+  private final File file;
+  private final File cacheFile;
+  private long checkedMillis = -1;
+  private String etag = null;
+  private String lastModified = null;
+
+  CachedMetadata(File file) {
+    this.file = file;
+    this.cacheFile = new File(file.getPath() + CACHE);
+    if (file.isFile() && cacheFile.isFile())
+      read();
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * @return True if the copy was confirmed less than {@code ttlSeconds} ago.
+   */
+  boolean isFresh(int ttlSeconds, long nowMillis) {
+    return checkedMillis >= 0 && checkedMillis <= nowMillis && nowMillis - checkedMillis < ttlSeconds * 1000L;
+  }
+
+  String getEtag() {
+    return etag;
+  }
+
+  String getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Records that the repository still has the version of the copy.
+   */
+  void confirmed(long nowMillis) throws IOException {
+    checkedMillis = nowMillis;
+    write();
+  }
+
+  /**
+   * Records the version of a new copy, already in place.
+   */
+  void replaced(RemoteFile remote, long nowMillis) throws IOException {
+    etag = remote.getEtag();
+    lastModified = remote.getLastModified();
+    checkedMillis = nowMillis;
+    write();
+  }
+
+  void delete() {
+    cacheFile.delete();
+    file.delete();
+  }
+
+  private void read() {
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), "UTF-8"));
+      try {
+        long checked = Long.parseLong(String.valueOf(reader.readLine()));
+        String readEtag = reader.readLine();
+        String readLastModified = reader.readLine();
+        if (readEtag == null || readLastModified == null)
+          return;
+        checkedMillis = checked;
+        etag = readEtag.length() == 0 ? null : readEtag;
+        lastModified = readLastModified.length() == 0 ? null : readLastModified;
+      } finally {
+        reader.close();
+      }
+    } catch (NumberFormatException e) {
+      // Fetched again in full
+    } catch (IOException e) {
+      // Fetched again in full
+    }
+  }
+
+  private void write() throws IOException {
+    Streams.writeString(checkedMillis + "\n" + (etag == null ? "" : etag) + "\n" +
+      (lastModified == null ? "" : lastModified) + "\n", cacheFile);
+  }
+}
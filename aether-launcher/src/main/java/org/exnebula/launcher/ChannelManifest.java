@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Whole class path of a release channel, published at {@code channels/<channel>.manifest} in a repository so a
+ * client learns every version of an update with one request. The first line is the SHA-1 of the rest, and a file
+ * that does not match it is ignored.
+ * <pre>
+ * sha1=&lt;SHA-1 of the lines below&gt;
+ * channel=stable
+ * root=org.exnebula:vcc:jar:1.0.0
+ * artifact=org.exnebula:vcc:jar:1.0.0 &lt;SHA-1&gt; &lt;size&gt;
+ * </pre>
+ * The roots are the {@code artifact} entries of the launcher.cfg it was resolved for; a client configured with
+ * other roots resolves instead.
+ */
+public class ChannelManifest {
+  public static final String DIRECTORY = "channels";
+  public static final String EXTENSION = ".manifest";
+
+  private static final Pattern CHANNEL_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+
+  private final String channel;
+  private final List<Artifact> roots;
+  private final List<Lockfile.Entry> entries;
+
+  public ChannelManifest(String channel, List<Artifact> roots, List<Lockfile.Entry> entries) {
+    this.channel = channel;
+    this.roots = Collections.unmodifiableList(new ArrayList<Artifact>(roots));
+    this.entries = Collections.unmodifiableList(new ArrayList<Lockfile.Entry>(entries));
+  }
+
+  public static ChannelManifest fromResolution(String channel, List<Artifact> roots, Resolution resolution)
+    throws IOException {
+    return new ChannelManifest(channel, roots, Lockfile.entriesOf(resolution));
+  }
+
+  public static boolean isChannelName(String name) {
+    return CHANNEL_NAME.matcher(name).matches() && !name.startsWith(".");
+  }
+
+  /**
+   * @return Path of the manifest relative to the repository root.
+   */
+  public static String pathFor(String channel) {
+    return DIRECTORY + "/" + channel + EXTENSION;
+  }
+
+  /**
+   * @return The manifest, or null if it is unreadable, does not match its checksum or belongs to another channel.
+   */
+  public static ChannelManifest read(File file, String channel) {
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        String checksum = reader.readLine();
+        StringBuilder body = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+          body.append(line).append('\n');
+        }
+        if (checksum == null || !checksum.equals("sha1=" + sha1Of(body.toString())))
+          return null;
+        ChannelManifest manifest = parse(body.toString());
+        return manifest != null && manifest.channel.equals(channel) ? manifest : null;
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      return null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  public void write(File file) throws IOException {
+    String body = toBody();
+    File directory = file.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+      throw new IOException("Could not create " + directory);
+    Streams.writeString("sha1=" + sha1Of(body) + "\n" + body, file);
+  }
+
+  public String getChannel() {
+    return channel;
+  }
+
+  public List<Artifact> getRoots() {
+    return roots;
+  }
+
+  public List<Lockfile.Entry> getEntries() {
+    return entries;
+  }
+
+  private static ChannelManifest parse(String body) {
+    String channel = null;
+    List<Artifact> roots = new ArrayList<Artifact>();
+    List<Lockfile.Entry> entries = new ArrayList<Lockfile.Entry>();
+    for (String line : body.split("\n")) {
+      if (line.startsWith("channel="))
+        channel = line.substring(8);
+      else if (line.startsWith("root="))
+        roots.add(Artifact.parse(line.substring(5)));
+      else if (line.startsWith("artifact="))
+        entries.add(Lockfile.Entry.parse(line.substring(9)));
+    }
+    return channel == null || roots.isEmpty() || entries.isEmpty() ? null :
+      new ChannelManifest(channel, roots, entries);
+  }
+
+  private String toBody() {
+    StringBuilder body = new StringBuilder("channel=").append(channel).append('\n');
+    for (Artifact root : roots) {
+      body.append("root=").append(root).append('\n');
+    }
+    for (Lockfile.Entry entry : entries) {
+      body.append("artifact=").append(entry).append('\n');
+    }
+    return body.toString();
+  }
+
+  private static String sha1Of(String text) throws UnsupportedEncodingException {
+    return Checksums.toHex(Checksums.newSha1().digest(text.getBytes("UTF-8")));
+  }
+}
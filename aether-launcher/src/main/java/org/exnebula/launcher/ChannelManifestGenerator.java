@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Resolves the artifacts of a launcher.cfg with its repositories and publishes the result as the
+ * {@link ChannelManifest} of a channel in a repository directory.
+ * <pre>
+ * java -cp aether-launcher.jar org.exnebula.launcher.ChannelManifestGenerator &lt;launcher.cfg&gt; &lt;repository&gt; [channel]
+ * </pre>
+ * The channel is the one of the launcher.cfg when it is not given.
+ */
+public class ChannelManifestGenerator {
+  private final LocalRepository repository;
+
+  public ChannelManifestGenerator(File repository) {
+    this.repository = new LocalRepository(repository);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println("Usage: ChannelManifestGenerator <launcher.cfg> <repository> [channel]");
+      System.exit(1);
+    }
+    LauncherConfig config = LauncherConfigLoader.load(new File(args[0]));
+    String channel = args.length > 2 ? args[2] : config.getChannel();
+    if (channel == null || !ChannelManifest.isChannelName(channel)) {
+      System.err.println("No channel given and none in " + args[0]);
+      System.exit(1);
+    }
+    System.out.println(new ChannelManifestGenerator(new File(args[1])).generate(channel, config).getPath());
+  }
+
+  /**
+   * @return The published manifest.
+   */
+  public File generate(String channel, LauncherConfig config) throws IOException {
+    Resolution resolution = Launcher.resolve(config, Collections.<Artifact>emptyList(), null);
+    File file = repository.fileFor(ChannelManifest.pathFor(channel));
+    ChannelManifest.fromResolution(channel, config.getRoots(), resolution).write(file);
+    return file;
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Takes the class path from the {@link ChannelManifest} of a release channel instead of resolving it, so an update
+ * check costs one request however many artifacts there are, and none while the manifest is within the time to live
+ * of its repository. Only the artifacts missing from the local repository are downloaded, all at once.
+ */
+public class ChannelResolver {
+  private final Downloader downloader;
+
+  public ChannelResolver(Downloader downloader) {
+    this.downloader = downloader;
+  }
+
+  /**
+   * @return The class path of the manifest, or null if no repository has a usable manifest for these roots.
+   * @throws IOException When an artifact of the manifest cannot be fetched or does not match it.
+   */
+  public Resolution resolve(String channel, List<Artifact> roots) throws IOException {
+    File file = downloader.fetchManifest(channel);
+    if (file == null)
+      return null;
+    ChannelManifest manifest = ChannelManifest.read(file, channel);
+    if (manifest == null) {
+      new CachedMetadata(file).delete();
+      return null;
+    }
+    if (!manifest.getRoots().equals(roots))
+      return null;
+    LocalRepository localRepository = downloader.getLocalRepository();
+    List<Future<File>> requests = new ArrayList<Future<File>>();
+    for (Lockfile.Entry entry : manifest.getEntries()) {
+      File local = localRepository.fileFor(entry.getArtifact());
+      if (local.isFile() && local.length() != entry.getSize())
+        local.delete();
+      requests.add(downloader.fetch(entry.getArtifact()));
+    }
+    List<Artifact> artifacts = new ArrayList<Artifact>();
+    List<File> files = new ArrayList<File>();
+    Map<File, String> sha1s = new HashMap<File, String>();
+    for (int i = 0; i < requests.size(); i++) {
+      Lockfile.Entry entry = manifest.getEntries().get(i);
+      File fetched = Downloader.await(requests.get(i));
+      checkMatches(entry, fetched, downloader.getSha1s().get(fetched));
+      artifacts.add(entry.getArtifact());
+      files.add(fetched);
+      sha1s.put(fetched, entry.getSha1());
+    }
+    return new Resolution(artifacts, files, sha1s, downloader.getCounters());
+  }
+
+  /**
+   * A file already in the local repository is checked by size only, like a start from a lockfile.
+   */
+  private static void checkMatches(Lockfile.Entry entry, File file, String downloadedSha1) throws IOException {
+    if (file.length() == entry.getSize() && (downloadedSha1 == null || downloadedSha1.equals(entry.getSha1())))
+      return;
+    file.delete();
+    throw new IOException(entry.getArtifact() + " does not match the channel manifest");
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+public class Checksums {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private Checksums() {
+  }
+
+  public static MessageDigest newSha1() {
+    return newDigest("SHA-1");
+  }
+
+  /**
+   * @param algorithm SHA-1 or SHA-256, which every JVM has.
+   */
+  public static MessageDigest newDigest(String algorithm) {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(algorithm + " is required by every JVM", e);
+    }
+  }
+
+  public static String sha1(File file) throws IOException {
+    MessageDigest digest = newSha1();
+    InputStream input = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int count;
+      while ((count = input.read(buffer)) > 0) {
+        digest.update(buffer, 0, count);
+      }
+    } finally {
+      input.close();
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Reads and closes a published checksum file, which may have the file name after the checksum.
+   */
+  public static String read(InputStream input) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(input, "US-ASCII"));
+    try {
+      String line = reader.readLine();
+      if (line == null || line.trim().length() == 0)
+        throw new IOException("Empty checksum file");
+      return line.trim().split("\\s+")[0].toLowerCase(Locale.ENGLISH);
+    } finally {
+      reader.close();
+    }
+  }
+
+  public static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+}
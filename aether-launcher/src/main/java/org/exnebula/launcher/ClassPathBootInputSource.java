@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.exnebula.bootstrap.BootInputSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Presents a resolved class path to {@link org.exnebula.bootstrap.Boot} as if it had been read from boot.cfg.
+ */
+public class ClassPathBootInputSource implements BootInputSource {
+  private final String entryPoint;
+  private final List<String> bootOptions;
+  private final List<File> classPath;
+  private final Set<File> deferred;
+  private final List<String> deferredPackages;
+
+  public ClassPathBootInputSource(String entryPoint, List<File> classPath) {
+    this(entryPoint, Collections.<String>emptyList(), classPath, Collections.<File>emptySet());
+  }
+
+  /**
+   * @param bootOptions Lines added to boot.cfg, such as {@code jvm=} entries.
+   * @param deferred    Files of the class path that may still be missing, written as {@code cp.deferred=} entries.
+   */
+  public ClassPathBootInputSource(String entryPoint, List<String> bootOptions, List<File> classPath,
+                                  Set<File> deferred) {
+    this(entryPoint, bootOptions, classPath, deferred, Collections.<String>emptyList());
+  }
+
+  /**
+   * @param deferredPackages Packages of the deferred files, written as {@code pkg.deferred=} entries.
+   */
+  public ClassPathBootInputSource(String entryPoint, List<String> bootOptions, List<File> classPath,
+                                  Set<File> deferred, List<String> deferredPackages) {
+    this.entryPoint = entryPoint;
+    this.bootOptions = bootOptions;
+    this.classPath = classPath;
+    this.deferred = deferred;
+    this.deferredPackages = deferredPackages;
+  }
+
+  public InputStream getConfigInputStream() {
+    StringBuilder config = new StringBuilder("ep=").append(entryPoint).append('\n');
+    for (String option : bootOptions) {
+      config.append(option).append('\n');
+    }
+    for (File file : classPath) {
+      config.append(deferred.contains(file) ? "cp.deferred=" : "cp=").append(file.getAbsolutePath()).append('\n');
+    }
+    for (String name : deferredPackages) {
+      config.append("pkg.deferred=").append(name).append('\n');
+    }
+    try {
+      return new ByteArrayInputStream(config.toString().getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException("UTF-8 is required by every JVM", e);
+    }
+  }
+}
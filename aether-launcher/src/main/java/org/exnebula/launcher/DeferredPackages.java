@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Packages of the deferred files still downloading, written to boot.cfg as {@code pkg.deferred=} entries so Boot only
+ * holds back the loads of classes those files can provide. A file that is not there yet is listed from the jar of the
+ * same artifact in the previous generation.
+ */
+class DeferredPackages {
+
+  /**
+   * @param artifacts Artifacts of the class path, in the order of the files.
+   * @param installed Artifacts of the previous generation, whose files may still be in the local repository.
+   * @return Package names in order, empty if a missing file has no earlier jar to list.
+   */
+  static List<String> find(List<Artifact> artifacts, List<File> files, Set<File> deferred, List<Artifact> installed,
+                           LocalRepository localRepository) {
+    Map<String, Artifact> previous = new HashMap<String, Artifact>();
+    for (Artifact artifact : installed) {
+      previous.put(artifact.getKey(), artifact);
+    }
+    Set<String> packages = new TreeSet<String>();
+    for (int i = 0; i < files.size(); i++) {
+      File file = files.get(i);
+      if (!deferred.contains(file) || file.isFile())
+        continue;
+      Artifact earlier = previous.get(artifacts.get(i).getKey());
+      if (earlier == null || !addPackages(localRepository.fileFor(earlier), packages))
+        return Collections.emptyList();
+    }
+    return new ArrayList<String>(packages);
+  }
+
+  private static boolean addPackages(File jar, Set<String> packages) {
+    if (!jar.isFile())
+      return false;
+    try {
+      JarFile jarFile = new JarFile(jar);
+      try {
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+          String name = entries.nextElement().getName();
+          int separator = name.lastIndexOf('/');
+          if (name.endsWith(".class"))
+            packages.add(separator < 0 ? "" : name.substring(0, separator).replace('/', '.'));
+        }
+      } finally {
+        jarFile.close();
+      }
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+}
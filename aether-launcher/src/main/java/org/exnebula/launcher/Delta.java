@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Binary patch that rebuilds a file from an older version of it. The patch is a deflated list of operations, each
+ * copying a range of the old file or inserting new bytes, so it is applied in one pass over the patch with random
+ * reads of the old file.
+ * <p>
+ * Patches are found by matching blocks of the old file anywhere in the new one with a rolling checksum. Entries of a
+ * jar are compressed one by one, so the classes that did not change are copied even when their offset moved.
+ */
+public class Delta {
+  public static final String EXTENSION = ".delta";
+
+  private static final int MAGIC = 0x56434344;
+  private static final int END = 0;
+  private static final int COPY = 1;
+  private static final int INSERT = 2;
+  private static final int BLOCK_SIZE = 512;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private Delta() {
+  }
+
+  /**
+   * @return Repository path of the patch from {@code base} to {@code target}, next to the target.
+   */
+  public static String pathFor(Artifact target, Artifact base) {
+    return target.getPath() + ".from-" + base.getVersion() + EXTENSION;
+  }
+
+  public static void create(File base, File target, File patch) throws IOException {
+    byte[] old = readFile(base);
+    byte[] current = readFile(target);
+    DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(
+      new BufferedOutputStream(new FileOutputStream(patch)), new Deflater(Deflater.BEST_COMPRESSION), BUFFER_SIZE));
+    try {
+      output.writeInt(MAGIC);
+      output.writeLong(old.length);
+      output.writeLong(current.length);
+      writeOperations(output, old, current);
+      output.writeByte(END);
+    } finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Writes the new file to {@code target}, reading the patch once.
+   *
+   * @throws IOException If the patch is damaged or was made for a base of another size.
+   */
+  public static void apply(File base, InputStream patch, OutputStream target) throws IOException {
+    DataInputStream input = new DataInputStream(new InflaterInputStream(new BufferedInputStream(patch, BUFFER_SIZE)));
+    RandomAccessFile old = new RandomAccessFile(base, "r");
+    try {
+      if (input.readInt() != MAGIC)
+        throw new IOException("Not a patch");
+      if (input.readLong() != old.length())
+        throw new IOException("Patch does not apply to " + base);
+      long remaining = input.readLong();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int operation;
+      while ((operation = input.readByte()) != END) {
+        if (operation == COPY) {
+          long offset = input.readLong();
+          int length = input.readInt();
+          old.seek(offset);
+          remaining -= length;
+          copy(old, length, buffer, target);
+        } else if (operation == INSERT) {
+          int length = input.readInt();
+          remaining -= length;
+          copy(input, length, buffer, target);
+        } else {
+          throw new IOException("Bad patch operation " + operation);
+        }
+      }
+      if (remaining != 0)
+        throw new IOException("Patch is incomplete");
+    } finally {
+      old.close();
+      input.close();
+    }
+  }
+
+  private static void writeOperations(DataOutputStream output, byte[] old, byte[] current) throws IOException {
+    Map<Integer, int[]> blocks = indexBlocks(old);
+    int literalStart = 0;
+    int position = 0;
+    int hash = current.length >= BLOCK_SIZE ? RollingChecksum.of(current, 0, BLOCK_SIZE) : 0;
+    while (position + BLOCK_SIZE <= current.length) {
+      int match = findMatch(blocks.get(hash), old, current, position);
+      if (match >= 0) {
+        int length = BLOCK_SIZE;
+        while (match + length < old.length && position + length < current.length &&
+          old[match + length] == current[position + length])
+          length++;
+        writeInsert(output, current, literalStart, position - literalStart);
+        output.writeByte(COPY);
+        output.writeLong(match);
+        output.writeInt(length);
+        position += length;
+        literalStart = position;
+        if (position + BLOCK_SIZE <= current.length)
+          hash = RollingChecksum.of(current, position, BLOCK_SIZE);
+      } else {
+        if (position + BLOCK_SIZE < current.length)
+          hash = RollingChecksum.roll(hash, current[position], current[position + BLOCK_SIZE], BLOCK_SIZE);
+        position++;
+      }
+    }
+    writeInsert(output, current, literalStart, current.length - literalStart);
+  }
+
+  /**
+   * @return Checksum of each block of the old file, mapped to the offsets of the blocks that have it.
+   */
+  private static Map<Integer, int[]> indexBlocks(byte[] old) {
+    Map<Integer, int[]> blocks = new HashMap<Integer, int[]>();
+    for (int offset = 0; offset + BLOCK_SIZE <= old.length; offset += BLOCK_SIZE) {
+      Integer hash = RollingChecksum.of(old, offset, BLOCK_SIZE);
+      int[] previous = blocks.get(hash);
+      int[] offsets;
+      if (previous == null) {
+        offsets = new int[]{offset};
+      } else {
+        offsets = new int[previous.length + 1];
+        System.arraycopy(previous, 0, offsets, 0, previous.length);
+        offsets[previous.length] = offset;
+      }
+      blocks.put(hash, offsets);
+    }
+    return blocks;
+  }
+
+  private static int findMatch(int[] candidates, byte[] old, byte[] current, int position) {
+    if (candidates == null)
+      return -1;
+    for (int offset : candidates) {
+      if (sameBytes(old, offset, current, position, BLOCK_SIZE))
+        return offset;
+    }
+    return -1;
+  }
+
+  private static boolean sameBytes(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+    for (int i = 0; i < length; i++) {
+      if (a[aOffset + i] != b[bOffset + i])
+        return false;
+    }
+    return true;
+  }
+
+  private static void writeInsert(DataOutputStream output, byte[] bytes, int offset, int length) throws IOException {
+    if (length == 0)
+      return;
+    output.writeByte(INSERT);
+    output.writeInt(length);
+    output.write(bytes, offset, length);
+  }
+
+  private static void copy(DataInput input, int length, byte[] buffer, OutputStream target) throws IOException {
+    while (length > 0) {
+      int count = Math.min(length, buffer.length);
+      input.readFully(buffer, 0, count);
+      target.write(buffer, 0, count);
+      length -= count;
+    }
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    if (file.length() > Integer.MAX_VALUE)
+      throw new IOException(file + " is too large for a patch");
+    byte[] content = new byte[(int) file.length()];
+    DataInputStream input = new DataInputStream(new FileInputStream(file));
+    try {
+      input.readFully(content);
+    } finally {
+      input.close();
+    }
+    return content;
+  }
+
+  /**
+   * Adler-32 style checksum of a window that can slide one byte at a time.
+   */
+  static class RollingChecksum {
+    private RollingChecksum() {
+    }
+
+    static int of(byte[] bytes, int offset, int length) {
+      int a = 0;
+      int b = 0;
+      for (int i = 0; i < length; i++) {
+        a += bytes[offset + i] & 0xFF;
+        b += (length - i) * (bytes[offset + i] & 0xFF);
+      }
+      return (a & 0xFFFF) | (b << 16);
+    }
+
+    static int roll(int hash, byte removed, byte added, int length) {
+      int a = hash & 0xFFFF;
+      int b = hash >>> 16;
+      a = (a - (removed & 0xFF) + (added & 0xFF)) & 0xFFFF;
+      b = (b - length * (removed & 0xFF) + a) & 0xFFFF;
+      return a | (b << 16);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.*;
+
+/**
+ * Publishes patches to a new version of an artifact in a repository directory, from each of the given older
+ * versions, along with the {@code .sha1} of the new file that clients check the result against.
+ * <pre>
+ * java -cp aether-launcher.jar org.exnebula.launcher.DeltaGenerator &lt;repository&gt; &lt;group:artifact:version&gt; &lt;old version&gt;...
+ * </pre>
+ * A patch that is not smaller than the file it replaces is not published.
+ */
+public class DeltaGenerator {
+  private final LocalRepository repository;
+
+  public DeltaGenerator(File repository) {
+    this.repository = new LocalRepository(repository);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      System.err.println("Usage: DeltaGenerator <repository> <group:artifact:version> <old version>...");
+      System.exit(1);
+    }
+    DeltaGenerator generator = new DeltaGenerator(new File(args[0]));
+    Artifact target = Artifact.parse(args[1]);
+    for (int i = 2; i < args.length; i++) {
+      File patch = generator.generate(target, target.withVersion(args[i]));
+      System.out.println(args[i] + ": " + (patch == null ? "not smaller than the artifact" : patch.getPath()));
+    }
+  }
+
+  /**
+   * @return The patch, or null if it was no smaller than the target and was not published.
+   */
+  public File generate(Artifact target, Artifact base) throws IOException {
+    File targetFile = existingFile(target);
+    File baseFile = existingFile(base);
+    publishChecksum(target, targetFile);
+    File patch = repository.fileFor(Delta.pathFor(target, base));
+    File temporary = new File(patch.getPath() + ".tmp");
+    Delta.create(baseFile, targetFile, temporary);
+    if (temporary.length() >= targetFile.length()) {
+      temporary.delete();
+      return null;
+    }
+    Streams.moveInto(temporary, patch);
+    return patch;
+  }
+
+  private File existingFile(Artifact artifact) throws FileNotFoundException {
+    File file = repository.fileFor(artifact);
+    if (!file.isFile())
+      throw new FileNotFoundException(file.getPath());
+    return file;
+  }
+
+  private void publishChecksum(Artifact target, File targetFile) throws IOException {
+    File checksum = repository.fileFor(target.getPath() + ".sha1");
+    if (checksum.isFile())
+      return;
+    Writer writer = new OutputStreamWriter(new FileOutputStream(checksum), "US-ASCII");
+    try {
+      writer.write(Checksums.sha1(targetFile));
+    } finally {
+      writer.close();
+    }
+  }
+}
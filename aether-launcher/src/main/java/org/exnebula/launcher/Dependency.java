@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A dependency as declared in a POM. Version and scope are null when the POM leaves them to dependency management.
+ */
+public class Dependency {
+  private final String groupId;
+  private final String artifactId;
+  private final String version;
+  private final String type;
+  private final String classifier;
+  private final String scope;
+  private final boolean optional;
+  private final List<String> exclusions;
+
+  public Dependency(String groupId, String artifactId, String version, String type, String classifier, String scope,
+                    boolean optional, List<String> exclusions) {
+    this.groupId = groupId;
+    this.artifactId = artifactId;
+    this.version = version;
+    this.type = type == null ? "jar" : type;
+    this.classifier = classifier == null ? "" : classifier;
+    this.scope = scope;
+    this.optional = optional;
+    this.exclusions = Collections.unmodifiableList(new ArrayList<String>(exclusions));
+  }
+
+  public String getGroupId() {
+    return groupId;
+  }
+
+  public String getArtifactId() {
+    return artifactId;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getClassifier() {
+    return classifier;
+  }
+
+  public String getScope() {
+    return scope;
+  }
+
+  public boolean isOptional() {
+    return optional;
+  }
+
+  /**
+   * @return Excluded {@code groupId:artifactId} pairs, either part may be {@code *}.
+   */
+  public List<String> getExclusions() {
+    return exclusions;
+  }
+
+  public String getManagementKey() {
+    return groupId + ":" + artifactId + ":" + type + ":" + classifier;
+  }
+
+  public boolean isExcludedBy(Collection<String> exclusionPatterns) {
+    for (String exclusion : exclusionPatterns) {
+      int colon = exclusion.indexOf(':');
+      String group = exclusion.substring(0, colon);
+      String artifact = exclusion.substring(colon + 1);
+      if ((group.equals("*") || group.equals(groupId)) && (artifact.equals("*") || artifact.equals(artifactId)))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return Dependency with version, scope and exclusions taken from management where this one has none.
+   */
+  public Dependency managedBy(Dependency managed) {
+    if (managed == null)
+      return this;
+    return new Dependency(groupId, artifactId, version != null ? version : managed.version, type, classifier,
+      scope != null ? scope : managed.scope, optional, exclusions.isEmpty() ? managed.exclusions : exclusions);
+  }
+
+  public Dependency withVersionAndScope(String newVersion, String newScope) {
+    return new Dependency(groupId, artifactId, newVersion, type, classifier, newScope, optional, exclusions);
+  }
+
+  public Artifact toArtifact() {
+    if (type.equals("test-jar"))
+      return new Artifact(groupId, artifactId, version, classifier.length() == 0 ? "tests" : classifier, "jar");
+    if (type.equals("bundle") || type.equals("ejb") || type.equals("maven-plugin"))
+      return new Artifact(groupId, artifactId, version, classifier, "jar");
+    return new Artifact(groupId, artifactId, version, classifier, type);
+  }
+
+  @Override
+  public String toString() {
+    return getManagementKey() + ":" + version + (scope == null ? "" : " (" + scope + ")");
+  }
+}
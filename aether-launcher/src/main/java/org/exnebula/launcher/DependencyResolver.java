@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.exnebula.bootstrap.DaemonThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Resolves the run time class path of some root artifacts one dependency level at a time. All POMs of a level are
+ * fetched and built in parallel, and each jar is queued for download as soon as its version is known, so jars
+ * download while deeper levels are still being resolved.
+ * <p>
+ * Conflicts are settled like Maven: the nearest declaration wins, and the first one on the same level. Only
+ * {@code compile} and {@code runtime} dependencies are followed, optional dependencies are left out, exclusions
+ * apply to the whole subtree below them, and the dependency management of the roots overrides the versions of
+ * transitive dependencies.
+ * <p>
+ * Files that only deferred roots need are queued after every critical file, and the resolver returns as soon as the
+ * critical files are in the local repository.
+ */
+public class DependencyResolver {
+  public static final int DEFAULT_THREADS = 8;
+
+  private final Downloader downloader;
+  private final VersionResolver versionResolver;
+  private final ModelBuilder modelBuilder;
+  private final int threads;
+
+  public DependencyResolver(Downloader downloader, int threads) {
+    this.downloader = downloader;
+    this.versionResolver = new VersionResolver(downloader);
+    this.modelBuilder = new ModelBuilder(downloader, versionResolver);
+    this.threads = threads;
+  }
+
+  public Resolution resolve(List<Artifact> roots) throws IOException {
+    return resolve(roots, Collections.<Artifact>emptyList()).await();
+  }
+
+  /**
+   * @param deferredRoots Roots whose own dependencies are downloaded after the class path of {@code roots}. They come
+   *                      after {@code roots} in the class path.
+   */
+  public ProgressiveResolution resolve(List<Artifact> roots, List<Artifact> deferredRoots) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("launcher-resolve"));
+    try {
+      return resolve(roots, deferredRoots, executor);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private ProgressiveResolution resolve(List<Artifact> roots, List<Artifact> deferredRoots, ExecutorService executor)
+    throws IOException {
+    Map<String, Dependency> rootManagement = new HashMap<String, Dependency>();
+    Set<String> chosenKeys = new HashSet<String>();
+    Map<String, List<String>> childKeys = new HashMap<String, List<String>>();
+    List<Node> classPath = new ArrayList<Node>();
+
+    List<Node> level = new ArrayList<Node>();
+    for (Artifact root : roots) {
+      level.add(new Node(root, Collections.<String>emptySet(), true));
+    }
+    for (Artifact root : deferredRoots) {
+      level.add(new Node(root, Collections.<String>emptySet(), false));
+    }
+    boolean rootLevel = true;
+    while (!level.isEmpty()) {
+      List<Node> accepted = new ArrayList<Node>();
+      for (Node node : level) {
+        if (chosenKeys.add(node.artifact.getKey())) {
+          node.start(executor);
+          accepted.add(node);
+        }
+      }
+      List<Node> next = new ArrayList<Node>();
+      for (Node node : accepted) {
+        Model model = node.awaitModel();
+        if (!node.resolved.getExtension().equals("pom"))
+          classPath.add(node);
+        if (rootLevel) {
+          for (Map.Entry<String, Dependency> managed : model.getManagedDependencies().entrySet()) {
+            if (!rootManagement.containsKey(managed.getKey()))
+              rootManagement.put(managed.getKey(), managed.getValue());
+          }
+        }
+        List<String> children = new ArrayList<String>();
+        for (Dependency dependency : model.getDependencies()) {
+          Node child = childOf(node, dependency, rootManagement);
+          if (child != null) {
+            next.add(child);
+            children.add(child.artifact.getKey());
+          }
+        }
+        childKeys.put(node.artifact.getKey(), children);
+      }
+      level = next;
+      rootLevel = false;
+    }
+
+    return fetchInOrder(classPath, reachableFrom(roots, childKeys));
+  }
+
+  /**
+   * Queues the critical files that are not downloading yet, then the deferred ones, and waits for the critical ones.
+   */
+  private ProgressiveResolution fetchInOrder(List<Node> classPath, Set<String> criticalKeys) throws IOException {
+    for (Node node : classPath) {
+      if (node.file == null && criticalKeys.contains(node.artifact.getKey()))
+        node.file = downloader.fetch(node.resolved);
+    }
+    List<Future<File>> deferredRequests = new ArrayList<Future<File>>();
+    for (Node node : classPath) {
+      if (node.file == null) {
+        node.file = downloader.fetch(node.resolved);
+        deferredRequests.add(node.file);
+      }
+    }
+    List<Artifact> artifacts = new ArrayList<Artifact>(classPath.size());
+    List<File> files = new ArrayList<File>(classPath.size());
+    Set<File> deferredFiles = new HashSet<File>();
+    for (Node node : classPath) {
+      artifacts.add(node.resolved);
+      if (criticalKeys.contains(node.artifact.getKey())) {
+        files.add(Downloader.await(node.file));
+      } else {
+        File file = downloader.getLocalRepository().fileFor(node.resolved);
+        files.add(file);
+        deferredFiles.add(file);
+      }
+    }
+    return new ProgressiveResolution(artifacts, files, deferredFiles, deferredRequests, downloader);
+  }
+
+  /**
+   * @return Keys of the roots and of everything they pull in through the chosen nodes.
+   */
+  private static Set<String> reachableFrom(List<Artifact> roots, Map<String, List<String>> childKeys) {
+    Set<String> reached = new HashSet<String>();
+    LinkedList<String> queue = new LinkedList<String>();
+    for (Artifact root : roots) {
+      queue.add(root.getKey());
+    }
+    while (!queue.isEmpty()) {
+      String key = queue.removeFirst();
+      List<String> children = childKeys.get(key);
+      if (reached.add(key) && children != null)
+        queue.addAll(children);
+    }
+    return reached;
+  }
+
+  private Node childOf(Node parent, Dependency dependency, Map<String, Dependency> rootManagement) {
+    if (dependency.isOptional() || dependency.isExcludedBy(parent.exclusions))
+      return null;
+    Dependency managed = rootManagement.get(dependency.getManagementKey());
+    if (managed != null)
+      dependency = dependency.withVersionAndScope(
+        managed.getVersion() != null ? managed.getVersion() : dependency.getVersion(),
+        managed.getScope() != null ? managed.getScope() : dependency.getScope());
+    String scope = dependency.getScope() == null ? "compile" : dependency.getScope();
+    if (!scope.equals("compile") && !scope.equals("runtime"))
+      return null;
+    Set<String> exclusions = parent.exclusions;
+    if (!dependency.getExclusions().isEmpty()) {
+      exclusions = new HashSet<String>(parent.exclusions);
+      exclusions.addAll(dependency.getExclusions());
+    }
+    return new Node(dependency.toArtifact(), exclusions, parent.critical);
+  }
+
+  private class Node {
+    private final Artifact artifact;
+    private final Set<String> exclusions;
+    private final boolean critical;
+    private volatile Artifact resolved;
+    private volatile Future<File> file;
+    private Future<Model> model;
+
+    /**
+     * @param critical True if the path to this node is from a critical root, so its file can be fetched right away.
+     */
+    Node(Artifact artifact, Set<String> exclusions, boolean critical) {
+      this.artifact = artifact;
+      this.exclusions = exclusions;
+      this.critical = critical;
+    }
+
+    void start(ExecutorService executor) {
+      model = executor.submit(new Callable<Model>() {
+        public Model call() throws IOException {
+          resolved = versionResolver.resolve(artifact);
+          if (critical && !resolved.getExtension().equals("pom"))
+            file = downloader.fetch(resolved);
+          Model built = modelBuilder.build(resolved.getPomArtifact());
+          prefetchDependencyPoms(built);
+          return built;
+        }
+      });
+    }
+
+    Model awaitModel() throws IOException {
+      try {
+        return model.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted resolving " + artifact);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException)
+          throw (IOException) e.getCause();
+        if (e.getCause() instanceof RuntimeException)
+          throw (RuntimeException) e.getCause();
+        throw new LauncherException("Could not resolve " + artifact, e.getCause());
+      }
+    }
+
+    /**
+     * Starts fetching the POMs of the next level before this level is settled. A few may turn out to lose a
+     * conflict, but the next level rarely has to wait for the network.
+     */
+    private void prefetchDependencyPoms(Model built) {
+      for (Dependency dependency : built.getDependencies()) {
+        String scope = dependency.getScope() == null ? "compile" : dependency.getScope();
+        if (!dependency.isOptional() && (scope.equals("compile") || scope.equals("runtime")) &&
+          !VersionRange.isRange(dependency.getVersion()) && !dependency.getVersion().endsWith("SNAPSHOT") &&
+          !dependency.isExcludedBy(exclusions))
+          downloader.fetch(dependency.toArtifact().getPomArtifact());
+      }
+    }
+  }
+}
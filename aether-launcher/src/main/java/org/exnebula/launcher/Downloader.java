@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.exnebula.bootstrap.DaemonThreadFactory;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches repository files into the local repository on a thread pool, at most a few transfers per host at a time.
+ * Files already in the local repository are returned without a transfer, and a path requested twice is only
+ * downloaded once. Remote repositories are tried in order.
+ * <p>
+ * When another version of an artifact is installed, the downloader first looks for a {@link Delta} from that version
+ * and checks the patched file against the published SHA-1. Without a patch, or if anything about it fails, the whole
+ * file is downloaded.
+ * <p>
+ * Artifacts are hashed as they stream to a temporary file and renamed into the local repository only if they match
+ * the first checksum the repository publishes, {@code .sha1} or {@code .sha256}, so a corrupt file never gets a name
+ * that a class path could use and is never read a second time. Artifacts without a published checksum are accepted.
+ * <p>
+ * An interrupted artifact download is kept as a {@link PartialDownload} and the next attempt from the same repository
+ * asks for the missing bytes only.
+ * <p>
+ * Metadata files are kept as {@link CachedMetadata}: a copy confirmed within the time to live of its repository is
+ * used as it is, an older one is fetched again only if the repository answers a conditional request with a new version.
+ * Channel manifests are kept the same way.
+ */
+public class Downloader {
+  public static final int DEFAULT_THREADS = 16;
+  public static final int DEFAULT_CONNECTIONS_PER_HOST = 6;
+
+  private static final String[] CHECKSUM_ALGORITHMS = {"SHA-1", "SHA-256"};
+  private static final String[] CHECKSUM_EXTENSIONS = {".sha1", ".sha256"};
+
+  private final LocalRepository localRepository;
+  private final List<RemoteRepository> repositories;
+  private final ExecutorService executor;
+  private final HostLimiter hostLimiter;
+  private final ConcurrentMap<String, Future<File>> requests = new ConcurrentHashMap<String, Future<File>>();
+  private final AtomicInteger transferCount = new AtomicInteger();
+  private final AtomicInteger deltaCount = new AtomicInteger();
+  private final AtomicInteger metadataHits = new AtomicInteger();
+  private final AtomicInteger metadataMisses = new AtomicInteger();
+  private final Map<String, Artifact> installed = new ConcurrentHashMap<String, Artifact>();
+  private final Map<File, String> sha1s = new ConcurrentHashMap<File, String>();
+
+  public Downloader(LocalRepository localRepository, List<RemoteRepository> repositories, int threads,
+                    int connectionsPerHost) {
+    this.localRepository = localRepository;
+    this.repositories = new ArrayList<RemoteRepository>(repositories);
+    this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("launcher-download"));
+    this.hostLimiter = new HostLimiter(connectionsPerHost);
+  }
+
+  public LocalRepository getLocalRepository() {
+    return localRepository;
+  }
+
+  public List<RemoteRepository> getRepositories() {
+    return repositories;
+  }
+
+  /**
+   * Makes these artifacts the bases for patches to other versions of them. Artifacts missing from the local
+   * repository are ignored.
+   */
+  public void setInstalled(Collection<Artifact> artifacts) {
+    installed.clear();
+    for (Artifact artifact : artifacts) {
+      if (localRepository.fileFor(artifact).isFile())
+        installed.put(artifact.getKey(), artifact);
+    }
+  }
+
+  public Future<File> fetch(final Artifact artifact) {
+    final Artifact base = installed.get(artifact.getKey());
+    if (base == null || base.equals(artifact))
+      return fetch(artifact.getPath());
+    return fetch(artifact.getPath(), new Callable<File>() {
+      public File call() throws IOException {
+        return downloadWithDelta(artifact, base);
+      }
+    });
+  }
+
+  public Future<File> fetch(final String path) {
+    return fetch(path, new Callable<File>() {
+      public File call() throws IOException {
+        return download(path);
+      }
+    });
+  }
+
+  private Future<File> fetch(String path, Callable<File> download) {
+    Future<File> request = requests.get(path);
+    if (request != null)
+      return request;
+    FutureTask<File> task = new FutureTask<File>(download);
+    request = requests.putIfAbsent(path, task);
+    if (request != null)
+      return request;
+    if (localRepository.fileFor(path).isFile())
+      task.run();
+    else
+      executor.execute(task);
+    return task;
+  }
+
+  /**
+   * Brings the metadata file of every repository that has it up to date.
+   *
+   * @return The local copies, in repository order.
+   */
+  public List<File> fetchMetadata(String directoryPath) throws IOException {
+    List<File> files = new ArrayList<File>();
+    for (RemoteRepository repository : repositories) {
+      CachedMetadata cached = new CachedMetadata(localRepository.metadataFileFor(directoryPath, repository));
+      try {
+        refreshMetadata(repository, directoryPath + "/maven-metadata.xml", cached);
+        files.add(cached.getFile());
+      } catch (FileNotFoundException e) {
+        cached.delete();
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Brings the {@link ChannelManifest} of the first repository that publishes one up to date.
+   *
+   * @return The local copy, null if no repository has a manifest for the channel.
+   */
+  public File fetchManifest(String channel) throws IOException {
+    for (RemoteRepository repository : repositories) {
+      CachedMetadata cached = new CachedMetadata(localRepository.manifestFileFor(channel, repository));
+      try {
+        refreshMetadata(repository, ChannelManifest.pathFor(channel), cached);
+        return cached.getFile();
+      } catch (FileNotFoundException e) {
+        cached.delete();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return Number of files transferred from remote repositories so far.
+   */
+  public int getTransferCount() {
+    return transferCount.get();
+  }
+
+  /**
+   * @return SHA-1 of every file downloaded or patched so far, computed while it was written.
+   */
+  public Map<File, String> getSha1s() {
+    return new HashMap<File, String>(sha1s);
+  }
+
+  /**
+   * @return Number of files rebuilt from a patch so far.
+   */
+  public int getDeltaCount() {
+    return deltaCount.get();
+  }
+
+  /**
+   * @return Number of metadata files used from the local repository, because they were fresh or not modified.
+   */
+  public int getMetadataHits() {
+    return metadataHits.get();
+  }
+
+  /**
+   * @return Number of metadata files transferred in full.
+   */
+  public int getMetadataMisses() {
+    return metadataMisses.get();
+  }
+
+  /**
+   * @return The counts of this downloader by name, for the boot timeline.
+   */
+  public Map<String, Long> getCounters() {
+    Map<String, Long> counters = new LinkedHashMap<String, Long>();
+    counters.put("downloads", (long) transferCount.get());
+    counters.put("deltas", (long) deltaCount.get());
+    counters.put("metadataCacheHits", (long) metadataHits.get());
+    counters.put("metadataCacheMisses", (long) metadataMisses.get());
+    return counters;
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Waits for a fetch and rethrows its failure as it was thrown.
+   */
+  public static File await(Future<File> request) throws IOException {
+    try {
+      return request.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for download");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw new IOException("Download failed", e.getCause());
+    }
+  }
+
+  private File download(String path) throws IOException {
+    File target = localRepository.fileFor(path);
+    if (target.isFile())
+      return target;
+    IOException failure = null;
+    for (RemoteRepository repository : repositories) {
+      try {
+        transfer(repository, path, target);
+        return target;
+      } catch (FileNotFoundException e) {
+        // Try the next repository
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    if (failure != null)
+      throw failure;
+    throw new FileNotFoundException(path + " not found in " + repositories);
+  }
+
+  private File downloadWithDelta(Artifact artifact, Artifact base) throws IOException {
+    File target = localRepository.fileFor(artifact);
+    if (target.isFile())
+      return target;
+    for (RemoteRepository repository : repositories) {
+      try {
+        if (applyDelta(repository, artifact, base, target)) {
+          deltaCount.incrementAndGet();
+          return target;
+        }
+      } catch (IOException e) {
+        // Fall back to the whole file
+      }
+    }
+    return download(artifact.getPath());
+  }
+
+  /**
+   * Applies the patch as it arrives, hashing the result on its way to disk.
+   *
+   * @return False if the repository has no patch from {@code base}, or no checksum to verify the result with.
+   */
+  private boolean applyDelta(RemoteRepository repository, Artifact artifact, Artifact base, File target)
+    throws IOException {
+    File temporary = createTemporaryFile(target);
+    hostLimiter.acquire(repository.getHost());
+    try {
+      String expected;
+      ReadableByteChannel patch;
+      try {
+        expected = readChecksum(repository, artifact.getPath() + ".sha1");
+        patch = repository.getTransport().open(Delta.pathFor(artifact, base));
+      } catch (FileNotFoundException e) {
+        return false;
+      }
+      MessageDigest digest = Checksums.newSha1();
+      OutputStream output = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)), digest);
+      try {
+        Delta.apply(localRepository.fileFor(base), Channels.newInputStream(patch), output);
+      } finally {
+        output.close();
+      }
+      String actual = Checksums.toHex(digest.digest());
+      if (!actual.equals(expected))
+        throw new IOException("Checksum of " + artifact + " patched from " + base.getVersion() + " does not match");
+      Streams.moveInto(temporary, target);
+      sha1s.put(target, actual);
+      return true;
+    } finally {
+      hostLimiter.release(repository.getHost());
+      temporary.delete();
+    }
+  }
+
+  private void transfer(RemoteRepository repository, String path, File target) throws IOException {
+    hostLimiter.acquire(repository.getHost());
+    try {
+      transferArtifact(repository, path, target);
+    } finally {
+      hostLimiter.release(repository.getHost());
+    }
+    transferCount.incrementAndGet();
+  }
+
+  private void refreshMetadata(RemoteRepository repository, String path, CachedMetadata cached) throws IOException {
+    if (cached.isFresh(repository.getMetadataTtlSeconds(), System.currentTimeMillis())) {
+      metadataHits.incrementAndGet();
+      return;
+    }
+    hostLimiter.acquire(repository.getHost());
+    try {
+      RemoteFile remote = repository.getTransport().openIfChanged(path, cached.getEtag(), cached.getLastModified());
+      if (remote == null) {
+        cached.confirmed(System.currentTimeMillis());
+        metadataHits.incrementAndGet();
+        return;
+      }
+      File temporary = createTemporaryFile(cached.getFile());
+      try {
+        Streams.copyToFile(remote.getChannel(), temporary);
+      } catch (IOException e) {
+        temporary.delete();
+        throw e;
+      }
+      Streams.moveInto(temporary, cached.getFile());
+      cached.replaced(remote, System.currentTimeMillis());
+    } finally {
+      hostLimiter.release(repository.getHost());
+    }
+    metadataMisses.incrementAndGet();
+    transferCount.incrementAndGet();
+  }
+
+  /**
+   * Downloads into a {@link PartialDownload}, resuming what an interrupted attempt from the same repository left. The
+   * published checksum is read first so the download is hashed only with its algorithm, plus SHA-1 for the lockfile.
+   * A resumed file that does not match is downloaded once more from the start.
+   */
+  private void transferArtifact(RemoteRepository repository, String path, File target) throws IOException {
+    String[] published = findPublishedChecksum(repository, path);
+    PartialDownload partial = new PartialDownload(createDirectoryOf(target), repository.getId());
+    boolean resumed;
+    do {
+      MessageDigest sha1 = Checksums.newSha1();
+      MessageDigest[] digests = published == null || published[0].equals(sha1.getAlgorithm()) ?
+        new MessageDigest[]{sha1} : new MessageDigest[]{sha1, Checksums.newDigest(published[0])};
+      RemoteFile remote = repository.getTransport().open(path, partial.getOffset(), partial.getValidator());
+      resumed = remote.getOffset() > 0;
+      try {
+        partial.begin(remote);
+        if (resumed)
+          Streams.digest(partial.getFile(), remote.getOffset(), digests);
+        Streams.appendToFile(remote.getChannel(), partial.getFile(), digests);
+      } finally {
+        remote.getChannel().close();
+      }
+      long received = partial.getFile().length();
+      if (remote.getLength() >= 0 && received != remote.getLength())
+        throw new EOFException("Received " + received + " of " + remote.getLength() + " bytes of " + path);
+      String sha1Hex = Checksums.toHex(sha1.digest());
+      String actual = digests.length == 1 ? sha1Hex : Checksums.toHex(digests[1].digest());
+      if (published == null || published[1].equals(actual)) {
+        partial.moveInto(target);
+        sha1s.put(target, sha1Hex);
+        return;
+      }
+      partial.delete();
+    } while (resumed);
+    throw new IOException(published[0] + " of " + path + " from " + repository.getId() + " does not match");
+  }
+
+  /**
+   * @return Algorithm and value of the first checksum the repository publishes for the path, null if none.
+   */
+  private String[] findPublishedChecksum(RemoteRepository repository, String path) throws IOException {
+    for (int i = 0; i < CHECKSUM_ALGORITHMS.length; i++) {
+      try {
+        return new String[]{CHECKSUM_ALGORITHMS[i], readChecksum(repository, path + CHECKSUM_EXTENSIONS[i])};
+      } catch (FileNotFoundException e) {
+        // Try the next algorithm
+      }
+    }
+    return null;
+  }
+
+  private static String readChecksum(RemoteRepository repository, String path) throws IOException {
+    return Checksums.read(Channels.newInputStream(repository.getTransport().open(path)));
+  }
+
+  private static File createTemporaryFile(File target) throws IOException {
+    return File.createTempFile(target.getName() + "-", ".tmp", createDirectoryOf(target).getParentFile());
+  }
+
+  /**
+   * @return The target, once its directory exists.
+   */
+  private static File createDirectoryOf(File target) throws IOException {
+    File directory = target.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+      throw new IOException("Could not create " + directory);
+    return target;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+public class FileTransport implements Transport {
+  private final File root;
+
+  public FileTransport(File root) {
+    this.root = root;
+  }
+
+  public ReadableByteChannel open(String path) throws IOException {
+    return open(path, 0, null).getChannel();
+  }
+
+  public RemoteFile open(String path, long offset, String validator) throws IOException {
+    File source = new File(root, path);
+    if (!source.isFile())
+      throw new FileNotFoundException(source.getPath());
+    String current = source.length() + "-" + source.lastModified();
+    FileChannel channel = new FileInputStream(source).getChannel();
+    if (validator == null || !validator.equals(current) || offset > channel.size())
+      return new RemoteFile(channel, 0, current, null, channel.size());
+    channel.position(offset);
+    return new RemoteFile(channel, offset, current, null, channel.size());
+  }
+
+  public RemoteFile openIfChanged(String path, String etag, String lastModified) throws IOException {
+    File source = new File(root, path);
+    if (!source.isFile())
+      throw new FileNotFoundException(source.getPath());
+    if (etag != null && etag.equals(source.length() + "-" + source.lastModified()))
+      return null;
+    return open(path, 0, null);
+  }
+}
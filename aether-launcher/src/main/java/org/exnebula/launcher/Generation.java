@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.exnebula.bootstrap.BootConfigLocator;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One resolved class path, frozen in its own directory: the {@link Lockfile} it was resolved to and a boot.cfg
+ * naming the files in the local repository. Boot keeps its launch plan for the generation next to that boot.cfg.
+ */
+public class Generation {
+  public static final String VERIFIED_FILE = "verified";
+
+  private final int number;
+  private final File directory;
+
+  public Generation(int number, File directory) {
+    this.number = number;
+    this.directory = directory;
+  }
+
+  public int getNumber() {
+    return number;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public File getBootConfigFile() {
+    return new File(directory, BootConfigLocator.BOOT_FILE);
+  }
+
+  public File getLockFile() {
+    return new File(directory, Lockfile.LOCK_FILE);
+  }
+
+  /**
+   * @return The lockfile, or null if it is missing or damaged.
+   */
+  public Lockfile getLockfile() {
+    return Lockfile.read(getLockFile());
+  }
+
+  /**
+   * A generation is usable when both files are there and every locked file is in the local repository with its
+   * locked size.
+   */
+  public boolean isComplete(LocalRepository localRepository) {
+    Lockfile lockfile = getLockfile();
+    return lockfile != null && getBootConfigFile().isFile() && lockfile.findFiles(localRepository) != null;
+  }
+
+  /**
+   * Hashes only the locked files whose size or modification time changed since they last matched their SHA-1, as
+   * recorded in {@value #VERIFIED_FILE}, so every jar is read in full once per generation rather than once per start.
+   *
+   * @return Locked artifacts whose file no longer has the locked checksum.
+   */
+  public List<Artifact> findCorrupt(LocalRepository localRepository) throws IOException {
+    Lockfile lockfile = getLockfile();
+    if (lockfile == null)
+      return new ArrayList<Artifact>();
+    File verifiedFile = new File(directory, VERIFIED_FILE);
+    Set<String> verified = readLines(verifiedFile);
+    List<Lockfile.Entry> changed = new ArrayList<Lockfile.Entry>();
+    for (Lockfile.Entry entry : lockfile.getEntries()) {
+      if (!verified.contains(stamp(localRepository.fileFor(entry.getArtifact()))))
+        changed.add(entry);
+    }
+    List<Artifact> corrupt = new Lockfile(lockfile.getConfigDigest(), changed).findCorrupt(localRepository);
+    StringBuilder stamps = new StringBuilder();
+    for (Lockfile.Entry entry : lockfile.getEntries()) {
+      if (!corrupt.contains(entry.getArtifact()))
+        stamps.append(stamp(localRepository.fileFor(entry.getArtifact()))).append('\n');
+    }
+    Streams.writeString(stamps.toString(), verifiedFile);
+    return corrupt;
+  }
+
+  private static String stamp(File file) {
+    return file.length() + " " + file.lastModified() + " " + file.getAbsolutePath();
+  }
+
+  private static Set<String> readLines(File file) {
+    Set<String> lines = new HashSet<String>();
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          lines.add(line);
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      // Missing or unreadable, every file is hashed again
+    }
+    return lines;
+  }
+
+  static void write(File directory, String entryPoint, List<String> bootOptions, Lockfile lockfile,
+                    List<File> classPath) throws IOException {
+    lockfile.write(new File(directory, Lockfile.LOCK_FILE));
+    StringBuilder config = new StringBuilder("ep=").append(entryPoint).append('\n');
+    for (String option : bootOptions) {
+      config.append(option).append('\n');
+    }
+    for (File file : classPath) {
+      config.append("cp=").append(file.getAbsolutePath()).append('\n');
+    }
+    Streams.writeString(config.toString(), new File(directory, BootConfigLocator.BOOT_FILE));
+  }
+
+  @Override
+  public String toString() {
+    return String.valueOf(number);
+  }
+}
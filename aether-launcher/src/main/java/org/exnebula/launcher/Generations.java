@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Numbered {@link Generation} directories with two pointer files: {@code current}, the generation to start, and
+ * {@code next}, a generation staged by a background update. A start promotes {@code next} by renaming it over
+ * {@code current}, so a launch sees either the old or the new generation.
+ * <p>
+ * Generations are built in a {@code .partial} directory and renamed when complete; a generation whose files are
+ * missing is skipped for the newest older one that is complete. The last {@value #KEEP} generations are kept so
+ * {@link #rollback} can go back at once. A generation rolled back from is renamed to {@code .rejected} and the same
+ * class path is not staged again.
+ * <pre>
+ * java -cp aether-launcher.jar org.exnebula.launcher.Generations &lt;directory&gt; [rollback]
+ * </pre>
+ */
+public class Generations {
+  public static final String DIRECTORY = "generations";
+  public static final String CURRENT = "current";
+  public static final String NEXT = "next";
+  public static final int KEEP = 3;
+
+  private static final String PARTIAL = ".partial";
+  private static final String REJECTED = ".rejected";
+  private static final String REPAIRS = "repairs";
+
+  private final File directory;
+
+  public Generations(File directory) {
+    this.directory = directory;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2 || (args.length == 2 && !"rollback".equals(args[1]))) {
+      System.err.println("Usage: Generations <directory> [rollback]");
+      System.exit(1);
+    }
+    Generations generations = new Generations(new File(args[0]));
+    if (args.length == 2 && generations.rollback() == null) {
+      System.err.println("No older generation to roll back to");
+      System.exit(1);
+    }
+    Generation current = generations.getCurrent();
+    for (Generation generation : generations.list()) {
+      boolean isCurrent = current != null && generation.getNumber() == current.getNumber();
+      System.out.println(generation + (isCurrent ? " current" : ""));
+    }
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return Generations by number, newest first, without partial or rejected ones.
+   */
+  public List<Generation> list() {
+    List<Generation> generations = new ArrayList<Generation>();
+    for (int number : numbers("")) {
+      generations.add(new Generation(number, new File(directory, String.valueOf(number))));
+    }
+    return generations;
+  }
+
+  public Generation getCurrent() {
+    return pointedBy(CURRENT);
+  }
+
+  public Generation getNext() {
+    return pointedBy(NEXT);
+  }
+
+  /**
+   * Promotes the staged generation if it is complete, then returns the current generation. If that one is broken or
+   * was resolved for another launcher.cfg, the newest older complete generation for this one becomes current.
+   *
+   * @return The generation to start, or null if there is none.
+   */
+  public Generation activate(String configDigest, LocalRepository localRepository) throws IOException {
+    Generation next = getNext();
+    if (next != null && next.isComplete(localRepository))
+      Streams.moveInto(new File(directory, NEXT), new File(directory, CURRENT));
+    else if (next != null)
+      new File(directory, NEXT).delete();
+    Generation current = getCurrent();
+    applyRepairs(current, localRepository);
+    if (isUsable(current, configDigest, localRepository))
+      return current;
+    for (Generation generation : list()) {
+      if ((current == null || generation.getNumber() < current.getNumber()) &&
+        isUsable(generation, configDigest, localRepository)) {
+        setPointer(CURRENT, generation);
+        return generation;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Writes a new generation and removes the oldest ones. The caller points {@code current} or {@code next} at it.
+   */
+  public Generation create(String entryPoint, Lockfile lockfile, List<File> classPath) throws IOException {
+    return create(entryPoint, Collections.<String>emptyList(), lockfile, classPath);
+  }
+
+  /**
+   * @param bootOptions Lines added to the boot.cfg of the generation, such as {@code jvm=} entries.
+   */
+  public Generation create(String entryPoint, List<String> bootOptions, Lockfile lockfile, List<File> classPath)
+    throws IOException {
+    directory.mkdirs();
+    int number = newestNumber() + 1;
+    File partial = new File(directory, number + PARTIAL);
+    if (!partial.mkdir())
+      throw new IOException("Could not create " + partial);
+    Generation.write(partial, entryPoint, bootOptions, lockfile, classPath);
+    File complete = new File(directory, String.valueOf(number));
+    if (!partial.renameTo(complete))
+      throw new IOException("Could not rename " + partial);
+    prune();
+    return new Generation(number, complete);
+  }
+
+  public void makeCurrent(Generation generation) throws IOException {
+    setPointer(CURRENT, generation);
+  }
+
+  public void stageNext(Generation generation) throws IOException {
+    setPointer(NEXT, generation);
+  }
+
+  /**
+   * Starts the newest generation older than the current one from now on and rejects the current one.
+   *
+   * @return The generation rolled back to, or null if there is no older one.
+   */
+  public Generation rollback() throws IOException {
+    Generation current = getCurrent();
+    if (current == null)
+      return null;
+    for (Generation generation : list()) {
+      if (generation.getNumber() < current.getNumber()) {
+        new File(directory, NEXT).delete();
+        setPointer(CURRENT, generation);
+        current.getDirectory().renameTo(new File(directory, current.getNumber() + REJECTED));
+        return generation;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Local repository for verified copies of corrupt files of the current generation. The files in use are never
+   * replaced while an application may run from them; the next {@link #activate} moves the copies over them, before the
+   * application starts.
+   */
+  public LocalRepository getRepairs() {
+    return new LocalRepository(new File(directory, REPAIRS));
+  }
+
+  /**
+   * Copies go to the local repository through a temporary file in the directory of the file they replace, which may be
+   * on another file system. A copy that cannot replace its file, such as a jar another running instance holds open on
+   * Windows, stays in the repairs and waits for the next start.
+   */
+  private void applyRepairs(Generation generation, LocalRepository localRepository) {
+    File repairsDirectory = getRepairs().getRoot();
+    Lockfile lockfile = generation == null ? null : generation.getLockfile();
+    if (!repairsDirectory.isDirectory() || lockfile == null)
+      return;
+    boolean moved = true;
+    for (Artifact artifact : lockfile.getArtifacts()) {
+      File repaired = getRepairs().fileFor(artifact);
+      try {
+        if (repaired.isFile())
+          Streams.copyInto(repaired, localRepository.fileFor(artifact));
+      } catch (IOException e) {
+        moved = false;
+      }
+    }
+    if (moved)
+      deleteDirectory(repairsDirectory);
+  }
+
+  /**
+   * @return True if a generation with the same artifacts was rolled back from.
+   */
+  public boolean isRejected(Lockfile lockfile) {
+    for (int number : numbers(REJECTED)) {
+      Lockfile rejected = Lockfile.read(new File(new File(directory, number + REJECTED), Lockfile.LOCK_FILE));
+      if (rejected != null && rejected.hasSameArtifacts(lockfile))
+        return true;
+    }
+    return false;
+  }
+
+  private boolean isUsable(Generation generation, String configDigest, LocalRepository localRepository) {
+    if (generation == null || !generation.isComplete(localRepository))
+      return false;
+    Lockfile lockfile = generation.getLockfile();
+    return lockfile != null && lockfile.getConfigDigest().equals(configDigest);
+  }
+
+  /**
+   * Deletes all but the newest {@link #KEEP} generations, except those the pointers name, and leftover partial ones.
+   */
+  private void prune() {
+    Generation current = getCurrent();
+    Generation next = getNext();
+    List<Generation> generations = list();
+    for (int i = KEEP; i < generations.size(); i++) {
+      Generation generation = generations.get(i);
+      if ((current == null || current.getNumber() != generation.getNumber()) &&
+        (next == null || next.getNumber() != generation.getNumber()))
+        deleteDirectory(generation.getDirectory());
+    }
+    int newest = newestNumber();
+    for (int number : numbers(PARTIAL)) {
+      if (number < newest)
+        deleteDirectory(new File(directory, number + PARTIAL));
+    }
+  }
+
+  private Generation pointedBy(String pointer) {
+    File file = new File(directory, pointer);
+    if (!file.isFile())
+      return null;
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        String line = reader.readLine();
+        int number = Integer.parseInt(line == null ? "" : line.trim());
+        File generation = new File(directory, String.valueOf(number));
+        return generation.isDirectory() ? new Generation(number, generation) : null;
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      return null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private void setPointer(String pointer, Generation generation) throws IOException {
+    Streams.writeString(generation.getNumber() + "\n", new File(directory, pointer));
+  }
+
+  private int newestNumber() {
+    int newest = 0;
+    for (String suffix : new String[]{"", PARTIAL, REJECTED}) {
+      for (int number : numbers(suffix)) {
+        newest = Math.max(newest, number);
+      }
+    }
+    return newest;
+  }
+
+  /**
+   * @return Numbers of the directories named {@code <number><suffix>}, highest first.
+   */
+  private List<Integer> numbers(String suffix) {
+    List<Integer> numbers = new ArrayList<Integer>();
+    String[] names = directory.list();
+    if (names == null)
+      return numbers;
+    for (String name : names) {
+      if (!name.endsWith(suffix) || !new File(directory, name).isDirectory())
+        continue;
+      try {
+        numbers.add(Integer.parseInt(name.substring(0, name.length() - suffix.length())));
+      } catch (NumberFormatException e) {
+        // Not a generation
+      }
+    }
+    Collections.sort(numbers, Collections.reverseOrder());
+    return numbers;
+  }
+
+  private static void deleteDirectory(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory())
+          deleteDirectory(file);
+        else
+          file.delete();
+      }
+    }
+    directory.delete();
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps the number of simultaneous transfers from each host.
+ */
+class HostLimiter {
+  private final int connectionsPerHost;
+  private final ConcurrentMap<String, Semaphore> semaphores = new ConcurrentHashMap<String, Semaphore>();
+
+  HostLimiter(int connectionsPerHost) {
+    this.connectionsPerHost = connectionsPerHost;
+  }
+
+  void acquire(String host) throws InterruptedIOException {
+    try {
+      semaphoreFor(host).acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a connection to " + host);
+    }
+  }
+
+  void release(String host) {
+    semaphoreFor(host).release();
+  }
+
+  private Semaphore semaphoreFor(String host) {
+    Semaphore semaphore = semaphores.get(host);
+    if (semaphore == null) {
+      Semaphore created = new Semaphore(connectionsPerHost, true);
+      semaphore = semaphores.putIfAbsent(host, created);
+      if (semaphore == null)
+        semaphore = created;
+    }
+    return semaphore;
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+public class HttpTransport implements Transport {
+  private static final int CONNECT_TIMEOUT = 10000;
+  private static final int READ_TIMEOUT = 30000;
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+  private final String baseUrl;
+
+  public HttpTransport(String baseUrl) {
+    this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+  }
+
+  public ReadableByteChannel open(String path) throws IOException {
+    return open(path, 0, null).getChannel();
+  }
+
+  /**
+   * Asks for the rest of the file with {@code Range} and {@code If-Range}, so a server whose copy changed sends all
+   * of it.
+   */
+  public RemoteFile open(String path, long offset, String validator) throws IOException {
+    HttpURLConnection connection = connect(path);
+    boolean ranged = offset > 0 && validator != null;
+    if (ranged) {
+      connection.setRequestProperty("Range", "bytes=" + offset + "-");
+      connection.setRequestProperty("If-Range", validator);
+    }
+    int status = responseCodeOf(connection);
+    if (status == HTTP_RANGE_NOT_SATISFIABLE) {
+      connection.disconnect();
+      return open(path, 0, null);
+    }
+    boolean partial = ranged && status == HttpURLConnection.HTTP_PARTIAL &&
+      String.valueOf(connection.getHeaderField("Content-Range")).startsWith("bytes " + offset + "-");
+    if (status != HttpURLConnection.HTTP_OK && !partial) {
+      connection.disconnect();
+      throw new IOException("HTTP " + status + " for " + connection.getURL());
+    }
+    return new RemoteFile(Channels.newChannel(connection.getInputStream()), partial ? offset : 0,
+      connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"),
+      partial ? totalOfRange(connection) : headerAsLong(connection, "Content-Length"));
+  }
+
+  /**
+   * Sends {@code If-None-Match} and {@code If-Modified-Since}; a {@code 304 Not Modified} answer costs no body.
+   */
+  public RemoteFile openIfChanged(String path, String etag, String lastModified) throws IOException {
+    HttpURLConnection connection = connect(path);
+    if (etag != null)
+      connection.setRequestProperty("If-None-Match", etag);
+    if (lastModified != null)
+      connection.setRequestProperty("If-Modified-Since", lastModified);
+    int status = responseCodeOf(connection);
+    if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      connection.disconnect();
+      return null;
+    }
+    if (status != HttpURLConnection.HTTP_OK) {
+      connection.disconnect();
+      throw new IOException("HTTP " + status + " for " + connection.getURL());
+    }
+    return new RemoteFile(Channels.newChannel(connection.getInputStream()), 0, connection.getHeaderField("ETag"),
+      connection.getHeaderField("Last-Modified"), headerAsLong(connection, "Content-Length"));
+  }
+
+  private HttpURLConnection connect(String path) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT);
+    connection.setReadTimeout(READ_TIMEOUT);
+    return connection;
+  }
+
+  /**
+   * @throws FileNotFoundException When the server does not have the file.
+   */
+  private static int responseCodeOf(HttpURLConnection connection) throws IOException {
+    int status = connection.getResponseCode();
+    if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE) {
+      connection.disconnect();
+      throw new FileNotFoundException(connection.getURL().toString());
+    }
+    return status;
+  }
+
+  /**
+   * @return Total length in {@code Content-Range: bytes <first>-<last>/<total>}, -1 if it is not given.
+   */
+  private static long totalOfRange(HttpURLConnection connection) {
+    String range = connection.getHeaderField("Content-Range");
+    int slash = range.indexOf('/');
+    try {
+      return slash < 0 ? -1 : Long.parseLong(range.substring(slash + 1).trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static long headerAsLong(HttpURLConnection connection, String name) {
+    try {
+      String value = connection.getHeaderField(name);
+      return value == null ? -1 : Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.util.Map;
+
+/**
+ * Replaces {@code ${name}} with model values, then system properties. Unknown references are left as they are.
+ */
+class Interpolator {
+  private static final int MAX_DEPTH = 16;
+
+  private final Map<String, String> values;
+
+  Interpolator(Map<String, String> values) {
+    this.values = values;
+  }
+
+  String interpolate(String text) {
+    return interpolate(text, 0);
+  }
+
+  private String interpolate(String text, int depth) {
+    if (text == null || text.indexOf("${") < 0 || depth > MAX_DEPTH)
+      return text;
+    StringBuilder result = new StringBuilder();
+    int position = 0;
+    while (position < text.length()) {
+      int start = text.indexOf("${", position);
+      int end = start < 0 ? -1 : text.indexOf('}', start);
+      if (end < 0) {
+        result.append(text, position, text.length());
+        break;
+      }
+      result.append(text, position, start);
+      String name = text.substring(start + 2, end);
+      String value = values.get(name);
+      if (value == null)
+        value = System.getProperty(name);
+      result.append(value == null ? text.substring(start, end + 1) : interpolate(value, depth + 1));
+      position = end + 1;
+    }
+    return result.toString();
+  }
+}
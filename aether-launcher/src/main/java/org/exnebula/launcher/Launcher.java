@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.exnebula.bootstrap.Boot;
+import org.exnebula.bootstrap.BootConfigLocator;
+import org.exnebula.bootstrap.BootErrorReporter;
+import org.exnebula.bootstrap.DaemonThreadFactory;
+import org.exnebula.bootstrap.FileBootInputSource;
+import org.exnebula.bootstrap.FileChecker;
+import org.exnebula.bootstrap.LaunchPlanCache;
+import org.exnebula.bootstrap.SystemErrorBootErrorReporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the artifacts named in launcher.cfg, downloading what is missing from the local repository, and starts
+ * the entry point on the resulting class path through {@link Boot}.
+ * <p>
+ * Each resolution is frozen as a {@link Generation} next to launcher.cfg. While the current generation matches
+ * launcher.cfg and its files are in the local repository the launcher starts it without touching the network, and an
+ * {@link UpdateCheck} stages the next generation in the background.
+ * <p>
+ * Files that only {@code artifact.deferred} roots need may still be downloading when the entry point starts; the class
+ * loader waits for them only when the application asks for a class they have.
+ */
+public class Launcher {
+  public static final String CONFIG_FILE = "launcher.cfg";
+  public static final String CONFIG_PROPERTY = "org.exnebula.launcher.config";
+
+  private final BootErrorReporter reporter;
+  private String step = null;
+  private Thread updateThread = null;
+  private Thread deferredThread = null;
+  private Map<String, Long> counters = Collections.emptyMap();
+
+  public Launcher(BootErrorReporter reporter) {
+    this.reporter = reporter;
+  }
+
+  public static void main(String[] args) {
+    File configFile = BootConfigLocator.locateFile(Launcher.class, CONFIG_FILE, CONFIG_PROPERTY);
+    new Launcher(new SystemErrorBootErrorReporter()).start(configFile, args);
+  }
+
+  public void start(File configFile, String[] args) {
+    Boot boot;
+    try {
+      LauncherConfig config = loadConfigOrFail(configFile);
+      if (config.isUseLockfile()) {
+        Generations generations = new Generations(
+          new File(configFile.getAbsoluteFile().getParentFile(), Generations.DIRECTORY));
+        boot = startGeneration(config, generations, Checksums.sha1(configFile));
+      } else {
+        boot = startResolved(config, Collections.<Artifact>emptyList(), null, null);
+      }
+    } catch (Exception e) {
+      reporter.reportFailure(step, e);
+      return;
+    }
+    for (Map.Entry<String, Long> counter : counters.entrySet()) {
+      boot.getTimeline().count(counter.getKey(), counter.getValue());
+    }
+    boot.start(args);
+  }
+
+  /**
+   * @return Thread of the update check started by the last launch from a generation, null if there was none.
+   */
+  public Thread getUpdateThread() {
+    return updateThread;
+  }
+
+  /**
+   * @return Thread waiting for the deferred files of the last launch, null if they were all there before it started.
+   */
+  public Thread getDeferredThread() {
+    return deferredThread;
+  }
+
+  /**
+   * @param installed Artifacts of the previous resolution, patched into new versions where the repository has a
+   *                  {@link Delta}.
+   */
+  static Resolution resolve(LauncherConfig config, List<Artifact> installed) throws IOException {
+    return resolve(config, installed, config.getChannel());
+  }
+
+  /**
+   * Resolves and waits for every file, deferred or not.
+   *
+   * @param channel Release channel whose manifest is used when it has the roots of the configuration, null to always
+   *                resolve.
+   */
+  static Resolution resolve(LauncherConfig config, List<Artifact> installed, String channel) throws IOException {
+    Downloader downloader = newDownloader(config, installed);
+    try {
+      return resolveProgressively(downloader, config, channel).await();
+    } finally {
+      downloader.shutdown();
+    }
+  }
+
+  private static Downloader newDownloader(LauncherConfig config, List<Artifact> installed) {
+    Downloader downloader = new Downloader(new LocalRepository(config.getLocalRepository()),
+      config.getRepositories(), config.getThreads(), config.getConnectionsPerHost());
+    downloader.setInstalled(installed);
+    return downloader;
+  }
+
+  /**
+   * A channel manifest does not tell deferred artifacts apart, so its resolution is complete.
+   */
+  private static ProgressiveResolution resolveProgressively(Downloader downloader, LauncherConfig config,
+                                                            String channel) throws IOException {
+    Resolution resolution = channel == null ? null :
+      new ChannelResolver(downloader).resolve(channel, config.getRoots());
+    if (resolution != null)
+      return ProgressiveResolution.of(resolution, downloader);
+    return new DependencyResolver(downloader, DependencyResolver.DEFAULT_THREADS).resolve(config.getArtifacts(),
+      config.getDeferredArtifacts());
+  }
+
+  private LauncherConfig loadConfigOrFail(File configFile) throws Exception {
+    step = "Read launcher config";
+    if (configFile == null)
+      throw new LauncherException("Could not locate " + CONFIG_FILE);
+    return LauncherConfigLoader.load(configFile);
+  }
+
+  /**
+   * Starts the current generation and checks for updates, or resolves a first generation for this launcher.cfg.
+   */
+  private Boot startGeneration(LauncherConfig config, Generations generations, String configDigest)
+    throws Exception {
+    step = "Select generation";
+    Generation generation = generations.activate(configDigest, new LocalRepository(config.getLocalRepository()));
+    if (generation != null) {
+      updateThread = new UpdateCheck(config, generation, generations).start();
+      return bootFrom(generation);
+    }
+    Generation previous = generations.getCurrent();
+    Lockfile installed = previous == null ? null : previous.getLockfile();
+    return startResolved(config,
+      installed == null ? Collections.<Artifact>emptyList() : installed.getArtifacts(), generations, configDigest);
+  }
+
+  /**
+   * Resolves and starts the entry point as soon as the critical files are in the local repository. The first
+   * generation for this launcher.cfg is written once the deferred files are there too, in the background if the entry
+   * point started without them.
+   *
+   * @param generations Where to write the generation, null to start without one.
+   */
+  private Boot startResolved(final LauncherConfig config, List<Artifact> installed, final Generations generations,
+                             final String configDigest) throws Exception {
+    step = "Resolve dependencies";
+    final Downloader downloader = newDownloader(config, installed);
+    final ProgressiveResolution progress;
+    try {
+      progress = resolveProgressively(downloader, config, config.getChannel());
+    } catch (Exception e) {
+      downloader.shutdown();
+      throw e;
+    }
+    counters = progress.getCounters();
+    if (progress.isComplete()) {
+      Resolution resolution;
+      try {
+        resolution = progress.await();
+      } finally {
+        downloader.shutdown();
+      }
+      if (generations == null)
+        return new Boot(reporter, new ClassPathBootInputSource(config.getEntryPoint(), config.getBootOptions(),
+          resolution.getFiles(), Collections.<File>emptySet()));
+      return bootFrom(createGeneration(config, generations, configDigest, resolution));
+    }
+    deferredThread = new DaemonThreadFactory("launcher-deferred").newThread(new Runnable() {
+      public void run() {
+        try {
+          Resolution resolution = progress.await();
+          if (generations != null)
+            createGeneration(config, generations, configDigest, resolution);
+        } catch (Exception e) {
+          // The next start resolves again and downloads what is still missing
+        } finally {
+          downloader.shutdown();
+        }
+      }
+    });
+    deferredThread.start();
+    List<String> deferredPackages = DeferredPackages.find(progress.getArtifacts(), progress.getFiles(),
+      progress.getDeferredFiles(), installed, downloader.getLocalRepository());
+    return new Boot(reporter, new ClassPathBootInputSource(config.getEntryPoint(), config.getBootOptions(),
+      progress.getFiles(), progress.getDeferredFiles(), deferredPackages));
+  }
+
+  private static Generation createGeneration(LauncherConfig config, Generations generations, String configDigest,
+                                             Resolution resolution) throws IOException {
+    Generation generation = generations.create(config.getEntryPoint(), config.getBootOptions(),
+      Lockfile.fromResolution(configDigest, resolution), resolution.getFiles());
+    generations.makeCurrent(generation);
+    return generation;
+  }
+
+  private Boot bootFrom(Generation generation) {
+    File bootConfig = generation.getBootConfigFile();
+    return new Boot(reporter, new FileBootInputSource(bootConfig), new FileChecker(), new LaunchPlanCache(bootConfig));
+  }
+}
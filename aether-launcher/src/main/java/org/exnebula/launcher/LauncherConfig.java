@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class LauncherConfig {
+  private final String entryPoint;
+  private final List<Artifact> artifacts;
+  private final List<Artifact> deferredArtifacts;
+  private final List<RemoteRepository> repositories;
+  private final File localRepository;
+  private final int threads;
+  private final int connectionsPerHost;
+  private final boolean useLockfile;
+  private final int updateDelaySeconds;
+  private final String channel;
+  private final boolean fork;
+  private final List<String> jvmOptions;
+
+  public LauncherConfig(String entryPoint, List<Artifact> artifacts, List<Artifact> deferredArtifacts,
+                        List<RemoteRepository> repositories, File localRepository, int threads,
+                        int connectionsPerHost, boolean useLockfile, int updateDelaySeconds, String channel,
+                        boolean fork, List<String> jvmOptions) {
+    this.entryPoint = entryPoint;
+    this.artifacts = Collections.unmodifiableList(new ArrayList<Artifact>(artifacts));
+    this.deferredArtifacts = Collections.unmodifiableList(new ArrayList<Artifact>(deferredArtifacts));
+    this.repositories = Collections.unmodifiableList(new ArrayList<RemoteRepository>(repositories));
+    this.localRepository = localRepository;
+    this.threads = threads;
+    this.connectionsPerHost = connectionsPerHost;
+    this.useLockfile = useLockfile;
+    this.updateDelaySeconds = updateDelaySeconds;
+    this.channel = channel;
+    this.fork = fork;
+    this.jvmOptions = Collections.unmodifiableList(new ArrayList<String>(jvmOptions));
+  }
+
+  public String getEntryPoint() {
+    return entryPoint;
+  }
+
+  /**
+   * @return Roots whose class path must be in place before the entry point starts.
+   */
+  public List<Artifact> getArtifacts() {
+    return artifacts;
+  }
+
+  /**
+   * @return Roots whose own dependencies may still be downloading when the entry point starts.
+   */
+  public List<Artifact> getDeferredArtifacts() {
+    return deferredArtifacts;
+  }
+
+  /**
+   * @return Every root, the deferred ones last.
+   */
+  public List<Artifact> getRoots() {
+    List<Artifact> roots = new ArrayList<Artifact>(artifacts);
+    roots.addAll(deferredArtifacts);
+    return roots;
+  }
+
+  public List<RemoteRepository> getRepositories() {
+    return repositories;
+  }
+
+  public File getLocalRepository() {
+    return localRepository;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public int getConnectionsPerHost() {
+    return connectionsPerHost;
+  }
+
+  public boolean isUseLockfile() {
+    return useLockfile;
+  }
+
+  public int getUpdateDelaySeconds() {
+    return updateDelaySeconds;
+  }
+
+  /**
+   * @return Release channel whose {@link ChannelManifest} is tried before resolving, null if none.
+   */
+  public String getChannel() {
+    return channel;
+  }
+
+  public boolean isFork() {
+    return fork;
+  }
+
+  public List<String> getJvmOptions() {
+    return jvmOptions;
+  }
+
+  /**
+   * @return The {@code fork=} and {@code jvm=} lines for the boot.cfg of the application, none if it does not fork.
+   */
+  public List<String> getBootOptions() {
+    List<String> options = new ArrayList<String>();
+    if (fork) {
+      options.add("fork=true");
+      for (String option : jvmOptions) {
+        options.add("jvm=" + option);
+      }
+    }
+    return options;
+  }
+}
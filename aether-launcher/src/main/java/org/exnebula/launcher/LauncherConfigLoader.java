@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads launcher.cfg. Relative paths are relative to the directory of the file.
+ * <pre>
+ * ep=vcc.start.Main
+ * artifact=org.exnebula:vcc:1.0.0
+ * artifact.deferred=org.exnebula:vcc-help:1.0.0
+ * repo.exnebula=http://repo.exnebula.org/maven
+ * repo.exnebula.ttl=3600
+ * local=repository
+ * threads=16
+ * connections=6
+ * lock=true
+ * update.delay=10
+ * channel=stable
+ * fork=true
+ * jvm=-Xmx1g
+ * </pre>
+ */
+public class LauncherConfigLoader {
+  public static final String DEFAULT_LOCAL_REPOSITORY = "repository";
+  public static final int DEFAULT_UPDATE_DELAY_SECONDS = 10;
+
+  private String entryPoint = null;
+  private int entryPointCount = 0;
+  private final List<Artifact> artifacts = new ArrayList<Artifact>();
+  private final List<Artifact> deferredArtifacts = new ArrayList<Artifact>();
+  private final Map<String, String> repositoryUrls = new LinkedHashMap<String, String>();
+  private final Map<String, Integer> metadataTtls = new HashMap<String, Integer>();
+  private String localRepository = null;
+  private int threads = Downloader.DEFAULT_THREADS;
+  private int connectionsPerHost = Downloader.DEFAULT_CONNECTIONS_PER_HOST;
+  private boolean useLockfile = true;
+  private int updateDelaySeconds = DEFAULT_UPDATE_DELAY_SECONDS;
+  private String channel = null;
+  private boolean fork = false;
+  private final List<String> jvmOptions = new ArrayList<String>();
+
+  public static LauncherConfig load(File file) throws IOException {
+    return new LauncherConfigLoader().load(new FileInputStream(file), file.getAbsoluteFile().getParentFile());
+  }
+
+  public LauncherConfig load(InputStream input, File baseDirectory) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() > 0 && !line.startsWith("#"))
+          parseLine(line);
+      }
+    } finally {
+      reader.close();
+    }
+    if (entryPointCount != 1)
+      throw new LauncherException("Must have exactly one 'ep' entry");
+    if (artifacts.isEmpty())
+      throw new LauncherException("Must have at least one 'artifact' entry");
+    List<RemoteRepository> repositories = buildRepositories();
+    File local = new File(localRepository == null ? DEFAULT_LOCAL_REPOSITORY : localRepository);
+    if (!local.isAbsolute())
+      local = new File(baseDirectory, local.getPath());
+    return new LauncherConfig(entryPoint, artifacts, deferredArtifacts, repositories, local, threads,
+      connectionsPerHost, useLockfile, updateDelaySeconds, channel, fork, jvmOptions);
+  }
+
+  private void parseLine(String line) {
+    int equals = line.indexOf('=');
+    if (equals < 0)
+      throw new LauncherException("Illegal line '" + line + "'");
+    String name = line.substring(0, equals);
+    String value = line.substring(equals + 1).trim();
+    if (name.equals("ep")) {
+      entryPoint = value;
+      entryPointCount++;
+    } else if (name.equals("artifact")) {
+      artifacts.add(artifact(value));
+    } else if (name.equals("artifact.deferred")) {
+      deferredArtifacts.add(artifact(value));
+    } else if (name.startsWith("repo.") && name.endsWith(".ttl") && name.length() > 9) {
+      metadataTtls.put(name.substring(5, name.length() - 4), number(name, value, 0));
+    } else if (name.startsWith("repo.") && name.length() > 5) {
+      repositoryUrls.put(repository(name.substring(5), value, 0).getId(), value);
+    } else if (name.equals("local")) {
+      localRepository = value;
+    } else if (name.equals("threads")) {
+      threads = number(name, value, 1);
+    } else if (name.equals("connections")) {
+      connectionsPerHost = number(name, value, 1);
+    } else if (name.equals("lock")) {
+      useLockfile = flag(name, value);
+    } else if (name.equals("update.delay")) {
+      updateDelaySeconds = number(name, value, 0);
+    } else if (name.equals("channel")) {
+      if (!ChannelManifest.isChannelName(value))
+        throw new LauncherException("Entry 'channel' must be a name of letters, digits, '.', '_' or '-'");
+      channel = value;
+    } else if (name.equals("fork")) {
+      fork = flag(name, value);
+    } else if (name.equals("jvm")) {
+      if (!value.startsWith("-"))
+        throw new LauncherException("Entry 'jvm' must be an option starting with '-'");
+      jvmOptions.add(value);
+    } else {
+      throw new LauncherException("Illegal line '" + line + "'");
+    }
+  }
+
+  private List<RemoteRepository> buildRepositories() {
+    if (repositoryUrls.isEmpty())
+      throw new LauncherException("Must have at least one 'repo.<id>' entry");
+    for (String id : metadataTtls.keySet()) {
+      if (!repositoryUrls.containsKey(id))
+        throw new LauncherException("Entry 'repo." + id + ".ttl' names no repository");
+    }
+    List<RemoteRepository> repositories = new ArrayList<RemoteRepository>();
+    for (Map.Entry<String, String> url : repositoryUrls.entrySet()) {
+      Integer ttl = metadataTtls.get(url.getKey());
+      repositories.add(repository(url.getKey(), url.getValue(), ttl == null ? 0 : ttl));
+    }
+    return repositories;
+  }
+
+  private static Artifact artifact(String coordinates) {
+    try {
+      return Artifact.parse(coordinates);
+    } catch (IllegalArgumentException e) {
+      throw new LauncherException(e.getMessage());
+    }
+  }
+
+  private static RemoteRepository repository(String id, String url, int metadataTtlSeconds) {
+    try {
+      return new RemoteRepository(id, url, metadataTtlSeconds);
+    } catch (IllegalArgumentException e) {
+      throw new LauncherException(e.getMessage());
+    }
+  }
+
+  private static boolean flag(String name, String value) {
+    if (!"true".equals(value) && !"false".equals(value))
+      throw new LauncherException("Entry '" + name + "' must be true or false");
+    return Boolean.parseBoolean(value);
+  }
+
+  private static int number(String name, String value, int minimum) {
+    try {
+      int number = Integer.parseInt(value);
+      if (number >= minimum)
+        return number;
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new LauncherException("Entry '" + name + "' must be a number of at least " + minimum);
+  }
+}
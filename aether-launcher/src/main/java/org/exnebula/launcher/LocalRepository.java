@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.File;
+
+/**
+ * Directory with the Maven repository layout. Metadata is kept per remote repository, as
+ * {@code maven-metadata-<id>.xml}, like Maven does, and so are channel manifests.
+ */
+public class LocalRepository {
+  private final File root;
+
+  public LocalRepository(File root) {
+    this.root = root;
+  }
+
+  public File getRoot() {
+    return root;
+  }
+
+  public File fileFor(String path) {
+    return new File(root, path);
+  }
+
+  public File fileFor(Artifact artifact) {
+    return fileFor(artifact.getPath());
+  }
+
+  public File metadataFileFor(String directoryPath, RemoteRepository repository) {
+    return new File(fileFor(directoryPath), "maven-metadata-" + repository.getId() + ".xml");
+  }
+
+  public File manifestFileFor(String channel, RemoteRepository repository) {
+    return new File(fileFor(ChannelManifest.DIRECTORY),
+      channel + "-" + repository.getId() + ChannelManifest.EXTENSION);
+  }
+}
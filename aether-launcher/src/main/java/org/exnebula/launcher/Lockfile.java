@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exact class path of the last resolution: coordinates, SHA-1 and size of each artifact, tied to the launcher.cfg it
+ * was resolved for.
+ * <pre>
+ * config=&lt;SHA-1 of launcher.cfg&gt;
+ * artifact=org.exnebula:vcc:jar:1.0.0 &lt;SHA-1&gt; &lt;size&gt;
+ * </pre>
+ */
+public class Lockfile {
+  public static final String LOCK_FILE = "launcher.lock";
+
+  private final String configDigest;
+  private final List<Entry> entries;
+
+  public Lockfile(String configDigest, List<Entry> entries) {
+    this.configDigest = configDigest;
+    this.entries = Collections.unmodifiableList(new ArrayList<Entry>(entries));
+  }
+
+  public static Lockfile fromResolution(String configDigest, Resolution resolution) throws IOException {
+    return new Lockfile(configDigest, entriesOf(resolution));
+  }
+
+  /**
+   * @return An entry for each resolved file, hashing those whose SHA-1 was not computed while downloading.
+   */
+  static List<Entry> entriesOf(Resolution resolution) throws IOException {
+    List<Entry> entries = new ArrayList<Entry>();
+    for (int i = 0; i < resolution.getArtifacts().size(); i++) {
+      File file = resolution.getFiles().get(i);
+      String sha1 = resolution.getSha1(i);
+      entries.add(new Entry(resolution.getArtifacts().get(i), sha1 != null ? sha1 : Checksums.sha1(file),
+        file.length()));
+    }
+    return entries;
+  }
+
+  /**
+   * @return The lockfile, or null if it is missing or unreadable.
+   */
+  public static Lockfile read(File file) {
+    if (!file.isFile())
+      return null;
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        String configDigest = null;
+        List<Entry> entries = new ArrayList<Entry>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.startsWith("config="))
+            configDigest = line.substring(7);
+          else if (line.startsWith("artifact="))
+            entries.add(Entry.parse(line.substring(9)));
+        }
+        return configDigest == null || entries.isEmpty() ? null : new Lockfile(configDigest, entries);
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      return null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  public void write(File file) throws IOException {
+    File temporary = new File(file.getPath() + ".tmp");
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8"));
+    try {
+      writer.write("config=" + configDigest + "\n");
+      for (Entry entry : entries) {
+        writer.write("artifact=" + entry + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+    Streams.moveInto(temporary, file);
+  }
+
+  public String getConfigDigest() {
+    return configDigest;
+  }
+
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  public List<Artifact> getArtifacts() {
+    List<Artifact> artifacts = new ArrayList<Artifact>(entries.size());
+    for (Entry entry : entries) {
+      artifacts.add(entry.artifact);
+    }
+    return artifacts;
+  }
+
+  /**
+   * Checks only that each file is there with the locked size, which needs no more than a stat per file.
+   *
+   * @return The locked files in class path order, or null if one is missing or has another size.
+   */
+  public List<File> findFiles(LocalRepository localRepository) {
+    List<File> files = new ArrayList<File>(entries.size());
+    for (Entry entry : entries) {
+      File file = localRepository.fileFor(entry.artifact);
+      if (file.length() != entry.size || !file.isFile())
+        return null;
+      files.add(file);
+    }
+    return files;
+  }
+
+  /**
+   * @return Locked artifacts whose file no longer has the locked checksum.
+   */
+  public List<Artifact> findCorrupt(LocalRepository localRepository) {
+    List<Artifact> corrupt = new ArrayList<Artifact>();
+    for (Entry entry : entries) {
+      try {
+        if (!entry.sha1.equals(Checksums.sha1(localRepository.fileFor(entry.artifact))))
+          corrupt.add(entry.artifact);
+      } catch (IOException e) {
+        corrupt.add(entry.artifact);
+      }
+    }
+    return corrupt;
+  }
+
+  public boolean hasSameArtifacts(Lockfile other) {
+    return configDigest.equals(other.configDigest) && entries.equals(other.entries);
+  }
+
+  public static class Entry {
+    private final Artifact artifact;
+    private final String sha1;
+    private final long size;
+
+    public Entry(Artifact artifact, String sha1, long size) {
+      this.artifact = artifact;
+      this.sha1 = sha1;
+      this.size = size;
+    }
+
+    static Entry parse(String text) {
+      String[] parts = text.trim().split(" ");
+      if (parts.length != 3)
+        throw new IllegalArgumentException("Bad lock entry '" + text + "'");
+      return new Entry(Artifact.parse(parts[0]), parts[1], Long.parseLong(parts[2]));
+    }
+
+    public Artifact getArtifact() {
+      return artifact;
+    }
+
+    public String getSha1() {
+      return sha1;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Entry && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+      return toString().hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return artifact + " " + sha1 + " " + size;
+    }
+  }
+}
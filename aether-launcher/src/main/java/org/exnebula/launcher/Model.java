@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A POM after inheriting from its parents, importing managed dependencies and replacing {@code ${...}} references.
+ * Every dependency has a version.
+ */
+public class Model {
+  private final Artifact artifact;
+  private final String packaging;
+  private final Map<String, String> properties;
+  private final List<Dependency> dependencies;
+  private final Map<String, Dependency> managedDependencies;
+
+  Model(Artifact artifact, String packaging, Map<String, String> properties, List<Dependency> dependencies,
+        Map<String, Dependency> managedDependencies) {
+    this.artifact = artifact;
+    this.packaging = packaging;
+    this.properties = Collections.unmodifiableMap(properties);
+    this.dependencies = Collections.unmodifiableList(dependencies);
+    this.managedDependencies = Collections.unmodifiableMap(managedDependencies);
+  }
+
+  public Artifact getArtifact() {
+    return artifact;
+  }
+
+  public String getPackaging() {
+    return packaging;
+  }
+
+  public Map<String, String> getProperties() {
+    return properties;
+  }
+
+  public List<Dependency> getDependencies() {
+    return dependencies;
+  }
+
+  /**
+   * @return Managed dependencies by {@link Dependency#getManagementKey()}, in declaration order.
+   */
+  public Map<String, Dependency> getManagedDependencies() {
+    return managedDependencies;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds effective models from POMs fetched through the downloader. Like Maven, inherited values are interpolated in
+ * the context of the child, so a parent's {@code ${project.version}} is the version of the child. Parents and
+ * imported POMs are shared by many artifacts, so they are read once.
+ */
+public class ModelBuilder {
+  private static final int MAX_PARENTS = 32;
+
+  private final Downloader downloader;
+  private final VersionResolver versionResolver;
+  private final ConcurrentMap<Artifact, Inherited> inheritedModels = new ConcurrentHashMap<Artifact, Inherited>();
+  private final ConcurrentMap<Artifact, Model> models = new ConcurrentHashMap<Artifact, Model>();
+
+  public ModelBuilder(Downloader downloader, VersionResolver versionResolver) {
+    this.downloader = downloader;
+    this.versionResolver = versionResolver;
+  }
+
+  public Model build(Artifact pomArtifact) throws IOException {
+    return build(pomArtifact, 0);
+  }
+
+  private Model build(Artifact pomArtifact, int depth) throws IOException {
+    Model model = models.get(pomArtifact);
+    if (model != null)
+      return model;
+    Inherited inherited = inherit(pomArtifact, depth);
+    Interpolator interpolator = new Interpolator(inherited.properties);
+
+    Map<String, Dependency> managed = new LinkedHashMap<String, Dependency>();
+    List<Dependency> imports = new ArrayList<Dependency>();
+    for (Dependency dependency : inherited.managedDependencies) {
+      Dependency resolved = interpolate(dependency, interpolator);
+      if ("import".equals(resolved.getScope()) && "pom".equals(resolved.getType()))
+        imports.add(resolved);
+      else
+        managed.put(resolved.getManagementKey(), resolved);
+    }
+    for (Dependency imported : imports) {
+      Model bom = build(versionResolver.resolve(imported.toArtifact()), depth + 1);
+      for (Dependency dependency : bom.getManagedDependencies().values()) {
+        if (!managed.containsKey(dependency.getManagementKey()))
+          managed.put(dependency.getManagementKey(), dependency);
+      }
+    }
+
+    Map<String, Dependency> dependencies = new LinkedHashMap<String, Dependency>();
+    for (Dependency dependency : inherited.dependencies) {
+      Dependency resolved = interpolate(dependency, interpolator);
+      resolved = resolved.managedBy(managed.get(resolved.getManagementKey()));
+      if (resolved.getVersion() == null)
+        throw new LauncherException("Dependency " + resolved.getManagementKey() + " of " + pomArtifact +
+          " has no version");
+      dependencies.put(resolved.getManagementKey(), resolved);
+    }
+
+    model = new Model(pomArtifact, inherited.packaging, inherited.properties,
+      new ArrayList<Dependency>(dependencies.values()), managed);
+    Model previous = models.putIfAbsent(pomArtifact, model);
+    return previous != null ? previous : model;
+  }
+
+  private Inherited inherit(Artifact pomArtifact, int depth) throws IOException {
+    Inherited inherited = inheritedModels.get(pomArtifact);
+    if (inherited != null)
+      return inherited;
+    if (depth > MAX_PARENTS)
+      throw new LauncherException("Too many levels of parent or imported POMs at " + pomArtifact);
+    Pom pom = readPom(pomArtifact);
+    Inherited parent = null;
+    if (pom.getParent() != null)
+      parent = inherit(versionResolver.resolve(pom.getParent()), depth + 1);
+
+    inherited = new Inherited();
+    String groupId = pom.getGroupId() != null ? pom.getGroupId() : parent == null ? null : parent.groupId;
+    String version = pom.getVersion() != null ? pom.getVersion() : parent == null ? null : parent.version;
+    inherited.groupId = groupId;
+    inherited.version = version;
+    inherited.packaging = pom.getPackaging();
+    if (parent != null) {
+      inherited.properties.putAll(parent.properties);
+      inherited.dependencies.addAll(parent.dependencies);
+      inherited.managedDependencies.addAll(parent.managedDependencies);
+      inherited.properties.put("project.parent.groupId", parent.groupId);
+      inherited.properties.put("project.parent.version", parent.version);
+      inherited.properties.put("parent.groupId", parent.groupId);
+      inherited.properties.put("parent.version", parent.version);
+    }
+    inherited.properties.putAll(pom.getProperties());
+    for (String prefix : new String[]{"project.", "pom."}) {
+      inherited.properties.put(prefix + "groupId", groupId);
+      inherited.properties.put(prefix + "artifactId", pom.getArtifactId());
+      inherited.properties.put(prefix + "version", version);
+    }
+    inherited.properties.put("project.packaging", inherited.packaging);
+    inherited.dependencies.addAll(pom.getDependencies());
+    inherited.managedDependencies.addAll(pom.getManagedDependencies());
+    Inherited previous = inheritedModels.putIfAbsent(pomArtifact, inherited);
+    return previous != null ? previous : inherited;
+  }
+
+  private Pom readPom(Artifact pomArtifact) throws IOException {
+    File file = Downloader.await(downloader.fetch(pomArtifact));
+    return Pom.parse(new FileInputStream(file), pomArtifact.toString());
+  }
+
+  private static Dependency interpolate(Dependency dependency, Interpolator interpolator) {
+    List<String> exclusions = new ArrayList<String>(dependency.getExclusions().size());
+    for (String exclusion : dependency.getExclusions()) {
+      exclusions.add(interpolator.interpolate(exclusion));
+    }
+    return new Dependency(
+      interpolator.interpolate(dependency.getGroupId()),
+      interpolator.interpolate(dependency.getArtifactId()),
+      interpolator.interpolate(dependency.getVersion()),
+      interpolator.interpolate(dependency.getType()),
+      interpolator.interpolate(dependency.getClassifier()),
+      interpolator.interpolate(dependency.getScope()),
+      dependency.isOptional(),
+      exclusions);
+  }
+
+  /**
+   * Values of a POM merged with those of its parents, not yet interpolated.
+   */
+  private static class Inherited {
+    private String groupId;
+    private String version;
+    private String packaging;
+    private final Map<String, String> properties = new LinkedHashMap<String, String>();
+    private final List<Dependency> dependencies = new ArrayList<Dependency>();
+    private final List<Dependency> managedDependencies = new ArrayList<Dependency>();
+  }
+}
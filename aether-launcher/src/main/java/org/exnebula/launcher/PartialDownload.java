@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.*;
+
+/**
+ * Bytes of an artifact received so far, in {@code <file>.part}, with {@code <file>.part.validator} naming the
+ * repository they came from and the version of the file they belong to. The validator is written before the first
+ * byte, so a copy without one is never resumed.
+ */
+class PartialDownload {
+  static final String PART = ".part";
+  static final String VALIDATOR = ".validator";
+
+  private final File file;
+  private final File validatorFile;
+  private final String repositoryId;
+
+  PartialDownload(File target, String repositoryId) {
+    this.file = new File(target.getPath() + PART);
+    this.validatorFile = new File(file.getPath() + VALIDATOR);
+    this.repositoryId = repositoryId;
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * @return Bytes that can be resumed from this repository, 0 if there are none.
+   */
+  long getOffset() {
+    return getValidator() == null ? 0 : file.length();
+  }
+
+  /**
+   * @return Validator of the partial copy if it came from this repository, null otherwise.
+   */
+  String getValidator() {
+    if (!file.isFile() || !validatorFile.isFile())
+      return null;
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(validatorFile), "UTF-8"));
+      try {
+        String repository = reader.readLine();
+        String validator = reader.readLine();
+        return repositoryId.equals(repository) ? validator : null;
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Records what the bytes about to be written belong to; a remote file without a validator is not resumable.
+   */
+  void begin(RemoteFile remote) throws IOException {
+    if (remote.getOffset() == 0)
+      file.delete();
+    if (remote.getValidator() == null)
+      validatorFile.delete();
+    else
+      Streams.writeString(repositoryId + "\n" + remote.getValidator() + "\n", validatorFile);
+  }
+
+  void moveInto(File target) throws IOException {
+    validatorFile.delete();
+    Streams.moveInto(file, target);
+  }
+
+  void delete() {
+    validatorFile.delete();
+    file.delete();
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.w3c.dom.Element;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of a POM needed to resolve run time dependencies, as written, before inheritance and interpolation.
+ */
+public class Pom {
+  private final String groupId;
+  private final String artifactId;
+  private final String version;
+  private final String packaging;
+  private final Artifact parent;
+  private final Map<String, String> properties;
+  private final List<Dependency> dependencies;
+  private final List<Dependency> managedDependencies;
+
+  Pom(String groupId, String artifactId, String version, String packaging, Artifact parent,
+      Map<String, String> properties, List<Dependency> dependencies, List<Dependency> managedDependencies) {
+    this.groupId = groupId;
+    this.artifactId = artifactId;
+    this.version = version;
+    this.packaging = packaging == null ? "jar" : packaging;
+    this.parent = parent;
+    this.properties = Collections.unmodifiableMap(properties);
+    this.dependencies = Collections.unmodifiableList(dependencies);
+    this.managedDependencies = Collections.unmodifiableList(managedDependencies);
+  }
+
+  public static Pom parse(InputStream input, String description) throws IOException {
+    Element project = Xml.parse(input, description);
+    Element parentElement = Xml.child(project, "parent");
+    Artifact parent = null;
+    if (parentElement != null)
+      parent = new Artifact(Xml.text(parentElement, "groupId"), Xml.text(parentElement, "artifactId"),
+        Xml.text(parentElement, "version"), "", "pom");
+    Map<String, String> properties = new LinkedHashMap<String, String>();
+    Element propertiesElement = Xml.child(project, "properties");
+    if (propertiesElement != null) {
+      for (org.w3c.dom.Node node = propertiesElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+        if (node instanceof Element)
+          properties.put(node.getNodeName(), node.getTextContent().trim());
+      }
+    }
+    return new Pom(
+      Xml.text(project, "groupId"),
+      Xml.text(project, "artifactId"),
+      Xml.text(project, "version"),
+      Xml.text(project, "packaging"),
+      parent,
+      properties,
+      parseDependencies(Xml.child(project, "dependencies")),
+      parseDependencies(Xml.child(Xml.child(project, "dependencyManagement"), "dependencies")));
+  }
+
+  public String getGroupId() {
+    return groupId;
+  }
+
+  public String getArtifactId() {
+    return artifactId;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  public String getPackaging() {
+    return packaging;
+  }
+
+  public Artifact getParent() {
+    return parent;
+  }
+
+  public Map<String, String> getProperties() {
+    return properties;
+  }
+
+  public List<Dependency> getDependencies() {
+    return dependencies;
+  }
+
+  public List<Dependency> getManagedDependencies() {
+    return managedDependencies;
+  }
+
+  private static List<Dependency> parseDependencies(Element dependenciesElement) {
+    List<Dependency> dependencies = new ArrayList<Dependency>();
+    for (Element element : Xml.children(dependenciesElement, "dependency")) {
+      List<String> exclusions = new ArrayList<String>();
+      for (Element exclusion : Xml.children(Xml.child(element, "exclusions"), "exclusion")) {
+        exclusions.add(Xml.text(exclusion, "groupId") + ":" + Xml.text(exclusion, "artifactId"));
+      }
+      dependencies.add(new Dependency(
+        Xml.text(element, "groupId"),
+        Xml.text(element, "artifactId"),
+        Xml.text(element, "version"),
+        Xml.text(element, "type"),
+        Xml.text(element, "classifier"),
+        Xml.text(element, "scope"),
+        "true".equals(Xml.text(element, "optional")),
+        exclusions));
+    }
+    return dependencies;
+  }
+}
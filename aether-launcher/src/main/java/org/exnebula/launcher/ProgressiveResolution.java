@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * A resolved class path whose critical files are in the local repository while the files that only deferred roots
+ * need may still be downloading. The downloader must keep running until {@link #await()} returns.
+ */
+public class ProgressiveResolution {
+  private final List<Artifact> artifacts;
+  private final List<File> files;
+  private final Set<File> deferredFiles;
+  private final List<Future<File>> deferredRequests;
+  private final Downloader downloader;
+  private final Resolution complete;
+
+  public ProgressiveResolution(List<Artifact> artifacts, List<File> files, Set<File> deferredFiles,
+                               List<Future<File>> deferredRequests, Downloader downloader) {
+    this(artifacts, files, deferredFiles, deferredRequests, downloader, null);
+  }
+
+  private ProgressiveResolution(List<Artifact> artifacts, List<File> files, Set<File> deferredFiles,
+                                List<Future<File>> deferredRequests, Downloader downloader, Resolution complete) {
+    this.artifacts = Collections.unmodifiableList(new ArrayList<Artifact>(artifacts));
+    this.files = Collections.unmodifiableList(new ArrayList<File>(files));
+    this.deferredFiles = Collections.unmodifiableSet(new HashSet<File>(deferredFiles));
+    this.deferredRequests = new ArrayList<Future<File>>(deferredRequests);
+    this.downloader = downloader;
+    this.complete = complete;
+  }
+
+  /**
+   * @return A resolution with nothing left to download.
+   */
+  public static ProgressiveResolution of(Resolution resolution, Downloader downloader) {
+    return new ProgressiveResolution(resolution.getArtifacts(), resolution.getFiles(), Collections.<File>emptySet(),
+      Collections.<Future<File>>emptyList(), downloader, resolution);
+  }
+
+  /**
+   * @return Artifacts of the class path, in the order of the files.
+   */
+  public List<Artifact> getArtifacts() {
+    return artifacts;
+  }
+
+  /**
+   * @return Every file of the class path in order, including deferred files that are not there yet.
+   */
+  public List<File> getFiles() {
+    return files;
+  }
+
+  /**
+   * @return Files of the class path that only deferred roots need.
+   */
+  public Set<File> getDeferredFiles() {
+    return deferredFiles;
+  }
+
+  public boolean isComplete() {
+    for (Future<File> request : deferredRequests) {
+      if (!request.isDone())
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return Transfers, patches and metadata cache hits and misses so far.
+   */
+  public Map<String, Long> getCounters() {
+    return downloader.getCounters();
+  }
+
+  /**
+   * Waits for the deferred files.
+   */
+  public Resolution await() throws IOException {
+    if (complete != null)
+      return complete;
+    for (Future<File> request : deferredRequests) {
+      Downloader.await(request);
+    }
+    return new Resolution(artifacts, files, downloader.getSha1s(), downloader.getCounters());
+  }
+}
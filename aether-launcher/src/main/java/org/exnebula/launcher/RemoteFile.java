@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Content of a repository file opened from an offset. The repository may send the whole file instead, when it
+ * changed since the validator was taken or cannot send ranges.
+ */
+public class RemoteFile {
+  private final ReadableByteChannel channel;
+  private final long offset;
+  private final String etag;
+  private final String lastModified;
+  private final long length;
+
+  public RemoteFile(ReadableByteChannel channel, long offset, String etag, String lastModified, long length) {
+    this.channel = channel;
+    this.offset = offset;
+    this.etag = etag;
+    this.lastModified = lastModified;
+    this.length = length;
+  }
+
+  public ReadableByteChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * @return Position of the first byte of the channel in the file, 0 when the whole file is sent.
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return Strong ETag or Last-Modified of this version of the file, null if the repository gives neither and a
+   *         partial copy cannot be resumed safely.
+   */
+  public String getValidator() {
+    if (etag != null && !etag.startsWith("W/"))
+      return etag;
+    return lastModified;
+  }
+
+  /**
+   * @return ETag of this version of the file, weak or strong, null if the repository gives none.
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return Length of the whole file, -1 if unknown. A channel that ends before it means the transfer was cut.
+   */
+  public long getLength() {
+    return length;
+  }
+}
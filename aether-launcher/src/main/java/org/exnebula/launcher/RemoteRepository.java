@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.File;
+import java.net.URI;
+
+public class RemoteRepository {
+  private final String id;
+  private final String url;
+  private final String host;
+  private final Transport transport;
+  private final int metadataTtlSeconds;
+
+  public RemoteRepository(String id, String url) {
+    this(id, url, 0);
+  }
+
+  /**
+   * @param metadataTtlSeconds How long a copy of a metadata file is used without asking the repository if it changed.
+   */
+  public RemoteRepository(String id, String url, int metadataTtlSeconds) {
+    this.id = id;
+    this.url = url;
+    this.metadataTtlSeconds = metadataTtlSeconds;
+    URI uri = URI.create(url);
+    if ("file".equals(uri.getScheme())) {
+      this.host = "file";
+      this.transport = new FileTransport(new File(uri));
+    } else if ("http".equals(uri.getScheme()) || "https".equals(uri.getScheme())) {
+      int port = uri.getPort() >= 0 ? uri.getPort() : "https".equals(uri.getScheme()) ? 443 : 80;
+      this.host = uri.getHost() + ":" + port;
+      this.transport = new HttpTransport(url);
+    } else {
+      throw new IllegalArgumentException("Unsupported repository URL '" + url + "'");
+    }
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * @return Key for the connection limit, host and port for HTTP.
+   */
+  public String getHost() {
+    return host;
+  }
+
+  public int getMetadataTtlSeconds() {
+    return metadataTtlSeconds;
+  }
+
+  public Transport getTransport() {
+    return transport;
+  }
+
+  @Override
+  public String toString() {
+    return id + " (" + url + ")";
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Content of a {@code maven-metadata.xml}: the published versions of an artifact, or the latest build of a
+ * snapshot.
+ */
+public class RepositoryMetadata {
+  private final List<String> versions;
+  private final String snapshotTimestamp;
+  private final int snapshotBuildNumber;
+
+  RepositoryMetadata(List<String> versions, String snapshotTimestamp, int snapshotBuildNumber) {
+    this.versions = Collections.unmodifiableList(versions);
+    this.snapshotTimestamp = snapshotTimestamp;
+    this.snapshotBuildNumber = snapshotBuildNumber;
+  }
+
+  public static RepositoryMetadata read(File file) throws IOException {
+    Element metadata = Xml.parse(new FileInputStream(file), file.getPath());
+    Element versioning = Xml.child(metadata, "versioning");
+    List<String> versions = new ArrayList<String>();
+    for (Element version : Xml.children(Xml.child(versioning, "versions"), "version")) {
+      versions.add(version.getTextContent().trim());
+    }
+    Element snapshot = Xml.child(versioning, "snapshot");
+    String timestamp = Xml.text(snapshot, "timestamp");
+    String buildNumber = Xml.text(snapshot, "buildNumber");
+    try {
+      return new RepositoryMetadata(versions, timestamp, buildNumber == null ? 0 : Integer.parseInt(buildNumber));
+    } catch (NumberFormatException e) {
+      throw new IOException("Bad snapshot build number in " + file);
+    }
+  }
+
+  public List<String> getVersions() {
+    return versions;
+  }
+
+  /**
+   * @return The timestamped version of the latest snapshot build, or null if the snapshot is not timestamped.
+   */
+  public String getSnapshotVersion(String baseVersion) {
+    if (snapshotTimestamp == null || snapshotBuildNumber <= 0)
+      return null;
+    return baseVersion.substring(0, baseVersion.length() - "SNAPSHOT".length()) + snapshotTimestamp + "-" +
+      snapshotBuildNumber;
+  }
+}
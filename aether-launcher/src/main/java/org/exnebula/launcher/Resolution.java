@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.exnebula.bootstrap.BootTimeline;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Artifacts of a resolved class path in class path order, with their files in the local repository and the SHA-1 of
+ * the files that were downloaded while resolving, plus the counts of the downloader.
+ */
+public class Resolution {
+  private final List<Artifact> artifacts;
+  private final List<File> files;
+  private final Map<File, String> sha1s;
+  private final Map<String, Long> counters;
+
+  public Resolution(List<Artifact> artifacts, List<File> files) {
+    this(artifacts, files, Collections.<File, String>emptyMap());
+  }
+
+  public Resolution(List<Artifact> artifacts, List<File> files, Map<File, String> sha1s) {
+    this(artifacts, files, sha1s, Collections.<String, Long>emptyMap());
+  }
+
+  public Resolution(List<Artifact> artifacts, List<File> files, Map<File, String> sha1s,
+                    Map<String, Long> counters) {
+    this.artifacts = Collections.unmodifiableList(new ArrayList<Artifact>(artifacts));
+    this.files = Collections.unmodifiableList(new ArrayList<File>(files));
+    this.sha1s = new HashMap<File, String>(sha1s);
+    this.counters = Collections.unmodifiableMap(new LinkedHashMap<String, Long>(counters));
+  }
+
+  public List<Artifact> getArtifacts() {
+    return artifacts;
+  }
+
+  public List<File> getFiles() {
+    return files;
+  }
+
+  /**
+   * @return SHA-1 of the file at this index if it was computed during its download, null otherwise.
+   */
+  public String getSha1(int index) {
+    return sha1s.get(files.get(index));
+  }
+
+  /**
+   * @return Transfers, patches and metadata cache hits and misses of the resolution by name.
+   */
+  public Map<String, Long> getCounters() {
+    return counters;
+  }
+
+  public void recordTo(BootTimeline timeline) {
+    for (Map.Entry<String, Long> counter : counters.entrySet()) {
+      timeline.count(counter.getKey(), counter.getValue());
+    }
+  }
+}
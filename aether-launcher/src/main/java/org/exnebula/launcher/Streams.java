@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+
+class Streams {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private Streams() {
+  }
+
+  /**
+   * Copies the channel to the target and closes it, feeding every buffer to the digests on its way to disk so the
+   * file is never read back to be checked.
+   */
+  static long copyToFile(ReadableByteChannel source, File target, MessageDigest... digests) throws IOException {
+    return copyToFile(source, target, false, digests);
+  }
+
+  /**
+   * Like {@link #copyToFile(ReadableByteChannel, File, MessageDigest...)}, adding to the end of the target.
+   */
+  static long appendToFile(ReadableByteChannel source, File target, MessageDigest... digests) throws IOException {
+    return copyToFile(source, target, true, digests);
+  }
+
+  /**
+   * Feeds the first {@code length} bytes of the file to the digests.
+   */
+  static void digest(File file, long length, MessageDigest... digests) throws IOException {
+    InputStream input = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int count;
+      while (length > 0 && (count = input.read(buffer, 0, (int) Math.min(buffer.length, length))) > 0) {
+        for (MessageDigest digest : digests) {
+          digest.update(buffer, 0, count);
+        }
+        length -= count;
+      }
+    } finally {
+      input.close();
+    }
+    if (length > 0)
+      throw new EOFException(file + " is shorter than expected");
+  }
+
+  private static long copyToFile(ReadableByteChannel source, File target, boolean append, MessageDigest... digests)
+    throws IOException {
+    long size = 0;
+    try {
+      FileChannel output = new FileOutputStream(target, append).getChannel();
+      try {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (source.read(buffer) >= 0) {
+          buffer.flip();
+          for (MessageDigest digest : digests) {
+            digest.update(buffer.array(), 0, buffer.limit());
+          }
+          size += buffer.limit();
+          while (buffer.hasRemaining()) {
+            output.write(buffer);
+          }
+          buffer.clear();
+        }
+      } finally {
+        output.close();
+      }
+    } finally {
+      source.close();
+    }
+    return size;
+  }
+
+  /**
+   * Writes the text to a temporary file and moves it over the target, so readers see the old or the new content.
+   */
+  static void writeString(String text, File target) throws IOException {
+    File temporary = new File(target.getPath() + ".tmp");
+    Writer writer = new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8");
+    try {
+      writer.write(text);
+    } finally {
+      writer.close();
+    }
+    moveInto(temporary, target);
+  }
+
+  /**
+   * Copies source over target through a temporary file next to the target, so the target is only ever replaced by a
+   * complete copy. The source stays as it is, whether the copy succeeds or not.
+   */
+  static void copyInto(File source, File target) throws IOException {
+    File temporary = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+    try {
+      copyToFile(new FileInputStream(source).getChannel(), temporary);
+      moveInto(temporary, target);
+    } finally {
+      temporary.delete();
+    }
+  }
+
+  /**
+   * Replaces target with source, which must be in the same directory.
+   */
+  static void moveInto(File source, File target) throws IOException {
+    if (source.renameTo(target))
+      return;
+    target.delete();
+    if (!source.renameTo(target)) {
+      source.delete();
+      throw new IOException("Could not move " + source + " to " + target);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+
+public interface Transport {
+
+  /**
+   * Opens the file at a path relative to the repository root. The caller closes the channel.
+   *
+   * @throws java.io.FileNotFoundException When the repository does not have the file.
+   */
+  ReadableByteChannel open(String path) throws IOException;
+
+  /**
+   * Opens the file from {@code offset} if it still has the given validator, from the start otherwise.
+   *
+   * @param validator Validator of the copy that is being resumed, null to open from the start.
+   * @throws java.io.FileNotFoundException When the repository does not have the file.
+   */
+  RemoteFile open(String path, long offset, String validator) throws IOException;
+
+  /**
+   * Opens the file unless it still has the ETag or Last-Modified of a copy the caller already has.
+   *
+   * @param etag         ETag of the copy, null if none.
+   * @param lastModified Last-Modified of the copy, null if none.
+   * @return The whole file, null if the copy is current.
+   * @throws java.io.FileNotFoundException When the repository does not have the file.
+   */
+  RemoteFile openIfChanged(String path, String etag, String lastModified) throws IOException;
+}
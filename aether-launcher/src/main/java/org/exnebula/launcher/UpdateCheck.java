@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.exnebula.bootstrap.BootTimeline;
+import org.exnebula.bootstrap.DaemonThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Runs after a launch from a generation: checks the locked files that changed since their last check against their
+ * checksums and resolves again with the network. A changed class path becomes a new generation, staged for the next
+ * start. Corrupt files are downloaded again into {@link Generations#getRepairs()}, which the next start moves over
+ * them; a check that finds corrupt files does not resolve, since resolving would lock the corrupt files as they are.
+ * Failures are left for the next check; the running generation is never touched.
+ * <p>
+ * Each check that resolves writes its own timeline, with the download and metadata cache counts, to the generations
+ * directory.
+ */
+public class UpdateCheck implements Runnable {
+  public static final String PHASE = "Update check";
+
+  private final LauncherConfig config;
+  private final Generation current;
+  private final Generations generations;
+  private volatile boolean updated = false;
+
+  public UpdateCheck(LauncherConfig config, Generation current, Generations generations) {
+    this.config = config;
+    this.current = current;
+    this.generations = generations;
+  }
+
+  /**
+   * Starts the check on a low priority daemon thread, after the configured delay so the application starts first.
+   */
+  public Thread start() {
+    Thread thread = new DaemonThreadFactory("launcher-update").newThread(this);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+    return thread;
+  }
+
+  public void run() {
+    try {
+      Thread.sleep(config.getUpdateDelaySeconds() * 1000L);
+      check();
+    } catch (InterruptedException e) {
+      // Application is shutting down
+    } catch (Exception e) {
+      // The current generation stays as it is
+    }
+  }
+
+  /**
+   * @return True if a new generation was staged.
+   */
+  public boolean check() throws IOException {
+    Lockfile lockfile = current.getLockfile();
+    if (lockfile == null)
+      return false;
+    List<Artifact> corrupt = current.findCorrupt(new LocalRepository(config.getLocalRepository()));
+    BootTimeline timeline = new BootTimeline();
+    timeline.begin(PHASE);
+    int repaired = stageRepairs(lockfile, corrupt);
+    Resolution resolution = null;
+    boolean changed = false;
+    if (corrupt.isEmpty()) {
+      resolution = Launcher.resolve(config, lockfile.getArtifacts());
+      Lockfile resolved = Lockfile.fromResolution(lockfile.getConfigDigest(), resolution);
+      changed = !resolved.hasSameArtifacts(lockfile) && !generations.isRejected(resolved);
+      if (changed)
+        generations.stageNext(generations.create(config.getEntryPoint(), config.getBootOptions(), resolved,
+          resolution.getFiles()));
+    }
+    timeline.end(PHASE);
+    timeline.attribute("updated", String.valueOf(changed));
+    timeline.attribute("repaired", repaired + " of " + corrupt.size());
+    if (resolution != null)
+      resolution.recordTo(timeline);
+    timeline.writeTo(generations.getDirectory());
+    updated = changed;
+    return changed;
+  }
+
+  /**
+   * @return Number of corrupt files with a copy matching the lockfile staged for the next start.
+   */
+  private int stageRepairs(Lockfile lockfile, List<Artifact> corrupt) throws IOException {
+    if (corrupt.isEmpty())
+      return 0;
+    Downloader downloader = new Downloader(generations.getRepairs(), config.getRepositories(), config.getThreads(),
+      config.getConnectionsPerHost());
+    int repaired = 0;
+    try {
+      for (Lockfile.Entry entry : lockfile.getEntries()) {
+        if (!corrupt.contains(entry.getArtifact()))
+          continue;
+        try {
+          File file = Downloader.await(downloader.fetch(entry.getArtifact()));
+          if (entry.getSha1().equals(Checksums.sha1(file)))
+            repaired++;
+          else
+            file.delete();
+        } catch (IOException e) {
+          // Tried again by the next check
+        }
+      }
+    } finally {
+      downloader.shutdown();
+    }
+    return repaired;
+  }
+
+  public boolean isUpdated() {
+    return updated;
+  }
+}
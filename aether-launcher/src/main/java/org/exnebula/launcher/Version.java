@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Orders versions the way Maven does for the common cases: numbers compare numerically, missing trailing numbers
+ * count as zero and qualifiers rank {@code alpha < beta < milestone < rc < snapshot < release < sp}, with unknown
+ * qualifiers after those in alphabetical order.
+ */
+public class Version implements Comparable<Version> {
+  private static final String[] QUALIFIERS = {"alpha", "beta", "milestone", "rc", "snapshot", "", "sp"};
+  private static final int RELEASE_RANK = 5;
+
+  private final String text;
+  private final List<Object> items = new ArrayList<Object>();
+
+  public Version(String text) {
+    this.text = text;
+    parse(text.toLowerCase());
+  }
+
+  public int compareTo(Version other) {
+    int size = Math.max(items.size(), other.items.size());
+    for (int i = 0; i < size; i++) {
+      int result = compareItems(item(i), other.item(i));
+      if (result != 0)
+        return result;
+    }
+    return 0;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof Version && compareTo((Version) other) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 0;
+    for (Object item : items) {
+      if (!Long.valueOf(0).equals(item) && !"".equals(item))
+        hash = hash * 31 + item.hashCode();
+    }
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  private Object item(int index) {
+    return index < items.size() ? items.get(index) : null;
+  }
+
+  private void parse(String version) {
+    StringBuilder token = new StringBuilder();
+    boolean digits = false;
+    for (int i = 0; i < version.length(); i++) {
+      char c = version.charAt(i);
+      if (c == '.' || c == '-' || c == '_') {
+        addItem(token, digits);
+      } else {
+        boolean digit = Character.isDigit(c);
+        if (token.length() > 0 && digit != digits)
+          addItem(token, digits);
+        digits = digit;
+        token.append(c);
+      }
+    }
+    addItem(token, digits);
+  }
+
+  private void addItem(StringBuilder token, boolean digits) {
+    if (token.length() == 0)
+      return;
+    String value = token.toString();
+    token.setLength(0);
+    if (digits)
+      items.add(value.length() > 18 ? Long.MAX_VALUE : Long.parseLong(value));
+    else
+      items.add(normalizeQualifier(value));
+  }
+
+  private static String normalizeQualifier(String qualifier) {
+    if (qualifier.equals("a"))
+      return "alpha";
+    if (qualifier.equals("b"))
+      return "beta";
+    if (qualifier.equals("m"))
+      return "milestone";
+    if (qualifier.equals("cr"))
+      return "rc";
+    if (qualifier.equals("ga") || qualifier.equals("final") || qualifier.equals("release"))
+      return "";
+    return qualifier;
+  }
+
+  private static int compareItems(Object first, Object second) {
+    if (first == null && second == null)
+      return 0;
+    if (first == null)
+      return -compareItems(second, null);
+    if (first instanceof Long) {
+      if (second == null)
+        return ((Long) first) == 0 ? 0 : 1;
+      if (second instanceof Long)
+        return ((Long) first).compareTo((Long) second);
+      return 1;
+    }
+    if (second == null)
+      return rank((String) first) - RELEASE_RANK;
+    if (second instanceof Long)
+      return -1;
+    int rankDifference = rank((String) first) - rank((String) second);
+    return rankDifference != 0 ? rankDifference : ((String) first).compareTo((String) second);
+  }
+
+  private static int rank(String qualifier) {
+    for (int i = 0; i < QUALIFIERS.length; i++) {
+      if (QUALIFIERS[i].equals(qualifier))
+        return i;
+    }
+    return QUALIFIERS.length;
+  }
+}
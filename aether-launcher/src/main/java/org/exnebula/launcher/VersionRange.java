@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maven version range such as {@code [1.0,2.0)}, {@code [1.5,)}, {@code [1.2]} or a union of those separated by
+ * commas.
+ */
+public class VersionRange {
+  private final String text;
+  private final List<Restriction> restrictions;
+
+  private VersionRange(String text, List<Restriction> restrictions) {
+    this.text = text;
+    this.restrictions = restrictions;
+  }
+
+  public static boolean isRange(String version) {
+    return version.startsWith("[") || version.startsWith("(");
+  }
+
+  public static VersionRange parse(String text) {
+    List<Restriction> restrictions = new ArrayList<Restriction>();
+    String remaining = text.trim();
+    while (remaining.length() > 0) {
+      if (!isRange(remaining))
+        throw new IllegalArgumentException("Bad version range '" + text + "'");
+      int end = indexOfClose(remaining);
+      if (end < 0)
+        throw new IllegalArgumentException("Bad version range '" + text + "'");
+      restrictions.add(parseRestriction(remaining.substring(0, end + 1), text));
+      remaining = remaining.substring(end + 1).trim();
+      if (remaining.startsWith(","))
+        remaining = remaining.substring(1).trim();
+    }
+    if (restrictions.isEmpty())
+      throw new IllegalArgumentException("Bad version range '" + text + "'");
+    return new VersionRange(text, restrictions);
+  }
+
+  public boolean contains(Version version) {
+    for (Restriction restriction : restrictions) {
+      if (restriction.contains(version))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return The highest of the candidates inside this range, or null if none is.
+   */
+  public String selectHighest(List<String> candidates) {
+    Version best = null;
+    for (String candidate : candidates) {
+      Version version = new Version(candidate);
+      if (contains(version) && (best == null || version.compareTo(best) > 0))
+        best = version;
+    }
+    return best == null ? null : best.toString();
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  private static int indexOfClose(String text) {
+    int bracket = text.indexOf(']');
+    int parenthesis = text.indexOf(')');
+    if (bracket < 0)
+      return parenthesis;
+    if (parenthesis < 0)
+      return bracket;
+    return Math.min(bracket, parenthesis);
+  }
+
+  private static Restriction parseRestriction(String spec, String text) {
+    boolean lowerInclusive = spec.charAt(0) == '[';
+    boolean upperInclusive = spec.charAt(spec.length() - 1) == ']';
+    String body = spec.substring(1, spec.length() - 1).trim();
+    int comma = body.indexOf(',');
+    if (comma < 0) {
+      if (!lowerInclusive || !upperInclusive || body.length() == 0)
+        throw new IllegalArgumentException("Bad version range '" + text + "'");
+      Version exact = new Version(body);
+      return new Restriction(exact, true, exact, true);
+    }
+    String lower = body.substring(0, comma).trim();
+    String upper = body.substring(comma + 1).trim();
+    return new Restriction(lower.length() == 0 ? null : new Version(lower), lowerInclusive,
+      upper.length() == 0 ? null : new Version(upper), upperInclusive);
+  }
+
+  private static class Restriction {
+    private final Version lower;
+    private final boolean lowerInclusive;
+    private final Version upper;
+    private final boolean upperInclusive;
+
+    Restriction(Version lower, boolean lowerInclusive, Version upper, boolean upperInclusive) {
+      this.lower = lower;
+      this.lowerInclusive = lowerInclusive;
+      this.upper = upper;
+      this.upperInclusive = upperInclusive;
+    }
+
+    boolean contains(Version version) {
+      if (lower != null) {
+        int result = version.compareTo(lower);
+        if (result < 0 || (result == 0 && !lowerInclusive))
+          return false;
+      }
+      if (upper != null) {
+        int result = version.compareTo(upper);
+        if (result > 0 || (result == 0 && !upperInclusive))
+          return false;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Turns version ranges into the highest published version in range, and snapshot versions into the timestamped
+ * version of the latest build, using the metadata of every repository. Each answer is looked up once per run.
+ */
+public class VersionResolver {
+  private final Downloader downloader;
+  private final ConcurrentMap<String, String> resolvedVersions = new ConcurrentHashMap<String, String>();
+
+  public VersionResolver(Downloader downloader) {
+    this.downloader = downloader;
+  }
+
+  public Artifact resolve(Artifact artifact) throws IOException {
+    String version = artifact.getVersion();
+    boolean range = VersionRange.isRange(version);
+    if (!range && !(artifact.isSnapshot() && artifact.getBaseVersion().equals(version)))
+      return artifact;
+    String key = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + version;
+    String resolved = resolvedVersions.get(key);
+    if (resolved == null) {
+      resolved = range ? resolveRange(artifact) : resolveSnapshot(artifact);
+      resolvedVersions.putIfAbsent(key, resolved);
+    }
+    return artifact.withVersion(resolved);
+  }
+
+  private String resolveRange(Artifact artifact) throws IOException {
+    VersionRange range = VersionRange.parse(artifact.getVersion());
+    String directory = artifact.getGroupId().replace('.', '/') + "/" + artifact.getArtifactId();
+    List<String> versions = new ArrayList<String>();
+    for (File file : downloader.fetchMetadata(directory)) {
+      versions.addAll(RepositoryMetadata.read(file).getVersions());
+    }
+    String selected = range.selectHighest(versions);
+    if (selected == null)
+      throw new LauncherException("No version of " + artifact.getGroupId() + ":" + artifact.getArtifactId() +
+        " matches " + range);
+    return selected;
+  }
+
+  private String resolveSnapshot(Artifact artifact) throws IOException {
+    String latest = null;
+    for (File file : downloader.fetchMetadata(artifact.getDirectoryPath())) {
+      String candidate = RepositoryMetadata.read(file).getSnapshotVersion(artifact.getVersion());
+      if (candidate != null && (latest == null || new Version(candidate).compareTo(new Version(latest)) > 0))
+        latest = candidate;
+    }
+    return latest != null ? latest : artifact.getVersion();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Just enough DOM to read POMs and repository metadata. Element names are matched without namespace.
+ */
+class Xml {
+
+  private Xml() {
+  }
+
+  static Element parse(InputStream input, String description) throws IOException {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setExpandEntityReferences(false);
+      DocumentBuilder builder = factory.newDocumentBuilder();
+      Document document = builder.parse(input);
+      return document.getDocumentElement();
+    } catch (ParserConfigurationException e) {
+      throw new IOException("Could not create XML parser", e);
+    } catch (SAXException e) {
+      throw new IOException("Could not parse " + description + ": " + e.getMessage(), e);
+    } finally {
+      input.close();
+    }
+  }
+
+  static Element child(Element parent, String name) {
+    if (parent == null)
+      return null;
+    for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node instanceof Element && name.equals(localName(node)))
+        return (Element) node;
+    }
+    return null;
+  }
+
+  static List<Element> children(Element parent, String name) {
+    if (parent == null)
+      return Collections.emptyList();
+    List<Element> elements = new ArrayList<Element>();
+    for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node instanceof Element && name.equals(localName(node)))
+        elements.add((Element) node);
+    }
+    return elements;
+  }
+
+  /**
+   * @return Trimmed text of the named child, or null if there is no such child.
+   */
+  static String text(Element parent, String name) {
+    Element element = child(parent, name);
+    return element == null ? null : element.getTextContent().trim();
+  }
+
+  private static String localName(Node node) {
+    return node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.exnebula.launcher.TestRepository.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class ChannelManifestTest {
+
+  private final Artifact a = Artifact.parse("org:a:1.0");
+  private final Artifact b = Artifact.parse("org:b:jar:tests:2.0");
+  private LocalRepository local;
+  private File file;
+  private ChannelManifest manifest;
+
+  @Before
+  public void setUp() throws IOException {
+    TestRepository repository = new TestRepository(new File(getTargetDirectory(), "channel"));
+    repository.jar("org:a:1.0").jar("org:b:jar:tests:2.0");
+    local = new LocalRepository(repository.getRoot());
+    manifest = ChannelManifest.fromResolution("stable", Collections.singletonList(a),
+      new Resolution(Arrays.asList(a, b), Arrays.asList(local.fileFor(a), local.fileFor(b))));
+    file = local.fileFor(ChannelManifest.pathFor("stable"));
+    FileUtils.deleteQuietly(file);
+  }
+
+  @Test
+  public void writeAndReadBack() throws IOException {
+    manifest.write(file);
+    ChannelManifest read = ChannelManifest.read(file, "stable");
+    assertEquals(Collections.singletonList(a), read.getRoots());
+    assertEquals(manifest.getEntries(), read.getEntries());
+    assertEquals(Checksums.sha1(local.fileFor(b)), read.getEntries().get(1).getSha1());
+    assertEquals(new File(local.getRoot(), "channels/stable.manifest"), file);
+  }
+
+  @Test
+  public void ignoreManifestThatDoesNotMatchItsChecksum() throws IOException {
+    manifest.write(file);
+    FileUtils.writeStringToFile(file, FileUtils.readFileToString(file, "UTF-8").replace("org:b", "org:c"), "UTF-8");
+    assertNull(ChannelManifest.read(file, "stable"));
+  }
+
+  @Test
+  public void ignoreMissingManifestOrOtherChannel() throws IOException {
+    assertNull(ChannelManifest.read(file, "stable"));
+    manifest.write(file);
+    assertNull(ChannelManifest.read(file, "beta"));
+  }
+
+  @Test
+  public void acceptOnlyPlainChannelNames() {
+    assertTrue(ChannelManifest.isChannelName("beta-2.x_1"));
+    assertFalse(ChannelManifest.isChannelName("../stable"));
+    assertFalse(ChannelManifest.isChannelName(".hidden"));
+    assertFalse(ChannelManifest.isChannelName(""));
+  }
+}
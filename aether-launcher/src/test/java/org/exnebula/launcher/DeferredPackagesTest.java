@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.exnebula.launcher.TestRepository.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class DeferredPackagesTest {
+
+  private static final String CLASS_FILE = "sample/launcher/Hello.class";
+
+  private TestRepository repository;
+  private LocalRepository local;
+  private Artifact app;
+  private Artifact help;
+
+  @Before
+  public void setUp() throws IOException {
+    repository = new TestRepository(new File(getTargetDirectory(), "deferred-packages"));
+    repository.jar("org:app:2.0").jarWithClass("org:help:1.0", new File(getTargetDirectory(), "test-classes"),
+      CLASS_FILE);
+    local = new LocalRepository(repository.getRoot());
+    app = Artifact.parse("org:app:2.0");
+    help = Artifact.parse("org:help:2.0");
+  }
+
+  @Test
+  public void listMissingFileFromJarOfPreviousGeneration() {
+    assertEquals(Collections.singletonList("sample.launcher"), find(Artifact.parse("org:help:1.0")));
+  }
+
+  @Test
+  public void listNothingWithoutEarlierJar() {
+    assertEquals(Collections.<String>emptyList(), find(Artifact.parse("org:other:1.0")));
+    assertEquals(Collections.<String>emptyList(), find(Artifact.parse("org:help:0.9")));
+  }
+
+  @Test
+  public void skipDeferredFileAlreadyThere() throws IOException {
+    repository.jar("org:help:2.0");
+    assertEquals(Collections.<String>emptyList(), find());
+  }
+
+  private List<String> find(Artifact... installed) {
+    File helpFile = local.fileFor(help);
+    return DeferredPackages.find(Arrays.asList(app, help), Arrays.asList(local.fileFor(app), helpFile),
+      new HashSet<File>(Collections.singletonList(helpFile)), Arrays.asList(installed), local);
+  }
+}
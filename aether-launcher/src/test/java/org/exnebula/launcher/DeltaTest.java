@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.exnebula.launcher.TestRepository.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class DeltaTest {
+
+  private TestRepository repository;
+  private File patch;
+
+  @Before
+  public void setUp() throws IOException {
+    repository = new TestRepository(new File(getTargetDirectory(), "delta"));
+    patch = new File(repository.getRoot(), "test.delta");
+  }
+
+  @Test
+  public void rebuildNewReleaseFromSmallPatch() throws IOException {
+    repository.largeJar("org:a:1.0", 200).largeJar("org:a:1.1", 201);
+    File base = repository.fileFor(Artifact.parse("org:a:1.0").getPath());
+    File target = repository.fileFor(Artifact.parse("org:a:1.1").getPath());
+    Delta.create(base, target, patch);
+    assertArrayEquals(FileUtils.readFileToByteArray(target), apply(base));
+    assertTrue("Patch has " + patch.length() + " bytes", patch.length() < target.length() / 20);
+  }
+
+  @Test
+  public void rebuildUnrelatedFiles() throws IOException {
+    File base = writeRandom("base", 10000, 1);
+    File target = writeRandom("target", 7000, 2);
+    Delta.create(base, target, patch);
+    assertArrayEquals(FileUtils.readFileToByteArray(target), apply(base));
+  }
+
+  @Test
+  public void rebuildShortAndEmptyFiles() throws IOException {
+    File empty = writeRandom("empty", 0, 1);
+    File tiny = writeRandom("tiny", 10, 1);
+    Delta.create(empty, tiny, patch);
+    assertArrayEquals(FileUtils.readFileToByteArray(tiny), apply(empty));
+    Delta.create(tiny, empty, patch);
+    assertEquals(0, apply(tiny).length);
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectPatchForAnotherBase() throws IOException {
+    File base = writeRandom("base", 10000, 1);
+    Delta.create(base, writeRandom("target", 10000, 2), patch);
+    apply(writeRandom("other", 9000, 1));
+  }
+
+  @Test
+  public void rollingChecksumMatchesChecksumOfWindow() {
+    byte[] bytes = new byte[100];
+    new Random(3).nextBytes(bytes);
+    int hash = Delta.RollingChecksum.of(bytes, 0, 16);
+    for (int offset = 1; offset + 16 <= bytes.length; offset++) {
+      hash = Delta.RollingChecksum.roll(hash, bytes[offset - 1], bytes[offset + 15], 16);
+      assertEquals(Delta.RollingChecksum.of(bytes, offset, 16), hash);
+    }
+  }
+
+  @Test
+  public void generatorPublishesPatchAndChecksum() throws IOException {
+    repository.largeJar("org:a:1.0", 100).largeJar("org:a:1.1", 100);
+    Artifact target = Artifact.parse("org:a:1.1");
+    File published = new DeltaGenerator(repository.getRoot()).generate(target, Artifact.parse("org:a:1.0"));
+    assertEquals(repository.fileFor("org/a/1.1/a-1.1.jar.from-1.0.delta"), published);
+    assertEquals(Checksums.sha1(repository.fileFor(target.getPath())),
+      Checksums.read(new FileInputStream(repository.fileFor(target.getPath() + ".sha1"))));
+  }
+
+  @Test
+  public void generatorSkipsPatchThatSavesNothing() throws IOException {
+    FileUtils.copyFile(writeRandom("base", 5000, 1), repository.fileFor("org/b/1.0/b-1.0.jar"));
+    FileUtils.copyFile(writeRandom("target", 5000, 2), repository.fileFor("org/b/2.0/b-2.0.jar"));
+    assertNull(new DeltaGenerator(repository.getRoot()).generate(Artifact.parse("org:b:2.0"),
+      Artifact.parse("org:b:1.0")));
+    assertFalse(repository.fileFor("org/b/2.0/b-2.0.jar.from-1.0.delta").exists());
+  }
+
+  private byte[] apply(File base) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    Delta.apply(base, new FileInputStream(patch), output);
+    return output.toByteArray();
+  }
+
+  private File writeRandom(String name, int size, long seed) throws IOException {
+    byte[] content = new byte[size];
+    new Random(seed).nextBytes(content);
+    File file = new File(repository.getRoot(), name);
+    FileUtils.writeByteArrayToFile(file, content);
+    return file;
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.exnebula.launcher.TestRepository.*;
+import static org.junit.Assert.*;
+
+public class DependencyResolverTest {
+
+  private TestRepository repository;
+  private LocalRepository local;
+  private Downloader downloader;
+
+  @Before
+  public void setUp() throws IOException {
+    repository = new TestRepository(new File(getTargetDirectory(), "resolver/remote"));
+    File localRoot = new File(getTargetDirectory(), "resolver/local");
+    FileUtils.deleteDirectory(localRoot);
+    local = new LocalRepository(localRoot);
+    downloader = new Downloader(local,
+      Collections.singletonList(new RemoteRepository("remote", repository.getUrl())), 4, 2);
+  }
+
+  @After
+  public void tearDown() {
+    downloader.shutdown();
+  }
+
+  @Test
+  public void nearestDeclarationWins() throws IOException {
+    repository.artifact("org:app:1.0", dependency("org:b:1.0"), dependency("org:c:1.0"));
+    repository.artifact("org:b:1.0");
+    repository.artifact("org:b:2.0");
+    repository.artifact("org:c:1.0", dependency("org:b:2.0"), dependency("org:d:1.0"));
+    repository.artifact("org:d:1.0", dependency("org:b:2.0"));
+
+    Resolution resolution = resolve("org:app:1.0");
+    assertEquals(Arrays.asList("org:app:1.0", "org:b:1.0", "org:c:1.0", "org:d:1.0"), names(resolution));
+    assertEquals(local.fileFor(Artifact.parse("org:b:1.0")), resolution.getFiles().get(1));
+    assertTrue(resolution.getFiles().get(1).isFile());
+  }
+
+  @Test
+  public void followOnlyRunTimeScopes() throws IOException {
+    repository.artifact("org:app:1.0",
+      dependency("org:compile:1.0"),
+      dependency("org:runtime:1.0", "<scope>runtime</scope>"),
+      dependency("org:test:1.0", "<scope>test</scope>"),
+      dependency("org:provided:1.0", "<scope>provided</scope>"),
+      dependency("org:optional:1.0", "<optional>true</optional>"));
+    repository.artifact("org:compile:1.0");
+    repository.artifact("org:runtime:1.0");
+
+    assertEquals(Arrays.asList("org:app:1.0", "org:compile:1.0", "org:runtime:1.0"), names(resolve("org:app:1.0")));
+  }
+
+  @Test
+  public void excludeWholeSubtree() throws IOException {
+    repository.artifact("org:app:1.0", dependency("org:b:1.0", exclusion("org:d")), dependency("org:e:1.0"));
+    repository.artifact("org:b:1.0", dependency("org:c:1.0"));
+    repository.artifact("org:c:1.0", dependency("org:d:1.0"));
+    repository.artifact("org:e:1.0", dependency("org:d:1.0"));
+    repository.artifact("org:d:1.0");
+
+    assertEquals(Arrays.asList("org:app:1.0", "org:b:1.0", "org:e:1.0", "org:c:1.0", "org:d:1.0"),
+      names(resolve("org:app:1.0")));
+    repository.artifact("org:app:2.0", dependency("org:b:1.0", exclusion("org:*")));
+    assertEquals(Arrays.asList("org:app:2.0", "org:b:1.0"), names(resolve("org:app:2.0")));
+  }
+
+  @Test
+  public void inheritPropertiesDependenciesAndManagementFromParent() throws IOException {
+    repository.pom("org:parent:3.0",
+      "<packaging>pom</packaging>",
+      "<properties><lib.version>1.5</lib.version></properties>",
+      managed(dependency("org:lib:${lib.version}"), dependency("org:sibling:${project.version}")),
+      dependencies(dependency("org:common:1.0")));
+    repository.jar("org:app:3.1");
+    repository.pom("org:app:3.1", parent("org:parent:3.0"),
+      dependencies(dependency("org:lib:"), dependency("org:sibling:")));
+    repository.artifact("org:common:1.0");
+    repository.artifact("org:lib:1.5");
+    repository.artifact("org:sibling:3.1");
+
+    assertEquals(Arrays.asList("org:app:3.1", "org:common:1.0", "org:lib:1.5", "org:sibling:3.1"),
+      names(resolve("org:app:3.1")));
+  }
+
+  @Test
+  public void importManagedDependencies() throws IOException {
+    repository.pom("org:bom:1.0", managed(dependency("org:lib:2.0"), dependency("org:other:2.0")));
+    repository.jar("org:app:1.0");
+    repository.pom("org:app:1.0",
+      managed(dependency("org:bom:1.0", "<type>pom</type>", "<scope>import</scope>"), dependency("org:other:1.0")),
+      dependencies(dependency("org:lib:"), dependency("org:other:")));
+    repository.artifact("org:lib:2.0");
+    repository.artifact("org:other:1.0");
+
+    assertEquals(Arrays.asList("org:app:1.0", "org:lib:2.0", "org:other:1.0"), names(resolve("org:app:1.0")));
+  }
+
+  @Test
+  public void rootManagementOverridesTransitiveVersions() throws IOException {
+    repository.jar("org:app:1.0");
+    repository.pom("org:app:1.0", managed(dependency("org:lib:2.0")), dependencies(dependency("org:b:1.0")));
+    repository.artifact("org:b:1.0", dependency("org:lib:1.0"));
+    repository.artifact("org:lib:2.0");
+
+    assertEquals(Arrays.asList("org:app:1.0", "org:b:1.0", "org:lib:2.0"), names(resolve("org:app:1.0")));
+  }
+
+  @Test
+  public void followPomDependenciesWithoutJar() throws IOException {
+    repository.artifact("org:app:1.0", dependency("org:group:1.0", "<type>pom</type>"));
+    repository.pom("org:group:1.0", "<packaging>pom</packaging>", dependencies(dependency("org:lib:1.0")));
+    repository.artifact("org:lib:1.0");
+
+    assertEquals(Arrays.asList("org:app:1.0", "org:lib:1.0"), names(resolve("org:app:1.0")));
+  }
+
+  @Test
+  public void pickHighestVersionInRange() throws IOException {
+    repository.artifact("org:app:1.0", dependency("org:lib:[1.0,2.0)"));
+    repository.versions("org:lib", "1.0", "1.2", "2.0");
+    repository.artifact("org:lib:1.2");
+
+    assertEquals(Arrays.asList("org:app:1.0", "org:lib:1.2"), names(resolve("org:app:1.0")));
+  }
+
+  @Test
+  public void useLatestSnapshotBuild() throws IOException {
+    repository.artifact("org:app:1.0", dependency("org:lib:1.1-SNAPSHOT"));
+    repository.snapshot("org:lib:1.1-SNAPSHOT", "20130512.101010", 3);
+    repository.artifact("org:lib:1.1-20130512.101010-3");
+
+    assertEquals(Arrays.asList("org:app:1.0", "org:lib:1.1-20130512.101010-3"), names(resolve("org:app:1.0")));
+  }
+
+  @Test(expected = FileNotFoundException.class)
+  public void failOnMissingJar() throws IOException {
+    repository.artifact("org:app:1.0", dependency("org:lib:1.0"));
+    repository.pom("org:lib:1.0");
+    resolve("org:app:1.0");
+  }
+
+  @Test
+  public void resolveManyArtifactsWithSharedParent() throws IOException {
+    repository.pom("org:parent:1.0", "<packaging>pom</packaging>");
+    String[] libraries = new String[40];
+    for (int i = 0; i < libraries.length; i++) {
+      libraries[i] = dependency("org:lib" + i + ":1.0");
+      repository.jar("org:lib" + i + ":1.0");
+      repository.pom("org:lib" + i + ":1.0", parent("org:parent:1.0"),
+        i + 1 < libraries.length ? dependencies(dependency("org:lib" + (i + 1) + ":1.0")) : "");
+    }
+    repository.artifact("org:app:1.0", libraries);
+
+    assertEquals(41, resolve("org:app:1.0").getFiles().size());
+  }
+
+  @Test
+  public void deferOnlyWhatCriticalRootsDoNotNeed() throws IOException {
+    repository.artifact("org:app:1.0", dependency("org:shared:1.0"));
+    repository.artifact("org:help:1.0", dependency("org:shared:1.0"), dependency("org:index:1.0"));
+    repository.artifact("org:shared:1.0");
+    repository.artifact("org:index:1.0");
+
+    ProgressiveResolution progress = new DependencyResolver(downloader, 4).resolve(
+      Collections.singletonList(Artifact.parse("org:app:1.0")),
+      Collections.singletonList(Artifact.parse("org:help:1.0")));
+    assertEquals(new HashSet<File>(Arrays.asList(local.fileFor(Artifact.parse("org:help:1.0")),
+      local.fileFor(Artifact.parse("org:index:1.0")))), progress.getDeferredFiles());
+    assertTrue(local.fileFor(Artifact.parse("org:app:1.0")).isFile());
+    assertTrue(local.fileFor(Artifact.parse("org:shared:1.0")).isFile());
+    Resolution resolution = progress.await();
+    assertEquals(Arrays.asList("org:app:1.0", "org:help:1.0", "org:shared:1.0", "org:index:1.0"), names(resolution));
+    for (File file : resolution.getFiles()) {
+      assertTrue(file.getPath(), file.isFile());
+    }
+  }
+
+  private Resolution resolve(String coordinates) throws IOException {
+    return new DependencyResolver(downloader, 4).resolve(Collections.singletonList(Artifact.parse(coordinates)));
+  }
+
+  private static List<String> names(Resolution resolution) {
+    List<String> names = new ArrayList<String>();
+    for (Artifact artifact : resolution.getArtifacts()) {
+      names.add(artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion());
+    }
+    return names;
+  }
+}
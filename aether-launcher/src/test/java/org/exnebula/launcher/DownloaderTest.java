@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.exnebula.launcher.TestRepository.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class DownloaderTest {
+
+  private TestRepository first;
+  private TestRepository second;
+  private LocalRepository local;
+  private RepositoryServer server;
+  private Downloader downloader;
+
+  @Before
+  public void setUp() throws IOException {
+    first = new TestRepository(new File(getTargetDirectory(), "downloader/first"));
+    second = new TestRepository(new File(getTargetDirectory(), "downloader/second"));
+    File localRoot = new File(getTargetDirectory(), "downloader/local");
+    FileUtils.deleteDirectory(localRoot);
+    local = new LocalRepository(localRoot);
+  }
+
+  @After
+  public void tearDown() {
+    if (downloader != null)
+      downloader.shutdown();
+    if (server != null)
+      server.stop();
+  }
+
+  @Test
+  public void tryRepositoriesInOrder() throws IOException {
+    first.jar("org:a:1.0");
+    second.jar("org:a:1.0").jar("org:b:1.0");
+    downloader = new Downloader(local, Arrays.asList(
+      new RemoteRepository("first", first.getUrl()), new RemoteRepository("second", second.getUrl())), 4, 2);
+
+    File a = Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0")));
+    File b = Downloader.await(downloader.fetch(Artifact.parse("org:b:1.0")));
+    assertEquals(local.fileFor(Artifact.parse("org:a:1.0")), a);
+    assertTrue(a.isFile() && b.isFile());
+    assertEquals(2, downloader.getTransferCount());
+  }
+
+  @Test
+  public void reuseLocalFiles() throws IOException {
+    first.jar("org:a:1.0");
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("first", first.getUrl())), 4, 2);
+    Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0")));
+    downloader.shutdown();
+
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("first", first.getUrl())), 4, 2);
+    assertTrue(Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0"))).isFile());
+    assertEquals(0, downloader.getTransferCount());
+  }
+
+  @Test(expected = FileNotFoundException.class)
+  public void reportArtifactMissingEverywhere() throws IOException {
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("first", first.getUrl())), 4, 2);
+    Downloader.await(downloader.fetch(Artifact.parse("org:missing:1.0")));
+  }
+
+  @Test
+  public void downloadSamePathOnce() throws IOException {
+    first.jar("org:a:1.0");
+    server = new RepositoryServer(first.getRoot());
+    server.setDelayMillis(50);
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("http", server.getUrl())), 4, 4);
+    Future<File> request = downloader.fetch(Artifact.parse("org:a:1.0"));
+    assertSame(request, downloader.fetch(Artifact.parse("org:a:1.0")));
+    Downloader.await(request);
+    assertEquals(Arrays.asList("org/a/1.0/a-1.0.jar.sha1", "org/a/1.0/a-1.0.jar.sha256", "org/a/1.0/a-1.0.jar"),
+      server.getRequests());
+  }
+
+  @Test
+  public void limitConnectionsPerHost() throws IOException {
+    List<Artifact> artifacts = makeArtifacts(12);
+    server = new RepositoryServer(first.getRoot());
+    server.setDelayMillis(30);
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("http", server.getUrl())), 8, 3);
+    awaitAll(artifacts);
+    assertEquals(12, downloader.getTransferCount());
+    assertTrue("Used " + server.getMaximumActive() + " connections", server.getMaximumActive() <= 3);
+    assertTrue("Downloads ran in parallel", server.getMaximumActive() > 1);
+  }
+
+  @Test
+  public void downloadFromHttpWithNotFoundFallback() throws IOException {
+    second.jar("org:a:1.0");
+    server = new RepositoryServer(first.getRoot());
+    RepositoryServer other = new RepositoryServer(second.getRoot());
+    try {
+      downloader = new Downloader(local, Arrays.asList(
+        new RemoteRepository("first", server.getUrl()), new RemoteRepository("second", other.getUrl())), 4, 2);
+      File file = Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0")));
+      assertArrayEquals(FileUtils.readFileToByteArray(second.fileFor("org/a/1.0/a-1.0.jar")),
+        FileUtils.readFileToByteArray(file));
+    } finally {
+      other.stop();
+    }
+  }
+
+  @Test
+  public void recordChecksumComputedWhileDownloading() throws IOException {
+    first.jar("org:a:1.0").checksum("org/a/1.0/a-1.0.jar", "SHA-1");
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("first", first.getUrl())), 4, 2);
+    File file = Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0")));
+    assertEquals(Checksums.sha1(file), downloader.getSha1s().get(file));
+  }
+
+  @Test
+  public void rejectCorruptDownloadAndTryNextRepository() throws IOException {
+    first.jar("org:a:1.0").checksum("org/a/1.0/a-1.0.jar", "SHA-1");
+    FileUtils.writeStringToFile(first.fileFor("org/a/1.0/a-1.0.jar"), "corrupt");
+    second.jar("org:a:1.0").checksum("org/a/1.0/a-1.0.jar", "SHA-1");
+    downloader = new Downloader(local, Arrays.asList(
+      new RemoteRepository("first", first.getUrl()), new RemoteRepository("second", second.getUrl())), 4, 2);
+    File file = Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0")));
+    assertArrayEquals(FileUtils.readFileToByteArray(second.fileFor("org/a/1.0/a-1.0.jar")),
+      FileUtils.readFileToByteArray(file));
+  }
+
+  @Test
+  public void neverExposeCorruptDownload() throws IOException {
+    first.jar("org:a:1.0").checksum("org/a/1.0/a-1.0.jar", "SHA-256");
+    FileUtils.writeStringToFile(first.fileFor("org/a/1.0/a-1.0.jar"), "corrupt");
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("first", first.getUrl())), 4, 2);
+    try {
+      Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0")));
+      fail("Corrupt download was accepted");
+    } catch (IOException e) {
+      assertEquals("SHA-256 of org/a/1.0/a-1.0.jar from first does not match", e.getMessage());
+    }
+    assertArrayEquals(new String[0], local.fileFor("org/a/1.0").list());
+  }
+
+  @Test
+  public void resumeDroppedDownload() throws IOException {
+    first.largeJar("org:a:1.0", 100).checksum("org/a/1.0/a-1.0.jar", "SHA-1");
+    long length = first.fileFor("org/a/1.0/a-1.0.jar").length();
+    server = new RepositoryServer(first.getRoot());
+    server.setDropAfterBytes(length / 2);
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("http", server.getUrl())), 4, 2);
+    try {
+      Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0")));
+      fail("Download was not dropped");
+    } catch (IOException e) {
+      // Expected
+    }
+    downloader.shutdown();
+    File partial = local.fileFor("org/a/1.0/a-1.0.jar" + PartialDownload.PART);
+    assertEquals(length / 2, partial.length());
+    assertFalse(local.fileFor("org/a/1.0/a-1.0.jar").exists());
+
+    long sentBefore = server.getBytesSent();
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("http", server.getUrl())), 4, 2);
+    File file = Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0")));
+    assertArrayEquals(FileUtils.readFileToByteArray(first.fileFor("org/a/1.0/a-1.0.jar")),
+      FileUtils.readFileToByteArray(file));
+    assertEquals(Collections.singletonList("bytes=" + length / 2 + "-"), server.getRanges());
+    assertEquals(length - length / 2 + 40, server.getBytesSent() - sentBefore);
+    assertEquals(Checksums.sha1(file), downloader.getSha1s().get(file));
+    assertFalse(partial.exists());
+  }
+
+  @Test
+  public void restartDownloadWhenRemoteFileChanged() throws IOException {
+    first.largeJar("org:a:1.0", 100);
+    long length = first.fileFor("org/a/1.0/a-1.0.jar").length();
+    server = new RepositoryServer(first.getRoot());
+    server.setDropAfterBytes(length / 2);
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("http", server.getUrl())), 4, 2);
+    try {
+      Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0")));
+      fail("Download was not dropped");
+    } catch (IOException e) {
+      // Expected
+    }
+    downloader.shutdown();
+    first.jar("org:a:1.0").checksum("org/a/1.0/a-1.0.jar", "SHA-1");
+
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("http", server.getUrl())), 4, 2);
+    File file = Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0")));
+    assertArrayEquals(FileUtils.readFileToByteArray(first.fileFor("org/a/1.0/a-1.0.jar")),
+      FileUtils.readFileToByteArray(file));
+  }
+
+  @Test
+  public void restartResumedDownloadThatFailsChecksum() throws IOException {
+    first.jar("org:a:1.0").checksum("org/a/1.0/a-1.0.jar", "SHA-1");
+    File partial = local.fileFor("org/a/1.0/a-1.0.jar" + PartialDownload.PART);
+    partial.getParentFile().mkdirs();
+    FileUtils.writeStringToFile(partial, "damaged");
+    File source = first.fileFor("org/a/1.0/a-1.0.jar");
+    FileUtils.writeStringToFile(new File(partial.getPath() + PartialDownload.VALIDATOR),
+      "first\n" + source.length() + "-" + source.lastModified() + "\n");
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("first", first.getUrl())), 4, 2);
+    File file = Downloader.await(downloader.fetch(Artifact.parse("org:a:1.0")));
+    assertArrayEquals(FileUtils.readFileToByteArray(source), FileUtils.readFileToByteArray(file));
+  }
+
+  @Test
+  public void fetchMetadataFromEveryRepository() throws IOException {
+    first.versions("org:a", "1.0");
+    second.versions("org:a", "2.0");
+    downloader = new Downloader(local, Arrays.asList(
+      new RemoteRepository("first", first.getUrl()), new RemoteRepository("second", second.getUrl())), 4, 2);
+    List<File> files = downloader.fetchMetadata("org/a");
+    assertEquals(Arrays.asList(new File(local.fileFor("org/a"), "maven-metadata-first.xml"),
+      new File(local.fileFor("org/a"), "maven-metadata-second.xml")), files);
+  }
+
+  @Test
+  public void revalidateMetadataWithConditionalRequest() throws IOException {
+    first.versions("org:a", "1.0");
+    server = new RepositoryServer(first.getRoot());
+    fetchMetadataOver(server, 0);
+    downloader = fetchMetadataOver(server, 0);
+    assertEquals(2, server.getRequests().size());
+    assertEquals(1, server.getNotModifiedCount());
+    assertEquals(1, downloader.getMetadataHits());
+    assertEquals(0, downloader.getMetadataMisses());
+    assertEquals(0, downloader.getTransferCount());
+  }
+
+  @Test
+  public void useFreshMetadataWithoutRequest() throws IOException {
+    first.versions("org:a", "1.0");
+    server = new RepositoryServer(first.getRoot());
+    fetchMetadataOver(server, 3600);
+    downloader = fetchMetadataOver(server, 3600);
+    assertEquals(1, server.getRequests().size());
+    assertEquals(1, downloader.getMetadataHits());
+    assertEquals(Long.valueOf(1), downloader.getCounters().get("metadataCacheHits"));
+  }
+
+  @Test
+  public void fetchChangedMetadataAgain() throws IOException {
+    first.versions("org:a", "1.0");
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("first", first.getUrl())), 4, 2);
+    downloader.fetchMetadata("org/a");
+    first.versions("org:a", "1.0", "2.0");
+    File file = downloader.fetchMetadata("org/a").get(0);
+    assertTrue(FileUtils.readFileToString(file).contains("<version>2.0</version>"));
+    assertEquals(2, downloader.getMetadataMisses());
+  }
+
+  @Test
+  public void dropMetadataRemovedFromRepository() throws IOException {
+    first.versions("org:a", "1.0");
+    downloader = new Downloader(local, Collections.singletonList(new RemoteRepository("first", first.getUrl())), 4, 2);
+    File file = downloader.fetchMetadata("org/a").get(0);
+    FileUtils.forceDelete(first.fileFor("org/a/maven-metadata.xml"));
+    assertTrue(downloader.fetchMetadata("org/a").isEmpty());
+    assertFalse(file.exists());
+    assertFalse(new File(file.getPath() + CachedMetadata.CACHE).exists());
+  }
+
+  @Test
+  public void patchInstalledVersion() throws IOException {
+    Artifact target = publishRelease();
+    new DeltaGenerator(first.getRoot()).generate(target, Artifact.parse("org:a:1.0"));
+    downloader = installRelease();
+    File file = Downloader.await(downloader.fetch(target));
+    assertArrayEquals(FileUtils.readFileToByteArray(first.fileFor(target.getPath())),
+      FileUtils.readFileToByteArray(file));
+    assertEquals(1, downloader.getDeltaCount());
+    assertEquals(0, downloader.getTransferCount());
+  }
+
+  @Test
+  public void downloadWholeFileWithoutPatch() throws IOException {
+    Artifact target = publishRelease();
+    downloader = installRelease();
+    Downloader.await(downloader.fetch(target));
+    assertEquals(0, downloader.getDeltaCount());
+    assertEquals(1, downloader.getTransferCount());
+  }
+
+  @Test
+  public void downloadWholeFileWhenPatchedChecksumDiffers() throws IOException {
+    Artifact target = publishRelease();
+    new DeltaGenerator(first.getRoot()).generate(target, Artifact.parse("org:a:1.0"));
+    downloader = installRelease();
+    File installed = local.fileFor(Artifact.parse("org:a:1.0"));
+    byte[] content = FileUtils.readFileToByteArray(installed);
+    content[content.length / 2] ^= 1;
+    FileUtils.writeByteArrayToFile(installed, content);
+    File file = Downloader.await(downloader.fetch(target));
+    assertArrayEquals(FileUtils.readFileToByteArray(first.fileFor(target.getPath())),
+      FileUtils.readFileToByteArray(file));
+    assertEquals(0, downloader.getDeltaCount());
+    assertEquals(1, downloader.getTransferCount());
+  }
+
+  private Artifact publishRelease() throws IOException {
+    first.largeJar("org:a:1.0", 100).largeJar("org:a:1.1", 101);
+    return Artifact.parse("org:a:1.1");
+  }
+
+  /**
+   * Downloads version 1.0 and returns a new downloader that knows it is installed.
+   */
+  private Downloader fetchMetadataOver(RepositoryServer server, int ttlSeconds) throws IOException {
+    if (downloader != null)
+      downloader.shutdown();
+    downloader = new Downloader(local, Collections.singletonList(
+      new RemoteRepository("first", server.getUrl(), ttlSeconds)), 4, 2);
+    downloader.fetchMetadata("org/a");
+    return downloader;
+  }
+
+  private Downloader installRelease() throws IOException {
+    List<RemoteRepository> repositories = Collections.singletonList(new RemoteRepository("first", first.getUrl()));
+    Downloader installer = new Downloader(local, repositories, 4, 2);
+    try {
+      Downloader.await(installer.fetch(Artifact.parse("org:a:1.0")));
+    } finally {
+      installer.shutdown();
+    }
+    Downloader updater = new Downloader(local, repositories, 4, 2);
+    updater.setInstalled(Collections.singletonList(Artifact.parse("org:a:1.0")));
+    return updater;
+  }
+
+  private List<Artifact> makeArtifacts(int count) throws IOException {
+    List<Artifact> artifacts = new ArrayList<Artifact>();
+    for (int i = 0; i < count; i++) {
+      first.jar("org:a" + i + ":1.0");
+      artifacts.add(Artifact.parse("org:a" + i + ":1.0"));
+    }
+    return artifacts;
+  }
+
+  private void awaitAll(List<Artifact> artifacts) throws IOException {
+    List<Future<File>> requests = new ArrayList<Future<File>>();
+    for (Artifact artifact : artifacts) {
+      requests.add(downloader.fetch(artifact));
+    }
+    for (Future<File> request : requests) {
+      assertTrue(Downloader.await(request).isFile());
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.exnebula.launcher.TestRepository.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class GenerationsTest {
+
+  private TestRepository repository;
+  private LocalRepository local;
+  private Generations generations;
+
+  @Before
+  public void setUp() throws IOException {
+    repository = new TestRepository(new File(getTargetDirectory(), "generations"));
+    repository.jar("org:a:1.0").jar("org:a:1.1").jar("org:a:1.2");
+    local = new LocalRepository(repository.getRoot());
+    generations = new Generations(new File(repository.getRoot(), Generations.DIRECTORY));
+  }
+
+  @Test
+  public void writeBootConfigForGeneration() throws IOException {
+    Generation generation = create("org:a:1.0");
+    assertEquals(1, generation.getNumber());
+    assertTrue(generation.isComplete(local));
+    assertEquals("ep=a.Main\ncp=" + local.fileFor(Artifact.parse("org:a:1.0")).getAbsolutePath() + "\n",
+      FileUtils.readFileToString(generation.getBootConfigFile(), "UTF-8"));
+  }
+
+  @Test
+  public void writeBootOptionsAfterEntryPoint() throws IOException {
+    Artifact artifact = Artifact.parse("org:a:1.0");
+    Resolution resolution = new Resolution(Collections.singletonList(artifact),
+      Collections.singletonList(local.fileFor(artifact)));
+    Generation generation = generations.create("a.Main", Arrays.asList("fork=true", "jvm=-Xmx1g"),
+      Lockfile.fromResolution("digest", resolution), resolution.getFiles());
+    assertEquals("ep=a.Main\nfork=true\njvm=-Xmx1g\ncp=" + local.fileFor(artifact).getAbsolutePath() + "\n",
+      FileUtils.readFileToString(generation.getBootConfigFile(), "UTF-8"));
+  }
+
+  @Test
+  public void activateCurrentGeneration() throws IOException {
+    generations.makeCurrent(create("org:a:1.0"));
+    create("org:a:1.1");
+    assertEquals(1, generations.activate("digest", local).getNumber());
+  }
+
+  @Test
+  public void hashOnlyFilesChangedSinceLastCheck() throws IOException {
+    Artifact artifact = Artifact.parse("org:a:1.0");
+    Generation generation = create("org:a:1.0");
+    assertTrue(generation.findCorrupt(local).isEmpty());
+
+    File jar = local.fileFor(artifact);
+    long modified = jar.lastModified();
+    byte[] content = FileUtils.readFileToByteArray(jar);
+    content[10] ^= 1;
+    FileUtils.writeByteArrayToFile(jar, content);
+    jar.setLastModified(modified);
+    assertTrue(generation.findCorrupt(local).isEmpty());
+
+    jar.setLastModified(modified + 2000);
+    assertEquals(Collections.singletonList(artifact), generation.findCorrupt(local));
+  }
+
+  @Test
+  public void moveRepairedFilesIntoLocalRepositoryOnActivate() throws IOException {
+    Artifact artifact = Artifact.parse("org:a:1.0");
+    generations.makeCurrent(create("org:a:1.0"));
+    File jar = local.fileFor(artifact);
+    File repaired = generations.getRepairs().fileFor(artifact);
+    FileUtils.copyFile(jar, repaired);
+    byte[] good = FileUtils.readFileToByteArray(jar);
+    FileUtils.writeStringToFile(jar, "corrupt");
+
+    assertEquals(1, generations.activate("digest", local).getNumber());
+    assertArrayEquals(good, FileUtils.readFileToByteArray(jar));
+    assertFalse(generations.getRepairs().getRoot().exists());
+  }
+
+  @Test
+  public void keepRepairThatCannotReplaceItsFile() throws IOException {
+    Artifact artifact = Artifact.parse("org:a:1.0");
+    generations.makeCurrent(create("org:a:1.0"));
+    File jar = local.fileFor(artifact);
+    File repaired = generations.getRepairs().fileFor(artifact);
+    FileUtils.copyFile(jar, repaired);
+    byte[] good = FileUtils.readFileToByteArray(jar);
+    jar.delete();
+    // A directory that is not empty can be neither renamed over nor deleted
+    FileUtils.writeStringToFile(new File(jar, "busy"), "busy");
+
+    generations.activate("digest", local);
+    assertArrayEquals(good, FileUtils.readFileToByteArray(repaired));
+    assertEquals(Collections.singletonList(jar.getName()), Arrays.asList(jar.getParentFile().list()));
+
+    FileUtils.deleteDirectory(jar);
+    FileUtils.writeStringToFile(jar, "corrupt");
+    assertEquals(1, generations.activate("digest", local).getNumber());
+    assertArrayEquals(good, FileUtils.readFileToByteArray(jar));
+    assertFalse(generations.getRepairs().getRoot().exists());
+  }
+
+  @Test
+  public void promoteStagedGeneration() throws IOException {
+    generations.makeCurrent(create("org:a:1.0"));
+    generations.stageNext(create("org:a:1.1"));
+    assertEquals(2, generations.activate("digest", local).getNumber());
+    assertEquals(2, generations.getCurrent().getNumber());
+    assertNull(generations.getNext());
+  }
+
+  @Test
+  public void ignoreStagedGenerationWithMissingFiles() throws IOException {
+    generations.makeCurrent(create("org:a:1.0"));
+    generations.stageNext(create("org:a:1.1"));
+    local.fileFor(Artifact.parse("org:a:1.1")).delete();
+    assertEquals(1, generations.activate("digest", local).getNumber());
+    assertNull(generations.getNext());
+  }
+
+  @Test
+  public void ignorePartialGeneration() throws IOException {
+    generations.makeCurrent(create("org:a:1.0"));
+    File partial = new File(generations.getDirectory(), "2.partial");
+    partial.mkdirs();
+    FileUtils.writeStringToFile(new File(partial, Lockfile.LOCK_FILE), "config=digest\n");
+    assertEquals(Collections.singletonList(1), numbers(generations.list()));
+    assertEquals(1, generations.activate("digest", local).getNumber());
+    assertEquals(3, create("org:a:1.1").getNumber());
+    assertFalse(partial.exists());
+  }
+
+  @Test
+  public void fallBackToOlderGenerationWhenCurrentIsBroken() throws IOException {
+    create("org:a:1.0");
+    generations.makeCurrent(create("org:a:1.1"));
+    FileUtils.writeStringToFile(generations.getCurrent().getLockFile(), "damaged");
+    assertEquals(1, generations.activate("digest", local).getNumber());
+    assertEquals(1, generations.getCurrent().getNumber());
+  }
+
+  @Test
+  public void ignoreGenerationsOfAnotherConfig() throws IOException {
+    generations.makeCurrent(create("org:a:1.0"));
+    assertNull(generations.activate("other", local));
+  }
+
+  @Test
+  public void rollbackAndRejectCurrentGeneration() throws IOException {
+    create("org:a:1.0");
+    Generation second = create("org:a:1.1");
+    generations.makeCurrent(second);
+    Lockfile rejected = second.getLockfile();
+    assertEquals(1, generations.rollback().getNumber());
+    assertEquals(1, generations.activate("digest", local).getNumber());
+    assertTrue(generations.isRejected(rejected));
+    assertFalse(generations.isRejected(generations.getCurrent().getLockfile()));
+    assertNull(generations.rollback());
+  }
+
+  @Test
+  public void keepNewestGenerationsAndCurrent() throws IOException {
+    generations.makeCurrent(create("org:a:1.0"));
+    for (int i = 0; i < Generations.KEEP + 1; i++) {
+      create("org:a:1.1");
+    }
+    assertEquals(Arrays.asList(5, 4, 3, 1), numbers(generations.list()));
+  }
+
+  private Generation create(String coordinates) throws IOException {
+    Artifact artifact = Artifact.parse(coordinates);
+    Resolution resolution = new Resolution(Collections.singletonList(artifact),
+      Collections.singletonList(local.fileFor(artifact)));
+    return generations.create("a.Main", Lockfile.fromResolution("digest", resolution), resolution.getFiles());
+  }
+
+  private static List<Integer> numbers(List<Generation> list) {
+    Integer[] numbers = new Integer[list.size()];
+    for (int i = 0; i < numbers.length; i++) {
+      numbers[i] = list.get(i).getNumber();
+    }
+    return Arrays.asList(numbers);
+  }
+}
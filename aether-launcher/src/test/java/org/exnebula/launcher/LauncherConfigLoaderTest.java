@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class LauncherConfigLoaderTest {
+
+  private final File base = new File("/opt/vcc");
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Test
+  public void loadFullConfig() throws IOException {
+    LauncherConfig config = load("# VCC\n\nep=vcc.start.Main\nartifact=org.exnebula:vcc:1.0\n" +
+      "artifact=org.exnebula:vcc-data:1.0\nrepo.central=http://repo1.maven.org/maven2\nrepo.exnebula.ttl=600\n" +
+      "repo.exnebula=https://repo.exnebula.org/\nlocal=cache\nthreads=4\nconnections=2\nlock=false\nupdate.delay=0\n" +
+      "channel=beta\n");
+    assertEquals("vcc.start.Main", config.getEntryPoint());
+    assertEquals(Arrays.asList(Artifact.parse("org.exnebula:vcc:1.0"), Artifact.parse("org.exnebula:vcc-data:1.0")),
+      config.getArtifacts());
+    assertEquals("central", config.getRepositories().get(0).getId());
+    assertEquals("repo1.maven.org:80", config.getRepositories().get(0).getHost());
+    assertEquals("exnebula", config.getRepositories().get(1).getId());
+    assertEquals(0, config.getRepositories().get(0).getMetadataTtlSeconds());
+    assertEquals(600, config.getRepositories().get(1).getMetadataTtlSeconds());
+    assertEquals(new File(base, "cache"), config.getLocalRepository());
+    assertEquals(4, config.getThreads());
+    assertEquals(2, config.getConnectionsPerHost());
+    assertFalse(config.isUseLockfile());
+    assertEquals(0, config.getUpdateDelaySeconds());
+    assertEquals("beta", config.getChannel());
+  }
+
+  @Test
+  public void useDefaults() throws IOException {
+    LauncherConfig config = load("ep=a.Main\nartifact=org:a:1\nrepo.r=file:/tmp/repo\n");
+    assertEquals(new File(base, LauncherConfigLoader.DEFAULT_LOCAL_REPOSITORY), config.getLocalRepository());
+    assertEquals(Downloader.DEFAULT_THREADS, config.getThreads());
+    assertEquals(Downloader.DEFAULT_CONNECTIONS_PER_HOST, config.getConnectionsPerHost());
+    assertTrue(config.isUseLockfile());
+    assertEquals(LauncherConfigLoader.DEFAULT_UPDATE_DELAY_SECONDS, config.getUpdateDelaySeconds());
+    assertNull(config.getChannel());
+  }
+
+  @Test
+  public void separateDeferredArtifacts() throws IOException {
+    LauncherConfig config = load("ep=a.Main\nartifact.deferred=org:help:1\nartifact=org:a:1\nrepo.r=file:/tmp/repo\n");
+    assertEquals(Arrays.asList(Artifact.parse("org:a:1")), config.getArtifacts());
+    assertEquals(Arrays.asList(Artifact.parse("org:help:1")), config.getDeferredArtifacts());
+    assertEquals(Arrays.asList(Artifact.parse("org:a:1"), Artifact.parse("org:help:1")), config.getRoots());
+  }
+
+  @Test
+  public void passForkOptionsToBootConfig() throws IOException {
+    LauncherConfig config = load("ep=a.Main\nartifact=org:a:1\nrepo.r=file:/tmp/repo\nfork=true\njvm=-Xmx1g\n" +
+      "jvm=-XX:+UseG1GC\n");
+    assertTrue(config.isFork());
+    assertEquals(Arrays.asList("fork=true", "jvm=-Xmx1g", "jvm=-XX:+UseG1GC"), config.getBootOptions());
+    assertEquals(Collections.<String>emptyList(),
+      load("ep=a.Main\nartifact=org:a:1\nrepo.r=file:/tmp/repo\njvm=-Xmx1g\n").getBootOptions());
+  }
+
+  @Test
+  public void rejectJvmEntryThatIsNotAnOption() throws IOException {
+    expectLauncherException("Entry 'jvm' must be an option starting with '-'");
+    load("jvm=Xmx1g\n");
+  }
+
+  @Test
+  public void requireEntryPoint() throws IOException {
+    expectLauncherException("Must have exactly one 'ep' entry");
+    load("artifact=org:a:1\nrepo.r=file:/tmp/repo\n");
+  }
+
+  @Test
+  public void requireArtifact() throws IOException {
+    expectLauncherException("Must have at least one 'artifact' entry");
+    load("ep=a.Main\nrepo.r=file:/tmp/repo\n");
+  }
+
+  @Test
+  public void requireRepository() throws IOException {
+    expectLauncherException("Must have at least one 'repo.<id>' entry");
+    load("ep=a.Main\nartifact=org:a:1\n");
+  }
+
+  @Test
+  public void rejectBadArtifact() throws IOException {
+    expectLauncherException("Bad artifact coordinates 'org:a'");
+    load("ep=a.Main\nartifact=org:a\n");
+  }
+
+  @Test
+  public void rejectUnknownRepositoryScheme() throws IOException {
+    expectLauncherException("Unsupported repository URL 'ftp://host/repo'");
+    load("repo.r=ftp://host/repo\n");
+  }
+
+  @Test
+  public void rejectBadNumber() throws IOException {
+    expectLauncherException("Entry 'threads' must be a number of at least 1");
+    load("threads=0\n");
+  }
+
+  @Test
+  public void rejectBadFlag() throws IOException {
+    expectLauncherException("Entry 'lock' must be true or false");
+    load("lock=yes\n");
+  }
+
+  @Test
+  public void rejectNegativeDelay() throws IOException {
+    expectLauncherException("Entry 'update.delay' must be a number of at least 0");
+    load("update.delay=-1\n");
+  }
+
+  @Test
+  public void rejectTimeToLiveOfUnknownRepository() throws IOException {
+    expectLauncherException("Entry 'repo.other.ttl' names no repository");
+    load("ep=a.Main\nartifact=org:a:1\nrepo.r=file:/tmp/repo\nrepo.other.ttl=60\n");
+  }
+
+  @Test
+  public void rejectChannelOutsideChannelDirectory() throws IOException {
+    expectLauncherException("Entry 'channel' must be a name of letters, digits, '.', '_' or '-'");
+    load("channel=../stable\n");
+  }
+
+  @Test
+  public void rejectUnknownLine() throws IOException {
+    expectLauncherException("Illegal line 'hello'");
+    load("hello\n");
+  }
+
+  private void expectLauncherException(String message) {
+    expectedException.expect(LauncherException.class);
+    expectedException.expectMessage(message);
+  }
+
+  private LauncherConfig load(String content) throws IOException {
+    return new LauncherConfigLoader().load(new ByteArrayInputStream(content.getBytes("UTF-8")), base);
+  }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.apache.commons.io.FileUtils;
+import org.exnebula.bootstrap.BootErrorReporter;
+import org.exnebula.bootstrap.BootTimeline;
+import org.exnebula.bootstrap.LauncherClassLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sample.launcher.Hello;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.exnebula.launcher.TestRepository.*;
+import static org.junit.Assert.*;
+
+public class LauncherTest {
+
+  private TestRepository repository;
+  private RepositoryServer server;
+  private File directory;
+  private RecordingReporter reporter;
+
+  @Before
+  public void setUp() throws IOException {
+    repository = new TestRepository(new File(getTargetDirectory(), "launcher/remote"));
+    directory = new File(getTargetDirectory(), "launcher/install");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    server = new RepositoryServer(repository.getRoot());
+    reporter = new RecordingReporter();
+    System.clearProperty(Hello.PROPERTY);
+  }
+
+  @After
+  public void tearDown() {
+    server.stop();
+  }
+
+  @Test
+  public void downloadAndStartEntryPoint() throws IOException {
+    repository.jarWithClass("org.exnebula:hello:1.0", new File(getTargetDirectory(), "test-classes"),
+      "sample/launcher/Hello.class");
+    repository.pom("org.exnebula:hello:1.0", dependencies(dependency("org.exnebula:lib:1.0")));
+    repository.artifact("org.exnebula:lib:1.0");
+    File config = writeConfig("ep=" + Hello.class.getName() + "\nartifact=org.exnebula:hello:1.0\nrepo.test=" +
+      server.getUrl() + "\n");
+
+    new Launcher(reporter).start(config, new String[]{"one", "two"});
+    reporter.throwIfReported();
+    assertEquals("one two from " + LauncherClassLoader.class.getName(), System.getProperty(Hello.PROPERTY));
+    assertTrue(new File(directory, "repository/org/exnebula/lib/1.0/lib-1.0.jar").isFile());
+  }
+
+  @Test
+  public void secondStartFromLockfileNeedsNoNetwork() throws Exception {
+    publishHelloSnapshot(3);
+    File config = writeConfig(helloSnapshotConfig() + "update.delay=3600\n");
+    new Launcher(reporter).start(config, new String[]{"first"});
+    reporter.throwIfReported();
+    assertTrue(new File(directory, "generations/1/" + Lockfile.LOCK_FILE).isFile());
+    server.stop();
+
+    Launcher launcher = new Launcher(reporter);
+    launcher.start(config, new String[]{"second"});
+    reporter.throwIfReported();
+    assertTrue(System.getProperty(Hello.PROPERTY).startsWith("second"));
+    assertNotNull(launcher.getUpdateThread());
+    launcher.getUpdateThread().interrupt();
+  }
+
+  @Test
+  public void updateCheckStagesNewSnapshotForNextStart() throws Exception {
+    publishHelloSnapshot(3);
+    File config = writeConfig(helloSnapshotConfig() + "update.delay=0\n");
+    new Launcher(reporter).start(config, new String[]{"first"});
+    reporter.throwIfReported();
+    publishHelloSnapshot(4);
+
+    Launcher launcher = new Launcher(reporter);
+    launcher.start(config, new String[]{"second"});
+    reporter.throwIfReported();
+    launcher.getUpdateThread().join(10000);
+    Generations generations = new Generations(new File(directory, Generations.DIRECTORY));
+    assertEquals(1, generations.getCurrent().getNumber());
+    Lockfile staged = generations.getNext().getLockfile();
+    assertEquals("1.0-20130512.101010-4", staged.getArtifacts().get(0).getVersion());
+    assertTrue(new File(directory, "repository/" + staged.getArtifacts().get(0).getPath()).isFile());
+
+    server.stop();
+    launcher = new Launcher(reporter);
+    launcher.start(config, new String[]{"third"});
+    reporter.throwIfReported();
+    launcher.getUpdateThread().interrupt();
+    assertEquals(2, generations.getCurrent().getNumber());
+    assertNull(generations.getNext());
+  }
+
+  @Test
+  public void updateCheckStagesRepairOfCorruptFileForNextStart() throws Exception {
+    publishHelloSnapshot(3);
+    File config = writeConfig(helloSnapshotConfig() + "update.delay=0\n");
+    new Launcher(reporter).start(config, new String[]{"first"});
+    reporter.throwIfReported();
+    Generations generations = new Generations(new File(directory, Generations.DIRECTORY));
+    Artifact hello = generations.getCurrent().getLockfile().getArtifacts().get(0);
+    File jar = new File(directory, "repository/" + hello.getPath());
+    byte[] good = FileUtils.readFileToByteArray(jar);
+    byte[] corrupt = good.clone();
+    corrupt[10] ^= 1;
+    FileUtils.writeByteArrayToFile(jar, corrupt);
+
+    Launcher launcher = new Launcher(reporter);
+    launcher.start(config, new String[]{"second"});
+    reporter.throwIfReported();
+    launcher.getUpdateThread().join(10000);
+    assertArrayEquals(corrupt, FileUtils.readFileToByteArray(jar));
+    assertArrayEquals(good, FileUtils.readFileToByteArray(generations.getRepairs().fileFor(hello)));
+    assertNull("Corrupt file locked by a new generation", generations.getNext());
+
+    launcher = new Launcher(reporter);
+    launcher.start(config, new String[]{"third"});
+    reporter.throwIfReported();
+    launcher.getUpdateThread().interrupt();
+    assertArrayEquals(good, FileUtils.readFileToByteArray(jar));
+  }
+
+  @Test
+  public void updateCheckPatchesInstalledSnapshot() throws Exception {
+    publishHelloSnapshot(3);
+    File config = writeConfig(helloSnapshotConfig() + "update.delay=0\n");
+    new Launcher(reporter).start(config, new String[]{"first"});
+    reporter.throwIfReported();
+    publishHelloSnapshot(4);
+    Artifact build4 = Artifact.parse("org.exnebula:hello:1.0-20130512.101010-4");
+    new DeltaGenerator(repository.getRoot()).generate(build4, build4.withVersion("1.0-20130512.101010-3"));
+
+    Launcher launcher = new Launcher(reporter);
+    launcher.start(config, new String[]{"second"});
+    launcher.getUpdateThread().join(10000);
+    assertTrue(server.getRequests().contains(Delta.pathFor(build4, build4.withVersion("1.0-20130512.101010-3"))));
+    assertFalse(server.getRequests().contains(build4.getPath()));
+    assertEquals(Checksums.sha1(repository.fileFor(build4.getPath())),
+      Checksums.sha1(new File(directory, "repository/" + build4.getPath())));
+  }
+
+  @Test
+  public void updateCheckRevalidatesUnchangedMetadata() throws Exception {
+    publishHelloSnapshot(3);
+    File config = writeConfig(helloSnapshotConfig() + "update.delay=0\n");
+    new Launcher(reporter).start(config, new String[]{"first"});
+    reporter.throwIfReported();
+
+    Launcher launcher = new Launcher(reporter);
+    launcher.start(config, new String[]{"second"});
+    launcher.getUpdateThread().join(10000);
+    assertTrue(server.getNotModifiedCount() > 0);
+    String timeline = FileUtils.readFileToString(new File(directory, "generations/" + BootTimeline.TIMELINE_FILE));
+    assertTrue(timeline, timeline.contains("\"" + UpdateCheck.PHASE + "\""));
+    assertTrue(timeline, timeline.contains("\"updated\":\"false\""));
+    assertTrue(timeline, timeline.contains("\"metadataCacheMisses\":0"));
+    assertFalse(timeline, timeline.contains("\"metadataCacheHits\":0"));
+  }
+
+  @Test
+  public void startFromChannelManifestWithoutPoms() throws Exception {
+    publishHelloSnapshot(3);
+    publishChannel();
+    File config = writeConfig(helloSnapshotConfig() + "channel=stable\nupdate.delay=0\n");
+    new Launcher(reporter).start(config, new String[]{"first"});
+    reporter.throwIfReported();
+    assertTrue(System.getProperty(Hello.PROPERTY).startsWith("first"));
+    for (String request : server.getRequests()) {
+      assertFalse(request, request.endsWith(".pom") || request.endsWith("maven-metadata.xml"));
+    }
+  }
+
+  @Test
+  public void updateCheckFromChannelIsOneRequest() throws Exception {
+    publishHelloSnapshot(3);
+    publishChannel();
+    File config = writeConfig(helloSnapshotConfig() + "channel=stable\nupdate.delay=0\n");
+    new Launcher(reporter).start(config, new String[]{"first"});
+    reporter.throwIfReported();
+
+    int requests = server.getRequests().size();
+    Launcher launcher = new Launcher(reporter);
+    launcher.start(config, new String[]{"second"});
+    launcher.getUpdateThread().join(10000);
+    assertEquals(Collections.singletonList(ChannelManifest.pathFor("stable")),
+      server.getRequests().subList(requests, server.getRequests().size()));
+    assertEquals(1, server.getNotModifiedCount());
+
+    publishHelloSnapshot(4);
+    publishChannel();
+    launcher = new Launcher(reporter);
+    launcher.start(config, new String[]{"third"});
+    launcher.getUpdateThread().join(10000);
+    Lockfile staged = new Generations(new File(directory, Generations.DIRECTORY)).getNext().getLockfile();
+    assertEquals("1.0-20130512.101010-4", staged.getArtifacts().get(0).getVersion());
+  }
+
+  @Test
+  public void startBeforeDeferredArtifactsAndCreateGenerationAfter() throws Exception {
+    publishHelloSnapshot(3);
+    repository.artifact("org.exnebula:help:1.0", dependency("org.exnebula:index:1.0"));
+    repository.artifact("org.exnebula:index:1.0");
+    File config = writeConfig(helloSnapshotConfig() + "artifact.deferred=org.exnebula:help:1.0\n");
+    Launcher launcher = new Launcher(reporter);
+    launcher.start(config, new String[]{"first"});
+    reporter.throwIfReported();
+    assertTrue(System.getProperty(Hello.PROPERTY).startsWith("first"));
+    if (launcher.getDeferredThread() != null)
+      launcher.getDeferredThread().join(10000);
+
+    Lockfile lockfile = new Generations(new File(directory, Generations.DIRECTORY)).getCurrent().getLockfile();
+    assertEquals(3, lockfile.getArtifacts().size());
+    assertTrue(new File(directory, "repository/org/exnebula/index/1.0/index-1.0.jar").isFile());
+  }
+
+  @Test
+  public void changedConfigResolvesAgain() throws Exception {
+    publishHelloSnapshot(3);
+    File config = writeConfig(helloSnapshotConfig());
+    new Launcher(reporter).start(config, new String[]{"first"});
+    int requests = server.getRequests().size();
+
+    writeConfig(helloSnapshotConfig() + "threads=2\n");
+    Launcher launcher = new Launcher(reporter);
+    launcher.start(config, new String[]{"second"});
+    reporter.throwIfReported();
+    assertNull(launcher.getUpdateThread());
+    assertTrue(server.getRequests().size() > requests);
+  }
+
+  @Test
+  public void alwaysResolveWithoutLockfile() throws Exception {
+    publishHelloSnapshot(3);
+    File config = writeConfig(helloSnapshotConfig() + "lock=false\n");
+    new Launcher(reporter).start(config, new String[]{"first"});
+    reporter.throwIfReported();
+    assertFalse(new File(directory, Generations.DIRECTORY).exists());
+  }
+
+  @Test
+  public void reportMissingConfig() {
+    new Launcher(reporter).start(null, new String[0]);
+    assertEquals("Read launcher config", reporter.step);
+    assertEquals("Could not locate launcher.cfg", reporter.exception.getMessage());
+  }
+
+  @Test
+  public void reportMissingArtifact() throws IOException {
+    File config = writeConfig("ep=a.Main\nartifact=org.exnebula:missing:1.0\nrepo.test=" + server.getUrl() + "\n");
+    new Launcher(reporter).start(config, new String[0]);
+    assertEquals("Resolve dependencies", reporter.step);
+  }
+
+  private void publishHelloSnapshot(int buildNumber) throws IOException {
+    repository.snapshot("org.exnebula:hello:1.0-SNAPSHOT", "20130512.101010", buildNumber);
+    String coordinates = "org.exnebula:hello:1.0-20130512.101010-" + buildNumber;
+    repository.jarWithClass(coordinates, new File(getTargetDirectory(), "test-classes"), "sample/launcher/Hello.class");
+    repository.pom(coordinates);
+  }
+
+  /**
+   * Resolves the hello snapshot straight from the repository directory into the stable channel.
+   */
+  private void publishChannel() throws IOException {
+    File publishConfig = new File(directory, "publish/publish.cfg");
+    FileUtils.writeStringToFile(publishConfig, "ep=" + Hello.class.getName() +
+      "\nartifact=org.exnebula:hello:1.0-SNAPSHOT\nrepo.origin=" + repository.getUrl() + "\n");
+    new ChannelManifestGenerator(repository.getRoot()).generate("stable", LauncherConfigLoader.load(publishConfig));
+  }
+
+  private String helloSnapshotConfig() {
+    return "ep=" + Hello.class.getName() + "\nartifact=org.exnebula:hello:1.0-SNAPSHOT\nrepo.test=" + server.getUrl() +
+      "\n";
+  }
+
+  private File writeConfig(String content) throws IOException {
+    File config = new File(directory, Launcher.CONFIG_FILE);
+    FileUtils.writeStringToFile(config, content, "UTF-8");
+    return config;
+  }
+
+  private static class RecordingReporter implements BootErrorReporter {
+    private String step;
+    private Exception exception;
+
+    public void reportFailure(String contextMessage, Exception exception) {
+      this.step = contextMessage;
+      this.exception = exception;
+    }
+
+    void throwIfReported() {
+      if (exception != null)
+        throw new AssertionError(step + ": " + exception);
+    }
+  }
+}
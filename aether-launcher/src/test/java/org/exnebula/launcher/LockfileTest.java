@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.exnebula.launcher.TestRepository.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class LockfileTest {
+
+  private TestRepository repository;
+  private LocalRepository local;
+  private File lockFile;
+  private Lockfile lockfile;
+
+  @Before
+  public void setUp() throws IOException {
+    repository = new TestRepository(new File(getTargetDirectory(), "lockfile"));
+    repository.jar("org:a:1.0").jar("org:b:jar:tests:2.0");
+    local = new LocalRepository(repository.getRoot());
+    Artifact a = Artifact.parse("org:a:1.0");
+    Artifact b = Artifact.parse("org:b:jar:tests:2.0");
+    lockfile = Lockfile.fromResolution("digest",
+      new Resolution(Arrays.asList(a, b), Arrays.asList(local.fileFor(a), local.fileFor(b))));
+    lockFile = new File(repository.getRoot(), Lockfile.LOCK_FILE);
+  }
+
+  @Test
+  public void writeAndReadBack() throws IOException {
+    lockfile.write(lockFile);
+    Lockfile read = Lockfile.read(lockFile);
+    assertEquals("digest", read.getConfigDigest());
+    assertEquals(Arrays.asList(Artifact.parse("org:a:1.0"), Artifact.parse("org:b:jar:tests:2.0")),
+      read.getArtifacts());
+    assertEquals(Checksums.sha1(local.fileFor(Artifact.parse("org:a:1.0"))), read.getEntries().get(0).getSha1());
+    assertTrue(read.hasSameArtifacts(lockfile));
+  }
+
+  @Test
+  public void ignoreMissingOrBrokenLockfile() throws IOException {
+    assertNull(Lockfile.read(lockFile));
+    FileUtils.writeStringToFile(lockFile, "config=x\nartifact=org:a\n");
+    assertNull(Lockfile.read(lockFile));
+  }
+
+  @Test
+  public void findLockedFilesWithSameSize() throws IOException {
+    assertEquals(2, lockfile.findFiles(local).size());
+    FileUtils.writeStringToFile(local.fileFor(Artifact.parse("org:a:1.0")), "shorter");
+    assertNull(lockfile.findFiles(local));
+  }
+
+  @Test
+  public void findCorruptFiles() throws IOException {
+    assertTrue(lockfile.findCorrupt(local).isEmpty());
+    File file = local.fileFor(Artifact.parse("org:b:jar:tests:2.0"));
+    byte[] content = FileUtils.readFileToByteArray(file);
+    content[content.length / 2] ^= 1;
+    FileUtils.writeByteArrayToFile(file, content);
+    assertNotNull(lockfile.findFiles(local));
+    assertEquals(Collections.singletonList(Artifact.parse("org:b:jar:tests:2.0")), lockfile.findCorrupt(local));
+  }
+
+  @Test
+  public void differentVersionsAreNotTheSame() {
+    Lockfile other = new Lockfile("digest", Collections.singletonList(lockfile.getEntries().get(0)));
+    assertFalse(other.hasSameArtifacts(lockfile));
+  }
+}
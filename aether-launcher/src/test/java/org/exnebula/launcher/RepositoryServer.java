@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves a directory over HTTP on a free local port, optionally slowly, and keeps track of the requests. Files have
+ * an ETag, answer {@code If-None-Match} with {@code 304 Not Modified} and can be requested from an offset with
+ * {@code Range}. The server can drop the connection once in the middle of each file.
+ */
+public class RepositoryServer {
+  private final File root;
+  private final HttpServer server;
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicInteger maximumActive = new AtomicInteger();
+  private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicInteger notModified = new AtomicInteger();
+  private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+  private final Set<String> dropped = Collections.synchronizedSet(new HashSet<String>());
+  private volatile long delayMillis = 0;
+  private volatile long dropAfterBytes = -1;
+
+  public RepositoryServer(File root) throws IOException {
+    this.root = root;
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        serve(exchange);
+      }
+    });
+    server.start();
+  }
+
+  public String getUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+  public void setDelayMillis(long delayMillis) {
+    this.delayMillis = delayMillis;
+  }
+
+  /**
+   * Makes the first response for each file stop after this many bytes of content, as if the connection dropped.
+   */
+  public void setDropAfterBytes(long dropAfterBytes) {
+    this.dropAfterBytes = dropAfterBytes;
+  }
+
+  /**
+   * @return Bytes of file content sent so far.
+   */
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  /**
+   * @return Number of {@code 304 Not Modified} responses sent so far.
+   */
+  public int getNotModifiedCount() {
+    return notModified.get();
+  }
+
+  /**
+   * @return {@code Range} header of each request for a file that had one.
+   */
+  public List<String> getRanges() {
+    synchronized (ranges) {
+      return new ArrayList<String>(ranges);
+    }
+  }
+
+  public int getMaximumActive() {
+    return maximumActive.get();
+  }
+
+  public List<String> getRequests() {
+    synchronized (requests) {
+      return new ArrayList<String>(requests);
+    }
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+
+  /**
+   * A request counts as active until its response starts, since a client may send the next one as soon as it has
+   * read a response.
+   */
+  private void serve(HttpExchange exchange) throws IOException {
+    int now = active.incrementAndGet();
+    int maximum;
+    while ((maximum = maximumActive.get()) < now && !maximumActive.compareAndSet(maximum, now)) {
+      // Retry
+    }
+    boolean counted = true;
+    try {
+      String path = exchange.getRequestURI().getPath().substring(1);
+      requests.add(path);
+      if (delayMillis > 0)
+        Thread.sleep(delayMillis);
+      File file = new File(root, path);
+      active.decrementAndGet();
+      counted = false;
+      if (!file.isFile()) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+      String etag = "\"" + file.length() + "-" + file.lastModified() + "\"";
+      exchange.getResponseHeaders().set("ETag", etag);
+      if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        notModified.incrementAndGet();
+        exchange.sendResponseHeaders(304, -1);
+        return;
+      }
+      long offset = requestedOffset(exchange, etag, file.length());
+      if (offset > 0) {
+        ranges.add(exchange.getRequestHeaders().getFirst("Range"));
+        exchange.getResponseHeaders().set("Content-Range",
+          "bytes " + offset + "-" + (file.length() - 1) + "/" + file.length());
+        exchange.sendResponseHeaders(206, file.length() - offset);
+      } else {
+        exchange.sendResponseHeaders(200, file.length());
+      }
+      long limit = dropAfterBytes >= 0 && dropped.add(path) ? dropAfterBytes : Long.MAX_VALUE;
+      OutputStream output = exchange.getResponseBody();
+      RandomAccessFile input = new RandomAccessFile(file, "r");
+      try {
+        input.seek(offset);
+        byte[] buffer = new byte[4096];
+        int count;
+        while (limit > 0 && (count = input.read(buffer, 0, (int) Math.min(buffer.length, limit))) > 0) {
+          output.write(buffer, 0, count);
+          bytesSent.addAndGet(count);
+          limit -= count;
+        }
+        output.flush();
+      } finally {
+        input.close();
+        if (limit > 0)
+          output.close();
+      }
+    } catch (InterruptedException e) {
+      exchange.sendResponseHeaders(500, -1);
+    } finally {
+      if (counted)
+        active.decrementAndGet();
+      exchange.close();
+    }
+  }
+
+  /**
+   * @return Offset of a {@code Range: bytes=<offset>-} request whose {@code If-Range} still matches, 0 otherwise.
+   */
+  private static long requestedOffset(HttpExchange exchange, String etag, long length) {
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+    if (range == null || !range.startsWith("bytes=") || !range.endsWith("-"))
+      return 0;
+    if (ifRange != null && !ifRange.equals(etag))
+      return 0;
+    long offset = Long.parseLong(range.substring(6, range.length() - 1));
+    return offset < length ? offset : 0;
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes POMs, jars and metadata in the Maven layout for tests.
+ */
+public class TestRepository {
+  private final File root;
+
+  public TestRepository(File root) throws IOException {
+    this.root = root;
+    FileUtils.deleteDirectory(root);
+    root.mkdirs();
+  }
+
+  public static File getTargetDirectory() {
+    File base = new File("aether-launcher");
+    if (base.exists() && base.isDirectory()) {
+      return new File(base, "target");
+    }
+    return new File("target");
+  }
+
+  public File getRoot() {
+    return root;
+  }
+
+  public String getUrl() {
+    return root.toURI().toString();
+  }
+
+  /**
+   * Writes a POM for {@code group:artifact:version} with extra elements inside {@code <project>}.
+   */
+  public TestRepository pom(String coordinates, String... elements) throws IOException {
+    Artifact artifact = Artifact.parse(coordinates).getPomArtifact();
+    StringBuilder pom = new StringBuilder("<?xml version=\"1.0\"?>\n");
+    pom.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\"><modelVersion>4.0.0</modelVersion>");
+    pom.append("<groupId>").append(artifact.getGroupId()).append("</groupId>");
+    pom.append("<artifactId>").append(artifact.getArtifactId()).append("</artifactId>");
+    pom.append("<version>").append(artifact.getBaseVersion()).append("</version>");
+    for (String element : elements) {
+      pom.append(element);
+    }
+    pom.append("</project>\n");
+    return write(artifact.getPath(), pom.toString());
+  }
+
+  public TestRepository rawPom(String coordinates, String content) throws IOException {
+    return write(Artifact.parse(coordinates).getPomArtifact().getPath(), content);
+  }
+
+  public TestRepository jar(String coordinates) throws IOException {
+    Artifact artifact = Artifact.parse(coordinates);
+    File file = fileFor(artifact.getPath());
+    JarOutputStream jar = new JarOutputStream(new FileOutputStream(file));
+    jar.putNextEntry(new ZipEntry(artifact.getArtifactId() + ".txt"));
+    jar.write(artifact.toString().getBytes("UTF-8"));
+    jar.close();
+    return this;
+  }
+
+  public TestRepository jarWithClass(String coordinates, File classesDirectory, String classFile) throws IOException {
+    File file = fileFor(Artifact.parse(coordinates).getPath());
+    JarOutputStream jar = new JarOutputStream(new FileOutputStream(file));
+    jar.putNextEntry(new ZipEntry(classFile));
+    InputStream input = new FileInputStream(new File(classesDirectory, classFile));
+    try {
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = input.read(buffer)) > 0) {
+        jar.write(buffer, 0, count);
+      }
+    } finally {
+      input.close();
+    }
+    jar.close();
+    return this;
+  }
+
+  /**
+   * Jar with a {@code version.txt} entry followed by {@code entryCount} entries whose content depends only on their
+   * index, like two releases that differ in a single file.
+   */
+  public TestRepository largeJar(String coordinates, int entryCount) throws IOException {
+    Artifact artifact = Artifact.parse(coordinates);
+    JarOutputStream jar = new JarOutputStream(new FileOutputStream(fileFor(artifact.getPath())));
+    jar.putNextEntry(new ZipEntry("version.txt"));
+    jar.write(artifact.getVersion().getBytes("UTF-8"));
+    Random random = new Random(1);
+    byte[] content = new byte[2000];
+    for (int i = 0; i < entryCount; i++) {
+      ZipEntry entry = new ZipEntry("data/entry" + i + ".bin");
+      entry.setTime(0);
+      jar.putNextEntry(entry);
+      random.nextBytes(content);
+      jar.write(content);
+    }
+    jar.close();
+    return this;
+  }
+
+  /**
+   * Jar and POM with the given dependencies.
+   */
+  public TestRepository artifact(String coordinates, String... dependencies) throws IOException {
+    jar(coordinates);
+    return pom(coordinates, dependencies(dependencies));
+  }
+
+  public TestRepository versions(String groupAndArtifact, String... versions) throws IOException {
+    StringBuilder metadata = new StringBuilder("<metadata><versioning><versions>");
+    for (String version : versions) {
+      metadata.append("<version>").append(version).append("</version>");
+    }
+    metadata.append("</versions></versioning></metadata>");
+    String[] parts = groupAndArtifact.split(":");
+    return write(parts[0].replace('.', '/') + "/" + parts[1] + "/maven-metadata.xml", metadata.toString());
+  }
+
+  public TestRepository snapshot(String coordinates, String timestamp, int buildNumber) throws IOException {
+    Artifact artifact = Artifact.parse(coordinates);
+    return write(artifact.getDirectoryPath() + "/maven-metadata.xml",
+      "<metadata><versioning><snapshot><timestamp>" + timestamp + "</timestamp><buildNumber>" + buildNumber +
+        "</buildNumber></snapshot></versioning></metadata>");
+  }
+
+  /**
+   * Publishes the checksum of a file, like {@code .sha1} for {@code SHA-1}.
+   */
+  public TestRepository checksum(String path, String algorithm) throws IOException {
+    MessageDigest digest = Checksums.newDigest(algorithm);
+    digest.update(FileUtils.readFileToByteArray(fileFor(path)));
+    return write(path + "." + algorithm.replace("-", "").toLowerCase(), Checksums.toHex(digest.digest()));
+  }
+
+  public static String dependencies(String... dependencies) {
+    StringBuilder xml = new StringBuilder("<dependencies>");
+    for (String dependency : dependencies) {
+      xml.append(dependency);
+    }
+    return xml.append("</dependencies>").toString();
+  }
+
+  /**
+   * @param coordinates {@code group:artifact:version}, the version may be empty, followed by extra elements such as
+   *                    {@code <scope>test</scope>}
+   */
+  public static String dependency(String coordinates, String... elements) {
+    String[] parts = coordinates.split(":", -1);
+    StringBuilder xml = new StringBuilder("<dependency>");
+    xml.append("<groupId>").append(parts[0]).append("</groupId>");
+    xml.append("<artifactId>").append(parts[1]).append("</artifactId>");
+    if (parts.length > 2 && parts[2].length() > 0)
+      xml.append("<version>").append(parts[2]).append("</version>");
+    for (String element : elements) {
+      xml.append(element);
+    }
+    return xml.append("</dependency>").toString();
+  }
+
+  public static String exclusion(String groupAndArtifact) {
+    String[] parts = groupAndArtifact.split(":");
+    return "<exclusions><exclusion><groupId>" + parts[0] + "</groupId><artifactId>" + parts[1] +
+      "</artifactId></exclusion></exclusions>";
+  }
+
+  public static String parent(String coordinates) {
+    String[] parts = coordinates.split(":");
+    return "<parent><groupId>" + parts[0] + "</groupId><artifactId>" + parts[1] + "</artifactId><version>" +
+      parts[2] + "</version></parent>";
+  }
+
+  public static String managed(String... dependencies) {
+    return "<dependencyManagement>" + dependencies(dependencies) + "</dependencyManagement>";
+  }
+
+  public File fileFor(String path) {
+    File file = new File(root, path);
+    file.getParentFile().mkdirs();
+    return file;
+  }
+
+  private TestRepository write(String path, String content) throws IOException {
+    FileUtils.writeStringToFile(fileFor(path), content, "UTF-8");
+    return this;
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class VersionTest {
+
+  @Test
+  public void compareNumbersNumerically() {
+    assertOrdered("1.2", "1.10");
+    assertOrdered("1.9.9", "2");
+    assertEquals(0, new Version("1.0.0").compareTo(new Version("1")));
+    assertEquals(new Version("1.0"), new Version("1"));
+    assertEquals(new Version("1.0").hashCode(), new Version("1").hashCode());
+  }
+
+  @Test
+  public void rankQualifiersBeforeRelease() {
+    assertOrdered("1.0-alpha-1", "1.0-beta");
+    assertOrdered("1.0-beta", "1.0-m2");
+    assertOrdered("1.0-m2", "1.0-rc1");
+    assertOrdered("1.0-rc1", "1.0-SNAPSHOT");
+    assertOrdered("1.0-SNAPSHOT", "1.0");
+    assertOrdered("1.0", "1.0-sp1");
+    assertOrdered("1.0", "1.0.1");
+    assertEquals(0, new Version("1.0-ga").compareTo(new Version("1.0")));
+  }
+
+  @Test
+  public void compareTimestampedSnapshots() {
+    assertOrdered("1.0-20130101.101010-2", "1.0-20130101.101010-10");
+  }
+
+  @Test
+  public void matchRanges() {
+    VersionRange range = VersionRange.parse("[1.0,2.0)");
+    assertTrue(range.contains(new Version("1.0")));
+    assertTrue(range.contains(new Version("1.9.9")));
+    assertFalse(range.contains(new Version("2.0")));
+    assertFalse(range.contains(new Version("0.9")));
+    assertTrue(VersionRange.parse("(,1.0]").contains(new Version("0.1")));
+    assertFalse(VersionRange.parse("(1.0,)").contains(new Version("1.0")));
+    assertTrue(VersionRange.parse("[1.2]").contains(new Version("1.2.0")));
+    assertTrue(VersionRange.parse("(,1.0),(1.0,)").contains(new Version("1.1")));
+    assertFalse(VersionRange.parse("(,1.0),(1.0,)").contains(new Version("1.0")));
+  }
+
+  @Test
+  public void selectHighestVersionInRange() {
+    assertEquals("1.10", VersionRange.parse("[1.0,2.0)").selectHighest(Arrays.asList("1.2", "2.0", "1.10", "0.9")));
+    assertNull(VersionRange.parse("[3,)").selectHighest(Arrays.asList("1.2", "2.0")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectBadRange() {
+    VersionRange.parse("[1.0,2.0");
+  }
+
+  @Test
+  public void parseArtifactCoordinates() {
+    assertEquals("org/exnebula/vcc/1.0/vcc-1.0.jar", Artifact.parse("org.exnebula:vcc:1.0").getPath());
+    assertEquals("org/x/1.0/x-1.0.pom", Artifact.parse("org:x:pom:1.0").getPath());
+    assertEquals("org/x/1.0/x-1.0-tests.jar", Artifact.parse("org:x:jar:tests:1.0").getPath());
+    assertEquals("org:x:jar:tests", Artifact.parse("org:x:jar:tests:1.0").getKey());
+  }
+
+  @Test
+  public void placeTimestampedSnapshotInBaseVersionDirectory() {
+    Artifact artifact = Artifact.parse("org:x:1.0-20130101.101010-3");
+    assertTrue(artifact.isSnapshot());
+    assertEquals("1.0-SNAPSHOT", artifact.getBaseVersion());
+    assertEquals("org/x/1.0-SNAPSHOT/x-1.0-20130101.101010-3.jar", artifact.getPath());
+    assertFalse(Artifact.parse("org:x:1.0-2").isSnapshot());
+  }
+
+  private static void assertOrdered(String lower, String higher) {
+    assertTrue(lower + " < " + higher, new Version(lower).compareTo(new Version(higher)) < 0);
+    assertTrue(higher + " > " + lower, new Version(higher).compareTo(new Version(lower)) > 0);
+  }
+}
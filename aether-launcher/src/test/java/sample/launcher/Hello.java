@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package sample.launcher;
+
+public class Hello {
+  public static final String PROPERTY = "sample.launcher.hello";
+
+  public static void main(String[] args) {
+    StringBuilder joined = new StringBuilder();
+    for (String arg : args) {
+      joined.append(arg).append(' ');
+    }
+    System.setProperty(PROPERTY, joined.toString().trim() + " from " + Hello.class.getClassLoader().getClass().getName());
+  }
+}
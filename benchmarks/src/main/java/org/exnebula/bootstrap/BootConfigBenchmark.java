@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup steps that only depend on the size of boot.cfg: parsing it, turning the class path into URLs and finding
+ * the file in the first place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BootConfigBenchmark {
+
+  @Param({"10", "100", "1000", "10000"})
+  public int classPathLines;
+
+  private byte[] configBytes;
+  private BootConfig config;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    StringBuilder text = new StringBuilder("# synthetic configuration\nep=synthetic.p0.C0\n");
+    for (int i = 0; i < classPathLines; i++) {
+      text.append("cp=lib/synthetic-").append(i).append(".jar\n");
+    }
+    configBytes = text.toString().getBytes("UTF-8");
+    config = loadConfig();
+  }
+
+  @Benchmark
+  public BootConfig loadConfig() throws IOException {
+    BootConfigLoader loader = new BootConfigLoader();
+    loader.load(new ByteArrayInputStream(configBytes));
+    return loader.getConfiguration();
+  }
+
+  @Benchmark
+  public URL[] mapFilesToURL() throws IOException {
+    return Boot.mapFilesToURL(config);
+  }
+
+  @Benchmark
+  public File locateFileNextToBootstrap() {
+    return BootConfigLocator.locateFile(BootConfigLocator.class, BootConfigLocator.BOOT_FILE);
+  }
+
+  @Benchmark
+  public File locateFileFromSystemProperty(ConfigProperty property) {
+    return BootConfigLocator.locateFile(BootConfigLocator.class, BootConfigLocator.BOOT_FILE);
+  }
+
+  @State(Scope.Benchmark)
+  public static class ConfigProperty {
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      file = File.createTempFile("benchmark-boot", ".cfg");
+      System.setProperty(BootConfigLocator.JVM_CONFIG_OPTION, file.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      System.clearProperty(BootConfigLocator.JVM_CONFIG_OPTION);
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the plain URLClassLoader with IndexedClassLoader and MappedClassLoader: creating the loader and loading
+ * the entry point from the last jar (the time to main), loading one class from every jar, last jar first, and probing
+ * for a resource that is not there. Run with {@code -prof gc} to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassLoaderBenchmark {
+
+  @Param({"10", "150"})
+  public int jarCount;
+
+  @Param({"default", "indexed", "mapped"})
+  public String loaderType;
+
+  private File directory;
+  private URL[] urls;
+  private String[] classNames;
+  private URLClassLoader sharedLoader;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = new File(System.getProperty("java.io.tmpdir"), "classloader-benchmark-" + jarCount);
+    File[] jars = SyntheticJars.makeJars(directory, jarCount, 20);
+    urls = new URL[jars.length];
+    classNames = new String[jars.length];
+    for (int i = 0; i < jars.length; i++) {
+      urls[i] = jars[i].toURI().toURL();
+      classNames[i] = SyntheticJars.className(jars.length - 1 - i, 0);
+    }
+    sharedLoader = makeLoader();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    sharedLoader.close();
+    SyntheticJars.deleteRecursively(directory);
+  }
+
+  @Benchmark
+  public Class<?> createLoaderAndLoadFirstClass() throws Exception {
+    URLClassLoader loader = makeLoader();
+    try {
+      return loader.loadClass(classNames[0]);
+    } finally {
+      loader.close();
+    }
+  }
+
+  @Benchmark
+  public int createLoaderAndLoadClasses() throws Exception {
+    URLClassLoader loader = makeLoader();
+    try {
+      int loaded = 0;
+      for (String className : classNames) {
+        if (loader.loadClass(className) != null)
+          loaded++;
+      }
+      return loaded;
+    } finally {
+      loader.close();
+    }
+  }
+
+  @Benchmark
+  public URL missingResourceLookup() {
+    return sharedLoader.getResource("synthetic/p0/missing.txt");
+  }
+
+  @Benchmark
+  public URL resourceInLastJar() {
+    return sharedLoader.getResource("synthetic/p" + (jarCount - 1) + "/resource.txt");
+  }
+
+  private URLClassLoader makeLoader() throws IOException {
+    ClassLoaderType type = ClassLoaderType.fromConfigName(loaderType);
+    if (type == ClassLoaderType.INDEXED)
+      return new IndexedClassLoader(urls, null);
+    else if (type == ClassLoaderType.MAPPED)
+      return new MappedClassLoader(urls, null);
+    else
+      return new URLClassLoader(urls, null);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that every class path entry exists and is a complete jar, with one thread and with the default pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassPathValidationBenchmark {
+
+  @Param({"10", "150", "1000"})
+  public int jarCount;
+
+  @Param({"1", "8"})
+  public int threads;
+
+  private File directory;
+  private List<String> classPath;
+  private ClassPathValidator validator;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = new File(System.getProperty("java.io.tmpdir"), "validation-benchmark-" + jarCount);
+    File[] jars = SyntheticJars.makeJars(directory, jarCount, 1);
+    classPath = new ArrayList<String>(jars.length);
+    for (File jar : jars) {
+      classPath.add(jar.getPath());
+    }
+    validator = new ClassPathValidator(new FileChecker(), threads);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    SyntheticJars.deleteRecursively(directory);
+  }
+
+  @Benchmark
+  public List<String> validate() throws IOException {
+    validator.validate(classPath);
+    return classPath;
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures what each class loader keeps open on a large class path. For every loader type the tool starts a JVM
+ * that loads one class and reads one resource from every synthetic jar, the way a long session touches its jars over
+ * time, and reports the open file descriptors, the heap after a collection and the resident set size. The pooled
+ * loader also reports its pool.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.exnebula.bootstrap.JarPoolFootprint [jars] [pool capacity]
+ * </pre>
+ * File descriptor and resident set counts need a Unix JVM; they are -1 elsewhere.
+ */
+public class JarPoolFootprint {
+  private static final String[] LOADER_TYPES = {"default", "indexed", "mapped", "pooled"};
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0 && args[0].equals("probe")) {
+      probe(args[1], args[2]);
+      return;
+    }
+    int jarCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int capacity = args.length > 1 ? Integer.parseInt(args[1]) : JarFilePool.DEFAULT_CAPACITY;
+    File directory = new File(System.getProperty("java.io.tmpdir"), "jar-pool-footprint");
+    SyntheticJars.makeJars(directory, jarCount, 20);
+    try {
+      System.out.println("Jars: " + jarCount + ", pool capacity: " + capacity);
+      System.out.printf("%-10s %10s %10s %10s  %s%n", "loader", "open fds", "heap KB", "RSS KB", "pool");
+      for (String type : LOADER_TYPES) {
+        System.out.println(runProbe(type, directory, capacity));
+      }
+    } finally {
+      SyntheticJars.deleteRecursively(directory);
+    }
+  }
+
+  private static String runProbe(String type, File directory, int capacity) throws Exception {
+    List<String> command = new ArrayList<String>();
+    command.add(ForkedLauncher.defaultJavaExecutable().getPath());
+    command.add("-D" + JarFilePool.CAPACITY_PROPERTY + "=" + capacity);
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(JarPoolFootprint.class.getName());
+    command.add("probe");
+    command.add(type);
+    command.add(directory.getPath());
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+    String result = null;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.startsWith("footprint "))
+        result = line.substring(10);
+    }
+    if (process.waitFor() != 0 || result == null)
+      throw new IOException("Probe " + type + " failed");
+    return result;
+  }
+
+  private static void probe(String type, String directory) throws Exception {
+    File[] jars = new File(directory).listFiles();
+    URL[] urls = new URL[jars.length];
+    for (int i = 0; i < jars.length; i++) {
+      urls[i] = new File(directory, "synthetic-" + i + ".jar").toURI().toURL();
+    }
+    URLClassLoader loader = makeLoader(type, urls);
+    for (int i = 0; i < urls.length; i++) {
+      Class.forName(SyntheticJars.className(i, 0), false, loader);
+      InputStream resource = loader.getResourceAsStream("synthetic/p" + i + "/resource.txt");
+      resource.read();
+      resource.close();
+    }
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    String pool = "";
+    if (loader instanceof PooledClassLoader) {
+      JarFilePool jarPool = ((PooledClassLoader) loader).getPool();
+      pool = jarPool.getOpenCount() + " open, " + jarPool.getPeakOpenCount() + " peak, " + jarPool.getOpenedCount() +
+        " opened";
+    }
+    System.out.printf("footprint %-10s %10d %10d %10d  %s%n", type, openFileDescriptors(),
+      ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1024, residentKilobytes(), pool);
+    loader.close();
+  }
+
+  private static URLClassLoader makeLoader(String type, URL[] urls) throws IOException {
+    ClassLoaderType loaderType = ClassLoaderType.fromConfigName(type);
+    if (loaderType == ClassLoaderType.INDEXED)
+      return new IndexedClassLoader(urls, null);
+    else if (loaderType == ClassLoaderType.MAPPED)
+      return new MappedClassLoader(urls, null);
+    else if (loaderType == ClassLoaderType.POOLED)
+      return new PooledClassLoader(urls, null);
+    else
+      return new URLClassLoader(urls, null);
+  }
+
+  private static long openFileDescriptors() {
+    OperatingSystemMXBean system = ManagementFactory.getOperatingSystemMXBean();
+    if (system instanceof UnixOperatingSystemMXBean)
+      return ((UnixOperatingSystemMXBean) system).getOpenFileDescriptorCount();
+    return -1;
+  }
+
+  private static long residentKilobytes() throws IOException {
+    File status = new File("/proc/self/status");
+    if (!status.isFile())
+      return -1;
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(status), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("VmRSS:"))
+          return Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+      }
+      return -1;
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Measures what a shared library layer saves over one JVM per entry point. Each entry point has a small jar of its
+ * own and uses every class of the library jars. The tool starts one JVM per entry point that loads the libraries and
+ * its jar, then one JVM where the libraries are loaded once by a parent of one class loader per entry point, as Boot
+ * does for {@code cp.shared=}. Every JVM reports its heap and metaspace after a collection and its loaded classes.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.exnebula.bootstrap.SharedLayerFootprint [entry points] [library jar]...
+ * </pre>
+ * Without library jars the jars of the class path are used.
+ */
+public class SharedLayerFootprint {
+  private static final int CLASSES_PER_ENTRY_POINT = 200;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0 && args[0].equals("probe")) {
+      probe(args[1], args[2], args[3]);
+      return;
+    }
+    int entryPoints = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+    List<String> libraries = new ArrayList<String>();
+    for (int i = 1; i < args.length; i++) {
+      libraries.add(args[i]);
+    }
+    if (libraries.isEmpty())
+      libraries = jarsOfClassPath();
+    File directory = new File(System.getProperty("java.io.tmpdir"), "shared-layer-footprint");
+    List<String> applications = new ArrayList<String>();
+    for (int i = 0; i < entryPoints; i++) {
+      File jar = new File(directory, "entry-point-" + i + ".jar");
+      directory.mkdirs();
+      SyntheticJars.makeJar(jar, i, CLASSES_PER_ENTRY_POINT);
+      applications.add(jar.getPath());
+    }
+    try {
+      String libraryPath = join(libraries);
+      long[] separate = new long[3];
+      for (String application : applications) {
+        long[] footprint = runProbe("separate", libraryPath, application);
+        for (int i = 0; i < separate.length; i++) {
+          separate[i] += footprint[i];
+        }
+      }
+      long[] shared = runProbe("shared", libraryPath, join(applications));
+      System.out.println("Entry points: " + entryPoints + ", libraries: " + libraries.size() + " jars");
+      System.out.printf("%-22s %12s %14s %10s%n", "", "heap KB", "metaspace KB", "classes");
+      print(entryPoints + " separate JVMs", separate);
+      print("1 JVM, shared layer", shared);
+      System.out.printf("%-22s %11.0f%% %13.0f%%%n", "saved", saved(separate[0], shared[0]),
+        saved(separate[1], shared[1]));
+    } finally {
+      SyntheticJars.deleteRecursively(directory);
+    }
+  }
+
+  private static void print(String label, long[] footprint) {
+    System.out.printf("%-22s %12d %14d %10d%n", label, footprint[0] / 1024, footprint[1] / 1024, footprint[2]);
+  }
+
+  private static double saved(long separate, long shared) {
+    return separate == 0 ? 0 : 100.0 * (separate - shared) / separate;
+  }
+
+  private static long[] runProbe(String mode, String libraries, String applications) throws Exception {
+    List<String> command = new ArrayList<String>();
+    command.add(ForkedLauncher.defaultJavaExecutable().getPath());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(SharedLayerFootprint.class.getName());
+    command.add("probe");
+    command.add(mode);
+    command.add(libraries);
+    command.add(applications);
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+    String result = null;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.startsWith("footprint "))
+        result = line;
+    }
+    if (process.waitFor() != 0 || result == null)
+      throw new IOException("Probe " + mode + " failed");
+    String[] fields = result.split(" ");
+    return new long[]{Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3])};
+  }
+
+  private static void probe(String mode, String libraries, String applications) throws Exception {
+    ClassLoader parent = ClassLoader.getSystemClassLoader().getParent();
+    List<ClassLoader> loaders = new ArrayList<ClassLoader>();
+    if (mode.equals("shared")) {
+      LauncherClassLoader layer = new LauncherClassLoader(toURLs(libraries), parent);
+      loadAll(layer, libraries);
+      for (String application : applications.split(File.pathSeparator)) {
+        LauncherClassLoader loader = new LauncherClassLoader(toURLs(application), layer);
+        loadAll(loader, application);
+        loaders.add(loader);
+      }
+    } else {
+      LauncherClassLoader loader = new LauncherClassLoader(toURLs(libraries + File.pathSeparator + applications),
+        parent);
+      loadAll(loader, libraries);
+      loadAll(loader, applications);
+      loaders.add(loader);
+    }
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    long metaspace = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getName().equals("Metaspace"))
+        metaspace = pool.getUsage().getUsed();
+    }
+    // The loader count keeps the loaders reachable until the usage is read
+    System.out.println("footprint " + ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() + " " +
+      metaspace + " " + ManagementFactory.getClassLoadingMXBean().getLoadedClassCount() + " " + loaders.size());
+  }
+
+  /**
+   * Loads, without initializing, every class of the jars; classes that need something missing are skipped.
+   */
+  private static void loadAll(ClassLoader loader, String jars) throws IOException {
+    for (String path : jars.split(File.pathSeparator)) {
+      JarFile jar = new JarFile(path);
+      try {
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+          String name = entries.nextElement().getName();
+          if (!name.endsWith(".class") || name.contains("-"))
+            continue;
+          try {
+            Class.forName(name.substring(0, name.length() - 6).replace('/', '.'), false, loader);
+          } catch (Throwable e) {
+            // Not loadable on its own
+          }
+        }
+      } finally {
+        jar.close();
+      }
+    }
+  }
+
+  private static URL[] toURLs(String path) throws IOException {
+    String[] files = path.split(File.pathSeparator);
+    URL[] urls = new URL[files.length];
+    for (int i = 0; i < files.length; i++) {
+      urls[i] = new File(files[i]).toURI().toURL();
+    }
+    return urls;
+  }
+
+  private static List<String> jarsOfClassPath() {
+    List<String> jars = new ArrayList<String>();
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      if (entry.endsWith(".jar"))
+        jars.add(entry);
+    }
+    return jars;
+  }
+
+  private static String join(List<String> paths) {
+    StringBuilder joined = new StringBuilder();
+    for (String path : paths) {
+      if (joined.length() > 0)
+        joined.append(File.pathSeparatorChar);
+      joined.append(path);
+    }
+    return joined.toString();
+  }
+}
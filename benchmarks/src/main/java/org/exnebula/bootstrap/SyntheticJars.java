@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Builds jars full of empty classes for benchmarks. Jar number N holds package {@code synthetic.pN}, so the last
+ * jar is the worst case for a class loader that searches in order.
+ */
+public class SyntheticJars {
+
+  public static File[] makeJars(File directory, int jarCount, int classesPerJar) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new IOException("Could not create " + directory);
+    File[] jars = new File[jarCount];
+    for (int i = 0; i < jarCount; i++) {
+      jars[i] = new File(directory, "synthetic-" + i + ".jar");
+      makeJar(jars[i], i, classesPerJar);
+    }
+    return jars;
+  }
+
+  public static String className(int jar, int number) {
+    return "synthetic.p" + jar + ".C" + number;
+  }
+
+  public static void makeJar(File targetJar, int jar, int classesPerJar) throws IOException {
+    JarOutputStream output = new JarOutputStream(new FileOutputStream(targetJar));
+    try {
+      for (int i = 0; i < classesPerJar; i++) {
+        String internalName = className(jar, i).replace('.', '/');
+        output.putNextEntry(new ZipEntry(internalName + ".class"));
+        output.write(emptyClass(internalName));
+      }
+      output.putNextEntry(new ZipEntry("synthetic/p" + jar + "/resource.txt"));
+      output.write(("resource of jar " + jar).getBytes("UTF-8"));
+    } finally {
+      output.close();
+    }
+  }
+
+  public static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * Minimal class file: public class extending java.lang.Object with no members.
+   */
+  static byte[] emptyClass(String internalName) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(buffer);
+    out.writeInt(0xCAFEBABE);
+    out.writeShort(0);
+    out.writeShort(50);
+    out.writeShort(5);
+    out.writeByte(1);
+    out.writeUTF(internalName);
+    out.writeByte(7);
+    out.writeShort(1);
+    out.writeByte(1);
+    out.writeUTF("java/lang/Object");
+    out.writeByte(7);
+    out.writeShort(3);
+    out.writeShort(0x0021);
+    out.writeShort(2);
+    out.writeShort(4);
+    out.writeShort(0);
+    out.writeShort(0);
+    out.writeShort(0);
+    out.writeShort(0);
+    out.close();
+    return buffer.toByteArray();
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.launcher;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies a large jar from a file repository into the local repository: without checksums, hashing while the bytes
+ * stream to disk as the downloader does, and hashing by reading the file back after the copy. The downloader always
+ * computes SHA-1, plus SHA-256 when that is the checksum the repository publishes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DownloadBenchmark {
+
+  @Param({"8", "64"})
+  public int megabytes;
+
+  @Param({"SHA-1", "SHA-256"})
+  public String published;
+
+  private File directory;
+  private Transport transport;
+  private File target;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = new File(System.getProperty("java.io.tmpdir"), "download-benchmark-" + megabytes);
+    File remote = new File(directory, "remote");
+    remote.mkdirs();
+    byte[] block = new byte[1024 * 1024];
+    Random random = new Random(1);
+    OutputStream output = new FileOutputStream(new File(remote, "large.jar"));
+    try {
+      for (int i = 0; i < megabytes; i++) {
+        random.nextBytes(block);
+        output.write(block);
+      }
+    } finally {
+      output.close();
+    }
+    transport = new FileTransport(remote);
+    target = new File(directory, "large.jar");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    new File(directory, "remote/large.jar").delete();
+    new File(directory, "remote").delete();
+    target.delete();
+    directory.delete();
+  }
+
+  @Benchmark
+  public long copy() throws IOException {
+    return Streams.copyToFile(transport.open("large.jar"), target);
+  }
+
+  @Benchmark
+  public String copyAndHash() throws IOException {
+    MessageDigest[] digests = newDigests();
+    Streams.copyToFile(transport.open("large.jar"), target, digests);
+    return toHex(digests);
+  }
+
+  @Benchmark
+  public String copyThenHash() throws IOException {
+    Streams.copyToFile(transport.open("large.jar"), target);
+    MessageDigest[] digests = newDigests();
+    InputStream input = new FileInputStream(target);
+    try {
+      byte[] buffer = new byte[64 * 1024];
+      int count;
+      while ((count = input.read(buffer)) > 0) {
+        for (MessageDigest digest : digests) {
+          digest.update(buffer, 0, count);
+        }
+      }
+    } finally {
+      input.close();
+    }
+    return toHex(digests);
+  }
+
+  private MessageDigest[] newDigests() {
+    if ("SHA-1".equals(published))
+      return new MessageDigest[]{Checksums.newSha1()};
+    return new MessageDigest[]{Checksums.newSha1(), Checksums.newDigest(published)};
+  }
+
+  private static String toHex(MessageDigest[] digests) {
+    StringBuilder hex = new StringBuilder();
+    for (MessageDigest digest : digests) {
+      hex.append(Checksums.toHex(digest.digest()));
+    }
+    return hex.toString();
+  }
+}
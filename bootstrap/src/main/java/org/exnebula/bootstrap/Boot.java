@@ -17,26 +17,42 @@
 package org.exnebula.bootstrap;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 public class Boot {
+  public static final String ENTRY_PROPERTY = "org.exnebula.bootstrap.entry";
+
   private final BootErrorReporter reporter;
   private final BootInputSource inputSource;
   private String step = null;
+  private final BootTimeline timeline = new BootTimeline();
   private final FileChecker fileChecker;
+  private final LaunchPlanCache planCache;
   private String[] arguments = null;
+  private boolean daemonLaunch = false;
+  private String entryPointName = System.getProperty(ENTRY_PROPERTY);
+  private SharedClassLoaders sharedClassLoaders = new SharedClassLoaders();
+  private ClassPathReadahead readahead = null;
+  private Runnable localLaunchHook = null;
 
-  public Boot(BootErrorReporter reporter, BootInputSource inputSource, FileChecker fileChecker) {
+  public Boot(BootErrorReporter reporter, BootInputSource inputSource, FileChecker fileChecker, LaunchPlanCache planCache) {
     this.reporter = reporter;
     this.inputSource = inputSource;
     this.fileChecker = fileChecker;
+    this.planCache = planCache;
+  }
+
+  public Boot(BootErrorReporter reporter, BootInputSource inputSource, FileChecker fileChecker) {
+    this(reporter, inputSource, fileChecker, null);
   }
 
   public Boot(BootErrorReporter bootErrorReporter, BootInputSource bootInputSource) {
@@ -48,59 +64,361 @@ public class Boot {
     try {
       startInner();
     } catch (Exception e) {
+      timeline.attribute("failedStep", String.valueOf(step));
+      finishTimeline();
       reporter.reportFailure(step, e);
     }
   }
 
+  public BootTimeline getTimeline() {
+    return timeline;
+  }
+
+  /**
+   * @param daemonLaunch True when a {@link BootDaemon} runs this launch: the application then always starts in the
+   *                     daemon JVM, which spawns the spare daemon for the next launch.
+   */
+  void setDaemonLaunch(boolean daemonLaunch) {
+    this.daemonLaunch = daemonLaunch;
+  }
+
+  /**
+   * @param entryPointName Name of an {@code ep.<name>=} entry point to start, null for the {@code ep=} one. Defaults
+   *                       to the {@value #ENTRY_PROPERTY} system property.
+   */
+  void setEntryPointName(String entryPointName) {
+    this.entryPointName = entryPointName;
+  }
+
+  /**
+   * @param sharedClassLoaders Loaders of shared library layers, kept by a JVM that starts several launches.
+   */
+  void setSharedClassLoaders(SharedClassLoaders sharedClassLoaders) {
+    this.sharedClassLoaders = sharedClassLoaders;
+  }
+
+  /**
+   * @param localLaunchHook Run once boot.cfg or the cached plan shows the application starts in this JVM, before the
+   *                        class path is checked and the class loader built. Not run for a forked launch.
+   */
+  void setLocalLaunchHook(Runnable localLaunchHook) {
+    this.localLaunchHook = localLaunchHook;
+  }
+
+  private void beginStep(String name) {
+    if (step != null)
+      timeline.end(step);
+    step = name;
+    timeline.begin(name);
+  }
+
+  /**
+   * Ends the current step and saves the timeline, just before control goes to the application.
+   */
+  private void finishTimeline() {
+    if (step != null)
+      timeline.end(step);
+    if (readahead != null)
+      timeline.attribute("readahead", readahead.describe());
+    if (planCache == null)
+      return;
+    // Written before control passes on: an application that exits at once would lose a background write
+    try {
+      timeline.writeTo(planCache.getDirectory());
+    } catch (IOException e) {
+      // Telemetry must never stop the application
+    }
+  }
+
   private void startInner() throws Exception {
+    LaunchPlan plan = loadCachedLaunchPlan();
+    timeline.attribute("launchPlan", plan == null ? "built" : "cached");
+    if (plan != null) {
+      startReadahead(plan.getConfig(), plan);
+      runLocalLaunchHook(plan.getConfig());
+    } else
+      plan = prepareLaunchPlan();
+    runMain(plan);
+  }
+
+  /**
+   * With {@code fork=true} and {@code daemon=true} a launch starts a spare daemon for the next launch, unless one is
+   * already listening. A daemon takes a single launch, so the launch it hosts starts its replacement. The spare is
+   * started from a low priority thread as control passes to the application, so building the class loader and
+   * starting the application do not wait for it.
+   */
+  private void spawnDaemonIfMissing(final LaunchPlan plan) {
+    if (!plan.getConfig().isDaemon() || !plan.getConfig().isFork() || planCache == null ||
+      BootDaemon.portFileFor(planCache.getConfigFile()).exists())
+      return;
+    timeline.attribute("daemon", "spawned");
+    Thread spawner = new DaemonThreadFactory("boot-daemon-spawn").newThread(new Runnable() {
+      public void run() {
+        try {
+          BootDaemonClient.spawn(planCache.getConfigFile(), plan.getConfig().getJvmOptions());
+        } catch (IOException e) {
+          // The next launch forks and spawns again
+        }
+      }
+    });
+    spawner.setPriority(Thread.MIN_PRIORITY);
+    spawner.start();
+  }
+
+  private LaunchPlan loadCachedLaunchPlan() {
+    if (planCache == null)
+      return null;
+    beginStep("Check launch plan");
+    return planCache.loadValidPlan();
+  }
+
+  private LaunchPlan prepareLaunchPlan() throws IOException {
     InputStream stream = locateConfigOrFail();
     BootConfig config = loadConfigurationOrFail(stream);
+    startReadahead(config, null);
+    runLocalLaunchHook(config);
     validaClassPathsOrFail(config);
-    runMain(config);
+    return new LaunchPlan(config, mapFilesToURL(config), null);
+  }
+
+  /**
+   * Starts reading the class path into the page cache while the boot goes on; a cached plan with a merged archive
+   * only needs the archive.
+   */
+  private void startReadahead(BootConfig config, LaunchPlan plan) {
+    if (!config.isReadahead())
+      return;
+    readahead = new ClassPathReadahead(planCache == null ? null : planCache.getDirectory());
+    List<String> files = DeferredClassPath.presentClassPath(config);
+    if (plan != null && shouldMergeClassPath(plan)) {
+      File archive = new MergedClassPath(planCache.getDirectory()).archiveFor(plan);
+      if (archive.isFile())
+        files = Collections.singletonList(archive.getPath());
+    }
+    readahead.start(files);
+  }
+
+  /**
+   * A plan that forks with class data sharing is saved before it forks, so the config alone tells.
+   */
+  private void runLocalLaunchHook(BootConfig config) {
+    if (localLaunchHook != null && !shouldFork(config))
+      localLaunchHook.run();
   }
 
   private BootConfig loadConfigurationOrFail(InputStream stream) throws IOException {
-    step = "Read config file";
+    beginStep("Read config file");
     BootConfigLoader bootConfigLoader = new BootConfigLoader();
     bootConfigLoader.load(stream);
     return bootConfigLoader.getConfiguration();
   }
 
   private InputStream locateConfigOrFail() {
-    step = "Locate config file";
+    beginStep("Locate config file");
     InputStream stream = inputSource.getConfigInputStream();
     if (stream == null)
       throw new BootStrapException("Could not locate configuration file");
     return stream;
   }
 
-  private void validaClassPathsOrFail(BootConfig config) throws FileNotFoundException {
-    step = "Check class path files";
-    for (String path : config.getClassPath()) {
-      if (!fileChecker.fileExists(path)) {
-        throw new FileNotFoundException("File " + path + " not found");
-      }
-    }
+  private void validaClassPathsOrFail(BootConfig config) throws IOException {
+    beginStep("Check class path files");
+    new ClassPathValidator(fileChecker).validate(DeferredClassPath.presentClassPath(config));
   }
 
-  private void runMain(BootConfig config) throws Exception {
-    step = "Start entry point";
-    Class<?> aClass = makeClassLoader(config).loadClass(config.getEntryPoint());
+  private void runMain(LaunchPlan plan) throws Exception {
+    beginStep("Start entry point");
+    String entryPoint = entryPointOf(plan.getConfig());
+    if (shouldFork(plan.getConfig())) {
+      plan = saveLaunchPlanIfNew(plan, null);
+      if (plan.getConfig().isFork() || plan.isCached()) {
+        runForked(plan, entryPoint);
+        return;
+      }
+    }
+    timeline.begin("Create class loader");
+    LauncherClassLoader classLoader = makeClassLoader(plan);
+    timeline.end("Create class loader");
+    plan = saveLaunchPlanIfNew(plan, classLoader);
+    startClassPreloading(plan, classLoader);
+    if (readahead != null && plan.isCached())
+      readahead.record(plan, classLoader);
+    mergeClassPathIfMissing(plan);
+    timeline.begin("Load entry class");
+    Class<?> aClass = classLoader.loadClass(entryPoint);
+    timeline.end("Load entry class");
+    recordJarPool(classLoader);
     Method main = aClass.getMethod("main", String[].class);
     assertIsStaticMethod(aClass, main);
+    spawnDaemonIfMissing(plan);
+    finishTimeline();
     main.invoke(null, new Object[]{arguments});
   }
 
-  private URLClassLoader makeClassLoader(BootConfig config) throws MalformedURLException {
-    URL[] urls = mapFilesToURL(config);
+  private void recordJarPool(LauncherClassLoader classLoader) {
+    if (classLoader instanceof PooledClassLoader) {
+      JarFilePool pool = ((PooledClassLoader) classLoader).getPool();
+      timeline.attribute("jarPool", pool.getOpenCount() + " open of " + pool.getCapacity() + ", " +
+        pool.getOpenedCount() + " opened");
+    }
+  }
+
+  private String entryPointOf(BootConfig config) {
+    if (entryPointName == null)
+      return config.getEntryPoint();
+    timeline.attribute("entryPoint", entryPointName);
+    String entryPoint = config.getSharedLibraryLayer().getEntryPoint(entryPointName);
+    if (entryPoint == null)
+      throw new BootStrapException("No entry point 'ep." + entryPointName + "' in configuration");
+    return entryPoint;
+  }
+
+  /**
+   * @return The class path of the entry point to start, without the shared library layer.
+   */
+  private List<String> entryClassPath(BootConfig config) {
+    SharedLibraryLayer layer = config.getSharedLibraryLayer();
+    return entryPointName == null ? layer.mainClassPath(config.getClassPath()) : layer.getClassPath(entryPointName);
+  }
+
+  /**
+   * The entry point's loader is a child of the shared library layer's loader, when there is one. Missing deferred
+   * entries leave the class path incomplete, so the indexed class loader is not used until they are all there.
+   */
+  private LauncherClassLoader makeClassLoader(LaunchPlan plan) throws IOException {
+    BootConfig config = plan.getConfig();
+    SharedLibraryLayer layer = config.getSharedLibraryLayer();
+    ClassLoader parent = this.getClass().getClassLoader().getParent();
+    if (!layer.getClassPath().isEmpty())
+      parent = sharedClassLoaders.loaderFor(mapFilesToURL(layer.getClassPath()), parent);
+
+    List<String> classPath = entryClassPath(config);
+    DeferredClassPath deferred = DeferredClassPath.findMissing(config);
+    if (deferred != null) {
+      timeline.attribute("deferredMissing", String.valueOf(deferred.getPendingCount()));
+      List<String> present = new ArrayList<String>(classPath);
+      present.retainAll(new HashSet<String>(DeferredClassPath.presentClassPath(config)));
+      LauncherClassLoader classLoader = new LauncherClassLoader(mapFilesToURL(present), parent);
+      classLoader.setDeferredClassPath(deferred);
+      return classLoader;
+    }
+    URL[] urls = layer.isEmpty() ? plan.getURLs() : mapFilesToURL(classPath);
+    boolean merged = false;
+    if (shouldMergeClassPath(plan)) {
+      File archive = new MergedClassPath(planCache.getDirectory()).archiveFor(plan);
+      merged = archive.isFile();
+      timeline.attribute("merged", String.valueOf(merged));
+      if (merged)
+        urls = new URL[]{archive.toURI().toURL()};
+    }
+    PackageIndex index = entryPointName == null ? plan.getPackageIndex() : null;
+    LauncherClassLoader classLoader;
+    if (config.getClassLoaderType() == ClassLoaderType.INDEXED)
+      classLoader = new IndexedClassLoader(urls, parent, index);
+    else if (config.getClassLoaderType() == ClassLoaderType.MAPPED)
+      classLoader = new MappedClassLoader(urls, parent, index);
+    else if (config.getClassLoaderType() == ClassLoaderType.POOLED)
+      classLoader = new PooledClassLoader(urls, parent, index);
+    else
+      classLoader = new LauncherClassLoader(urls, parent);
+    classLoader.setMergedClassPath(merged);
+    return classLoader;
+  }
+
+  private void startClassPreloading(LaunchPlan plan, LauncherClassLoader classLoader) {
+    if (plan.getConfig().isPreloadClasses() && plan.isCached())
+      new ClassLoadTrace(planCache.getDirectory()).start(plan, classLoader);
+  }
+
+  /**
+   * The merged archive replaces the class path of the main entry point of a cached plan with nothing deferred.
+   */
+  private boolean shouldMergeClassPath(LaunchPlan plan) {
+    return plan.getConfig().isMergeClassPath() && plan.isCached() && entryPointName == null &&
+      DeferredClassPath.findMissing(plan.getConfig()) == null;
+  }
+
+  /**
+   * Builds the merged archive before the application starts: a background build would not survive an application
+   * that exits early. A failed build leaves the jars in use; the next launch tries again.
+   */
+  private void mergeClassPathIfMissing(LaunchPlan plan) {
+    if (!shouldMergeClassPath(plan))
+      return;
+    MergedClassPath merged = new MergedClassPath(planCache.getDirectory());
+    if (merged.isBuilt(plan))
+      return;
+    timeline.begin("Merge class path");
+    try {
+      merged.build(plan, entryClassPath(plan.getConfig()));
+    } catch (IOException e) {
+      timeline.attribute("merged", "failed");
+    }
+    timeline.end("Merge class path");
+  }
+
+  private LaunchPlan saveLaunchPlanIfNew(LaunchPlan plan, LauncherClassLoader classLoader) {
+    if (planCache == null)
+      return plan;
+    if (!plan.isCached()) {
+      if (classLoader instanceof IndexedClassLoader && entryPointName == null)
+        plan = plan.withPackageIndex(((IndexedClassLoader) classLoader).getPackageIndex());
+      timeline.begin("Save launch plan");
+      plan = planCache.save(plan);
+      timeline.end("Save launch plan");
+    }
+    if (plan.isCached())
+      timeline.attribute("fingerprint", plan.getFingerprint());
+    return plan;
+  }
+
+  /**
+   * A missing deferred entry cannot be waited for from another JVM, so the application then starts in this one.
+   */
+  private boolean shouldFork(BootConfig config) {
+    if (daemonLaunch)
+      return false;
+    if (config.isFork())
+      return DeferredClassPath.findMissing(config) == null;
+    return shouldUseClassDataSharing(config);
+  }
+
+  private boolean shouldUseClassDataSharing(BootConfig config) {
+    return config.isClassDataSharing() && planCache != null && entryPointName == null &&
+      ClassDataSharing.isSupported();
+  }
+
+  /**
+   * Starts the application in a JVM of its own with the options of boot.cfg, followed by those of the class data
+   * sharing archive when the plan is cached. The bootstrap exits with the exit code of that JVM. The JVM class path is
+   * the shared library layer followed by the entry point's own entries.
+   */
+  private void runForked(LaunchPlan plan, String entryPoint) throws Exception {
+    List<String> jvmOptions = new ArrayList<String>(plan.getConfig().getJvmOptions());
+    if (shouldUseClassDataSharing(plan.getConfig()) && plan.isCached())
+      jvmOptions.addAll(new ClassDataSharing(planCache.getDirectory()).jvmOptions(plan));
+    ForkedLauncher launcher = new ForkedLauncher(ForkedLauncher.defaultJavaExecutable(),
+      planCache == null ? null : planCache.getDirectory());
+    List<String> classPath = new ArrayList<String>(plan.getConfig().getSharedLibraryLayer().getClassPath());
+    classPath.addAll(entryClassPath(plan.getConfig()));
+    URL[] urls = plan.getConfig().getSharedLibraryLayer().isEmpty() ? plan.getURLs() : mapFilesToURL(classPath);
+    List<String> command = launcher.buildCommand(jvmOptions, urls, entryPoint, arguments);
+    timeline.attribute("launch", "forked");
+    spawnDaemonIfMissing(plan);
+    finishTimeline();
+    int exitCode = launcher.run(command);
+    if (exitCode != 0)
+      System.exit(exitCode);
+  }
 
-    return new URLClassLoader(urls, this.getClass().getClassLoader().getParent());
+  static URL[] mapFilesToURL(BootConfig config) throws MalformedURLException {
+    return mapFilesToURL(config.getClassPath());
   }
 
-  private URL[] mapFilesToURL(BootConfig config) throws MalformedURLException {
-    URL[] urls = new URL[config.getClassPath().size()];
+  private static URL[] mapFilesToURL(List<String> classPath) throws MalformedURLException {
+    URL[] urls = new URL[classPath.size()];
     for (int i = 0; i < urls.length; i++) {
-      urls[i] = new File(config.getClassPath().get(i)).toURI().toURL();
+      urls[i] = new File(classPath.get(i)).toURI().toURL();
     }
     return urls;
   }
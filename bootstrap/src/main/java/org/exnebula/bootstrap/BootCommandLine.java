@@ -18,10 +18,16 @@ package org.exnebula.bootstrap;
 
 public class BootCommandLine {
   public static void main(String[] args) {
+    DefaultBootInputSource inputSource = new DefaultBootInputSource();
+    BootErrorReporter reporter = new SystemErrorBootErrorReporter();
+    Integer exitStatus = BootDaemonClient.launch(inputSource.getConfigFile(), args, reporter);
+    if (exitStatus != null)
+      System.exit(exitStatus);
     Boot boot = new Boot(
-      new SystemErrorBootErrorReporter(),
-      new DefaultBootInputSource()
-    );
+      reporter,
+      inputSource,
+      new FileChecker(),
+      LaunchPlanCache.forConfigFile(inputSource.getConfigFile()));
     boot.start(args);
   }
-}
\ No newline at end of file
+}
@@ -16,21 +16,60 @@
  */
 package org.exnebula.bootstrap;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 public class BootConfig {
   private String entryPoint = "vcc.start.Main";
   private List<String> classPath;
+  private final ClassLoaderType classLoaderType;
+  private final boolean classDataSharing;
+  private final boolean preloadClasses;
+  private final List<String> classPathWildcards;
+  private final List<String> deferredClassPath;
+  private final List<String> deferredPackages;
+  private final boolean fork;
+  private final List<String> jvmOptions;
+  private final boolean daemon;
+  private final SharedLibraryLayer sharedLibraryLayer;
+  private final boolean mergeClassPath;
+  private final boolean readahead;
 
   public BootConfig(String entryPoint, String[] classPath) {
-    this.entryPoint = entryPoint;
-    LinkedList<String> list = new LinkedList<String>();
-    Collections.addAll(list, classPath);
-    this.classPath = Collections.unmodifiableList(list);
+    this(entryPoint, classPath, ClassLoaderType.DEFAULT);
   }
 
+  public BootConfig(String entryPoint, String[] classPath, ClassLoaderType classLoaderType) {
+    this(entryPoint, classPath, classLoaderType, false);
+  }
+
+  public BootConfig(String entryPoint, String[] classPath, ClassLoaderType classLoaderType, boolean classDataSharing) {
+    this(new Builder(entryPoint, Arrays.asList(classPath)).classLoaderType(classLoaderType)
+      .classDataSharing(classDataSharing));
+  }
+
+  private BootConfig(Builder builder) {
+    this.entryPoint = builder.entryPoint;
+    this.classPath = copyOf(builder.classPath);
+    this.classLoaderType = builder.classLoaderType;
+    this.classDataSharing = builder.classDataSharing;
+    this.preloadClasses = builder.preloadClasses;
+    this.classPathWildcards = copyOf(builder.classPathWildcards);
+    this.deferredClassPath = copyOf(builder.deferredClassPath);
+    this.deferredPackages = copyOf(builder.deferredPackages);
+    this.fork = builder.fork;
+    this.jvmOptions = copyOf(builder.jvmOptions);
+    this.daemon = builder.daemon;
+    this.sharedLibraryLayer = builder.sharedLibraryLayer;
+    this.mergeClassPath = builder.mergeClassPath;
+    this.readahead = builder.readahead;
+  }
+
+  private static List<String> copyOf(List<String> list) {
+    return Collections.unmodifiableList(new ArrayList<String>(list));
+  }
 
   public String getEntryPoint() {
     return entryPoint;
@@ -39,4 +78,168 @@ public class BootConfig {
   public List<String> getClassPath() {
     return classPath;
   }
-}
\ No newline at end of file
+
+  public ClassLoaderType getClassLoaderType() {
+    return classLoaderType;
+  }
+
+  public boolean isClassDataSharing() {
+    return classDataSharing;
+  }
+
+  public boolean isPreloadClasses() {
+    return preloadClasses;
+  }
+
+  /**
+   * @return Class path entries with a wildcard, as written in boot.cfg. The class path has their expansion.
+   */
+  public List<String> getClassPathWildcards() {
+    return classPathWildcards;
+  }
+
+  /**
+   * @return Class path entries that may still be missing when the application starts. The class path has them too.
+   */
+  public List<String> getDeferredClassPath() {
+    return deferredClassPath;
+  }
+
+  /**
+   * @return Packages of the deferred entries, empty if boot.cfg does not list them.
+   */
+  public List<String> getDeferredPackages() {
+    return deferredPackages;
+  }
+
+  /**
+   * @return True if the application runs in a JVM of its own, started with the {@link #getJvmOptions()}.
+   */
+  public boolean isFork() {
+    return fork;
+  }
+
+  public List<String> getJvmOptions() {
+    return jvmOptions;
+  }
+
+  /**
+   * @return True if the next forked launch goes to a {@link BootDaemon}, the JVM it would start with the
+   *         {@link #getJvmOptions()}, started ahead of it.
+   */
+  public boolean isDaemon() {
+    return daemon;
+  }
+
+  /**
+   * @return The shared library layer and named entry points, {@link SharedLibraryLayer#NONE} if boot.cfg has neither.
+   * The class path has their entries too.
+   */
+  public SharedLibraryLayer getSharedLibraryLayer() {
+    return sharedLibraryLayer;
+  }
+
+  /**
+   * @return True if the class loader reads the entry point's class path from a {@link MergedClassPath} archive once
+   * one is built for the launch plan.
+   */
+  public boolean isMergeClassPath() {
+    return mergeClassPath;
+  }
+
+  /**
+   * @return True if the class path files are read ahead into the page cache by a {@link ClassPathReadahead}.
+   */
+  public boolean isReadahead() {
+    return readahead;
+  }
+
+  /**
+   * Collects the boot.cfg options by name; every option not set keeps the default of an entry missing from boot.cfg.
+   */
+  static class Builder {
+    private final String entryPoint;
+    private final List<String> classPath;
+    private ClassLoaderType classLoaderType = ClassLoaderType.DEFAULT;
+    private boolean classDataSharing = false;
+    private boolean preloadClasses = false;
+    private List<String> classPathWildcards = Collections.emptyList();
+    private List<String> deferredClassPath = Collections.emptyList();
+    private List<String> deferredPackages = Collections.emptyList();
+    private boolean fork = false;
+    private List<String> jvmOptions = Collections.emptyList();
+    private boolean daemon = false;
+    private SharedLibraryLayer sharedLibraryLayer = SharedLibraryLayer.NONE;
+    private boolean mergeClassPath = false;
+    private boolean readahead = false;
+
+    Builder(String entryPoint, List<String> classPath) {
+      this.entryPoint = entryPoint;
+      this.classPath = classPath;
+    }
+
+    Builder classLoaderType(ClassLoaderType classLoaderType) {
+      this.classLoaderType = classLoaderType;
+      return this;
+    }
+
+    Builder classDataSharing(boolean classDataSharing) {
+      this.classDataSharing = classDataSharing;
+      return this;
+    }
+
+    Builder preloadClasses(boolean preloadClasses) {
+      this.preloadClasses = preloadClasses;
+      return this;
+    }
+
+    Builder classPathWildcards(List<String> classPathWildcards) {
+      this.classPathWildcards = classPathWildcards;
+      return this;
+    }
+
+    Builder deferredClassPath(List<String> deferredClassPath) {
+      this.deferredClassPath = deferredClassPath;
+      return this;
+    }
+
+    Builder deferredPackages(List<String> deferredPackages) {
+      this.deferredPackages = deferredPackages;
+      return this;
+    }
+
+    Builder fork(boolean fork) {
+      this.fork = fork;
+      return this;
+    }
+
+    Builder jvmOptions(List<String> jvmOptions) {
+      this.jvmOptions = jvmOptions;
+      return this;
+    }
+
+    Builder daemon(boolean daemon) {
+      this.daemon = daemon;
+      return this;
+    }
+
+    Builder sharedLibraryLayer(SharedLibraryLayer sharedLibraryLayer) {
+      this.sharedLibraryLayer = sharedLibraryLayer;
+      return this;
+    }
+
+    Builder mergeClassPath(boolean mergeClassPath) {
+      this.mergeClassPath = mergeClassPath;
+      return this;
+    }
+
+    Builder readahead(boolean readahead) {
+      this.readahead = readahead;
+      return this;
+    }
+
+    BootConfig build() {
+      return new BootConfig(this);
+    }
+  }
+}
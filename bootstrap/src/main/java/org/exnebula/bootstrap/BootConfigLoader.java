@@ -20,22 +20,58 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Reads boot.cfg in a single pass. A class path entry whose file name has a {@code *}, like {@code cp=lib/*.jar},
+ * is replaced by the matching files of that directory in name order; each directory is listed once. A
+ * {@code cp.deferred=} entry is a class path entry that may still be missing when the application starts, and each
+ * {@code pkg.deferred=} entry a package of those entries, the only packages whose classes wait for them. Each
+ * {@code jvm=} entry is one option of the JVM that {@code fork=true} starts for the application, or that
+ * {@code daemon=true} starts ahead of the next forked launch.
+ * {@code cp.shared=} entries make up the {@link SharedLibraryLayer}; {@code ep.<name>=} declares another entry point
+ * and {@code cp.<name>=} adds to its own class path. {@code merge=true} loads classes from a {@link MergedClassPath}.
+ */
 public class BootConfigLoader {
 
   private BootConfig configuration = null;
-  //  private String errorMessage = null;
   private List<String> classPath = null;
+  private int entryPointCount = 0;
   private String entryPoint = null;
+  private String classLoaderName = null;
+  private String classDataSharing = null;
+  private String preloadClasses = null;
+  private String fork = null;
+  private String daemon = null;
+  private String mergeClassPath = null;
+  private String readahead = null;
+  private final Map<String, String[]> directoryListings = new HashMap<String, String[]>();
+  private final List<String> wildcards = new ArrayList<String>();
+  private final List<String> deferred = new ArrayList<String>();
+  private final List<String> deferredPackages = new ArrayList<String>();
+  private final List<String> jvmOptions = new ArrayList<String>();
+  private final List<String> sharedClassPath = new ArrayList<String>();
+  private final Map<String, String> entryPoints = new LinkedHashMap<String, String>();
+  private final Map<String, List<String>> entryClassPaths = new LinkedHashMap<String, List<String>>();
 
   public boolean load(InputStream is) throws IOException {
     checkDoubleExecution();
-    List<String> lines = readLines(new BufferedReader(new InputStreamReader(is)));
-    checkForInvalidLines(lines);
-    collectEntryPointLine(lines);
-    collectClassPaths(lines);
+    classPath = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.startsWith("#"))
+          parseLine(line);
+      }
+    } finally {
+      reader.close();
+    }
     buildConfiguration();
     return true;
   }
@@ -46,58 +82,143 @@ public class BootConfigLoader {
     }
   }
 
-  private void collectClassPaths(List<String> lines) {
-    classPath = filterLinesByPrefix("cp=", lines);
-    if (classPath.size() == 0) {
-      throw new InvalidConfigurationException("Must have at least one 'cp' entry");
+  private void parseLine(String line) {
+    if (line.startsWith("ep=")) {
+      entryPoint = line.substring(3);
+      entryPointCount++;
+    } else if (line.startsWith("cp=")) {
+      addClassPath("cp", line.substring(3));
+    } else if (line.startsWith("cp.deferred=")) {
+      addDeferredClassPath(line.substring(12));
+    } else if (line.startsWith("pkg.deferred=")) {
+      deferredPackages.add(line.substring(13));
+    } else if (line.startsWith("cp.shared=")) {
+      sharedClassPath.addAll(addClassPath("cp.shared", line.substring(10)));
+    } else if (line.startsWith("ep.") && line.indexOf('=') > 3) {
+      addEntryPoint(line.substring(3, line.indexOf('=')), line.substring(line.indexOf('=') + 1));
+    } else if (line.startsWith("cp.") && line.indexOf('=') > 3) {
+      addEntryClassPath(line.substring(3, line.indexOf('=')), line.substring(line.indexOf('=') + 1));
+    } else if (line.startsWith("cl=")) {
+      classLoaderName = singleValue("cl", classLoaderName, line.substring(3));
+    } else if (line.startsWith("cds=")) {
+      classDataSharing = singleValue("cds", classDataSharing, line.substring(4));
+    } else if (line.startsWith("preload=")) {
+      preloadClasses = singleValue("preload", preloadClasses, line.substring(8));
+    } else if (line.startsWith("fork=")) {
+      fork = singleValue("fork", fork, line.substring(5));
+    } else if (line.startsWith("daemon=")) {
+      daemon = singleValue("daemon", daemon, line.substring(7));
+    } else if (line.startsWith("merge=")) {
+      mergeClassPath = singleValue("merge", mergeClassPath, line.substring(6));
+    } else if (line.startsWith("readahead=")) {
+      readahead = singleValue("readahead", readahead, line.substring(10));
+    } else if (line.startsWith("jvm=")) {
+      addJvmOption(line.substring(4));
+    } else {
+      throw new InvalidConfigurationException("Illegal line '" + line + "'");
     }
   }
 
-  private void collectEntryPointLine(List<String> lines) {
-    List<String> eps = filterLinesByPrefix("ep=", lines);
-    if (eps.size() == 1)
-      entryPoint = eps.get(0);
-    else
-      throw new InvalidConfigurationException("Must have exactly one 'ep' entry");
+  private String singleValue(String name, String previous, String value) {
+    if (previous != null)
+      throw new InvalidConfigurationException("Must have at most one '" + name + "' entry");
+    return value;
   }
 
-  private void checkForInvalidLines(List<String> lines) {
-    for (String line : lines) {
-      if (!line.startsWith("ep=") && !line.startsWith("cp="))
-        throw new InvalidConfigurationException("Illegal line '" + line + "'");
+  /**
+   * @return The entries added, more than one for a wildcard.
+   */
+  private List<String> addClassPath(String key, String entry) {
+    if (!ClassPathWildcard.isWildcard(entry)) {
+      classPath.add(entry);
+      return Collections.singletonList(entry);
+    }
+    ClassPathWildcard wildcard;
+    try {
+      wildcard = new ClassPathWildcard(entry);
+    } catch (IllegalArgumentException e) {
+      throw new InvalidConfigurationException(e.getMessage());
     }
+    List<String> files = wildcard.expand(directoryListings);
+    if (files == null)
+      throw new InvalidConfigurationException("Directory of '" + key + "=" + entry + "' does not exist");
+    classPath.addAll(files);
+    wildcards.add(entry);
+    return files;
   }
 
-  private List<String> filterLinesByPrefix(String prefix, List<String> a) {
-    LinkedList<String> out = new LinkedList<String>();
-    for (String line : a) {
-      if (line.startsWith(prefix))
-        out.add(line.substring(prefix.length()));
-    }
-    return out;
+  private void addEntryPoint(String name, String entryPoint) {
+    checkEntryPointName(name);
+    if (entryPoints.put(name, entryPoint) != null)
+      throw new InvalidConfigurationException("Must have at most one 'ep." + name + "' entry");
   }
 
-  private List<String> readLines(BufferedReader reader) throws IOException {
-    LinkedList<String> lines = new LinkedList<String>();
-    String line = readNonCommentLine(reader);
-    while (line != null) {
-      lines.add(line);
-      line = readNonCommentLine(reader);
+  private void addEntryClassPath(String name, String entry) {
+    checkEntryPointName(name);
+    List<String> entries = entryClassPaths.get(name);
+    if (entries == null) {
+      entries = new ArrayList<String>();
+      entryClassPaths.put(name, entries);
     }
-    reader.close();
-    return lines;
+    entries.addAll(addClassPath("cp." + name, entry));
   }
 
-  private void buildConfiguration() {
-      configuration = new BootConfig(entryPoint, classPath.toArray(new String[classPath.size()]));
+  private void checkEntryPointName(String name) {
+    if (name.equals("shared") || name.equals("deferred") || !name.matches("[A-Za-z0-9_-]+"))
+      throw new InvalidConfigurationException("Entry point name '" + name + "' must be letters, digits, '_' or '-' " +
+        "other than 'shared' and 'deferred'");
+  }
+
+  private void addDeferredClassPath(String entry) {
+    if (ClassPathWildcard.isWildcard(entry))
+      throw new InvalidConfigurationException("Wildcard is not allowed in 'cp.deferred=" + entry + "'");
+    classPath.add(entry);
+    deferred.add(entry);
   }
 
-  private String readNonCommentLine(BufferedReader reader) throws IOException {
-    String line = reader.readLine();
-    while (line != null && line.startsWith("#")) {
-      line = reader.readLine();
+  private void addJvmOption(String option) {
+    if (!option.startsWith("-"))
+      throw new InvalidConfigurationException("Entry 'jvm=" + option + "' must be an option starting with '-'");
+    jvmOptions.add(option);
+  }
+
+  private void buildConfiguration() {
+    if (entryPointCount != 1)
+      throw new InvalidConfigurationException("Must have exactly one 'ep' entry");
+    if (classPath.isEmpty())
+      throw new InvalidConfigurationException("Must have at least one 'cp' entry");
+    for (String name : entryClassPaths.keySet()) {
+      if (!entryPoints.containsKey(name))
+        throw new InvalidConfigurationException("Entry 'cp." + name + "' names no 'ep." + name + "' entry point");
+    }
+    if (flag("daemon", daemon) && !flag("fork", fork))
+      throw new InvalidConfigurationException("Entry 'daemon=true' needs 'fork=true'");
+    ClassLoaderType classLoaderType = ClassLoaderType.DEFAULT;
+    if (classLoaderName != null) {
+      classLoaderType = ClassLoaderType.fromConfigName(classLoaderName);
+      if (classLoaderType == null)
+        throw new InvalidConfigurationException("Unknown class loader '" + classLoaderName + "'");
     }
-    return line;
+    configuration = new BootConfig.Builder(entryPoint, classPath)
+      .classLoaderType(classLoaderType)
+      .classDataSharing(flag("cds", classDataSharing))
+      .preloadClasses(flag("preload", preloadClasses))
+      .classPathWildcards(wildcards)
+      .deferredClassPath(deferred)
+      .deferredPackages(deferredPackages)
+      .fork(flag("fork", fork))
+      .jvmOptions(jvmOptions)
+      .daemon(flag("daemon", daemon))
+      .sharedLibraryLayer(new SharedLibraryLayer(sharedClassPath, entryPoints, entryClassPaths))
+      .mergeClassPath(flag("merge", mergeClassPath))
+      .readahead(flag("readahead", readahead))
+      .build();
+  }
+
+  private boolean flag(String name, String value) {
+    if (value != null && !"true".equals(value) && !"false".equals(value))
+      throw new InvalidConfigurationException("Entry '" + name + "' must be true or false");
+    return "true".equals(value);
   }
 
   public BootConfig getConfiguration() {
@@ -27,7 +27,11 @@ public class BootConfigLocator {
   public static final String BOOT_FILE = "boot.cfg";
 
   public static File locateFile(Class<?> classToFind, String fileName) {
-    File result = locateFileFromSystemProperty();
+    return locateFile(classToFind, fileName, JVM_CONFIG_OPTION);
+  }
+
+  public static File locateFile(Class<?> classToFind, String fileName, String propertyName) {
+    File result = locateFileFromSystemProperty(propertyName);
     if (result != null)
       return result;
     else
@@ -53,9 +57,9 @@ public class BootConfigLocator {
     }
   }
 
-  private static File locateFileFromSystemProperty() {
-    if (System.getProperty(JVM_CONFIG_OPTION) != null) {
-      File file = new File(System.getProperty(JVM_CONFIG_OPTION));
+  private static File locateFileFromSystemProperty(String propertyName) {
+    if (System.getProperty(propertyName) != null) {
+      File file = new File(System.getProperty(propertyName));
       if (file.exists())
         return file;
     }
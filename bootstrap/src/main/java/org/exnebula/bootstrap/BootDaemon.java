@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+
+/**
+ * A spare JVM for the forked launches of one boot.cfg, started ahead of the next launch with the options of the forked
+ * JVM, so that launch does not wait for a new JVM to start and read the launch plan. It listens on a loopback port that
+ * it writes, with a random token, to {@value #PORT_FILE} next to boot.cfg, and {@link BootDaemonClient} sends it the
+ * arguments of a launch.
+ * <p>
+ * A daemon takes a single launch and then belongs to the application, as a JVM started by the client would: it stops
+ * listening, the application reads the client's standard input and writes to its standard output and error through
+ * the socket, and a shutdown hook sends back the status the JVM exits with, as far as {@link ExitRecorder} learns it,
+ * for the client to exit with. The hosted launch spawns the spare for the next one. A daemon that gets no launch
+ * stops after the idle time.
+ */
+public class BootDaemon {
+  public static final String PORT_FILE = "boot-daemon.port";
+  public static final String LOG_FILE = "boot-daemon.log";
+  public static final String IDLE_PROPERTY = "org.exnebula.bootstrap.daemon.idle";
+  public static final int DEFAULT_IDLE_SECONDS = 1800;
+
+  static final byte STARTED = 0;
+  static final byte FAILED = 1;
+  static final byte DECLINED = 2;
+  static final byte OUTPUT = 3;
+  static final byte ERROR = 4;
+  static final byte EXIT = 5;
+  static final String LAUNCHED = "launched";
+  private static final int CHECK_MILLIS = 1000;
+  private static final int REQUEST_TIMEOUT_MILLIS = 10000;
+  private static final int MAXIMUM_ARGUMENTS = 10000;
+  private static final int OUTPUT_BUFFER = 8192;
+
+  private final File configFile;
+  private final File portFile;
+  private final LaunchPlanCache planCache;
+  private final long idleMillis;
+  private final String token;
+  private final ServerSocket server;
+  private volatile long lastActivity;
+  private volatile boolean closed = false;
+  private Socket socket = null;
+  private String entryPointName = null;
+  private String[] arguments = null;
+
+  public BootDaemon(File configFile, long idleMillis) throws IOException {
+    this.configFile = configFile.getAbsoluteFile();
+    this.portFile = portFileFor(this.configFile);
+    this.planCache = new LaunchPlanCache(this.configFile);
+    this.idleMillis = idleMillis;
+    this.token = newToken();
+    this.server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    server.setSoTimeout((int) Math.max(1, Math.min(CHECK_MILLIS, idleMillis)));
+    // Reading the plan once loads the classes and pages the files the launch needs
+    planCache.loadValidPlan();
+    writePortFile();
+    lastActivity = System.currentTimeMillis();
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: BootDaemon <boot.cfg>");
+      System.exit(2);
+    }
+    File configFile = new File(args[0]);
+    if (portFileFor(configFile).exists()) {
+      System.out.println("Boot daemon already running for " + configFile);
+      return;
+    }
+    ExitRecorder exitRecorder = new ExitRecorder();
+    exitRecorder.install();
+    BootDaemon daemon = new BootDaemon(configFile, Long.getLong(IDLE_PROPERTY, DEFAULT_IDLE_SECONDS) * 1000L);
+    String reason = daemon.run();
+    if (LAUNCHED.equals(reason)) {
+      daemon.host(exitRecorder);
+      return;
+    }
+    System.out.println("Boot daemon for " + configFile + " stopped: " + reason);
+    System.exit(0);
+  }
+
+  public static File portFileFor(File configFile) {
+    return new File(configFile.getAbsoluteFile().getParentFile(), PORT_FILE);
+  }
+
+  /**
+   * Waits for a launch until the daemon is idle or closed. Requests with the wrong token or from another working
+   * directory are declined, since relative class path entries would not name the same files.
+   *
+   * @return Why it stopped: {@value #LAUNCHED} once it took a launch, {@code idle}, {@code closed} or the failure of
+   *         the port.
+   */
+  public String run() {
+    String reason = null;
+    while (reason == null) {
+      try {
+        Socket accepted = server.accept();
+        lastActivity = System.currentTimeMillis();
+        if (takeLaunch(accepted))
+          reason = LAUNCHED;
+      } catch (SocketTimeoutException e) {
+        reason = checkStop();
+      } catch (IOException e) {
+        reason = closed ? "closed" : String.valueOf(e);
+      }
+    }
+    close();
+    return reason;
+  }
+
+  /**
+   * Stops accepting launches; {@link #run()} returns.
+   */
+  public void close() {
+    closed = true;
+    try {
+      server.close();
+    } catch (IOException e) {
+      // Nothing more to release
+    }
+    if (token.equals(readToken(portFile)))
+      portFile.delete();
+  }
+
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  /**
+   * Runs the launch taken by {@link #run()} in this JVM. System.in, System.out and System.err go through the socket
+   * from now on, and a shutdown hook sends the exit status once the application is done with the JVM.
+   */
+  void host(final ExitRecorder exitRecorder) throws IOException {
+    final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    final PrintStream out = new PrintStream(new BufferedOutputStream(new FrameOutputStream(output, OUTPUT),
+      OUTPUT_BUFFER), true);
+    final PrintStream err = new PrintStream(new BufferedOutputStream(new FrameOutputStream(output, ERROR),
+      OUTPUT_BUFFER), true);
+    System.setIn(new FrameInputStream(new DataInputStream(new BufferedInputStream(socket.getInputStream()))));
+    System.setOut(out);
+    System.setErr(err);
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      public void run() {
+        out.flush();
+        err.flush();
+        try {
+          synchronized (output) {
+            output.writeByte(EXIT);
+            output.writeInt(exitRecorder.getStatus());
+            output.flush();
+          }
+        } catch (IOException e) {
+          // The client is gone
+        }
+      }
+    }, "boot-daemon-exit"));
+
+    RecordingReporter reporter = new RecordingReporter();
+    Boot boot = new Boot(reporter, new FileBootInputSource(configFile), new FileChecker(), planCache);
+    boot.setDaemonLaunch(true);
+    boot.setEntryPointName(entryPointName.length() == 0 ? null : entryPointName);
+    boot.start(arguments);
+    if (reporter.exception != null) {
+      exitRecorder.setStatus(1);
+      synchronized (output) {
+        output.writeByte(FAILED);
+        output.writeUTF(String.valueOf(reporter.step));
+        output.writeUTF(String.valueOf(reporter.exception));
+        output.flush();
+      }
+    }
+  }
+
+  private String checkStop() {
+    if (closed)
+      return "closed";
+    if (System.currentTimeMillis() - lastActivity >= idleMillis)
+      return "idle";
+    return null;
+  }
+
+  /**
+   * Reads the token, the working directory, the entry point name and the arguments of a launch, and answers whether
+   * this daemon takes it.
+   */
+  private boolean takeLaunch(Socket accepted) {
+    try {
+      accepted.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+      DataInputStream input = new DataInputStream(new BufferedInputStream(accepted.getInputStream()));
+      DataOutputStream output = new DataOutputStream(accepted.getOutputStream());
+      boolean valid = token.equals(input.readUTF()) && new File("").getAbsolutePath().equals(input.readUTF());
+      String name = valid ? input.readUTF() : null;
+      int count = valid ? input.readInt() : -1;
+      if (count < 0 || count > MAXIMUM_ARGUMENTS) {
+        output.writeByte(DECLINED);
+        output.flush();
+        accepted.close();
+        return false;
+      }
+      String[] launchArguments = new String[count];
+      for (int i = 0; i < count; i++) {
+        launchArguments[i] = input.readUTF();
+      }
+      accepted.setSoTimeout(0);
+      output.writeByte(STARTED);
+      output.flush();
+      socket = accepted;
+      entryPointName = name;
+      arguments = launchArguments;
+      return true;
+    } catch (IOException e) {
+      try {
+        accepted.close();
+      } catch (IOException alreadyClosed) {
+        // Nothing more to release
+      }
+      return false;
+    }
+  }
+
+  private void writePortFile() throws IOException {
+    File temporary = new File(portFile.getPath() + ".tmp");
+    FileOutputStream output = new FileOutputStream(temporary);
+    try {
+      temporary.setReadable(false, false);
+      temporary.setReadable(true, true);
+      output.write((getPort() + " " + token + "\n").getBytes("UTF-8"));
+    } finally {
+      output.close();
+    }
+    if (!temporary.renameTo(portFile)) {
+      temporary.delete();
+      server.close();
+      throw new IOException("Could not write " + portFile);
+    }
+  }
+
+  /**
+   * @return Port and token of the port file, null if it cannot be read.
+   */
+  static String[] readPortFile(File portFile) {
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(portFile), "UTF-8"));
+      try {
+        String line = reader.readLine();
+        String[] fields = line == null ? new String[0] : line.split(" ");
+        return fields.length == 2 ? fields : null;
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static String readToken(File portFile) {
+    String[] fields = readPortFile(portFile);
+    return fields == null ? null : fields[1];
+  }
+
+  private static String newToken() {
+    byte[] bytes = new byte[16];
+    new SecureRandom().nextBytes(bytes);
+    StringBuilder token = new StringBuilder();
+    for (byte b : bytes) {
+      token.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return token.toString();
+  }
+
+  /**
+   * Sends what is written as frames of one type: the type, the length and the bytes.
+   */
+  private static class FrameOutputStream extends OutputStream {
+    private final DataOutputStream output;
+    private final byte type;
+
+    FrameOutputStream(DataOutputStream output, byte type) {
+      this.output = output;
+      this.type = type;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      synchronized (output) {
+        output.writeByte(type);
+        output.writeInt(length);
+        output.write(bytes, offset, length);
+        output.flush();
+      }
+    }
+  }
+
+  /**
+   * Reads the standard input of the client, sent as frames of a length and the bytes; a negative length ends it.
+   */
+  private static class FrameInputStream extends InputStream {
+    private final DataInputStream input;
+    private int remaining = 0;
+    private boolean ended = false;
+
+    FrameInputStream(DataInputStream input) {
+      this.input = input;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0)
+        return 0;
+      while (remaining == 0) {
+        if (ended)
+          return -1;
+        try {
+          remaining = Math.max(0, input.readInt());
+          ended = remaining == 0;
+        } catch (EOFException e) {
+          ended = true;
+        }
+      }
+      int count = input.read(bytes, offset, Math.min(length, remaining));
+      if (count < 0) {
+        ended = true;
+        remaining = 0;
+        return -1;
+      }
+      remaining -= count;
+      return count;
+    }
+
+    @Override
+    public synchronized int available() throws IOException {
+      return Math.min(remaining, input.available());
+    }
+  }
+
+  private static class RecordingReporter implements BootErrorReporter {
+    private String step;
+    private Exception exception;
+
+    public void reportFailure(String contextMessage, Exception exception) {
+      this.step = contextMessage;
+      this.exception = exception;
+    }
+  }
+}
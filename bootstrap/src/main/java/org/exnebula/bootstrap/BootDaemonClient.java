@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thin client of a {@link BootDaemon}: hands a launch to the spare daemon of a boot.cfg when one is listening, and
+ * starts new daemons in the background.
+ */
+public class BootDaemonClient {
+  private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+  private static final int INPUT_BUFFER = 8192;
+
+  /**
+   * Sends the launch to the daemon of the boot.cfg, then passes the standard streams of this JVM to and from the
+   * application until the daemon JVM exits. A port file whose daemon does not answer is deleted.
+   *
+   * @return Exit status of the daemon JVM, null if there is no daemon or it declined the launch, so the caller starts
+   *         the application itself.
+   */
+  public static Integer launch(File configFile, String[] args, BootErrorReporter reporter) {
+    return launch(configFile, args, reporter, System.in, System.out, System.err);
+  }
+
+  static Integer launch(File configFile, String[] args, BootErrorReporter reporter, InputStream in, PrintStream out,
+                        PrintStream err) {
+    if (configFile == null)
+      return null;
+    File portFile = BootDaemon.portFileFor(configFile);
+    if (!portFile.isFile())
+      return null;
+    String[] address = BootDaemon.readPortFile(portFile);
+    if (address == null)
+      return null;
+    Socket socket = new Socket();
+    try {
+      DataOutputStream output;
+      try {
+        socket.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), Integer.parseInt(address[0])),
+          CONNECT_TIMEOUT_MILLIS);
+        output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        output.writeUTF(address[1]);
+        output.writeUTF(new File("").getAbsolutePath());
+        output.writeUTF(System.getProperty(Boot.ENTRY_PROPERTY, ""));
+        output.writeInt(args.length);
+        for (String arg : args) {
+          output.writeUTF(arg);
+        }
+        output.flush();
+      } catch (IOException e) {
+        portFile.delete();
+        return null;
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      return readAnswer(socket, output, in, out, err, reporter);
+    } finally {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Already closed
+      }
+    }
+  }
+
+  /**
+   * A daemon that stops without sending an exit status, because it was killed, ends the launch with status 1.
+   */
+  private static Integer readAnswer(Socket socket, DataOutputStream output, InputStream in, PrintStream out,
+                                    PrintStream err, BootErrorReporter reporter) {
+    DataInputStream input;
+    try {
+      input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      if (input.readByte() != BootDaemon.STARTED)
+        return null;
+    } catch (IOException e) {
+      return null;
+    }
+    startInputForwarding(in, output);
+    int status = 1;
+    try {
+      while (true) {
+        byte frame = input.readByte();
+        if (frame == BootDaemon.OUTPUT || frame == BootDaemon.ERROR) {
+          byte[] bytes = new byte[input.readInt()];
+          input.readFully(bytes);
+          PrintStream target = frame == BootDaemon.OUTPUT ? out : err;
+          target.write(bytes);
+          target.flush();
+        } else if (frame == BootDaemon.FAILED) {
+          reporter.reportFailure(input.readUTF(), new BootStrapException(input.readUTF()));
+        } else if (frame == BootDaemon.EXIT) {
+          status = input.readInt();
+        }
+      }
+    } catch (IOException e) {
+      // The daemon JVM exited
+    }
+    return status;
+  }
+
+  /**
+   * Sends the standard input as frames of a length and the bytes, and a negative length once it ends.
+   */
+  private static void startInputForwarding(final InputStream in, final DataOutputStream output) {
+    new DaemonThreadFactory("boot-daemon-input").newThread(new Runnable() {
+      public void run() {
+        byte[] buffer = new byte[INPUT_BUFFER];
+        try {
+          int count;
+          while ((count = in.read(buffer)) >= 0) {
+            if (count > 0) {
+              output.writeInt(count);
+              output.write(buffer, 0, count);
+              output.flush();
+            }
+          }
+          output.writeInt(-1);
+          output.flush();
+        } catch (IOException e) {
+          // The daemon JVM exited
+        }
+      }
+    }).start();
+  }
+
+  /**
+   * Starts a daemon for the boot.cfg in a new JVM with the given options, logging to {@value BootDaemon#LOG_FILE} until
+   * it takes a launch.
+   * The daemon exits at once if another one wrote its port file first.
+   */
+  public static void spawn(File configFile, List<String> jvmOptions) throws IOException {
+    File directory = configFile.getAbsoluteFile().getParentFile();
+    List<String> command = new ArrayList<String>();
+    command.add(ForkedLauncher.defaultJavaExecutable().getPath());
+    command.addAll(jvmOptions);
+    command.add("-cp");
+    command.add(ForkedLauncher.bootstrapLocation().getPath());
+    command.add(BootDaemon.class.getName());
+    command.add(configFile.getAbsolutePath());
+    Process process = new ProcessBuilder(command).redirectErrorStream(true)
+      .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(directory, BootDaemon.LOG_FILE))).start();
+    process.getOutputStream().close();
+  }
+}
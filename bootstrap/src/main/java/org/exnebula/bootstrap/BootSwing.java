@@ -16,11 +16,27 @@
  */
 package org.exnebula.bootstrap;
 
+import java.io.File;
+
 public class BootSwing {
   public static void main(String[] args) {
-    Boot boot = new Boot(
-      new SwingBootErrorReporter(),
-      new DefaultBootInputSource());
+    DefaultBootInputSource inputSource = new DefaultBootInputSource();
+    BootErrorReporter reporter = new SwingBootErrorReporter();
+    Integer exitStatus = BootDaemonClient.launch(inputSource.getConfigFile(), args, reporter);
+    if (exitStatus != null)
+      System.exit(exitStatus);
+    LaunchPlanCache planCache = LaunchPlanCache.forConfigFile(inputSource.getConfigFile());
+    final Boot boot = new Boot(
+      reporter,
+      inputSource,
+      new FileChecker(),
+      planCache);
+    final File reportDirectory = planCache == null ? null : planCache.getDirectory();
+    boot.setLocalLaunchHook(new Runnable() {
+      public void run() {
+        SwingWarmup.start(reportDirectory, boot.getTimeline());
+      }
+    });
     boot.start(args);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records when each startup phase began and ended, on which thread and how many bytes that thread allocated
+ * meanwhile, plus named counters. The result is written as a JSON timeline and appended to a history file that
+ * keeps the last {@value #HISTORY_SIZE} launches. Launches that finish at the same time take turns through a lock
+ * file, so none of them drops the line of another from the history.
+ * <p>
+ * Allocation is only measured when {@value #ALLOCATION_PROPERTY} is true, loading the management beans costs
+ * tens of milliseconds, more than most of the phases being measured.
+ */
+public class BootTimeline {
+  public static final String TIMELINE_FILE = "boot-timeline.json";
+  public static final String HISTORY_FILE = "boot-history.jsonl";
+  public static final String LOCK_FILE = "boot-history.lock";
+  public static final int HISTORY_SIZE = 100;
+  public static final String ALLOCATION_PROPERTY = "org.exnebula.bootstrap.timeline.allocation";
+
+  private final long createdMillis = System.currentTimeMillis();
+  private final long originNanos = System.nanoTime();
+  private final List<Phase> phases = new ArrayList<Phase>();
+  private final Map<String, String> attributes = new LinkedHashMap<String, String>();
+  private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+  private final ThreadMXBean threads;
+
+  public BootTimeline() {
+    this(Boolean.getBoolean(ALLOCATION_PROPERTY));
+  }
+
+  BootTimeline(boolean measureAllocation) {
+    threads = measureAllocation ? allocationMeasuringThreadBean() : null;
+  }
+
+  public synchronized void begin(String name) {
+    phases.add(new Phase(name, Thread.currentThread(), System.nanoTime() - originNanos, allocatedBytes()));
+  }
+
+  /**
+   * Ends the most recent phase with this name that is still open.
+   */
+  public synchronized void end(String name) {
+    for (int i = phases.size() - 1; i >= 0; i--) {
+      Phase phase = phases.get(i);
+      if (phase.name.equals(name) && phase.endNanos < 0) {
+        phase.endNanos = System.nanoTime() - originNanos;
+        if (phase.startAllocatedBytes >= 0 && phase.threadId == Thread.currentThread().getId())
+          phase.allocatedBytes = allocatedBytes() - phase.startAllocatedBytes;
+        return;
+      }
+    }
+  }
+
+  public synchronized void attribute(String name, String value) {
+    attributes.put(name, value);
+  }
+
+  public synchronized void count(String name, long delta) {
+    Long current = counters.get(name);
+    counters.put(name, current == null ? delta : current + delta);
+  }
+
+  public synchronized long getCount(String name) {
+    Long current = counters.get(name);
+    return current == null ? 0 : current;
+  }
+
+  public synchronized List<String> getPhaseNames() {
+    List<String> names = new ArrayList<String>(phases.size());
+    for (Phase phase : phases) {
+      names.add(phase.name);
+    }
+    return names;
+  }
+
+  public synchronized String toJson() {
+    StringBuilder json = new StringBuilder("{");
+    json.append("\"startedAtMillis\":").append(createdMillis);
+    json.append(",\"jvmStartedAtMillis\":").append(jvmStartTime());
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      json.append(',');
+      appendString(json, attribute.getKey()).append(':');
+      appendString(json, attribute.getValue());
+    }
+    json.append(",\"phases\":[");
+    for (int i = 0; i < phases.size(); i++) {
+      if (i > 0)
+        json.append(',');
+      phases.get(i).appendTo(json);
+    }
+    json.append("],\"counters\":{");
+    boolean first = true;
+    for (Map.Entry<String, Long> counter : counters.entrySet()) {
+      if (!first)
+        json.append(',');
+      appendString(json, counter.getKey()).append(':').append(counter.getValue());
+      first = false;
+    }
+    return json.append("}}").toString();
+  }
+
+  public void writeTo(File directory) throws IOException {
+    String json = toJson();
+    // A FileLock is held by the JVM, so threads of the same JVM also need to take turns
+    synchronized (BootTimeline.class) {
+      RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+      try {
+        FileLock lock = lockFile.getChannel().lock();
+        try {
+          writeLines(new File(directory, TIMELINE_FILE), Collections.singletonList(json));
+          File historyFile = new File(directory, HISTORY_FILE);
+          LinkedList<String> history = readLines(historyFile);
+          history.add(json);
+          while (history.size() > HISTORY_SIZE) {
+            history.removeFirst();
+          }
+          writeLines(historyFile, history);
+        } finally {
+          lock.release();
+        }
+      } finally {
+        lockFile.close();
+      }
+    }
+  }
+
+  private long allocatedBytes() {
+    if (threads == null)
+      return -1;
+    return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static ThreadMXBean allocationMeasuringThreadBean() {
+    try {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean &&
+        ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+        ((com.sun.management.ThreadMXBean) bean).setThreadAllocatedMemoryEnabled(true);
+        return bean;
+      }
+    } catch (LinkageError e) {
+      // Not a HotSpot JVM, allocation is not measured
+    } catch (UnsupportedOperationException e) {
+      // Allocation is not measured
+    }
+    return null;
+  }
+
+  private static long jvmStartTime() {
+    return ManagementFactory.getRuntimeMXBean().getStartTime();
+  }
+
+  private static StringBuilder appendString(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\')
+        json.append('\\').append(c);
+      else if (c < 0x20)
+        json.append(String.format("\\u%04x", (int) c));
+      else
+        json.append(c);
+    }
+    return json.append('"');
+  }
+
+  private static LinkedList<String> readLines(File file) throws IOException {
+    LinkedList<String> lines = new LinkedList<String>();
+    if (!file.isFile())
+      return lines;
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.length() > 0)
+          lines.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return lines;
+  }
+
+  /**
+   * Writes a temporary file and renames it, so readers never see a partial file.
+   */
+  private static void writeLines(File file, List<String> lines) throws IOException {
+    File temporary = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8"));
+    try {
+      for (String line : lines) {
+        writer.write(line);
+        writer.write('\n');
+      }
+    } finally {
+      writer.close();
+    }
+    if (temporary.renameTo(file))
+      return;
+    // Windows does not rename over an existing file
+    file.delete();
+    if (!temporary.renameTo(file)) {
+      temporary.delete();
+      throw new IOException("Could not write " + file);
+    }
+  }
+
+  private static class Phase {
+    private final String name;
+    private final String threadName;
+    private final long threadId;
+    private final long startNanos;
+    private final long startAllocatedBytes;
+    private long endNanos = -1;
+    private long allocatedBytes = -1;
+
+    Phase(String name, Thread thread, long startNanos, long startAllocatedBytes) {
+      this.name = name;
+      this.threadName = thread.getName();
+      this.threadId = thread.getId();
+      this.startNanos = startNanos;
+      this.startAllocatedBytes = startAllocatedBytes;
+    }
+
+    void appendTo(StringBuilder json) {
+      json.append("{\"name\":");
+      appendString(json, name);
+      json.append(",\"thread\":");
+      appendString(json, threadName);
+      json.append(",\"startNanos\":").append(startNanos);
+      json.append(",\"endNanos\":").append(endNanos);
+      json.append(",\"durationNanos\":").append(endNanos < 0 ? -1 : endNanos - startNanos);
+      json.append(",\"allocatedBytes\":").append(allocatedBytes);
+      json.append('}');
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manages the dynamic AppCDS archive for a launch plan. The archive name is derived from the plan fingerprint and
+ * the JVM version, so any change to boot.cfg, to a jar or to the JVM makes the next launch dump a new archive.
+ * Setting the system property {@value #DISABLE_PROPERTY} to false forks without an archive, to compare timings.
+ */
+public class ClassDataSharing {
+  public static final String DISABLE_PROPERTY = "org.exnebula.bootstrap.cds";
+  public static final String REPORT_FILE = "boot-cds.log";
+  private static final String ARCHIVE_PREFIX = "boot-";
+  private static final String ARCHIVE_SUFFIX = ".jsa";
+  private static final int MINIMUM_JAVA_VERSION = 13;
+
+  private final File directory;
+
+  public ClassDataSharing(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Dynamic archives (-XX:ArchiveClassesAtExit) are available from Java 13.
+   */
+  public static boolean isSupported() {
+    return javaFeatureVersion(System.getProperty("java.specification.version", "1")) >= MINIMUM_JAVA_VERSION;
+  }
+
+  /**
+   * The archive is named after the SHA-1 fingerprint of the plan and the JVM version, so no two plans or JVMs share
+   * one.
+   */
+  public File archiveFor(LaunchPlan plan) {
+    String jvmVersion = System.getProperty("java.vm.version", "unknown").replaceAll("[^A-Za-z0-9._+-]", "_");
+    return new File(directory, ARCHIVE_PREFIX + plan.getFingerprint() + "-" + jvmVersion + ARCHIVE_SUFFIX);
+  }
+
+  public File getReportFile() {
+    return new File(directory, REPORT_FILE);
+  }
+
+  public List<String> jvmOptions(LaunchPlan plan) {
+    List<String> options = new ArrayList<String>();
+    String label;
+    File archive = archiveFor(plan);
+    if ("false".equals(System.getProperty(DISABLE_PROPERTY))) {
+      label = "archive=none";
+    } else if (archive.isFile()) {
+      options.add("-XX:SharedArchiveFile=" + archive.getPath());
+      label = "archive=used";
+    } else {
+      removeArchivesOtherThan(archive);
+      options.add("-XX:ArchiveClassesAtExit=" + archive.getPath());
+      label = "archive=created";
+    }
+    options.add("-D" + ForkedMain.REPORT_FILE_PROPERTY + "=" + getReportFile().getPath());
+    options.add("-D" + ForkedMain.REPORT_LABEL_PROPERTY + "=" + label);
+    options.add("-D" + ForkedMain.BOOT_START_PROPERTY + "=" + ManagementFactory.getRuntimeMXBean().getStartTime());
+    options.add("-D" + ForkedMain.FORK_START_PROPERTY + "=" + System.currentTimeMillis());
+    return options;
+  }
+
+  private void removeArchivesOtherThan(final File archive) {
+    File[] stale = directory.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.startsWith(ARCHIVE_PREFIX) && name.endsWith(ARCHIVE_SUFFIX) && !name.equals(archive.getName());
+      }
+    });
+    if (stale != null) {
+      for (File file : stale) {
+        file.delete();
+      }
+    }
+  }
+
+  static int javaFeatureVersion(String specificationVersion) {
+    String version = specificationVersion.startsWith("1.") ? specificationVersion.substring(2) : specificationVersion;
+    int end = 0;
+    while (end < version.length() && Character.isDigit(version.charAt(end))) {
+      end++;
+    }
+    return end == 0 ? 0 : Integer.parseInt(version.substring(0, end));
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the first request for each class, in order, until the deadline or the maximum number of classes is
+ * reached. Requests made by the preloader threads are not what the application needs, so they are ignored.
+ */
+class ClassLoadRecorder implements ClassLoadListener {
+  private final long deadline;
+  private final int maximumClasses;
+  private final ConcurrentMap<String, Boolean> seen = new ConcurrentHashMap<String, Boolean>();
+  private final ConcurrentLinkedQueue<String> order = new ConcurrentLinkedQueue<String>();
+  private final AtomicInteger count = new AtomicInteger();
+
+  ClassLoadRecorder(long durationMillis, int maximumClasses) {
+    this.deadline = System.nanoTime() + durationMillis * 1000000L;
+    this.maximumClasses = maximumClasses;
+  }
+
+  public void classLoaded(String className) {
+    if (ClassPreloader.isPreloadThread() || System.nanoTime() - deadline > 0)
+      return;
+    if (seen.putIfAbsent(className, Boolean.TRUE) == null && count.incrementAndGet() <= maximumClasses)
+      order.add(className);
+  }
+
+  List<String> getRecordedClasses() {
+    return new ArrayList<String>(order);
+  }
+}
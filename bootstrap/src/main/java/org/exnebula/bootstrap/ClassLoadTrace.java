@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Keeps the classes the entry point asked for in the first seconds of the last recorded launch in boot.trace, next
+ * to boot.cfg. Each launch preloads the saved trace in the background; when the launch plan fingerprint changed since
+ * it was recorded, a new trace is recorded at the same time. The application never asks for a class a preload thread
+ * already defined, so the new trace starts with the saved classes that still loaded, followed by those the
+ * application asked for. Entries that no longer exist are skipped.
+ */
+public class ClassLoadTrace {
+  public static final String TRACE_FILE = "boot.trace";
+  public static final String DURATION_PROPERTY = "org.exnebula.bootstrap.trace.seconds";
+  private static final String FINGERPRINT_PREFIX = "#fingerprint=";
+  private static final int DEFAULT_DURATION_SECONDS = 10;
+  private static final int MAXIMUM_CLASSES = 50000;
+
+  private final File traceFile;
+  private String savedFingerprint = null;
+  private List<String> savedClasses = Collections.emptyList();
+  private ClassLoadRecorder recorder = null;
+  private LauncherClassLoader recordedLoader = null;
+  private String recordedFingerprint = null;
+  private ClassPreloader preloader = null;
+
+  public ClassLoadTrace(File directory) {
+    this.traceFile = new File(directory, TRACE_FILE);
+  }
+
+  public File getTraceFile() {
+    return traceFile;
+  }
+
+  public void start(LaunchPlan plan, LauncherClassLoader classLoader) {
+    readTrace();
+    if (!savedClasses.isEmpty())
+      startPreloading(classLoader);
+    if (!plan.getFingerprint().equals(savedFingerprint))
+      startRecording(plan.getFingerprint(), classLoader, Long.getLong(DURATION_PROPERTY, DEFAULT_DURATION_SECONDS) * 1000);
+  }
+
+  private synchronized void startPreloading(LauncherClassLoader classLoader) {
+    preloader = new ClassPreloader(savedClasses, classLoader);
+    preloader.start(preloadThreads());
+  }
+
+  List<String> getSavedClasses() {
+    return savedClasses;
+  }
+
+  String getSavedFingerprint() {
+    return savedFingerprint;
+  }
+
+  synchronized void startRecording(String fingerprint, LauncherClassLoader classLoader, long durationMillis) {
+    recorder = new ClassLoadRecorder(durationMillis, MAXIMUM_CLASSES);
+    recordedLoader = classLoader;
+    recordedFingerprint = fingerprint;
+    classLoader.addClassLoadListener(recorder);
+    new Timer("class-trace", true).schedule(new TimerTask() {
+      @Override
+      public void run() {
+        stopRecording();
+      }
+    }, durationMillis);
+    Runtime.getRuntime().addShutdownHook(new Thread("class-trace-exit") {
+      @Override
+      public void run() {
+        stopRecording();
+      }
+    });
+  }
+
+  synchronized void stopRecording() {
+    if (recorder == null)
+      return;
+    recordedLoader.removeClassLoadListener(recorder);
+    try {
+      writeTrace(recordedFingerprint, tracedClasses());
+    } catch (IOException e) {
+      // Only costs the speed up of the next launch
+    }
+    recorder = null;
+    recordedLoader = null;
+  }
+
+  private List<String> tracedClasses() {
+    if (preloader == null)
+      return recorder.getRecordedClasses();
+    Set<String> classes = new LinkedHashSet<String>(preloader.getLoadedClasses());
+    classes.addAll(recorder.getRecordedClasses());
+    return new ArrayList<String>(classes).subList(0, Math.min(classes.size(), MAXIMUM_CLASSES));
+  }
+
+  void readTrace() {
+    if (!traceFile.isFile())
+      return;
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile), "UTF-8"));
+      try {
+        String line = reader.readLine();
+        if (line == null || !line.startsWith(FINGERPRINT_PREFIX))
+          return;
+        List<String> classes = new ArrayList<String>();
+        String className;
+        while ((className = reader.readLine()) != null) {
+          if (className.length() > 0)
+            classes.add(className);
+        }
+        savedFingerprint = line.substring(FINGERPRINT_PREFIX.length());
+        savedClasses = classes;
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      savedFingerprint = null;
+      savedClasses = Collections.emptyList();
+    }
+  }
+
+  private void writeTrace(String fingerprint, List<String> classes) throws IOException {
+    File temporary = new File(traceFile.getPath() + ".tmp");
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8"));
+    try {
+      writer.write(FINGERPRINT_PREFIX + fingerprint + "\n");
+      for (String className : classes) {
+        writer.write(className);
+        writer.write('\n');
+      }
+    } finally {
+      writer.close();
+    }
+    traceFile.delete();
+    if (!temporary.renameTo(traceFile))
+      throw new IOException("Could not write " + traceFile);
+  }
+
+  private static int preloadThreads() {
+    return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+  }
+}
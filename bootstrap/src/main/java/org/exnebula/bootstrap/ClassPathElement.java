@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.CodeSigner;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * One jar or directory of a launcher class loader. Elements answer lookups for entries by their '/' separated
+ * name and list the packages they contain so an index can route lookups to them.
+ */
+abstract class ClassPathElement implements Closeable {
+  private final URL url;
+
+  protected ClassPathElement(URL url) {
+    this.url = url;
+  }
+
+  public URL getURL() {
+    return url;
+  }
+
+  public abstract Set<String> listPackages() throws IOException;
+
+  /**
+   * @return The content of the entry or null if the element does not contain it.
+   */
+  public abstract ByteBuffer read(String name) throws IOException;
+
+  /**
+   * @return A URL for the entry or null if the element does not contain it.
+   */
+  public abstract URL findResource(String name);
+
+  /**
+   * @return The manifest of the element or null if it has none.
+   */
+  public Manifest readManifest() throws IOException {
+    ByteBuffer content = read(JarFile.MANIFEST_NAME);
+    if (content == null)
+      return null;
+    byte[] bytes = new byte[content.remaining()];
+    content.duplicate().get(bytes);
+    return new Manifest(new ByteArrayInputStream(bytes));
+  }
+
+  /**
+   * @return The signers of the entry or null if it is not signed. Elements that can hold signed jars verify the
+   *         entry by reading it again, but only when the jar is signed.
+   */
+  public CodeSigner[] getCodeSigners(String name) throws IOException {
+    return null;
+  }
+
+  public static ClassPathElement open(URL url) throws IOException {
+    File file = toFile(url);
+    if (!file.exists())
+      return new MissingClassPathElement(url);
+    else if (file.isDirectory())
+      return new DirectoryClassPathElement(url, file);
+    else
+      return new JarClassPathElement(url, file);
+  }
+
+  /**
+   * Like {@link #open(URL)}, but jars are memory mapped. Jars that cannot be mapped are read with a JarFile.
+   */
+  public static ClassPathElement openMapped(URL url) throws IOException {
+    File file = toFile(url);
+    if (!file.isFile())
+      return open(url);
+    MappedJarClassPathElement element = new MappedJarClassPathElement(url, file);
+    try {
+      // Only a JarFile verifies signed jars
+      return element.isSigned() ? new JarClassPathElement(url, file) : element;
+    } catch (ZipException e) {
+      return new JarClassPathElement(url, file);
+    }
+  }
+
+  /**
+   * Like {@link #open(URL)}, but jars are opened through the pool whenever they are read.
+   */
+  public static ClassPathElement openPooled(URL url, JarFilePool pool) throws IOException {
+    File file = toFile(url);
+    return file.isFile() ? new PooledJarClassPathElement(url, file, pool) : open(url);
+  }
+
+  static File toFile(URL url) throws MalformedURLException {
+    if (!"file".equals(url.getProtocol()))
+      throw new MalformedURLException("Only file URLs are supported: " + url);
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException e) {
+      return new File(url.getPath());
+    }
+  }
+
+  static String packageOf(String name) {
+    int separator = name.lastIndexOf('/');
+    return separator < 0 ? "" : name.substring(0, separator);
+  }
+
+  static boolean isSignatureFile(String name) {
+    return name.regionMatches(true, 0, "META-INF/", 0, 9) && name.indexOf('/', 9) < 0
+      && name.regionMatches(true, name.length() - 3, ".SF", 0, 3);
+  }
+
+  static boolean hasSignatureFile(JarFile jar) {
+    Enumeration<? extends ZipEntry> entries = jar.entries();
+    while (entries.hasMoreElements()) {
+      if (isSignatureFile(entries.nextElement().getName()))
+        return true;
+    }
+    return false;
+  }
+
+  static byte[] readFully(InputStream input, long expectedSize) throws IOException {
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream(expectedSize > 0 ? (int) expectedSize : 4096);
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = input.read(buffer)) > 0) {
+        output.write(buffer, 0, count);
+      }
+      return output.toByteArray();
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Like URLClassLoader, entries that do not exist are ignored.
+   */
+  private static class MissingClassPathElement extends ClassPathElement {
+    MissingClassPathElement(URL url) {
+      super(url);
+    }
+
+    @Override
+    public Set<String> listPackages() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public ByteBuffer read(String name) {
+      return null;
+    }
+
+    @Override
+    public URL findResource(String name) {
+      return null;
+    }
+
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.*;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams the class path files on background threads so they are in the operating system page cache before the class
+ * loader reads them at random. Files are read hottest first, by the number of classes the application loaded from
+ * them in the first seconds of a launch recorded in boot.readahead next to boot.cfg, then largest first.
+ * <p>
+ * Reading is throttled so the boot's own reads go first: each thread times its chunks and, when a chunk takes several
+ * times longer per byte than the moving average, the disk is busy and the thread pauses, doubling the pause while
+ * the contention lasts and halving it once reads are back to their usual speed.
+ */
+public class ClassPathReadahead {
+  public static final String PROFILE_FILE = "boot.readahead";
+  private static final String FINGERPRINT_PREFIX = "#fingerprint=";
+  private static final int THREADS = 2;
+  private static final int CHUNK_SIZE = 256 * 1024;
+  private static final int CONTENTION_FACTOR = 4;
+  private static final int AVERAGE_WEIGHT = 32;
+  private static final long MINIMUM_PAUSE_NANOS = 1000000L;
+  private static final long MAXIMUM_PAUSE_NANOS = 100000000L;
+  private static final long PROFILE_MILLIS = 10000L;
+
+  private final File profileFile;
+  private final ConcurrentLinkedQueue<File> queue = new ConcurrentLinkedQueue<File>();
+  private final AtomicLong averageNanosPerKilobyte = new AtomicLong(-1);
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong throttledNanos = new AtomicLong();
+  private final AtomicInteger filesRead = new AtomicInteger();
+  private final AtomicInteger runningThreads = new AtomicInteger();
+  private int fileCount = 0;
+  private long startNanos = 0;
+  private volatile long finishNanos = 0;
+  private String savedFingerprint = null;
+  private List<String> savedOrder = Collections.emptyList();
+
+  /**
+   * @param directory Directory of boot.cfg that keeps the profile, or null to read largest first.
+   */
+  public ClassPathReadahead(File directory) {
+    this.profileFile = directory == null ? null : new File(directory, PROFILE_FILE);
+    readProfile();
+  }
+
+  public File getProfileFile() {
+    return profileFile;
+  }
+
+  /**
+   * Starts reading the files that exist, in profile order, on low priority daemon threads.
+   */
+  public void start(List<String> paths) {
+    List<File> files = order(paths);
+    fileCount = files.size();
+    queue.addAll(files);
+    startNanos = System.nanoTime();
+    int threads = Math.min(THREADS, files.size());
+    runningThreads.set(threads);
+    DaemonThreadFactory factory = new DaemonThreadFactory("boot-readahead");
+    for (int i = 0; i < threads; i++) {
+      Thread thread = factory.newThread(new Runnable() {
+        public void run() {
+          readQueue();
+        }
+      });
+      thread.setPriority(Thread.MIN_PRIORITY);
+      thread.start();
+    }
+  }
+
+  /**
+   * @return What was read so far, like {@code 12/40 files, 18 MB in 240 ms, 30 ms throttled}.
+   */
+  public String describe() {
+    long end = finishNanos == 0 ? System.nanoTime() : finishNanos;
+    return filesRead.get() + "/" + fileCount + " files, " + (bytesRead.get() >> 20) + " MB in " +
+      (end - startNanos) / 1000000 + " ms" + (finishNanos == 0 ? " so far" : "") + ", " +
+      throttledNanos.get() / 1000000 + " ms throttled";
+  }
+
+  public boolean isFinished() {
+    return finishNanos != 0 || fileCount == 0;
+  }
+
+  long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  /**
+   * Profiled files first, hottest first, then the others largest first. Missing files and directories are left out.
+   */
+  List<File> order(List<String> paths) {
+    final Map<String, Integer> rank = new HashMap<String, Integer>();
+    for (int i = 0; i < savedOrder.size(); i++) {
+      rank.put(savedOrder.get(i), i);
+    }
+    List<File> files = new ArrayList<File>();
+    for (String path : paths) {
+      File file = new File(path);
+      if (file.isFile())
+        files.add(file);
+    }
+    final Map<File, Long> sizes = new HashMap<File, Long>();
+    for (File file : files) {
+      sizes.put(file, file.length());
+    }
+    Collections.sort(files, new Comparator<File>() {
+      public int compare(File a, File b) {
+        Integer rankA = rank.get(a.getAbsolutePath());
+        Integer rankB = rank.get(b.getAbsolutePath());
+        if (rankA != null || rankB != null)
+          return rankA == null ? 1 : rankB == null ? -1 : rankA.compareTo(rankB);
+        return sizes.get(b).compareTo(sizes.get(a));
+      }
+    });
+    return files;
+  }
+
+  /**
+   * Records which files the application loads its classes from in its first seconds, or until it exits, unless the
+   * profile was already recorded for the same launch plan fingerprint. Classes of a {@link ClassLoadTrace} preload
+   * count too: the application never asks for them once they are defined, yet reads them from the same files.
+   */
+  public void record(LaunchPlan plan, LauncherClassLoader classLoader) {
+    record(plan, classLoader, PROFILE_MILLIS);
+  }
+
+  void record(LaunchPlan plan, final LauncherClassLoader classLoader, long durationMillis) {
+    if (profileFile == null || plan.getFingerprint().equals(savedFingerprint))
+      return;
+    final String fingerprint = plan.getFingerprint();
+    final Set<String> classes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    final ClassLoadListener listener = new ClassLoadListener() {
+      public void classLoaded(String className) {
+        classes.add(className);
+      }
+    };
+    final AtomicBoolean written = new AtomicBoolean(false);
+    final Runnable stop = new Runnable() {
+      public void run() {
+        if (!written.compareAndSet(false, true))
+          return;
+        classLoader.removeClassLoadListener(listener);
+        try {
+          writeProfile(fingerprint, countClassesByFile(classes, classLoader));
+        } catch (IOException e) {
+          // Only costs the order of the next readahead
+        }
+      }
+    };
+    classLoader.addClassLoadListener(listener);
+    new Timer("readahead-profile", true).schedule(new TimerTask() {
+      @Override
+      public void run() {
+        stop.run();
+      }
+    }, durationMillis);
+    Runtime.getRuntime().addShutdownHook(new Thread(stop, "readahead-profile-exit"));
+  }
+
+  private void readQueue() {
+    byte[] buffer = new byte[CHUNK_SIZE];
+    long pauseNanos = 0;
+    try {
+      File file;
+      while ((file = queue.poll()) != null) {
+        try {
+          pauseNanos = readFile(file, buffer, pauseNanos);
+          filesRead.incrementAndGet();
+        } catch (IOException e) {
+          // The class loader reports unreadable files
+        }
+      }
+    } catch (InterruptedException e) {
+      // Shutting down
+    } finally {
+      if (runningThreads.decrementAndGet() == 0)
+        finishNanos = System.nanoTime();
+    }
+  }
+
+  private long readFile(File file, byte[] buffer, long pauseNanos) throws IOException, InterruptedException {
+    InputStream input = new FileInputStream(file);
+    try {
+      while (true) {
+        long start = System.nanoTime();
+        int count = input.read(buffer);
+        if (count <= 0)
+          return pauseNanos;
+        long nanosPerKilobyte = (System.nanoTime() - start) * 1024 / count;
+        bytesRead.addAndGet(count);
+        pauseNanos = nextPause(pauseNanos, nanosPerKilobyte);
+        if (pauseNanos > 0) {
+          Thread.sleep(pauseNanos / 1000000, (int) (pauseNanos % 1000000));
+          throttledNanos.addAndGet(pauseNanos);
+        }
+      }
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * A chunk is contended when it takes several times longer per byte than the moving average of all chunks. The
+   * average follows slow reads too, so a disk that is slow throughout stops counting as contended.
+   */
+  long nextPause(long pauseNanos, long nanosPerKilobyte) {
+    long average = averageNanosPerKilobyte.get();
+    if (average < 0) {
+      averageNanosPerKilobyte.compareAndSet(average, nanosPerKilobyte);
+      return 0;
+    }
+    averageNanosPerKilobyte.compareAndSet(average, average + (nanosPerKilobyte - average) / AVERAGE_WEIGHT);
+    if (nanosPerKilobyte > Math.max(1, average) * CONTENTION_FACTOR)
+      return Math.min(MAXIMUM_PAUSE_NANOS, Math.max(MINIMUM_PAUSE_NANOS, pauseNanos * 2));
+    return pauseNanos / 2 < MINIMUM_PAUSE_NANOS ? 0 : pauseNanos / 2;
+  }
+
+  private static Map<String, Integer> countClassesByFile(Set<String> classes, ClassLoader classLoader) {
+    Map<String, Integer> counts = new HashMap<String, Integer>();
+    for (String className : classes) {
+      try {
+        CodeSource codeSource = Class.forName(className, false, classLoader).getProtectionDomain().getCodeSource();
+        URL location = codeSource == null ? null : codeSource.getLocation();
+        if (location == null)
+          continue;
+        String path = ClassPathElement.toFile(location).getAbsolutePath();
+        Integer count = counts.get(path);
+        counts.put(path, count == null ? 1 : count + 1);
+      } catch (Exception e) {
+        // Not from a file
+      } catch (LinkageError e) {
+        // Not loadable any more
+      }
+    }
+    return counts;
+  }
+
+  private void readProfile() {
+    if (profileFile == null || !profileFile.isFile())
+      return;
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(profileFile), "UTF-8"));
+      try {
+        String line = reader.readLine();
+        if (line == null || !line.startsWith(FINGERPRINT_PREFIX))
+          return;
+        String fingerprint = line.substring(FINGERPRINT_PREFIX.length());
+        List<String> order = new ArrayList<String>();
+        while ((line = reader.readLine()) != null) {
+          int space = line.indexOf(' ');
+          if (space > 0)
+            order.add(line.substring(space + 1));
+        }
+        savedFingerprint = fingerprint;
+        savedOrder = order;
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      savedFingerprint = null;
+      savedOrder = Collections.emptyList();
+    }
+  }
+
+  private void writeProfile(String fingerprint, final Map<String, Integer> counts) throws IOException {
+    List<String> paths = new ArrayList<String>(counts.keySet());
+    Collections.sort(paths, new Comparator<String>() {
+      public int compare(String a, String b) {
+        return counts.get(b).compareTo(counts.get(a));
+      }
+    });
+    File temporary = new File(profileFile.getPath() + ".tmp");
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8"));
+    try {
+      writer.write(FINGERPRINT_PREFIX + fingerprint + "\n");
+      for (String path : paths) {
+        writer.write(counts.get(path) + " " + path + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+    profileFile.delete();
+    if (!temporary.renameTo(profileFile))
+      throw new IOException("Could not write " + profileFile);
+  }
+}
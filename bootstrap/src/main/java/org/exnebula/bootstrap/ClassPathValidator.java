@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks every class path entry on a bounded pool of threads, so a cold disk costs about as much as its slowest
+ * entry. All problems are collected and reported together in class path order.
+ */
+public class ClassPathValidator {
+  public static final int DEFAULT_THREADS = 8;
+
+  private final FileChecker fileChecker;
+  private final int maximumThreads;
+
+  public ClassPathValidator(FileChecker fileChecker, int maximumThreads) {
+    this.fileChecker = fileChecker;
+    this.maximumThreads = maximumThreads;
+  }
+
+  public ClassPathValidator(FileChecker fileChecker) {
+    this(fileChecker, DEFAULT_THREADS);
+  }
+
+  public void validate(List<String> classPath) throws IOException {
+    List<String> problems = findProblems(classPath);
+    if (!problems.isEmpty())
+      throw new FileNotFoundException(joinProblems(problems));
+  }
+
+  List<String> findProblems(List<String> classPath) throws IOException {
+    if (classPath.size() <= 1 || maximumThreads <= 1)
+      return checkSerially(classPath);
+    else
+      return checkInParallel(classPath);
+  }
+
+  private List<String> checkSerially(List<String> classPath) {
+    List<String> problems = new ArrayList<String>();
+    for (String path : classPath) {
+      addIfProblem(problems, checkPath(path));
+    }
+    return problems;
+  }
+
+  private List<String> checkInParallel(List<String> classPath) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.min(maximumThreads, classPath.size()), new DaemonThreadFactory("classpath-check"));
+    try {
+      List<Future<String>> results = new ArrayList<Future<String>>(classPath.size());
+      for (final String path : classPath) {
+        results.add(executor.submit(new Callable<String>() {
+          public String call() {
+            return checkPath(path);
+          }
+        }));
+      }
+      List<String> problems = new ArrayList<String>();
+      for (Future<String> result : results) {
+        addIfProblem(problems, result.get());
+      }
+      return problems;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while checking class path");
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to check class path", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private String checkPath(String path) {
+    if (!fileChecker.fileExists(path))
+      return "File " + path + " not found";
+    if (!fileChecker.isCompleteArchive(path))
+      return "File " + path + " is not a complete archive";
+    return null;
+  }
+
+  private static void addIfProblem(List<String> problems, String problem) {
+    if (problem != null)
+      problems.add(problem);
+  }
+
+  private static String joinProblems(List<String> problems) {
+    StringBuilder message = new StringBuilder();
+    for (String problem : problems) {
+      if (message.length() > 0)
+        message.append("; ");
+      message.append(problem);
+    }
+    return message.toString();
+  }
+}
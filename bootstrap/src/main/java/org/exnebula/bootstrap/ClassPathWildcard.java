@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class path entry with a {@code *} in its file name, such as {@code lib/*.jar}. It stands for the matching files of
+ * that directory, in name order.
+ */
+class ClassPathWildcard {
+  private final String entry;
+  private final String prefix;
+  private final String pattern;
+
+  ClassPathWildcard(String entry) {
+    int nameStart = Math.max(entry.lastIndexOf('/'), entry.lastIndexOf(File.separatorChar)) + 1;
+    this.entry = entry;
+    this.prefix = entry.substring(0, nameStart);
+    this.pattern = entry.substring(nameStart);
+    if (prefix.indexOf('*') >= 0)
+      throw new IllegalArgumentException("Wildcard is only allowed in the file name of 'cp=" + entry + "'");
+  }
+
+  static boolean isWildcard(String entry) {
+    return entry.indexOf('*') >= 0;
+  }
+
+  String getEntry() {
+    return entry;
+  }
+
+  /**
+   * @param listings Sorted directory listings already read, updated with the directory of this entry.
+   * @return Paths of the matching files, or null if the directory does not exist.
+   */
+  List<String> expand(Map<String, String[]> listings) {
+    String directory = prefix.length() == 0 ? "." : prefix;
+    String[] names = listings.get(directory);
+    if (names == null) {
+      names = new File(directory).list();
+      if (names == null)
+        return null;
+      Arrays.sort(names);
+      listings.put(directory, names);
+    }
+    List<String> paths = new ArrayList<String>();
+    for (String name : names) {
+      if (matches(pattern, name))
+        paths.add(prefix + name);
+    }
+    return paths;
+  }
+
+  static boolean matches(String pattern, String name) {
+    int p = 0;
+    int n = 0;
+    int star = -1;
+    int starMatch = 0;
+    while (n < name.length()) {
+      if (p < pattern.length() && pattern.charAt(p) == '*') {
+        star = p++;
+        starMatch = n;
+      } else if (p < pattern.length() && pattern.charAt(p) == name.charAt(n)) {
+        p++;
+        n++;
+      } else if (star >= 0) {
+        p = star + 1;
+        n = ++starMatch;
+      } else {
+        return false;
+      }
+    }
+    while (p < pattern.length() && pattern.charAt(p) == '*') {
+      p++;
+    }
+    return p == pattern.length();
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a list of classes on background threads, without initializing them, so the application finds them
+ * already defined. Classes that no longer exist or fail to link are skipped.
+ */
+class ClassPreloader {
+  private static final ThreadLocal<Boolean> PRELOAD_THREAD = new ThreadLocal<Boolean>();
+
+  private final List<String> classNames;
+  private final ClassLoader classLoader;
+  private final AtomicInteger next = new AtomicInteger();
+  private final AtomicInteger loaded = new AtomicInteger();
+  private final Set<String> loadedNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  ClassPreloader(List<String> classNames, ClassLoader classLoader) {
+    this.classNames = classNames;
+    this.classLoader = classLoader;
+  }
+
+  static boolean isPreloadThread() {
+    return PRELOAD_THREAD.get() != null;
+  }
+
+  void start(int threads) {
+    DaemonThreadFactory factory = new DaemonThreadFactory("class-preload");
+    for (int i = 0; i < threads; i++) {
+      Thread thread = factory.newThread(new Runnable() {
+        public void run() {
+          preload();
+        }
+      });
+      thread.setPriority(Thread.NORM_PRIORITY - 1);
+      thread.start();
+    }
+  }
+
+  /**
+   * Takes classes from the shared list, in order, until it is exhausted. Several threads can run it together.
+   */
+  int preload() {
+    PRELOAD_THREAD.set(Boolean.TRUE);
+    try {
+      int position;
+      while ((position = next.getAndIncrement()) < classNames.size()) {
+        try {
+          Class.forName(classNames.get(position), false, classLoader);
+          loadedNames.add(classNames.get(position));
+          loaded.incrementAndGet();
+        } catch (ClassNotFoundException e) {
+          // Stale entry from an older version of the application
+        } catch (LinkageError e) {
+          // Stale entry or class that needs something missing, the application will get the error if it uses it
+        }
+      }
+      return loaded.get();
+    } finally {
+      PRELOAD_THREAD.remove();
+    }
+  }
+
+  /**
+   * @return Classes preloaded so far, in list order.
+   */
+  List<String> getLoadedClasses() {
+    List<String> classes = new ArrayList<String>();
+    for (String className : classNames) {
+      if (loadedNames.contains(className))
+        classes.add(className);
+    }
+    return classes;
+  }
+}
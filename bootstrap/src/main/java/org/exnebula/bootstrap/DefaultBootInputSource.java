@@ -23,11 +23,15 @@ import java.io.InputStream;
 
 public class DefaultBootInputSource implements BootInputSource {
   public InputStream getConfigInputStream() {
-    File file = BootConfigLocator.locateFile(this.getClass(), BootConfigLocator.BOOT_FILE);
+    File file = getConfigFile();
     try {
       return (file == null) ? null : new FileInputStream(file);
     } catch (FileNotFoundException e) {
       return null;
     }
   }
+
+  public File getConfigFile() {
+    return BootConfigLocator.locateFile(this.getClass(), BootConfigLocator.BOOT_FILE);
+  }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deferred class path entries that were still missing when the application started, usually because the launcher is
+ * still downloading them. The class loader starts without them and adds each one when its file appears, in the order
+ * they appear.
+ * <p>
+ * When boot.cfg lists the packages of the deferred entries, only the load of a class in one of them waits; otherwise
+ * the load of a class whose package no added entry has waits, so probing for a missing class of a known package fails
+ * at once. A deferred entry should therefore not share packages with the entries before it. Waits end at one deadline,
+ * {@value #TIMEOUT_PROPERTY} seconds after the application started, however many loads miss; later misses fail at
+ * once.
+ */
+public class DeferredClassPath {
+  public static final String TIMEOUT_PROPERTY = "org.exnebula.bootstrap.deferred.timeout";
+  public static final int DEFAULT_TIMEOUT_SECONDS = 300;
+
+  private static final long POLL_MILLIS = 50;
+
+  private final List<File> pending;
+  private final Set<String> deferredPackages;
+  private final long deadline;
+  private Set<String> packages = null;
+
+  DeferredClassPath(List<File> pending, long timeoutMillis) {
+    this(pending, Collections.<String>emptyList(), timeoutMillis);
+  }
+
+  /**
+   * @param deferredPackages Packages of the pending entries, such as {@code org.exnebula.help}; empty if unknown.
+   */
+  DeferredClassPath(List<File> pending, List<String> deferredPackages, long timeoutMillis) {
+    this.pending = new ArrayList<File>(pending);
+    this.deferredPackages = deferredPackages.isEmpty() ? null : new HashSet<String>();
+    for (String name : deferredPackages) {
+      this.deferredPackages.add(name.replace('.', '/'));
+    }
+    this.deadline = System.currentTimeMillis() + timeoutMillis;
+  }
+
+  /**
+   * @return The deferred entries of the configuration that do not exist yet, or null if there are none.
+   */
+  public static DeferredClassPath findMissing(BootConfig config) {
+    List<File> missing = new ArrayList<File>();
+    for (String entry : config.getDeferredClassPath()) {
+      File file = new File(entry);
+      if (!file.exists())
+        missing.add(file);
+    }
+    if (missing.isEmpty())
+      return null;
+    return new DeferredClassPath(missing, config.getDeferredPackages(),
+      Integer.getInteger(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_SECONDS) * 1000L);
+  }
+
+  /**
+   * @return The class path without the deferred entries that do not exist yet.
+   */
+  public static List<String> presentClassPath(BootConfig config) {
+    Set<String> deferred = new HashSet<String>(config.getDeferredClassPath());
+    List<String> present = new ArrayList<String>(config.getClassPath().size());
+    for (String entry : config.getClassPath()) {
+      if (!deferred.contains(entry) || new File(entry).exists())
+        present.add(entry);
+    }
+    return present;
+  }
+
+  public synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * Adds the entries whose file appeared to the class loader.
+   *
+   * @return True if one was added.
+   */
+  synchronized boolean addArrived(LauncherClassLoader loader) {
+    boolean added = false;
+    for (Iterator<File> iterator = pending.iterator(); iterator.hasNext(); ) {
+      File file = iterator.next();
+      if (file.exists()) {
+        iterator.remove();
+        URL url = toURL(file);
+        loader.addDeferredURL(url);
+        if (packages != null)
+          packages.addAll(listPackages(url));
+        added = true;
+      }
+    }
+    return added;
+  }
+
+  /**
+   * Waits for the next entry to appear, unless the class is not in a deferred package, or an entry already added has
+   * its package.
+   *
+   * @return True if an entry was added and the class should be looked for again.
+   */
+  synchronized boolean awaitEntryFor(String className, LauncherClassLoader loader) {
+    String packageName = ClassPathElement.packageOf(className.replace('.', '/') + ".class");
+    if (deferredPackages != null && !deferredPackages.contains(packageName))
+      return addArrived(loader);
+    if (deferredPackages == null && packages == null)
+      packages = listPackages(loader.getURLs());
+    try {
+      while (!addArrived(loader)) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (pending.isEmpty() || (packages != null && packages.contains(packageName)) || remaining <= 0)
+          return false;
+        wait(Math.min(POLL_MILLIS, remaining));
+      }
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static Set<String> listPackages(URL... urls) {
+    Set<String> packages = new HashSet<String>();
+    for (URL url : urls) {
+      try {
+        ClassPathElement element = ClassPathElement.open(url);
+        try {
+          packages.addAll(element.listPackages());
+        } finally {
+          element.close();
+        }
+      } catch (IOException e) {
+        // An unreadable entry owns no package
+      }
+    }
+    return packages;
+  }
+
+  private static URL toURL(File file) {
+    try {
+      return file.toURI().toURL();
+    } catch (IOException e) {
+      throw new IllegalStateException("File URL for " + file, e);
+    }
+  }
+}
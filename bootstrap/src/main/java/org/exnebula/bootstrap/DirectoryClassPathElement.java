@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.Manifest;
+
+class DirectoryClassPathElement extends ClassPathElement {
+  private final File directory;
+
+  DirectoryClassPathElement(URL url, File directory) {
+    super(url);
+    this.directory = directory;
+  }
+
+  @Override
+  public Set<String> listPackages() {
+    Set<String> packages = new HashSet<String>();
+    collectPackages(directory, "", packages);
+    return packages;
+  }
+
+  @Override
+  public ByteBuffer read(String name) throws IOException {
+    File file = new File(directory, name);
+    if (!file.isFile())
+      return null;
+    return ByteBuffer.wrap(readFully(new FileInputStream(file), file.length()));
+  }
+
+  @Override
+  public URL findResource(String name) {
+    File file = new File(directory, name);
+    try {
+      return file.exists() ? file.toURI().toURL() : null;
+    } catch (MalformedURLException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Like URLClassLoader, manifests only describe jars.
+   */
+  @Override
+  public Manifest readManifest() {
+    return null;
+  }
+
+  public void close() {
+  }
+
+  private void collectPackages(File current, String packageName, Set<String> packages) {
+    File[] children = current.listFiles();
+    if (children == null)
+      return;
+    for (File child : children) {
+      if (child.isDirectory())
+        collectPackages(child, packageName.length() == 0 ? child.getName() : packageName + "/" + child.getName(), packages);
+      else
+        packages.add(packageName);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Learns the status a JVM exits with, which its shutdown hooks cannot read, from the debug record that Runtime.exit
+ * logs from Java 21 on. Older JVMs log nothing, so there the status stays the one set with {@link #setStatus}, 0 or 1
+ * when the start failed, whatever the application passed to System.exit.
+ */
+class ExitRecorder {
+  private static final String RUNTIME_LOGGER = "java.lang.Runtime";
+  private static final Pattern STATUS = Pattern.compile("\\((-?\\d+)\\)");
+
+  private volatile int status = 0;
+  private Logger runtimeLogger = null;
+
+  void install() {
+    runtimeLogger = Logger.getLogger(RUNTIME_LOGGER);
+    runtimeLogger.setLevel(Level.FINE);
+    runtimeLogger.addHandler(new Handler() {
+      public void publish(LogRecord record) {
+        Throwable thrown = record.getThrown();
+        Matcher matcher = STATUS.matcher(thrown == null ? "" : String.valueOf(thrown.getMessage()));
+        if (matcher.find())
+          status = Integer.parseInt(matcher.group(1));
+      }
+
+      public void flush() {
+      }
+
+      public void close() {
+      }
+    });
+  }
+
+  int getStatus() {
+    return status;
+  }
+
+  void setStatus(int status) {
+    this.status = status;
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+/**
+ * Reads boot configuration from a given file instead of locating boot.cfg.
+ */
+public class FileBootInputSource implements BootInputSource {
+  private final File configFile;
+
+  public FileBootInputSource(File configFile) {
+    this.configFile = configFile;
+  }
+
+  public InputStream getConfigInputStream() {
+    try {
+      return new FileInputStream(configFile);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  public File getConfigFile() {
+    return configFile;
+  }
+}
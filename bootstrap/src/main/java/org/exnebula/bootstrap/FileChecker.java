@@ -17,9 +17,88 @@
 package org.exnebula.bootstrap;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 
 public class FileChecker {
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int MAXIMUM_COMMENT_SIZE = 0xFFFF;
+
   boolean fileExists(String pathToFile) {
     return new File(pathToFile).exists();
   }
-}
\ No newline at end of file
+
+  /**
+   * Directories are always considered complete. Files must end with a zip end of central directory record that
+   * points inside the file, which is what a truncated or partially copied jar is missing.
+   */
+  boolean isCompleteArchive(String pathToFile) {
+    File file = new File(pathToFile);
+    if (file.isDirectory())
+      return true;
+    RandomAccessFile input = null;
+    try {
+      input = new RandomAccessFile(file, "r");
+      long length = input.length();
+      if (length < END_OF_CENTRAL_DIRECTORY_SIZE)
+        return false;
+      return hasEndRecordWithoutComment(input, length) || hasEndRecordWithComment(input, length);
+    } catch (IOException e) {
+      return false;
+    } finally {
+      closeQuietly(input);
+    }
+  }
+
+  private boolean hasEndRecordWithoutComment(RandomAccessFile input, long length) throws IOException {
+    byte[] tail = readTail(input, length, END_OF_CENTRAL_DIRECTORY_SIZE);
+    return isEndRecordAt(tail, 0, length - END_OF_CENTRAL_DIRECTORY_SIZE);
+  }
+
+  private boolean hasEndRecordWithComment(RandomAccessFile input, long length) throws IOException {
+    int tailSize = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_SIZE + MAXIMUM_COMMENT_SIZE);
+    byte[] tail = readTail(input, length, tailSize);
+    long tailStart = length - tailSize;
+    for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+      if (isEndRecordAt(tail, i, tailStart + i))
+        return true;
+    }
+    return false;
+  }
+
+  private boolean isEndRecordAt(byte[] tail, int offset, long position) {
+    if (readInt(tail, offset) != END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+      return false;
+    int commentSize = readShort(tail, offset + 20);
+    long directorySize = readInt(tail, offset + 12) & 0xFFFFFFFFL;
+    long directoryOffset = readInt(tail, offset + 16) & 0xFFFFFFFFL;
+    return offset + END_OF_CENTRAL_DIRECTORY_SIZE + commentSize == tail.length &&
+      directoryOffset + directorySize <= position;
+  }
+
+  private byte[] readTail(RandomAccessFile input, long length, int size) throws IOException {
+    byte[] tail = new byte[size];
+    input.seek(length - size);
+    input.readFully(tail);
+    return tail;
+  }
+
+  private static int readShort(byte[] buffer, int offset) {
+    return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+  }
+
+  private static int readInt(byte[] buffer, int offset) {
+    return readShort(buffer, offset) | readShort(buffer, offset + 2) << 16;
+  }
+
+  private static void closeQuietly(RandomAccessFile input) {
+    if (input != null) {
+      try {
+        input.close();
+      } catch (IOException e) {
+        // Nothing to do, we only read from it
+      }
+    }
+  }
+}
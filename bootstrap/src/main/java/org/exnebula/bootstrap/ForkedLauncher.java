@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Starts the launch plan in a new JVM through ForkedMain, with the application jars on the JVM class path and
+ * standard input and output shared with the bootstrap.
+ */
+public class ForkedLauncher {
+  public static final String FORKED_MAIN_JAR = "boot-forked-main.jar";
+  private static final String FORKED_MAIN_ENTRY = ForkedMain.class.getName().replace('.', '/') + ".class";
+
+  private final File javaExecutable;
+  private final File directory;
+
+  /**
+   * @param directory Directory that keeps the {@value #FORKED_MAIN_JAR} of the launches, the one of boot.cfg. When
+   *                  null, each launch writes a temporary jar of its own.
+   */
+  public ForkedLauncher(File javaExecutable, File directory) {
+    this.javaExecutable = javaExecutable;
+    this.directory = directory;
+  }
+
+  public ForkedLauncher(File javaExecutable) {
+    this(javaExecutable, null);
+  }
+
+  public ForkedLauncher() {
+    this(defaultJavaExecutable());
+  }
+
+  public List<String> buildCommand(List<String> jvmOptions, LaunchPlan plan, String[] arguments) throws IOException {
+    return buildCommand(jvmOptions, plan.getURLs(), plan.getConfig().getEntryPoint(), arguments);
+  }
+
+  public List<String> buildCommand(List<String> jvmOptions, URL[] classPath, String entryPoint, String[] arguments)
+    throws IOException {
+    List<String> command = new ArrayList<String>();
+    command.add(javaExecutable.getPath());
+    command.addAll(jvmOptions);
+    command.add("-cp");
+    command.add(buildClassPath(classPath));
+    command.add(ForkedMain.class.getName());
+    command.add(entryPoint);
+    Collections.addAll(command, arguments);
+    return command;
+  }
+
+  /**
+   * Runs the command and waits for it. The forked JVM is destroyed if the bootstrap is stopped first, so it never
+   * outlives the process that owns its console.
+   *
+   * @return Exit code of the forked JVM.
+   */
+  public int run(List<String> command) throws IOException, InterruptedException {
+    final Process process = new ProcessBuilder(command).inheritIO().start();
+    Thread destroyer = new Thread(new Runnable() {
+      public void run() {
+        process.destroy();
+      }
+    }, "bootstrap-fork-destroyer");
+    Runtime.getRuntime().addShutdownHook(destroyer);
+    try {
+      return process.waitFor();
+    } finally {
+      try {
+        Runtime.getRuntime().removeShutdownHook(destroyer);
+      } catch (IllegalStateException e) {
+        // Already shutting down, the hook runs
+      }
+    }
+  }
+
+  static File defaultJavaExecutable() {
+    boolean windows = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+    return new File(new File(System.getProperty("java.home"), "bin"), windows ? "java.exe" : "java");
+  }
+
+  private String buildClassPath(URL[] urls) throws IOException {
+    StringBuilder classPath = new StringBuilder(forkedMainLocation().getPath());
+    for (URL url : urls) {
+      classPath.append(File.pathSeparatorChar).append(ClassPathElement.toFile(url).getPath());
+    }
+    return classPath.toString();
+  }
+
+  /**
+   * ForkedMain is copied to a jar of its own, whether the bootstrap runs from a jar or a directory, so no other
+   * bootstrap class comes ahead of the application jars. Class data sharing also only accepts jars on the class path.
+   * The jar kept in the directory is rewritten whenever it does not hold exactly the running ForkedMain, so its
+   * modification time, which class data sharing checks, only changes with the bootstrap.
+   */
+  File forkedMainLocation() throws IOException {
+    InputStream input = ForkedMain.class.getResourceAsStream(ForkedMain.class.getSimpleName() + ".class");
+    if (input == null)
+      throw new IOException("Cannot locate bootstrap classes");
+    byte[] classBytes = ClassPathElement.readFully(input, -1);
+    if (directory == null) {
+      File jar = File.createTempFile("boot-forked-main", ".jar");
+      jar.deleteOnExit();
+      writeForkedMainJar(jar, classBytes);
+      return jar;
+    }
+    File jar = new File(directory, FORKED_MAIN_JAR);
+    if (!holdsOnly(jar, classBytes)) {
+      File temporary = File.createTempFile("boot-forked-main", ".tmp", directory);
+      writeForkedMainJar(temporary, classBytes);
+      if (!temporary.renameTo(jar)) {
+        // Windows does not rename over an existing file
+        jar.delete();
+        if (!temporary.renameTo(jar)) {
+          temporary.delete();
+          throw new IOException("Could not create " + jar);
+        }
+      }
+    }
+    return jar;
+  }
+
+  /**
+   * @return Jar or directory of the bootstrap classes.
+   */
+  static File bootstrapLocation() throws IOException {
+    CodeSource codeSource = ForkedMain.class.getProtectionDomain().getCodeSource();
+    if (codeSource == null)
+      throw new IOException("Cannot locate bootstrap classes");
+    try {
+      return new File(codeSource.getLocation().toURI());
+    } catch (URISyntaxException e) {
+      throw new IOException("Cannot locate bootstrap classes", e);
+    }
+  }
+
+  private static boolean holdsOnly(File jar, byte[] classBytes) {
+    if (!jar.isFile())
+      return false;
+    try {
+      JarFile jarFile = new JarFile(jar);
+      try {
+        ZipEntry entry = jarFile.getEntry(FORKED_MAIN_ENTRY);
+        return jarFile.size() == 1 && entry != null &&
+          Arrays.equals(classBytes, ClassPathElement.readFully(jarFile.getInputStream(entry), entry.getSize()));
+      } finally {
+        jarFile.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void writeForkedMainJar(File jar, byte[] classBytes) throws IOException {
+    JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+    try {
+      output.putNextEntry(new ZipEntry(FORKED_MAIN_ENTRY));
+      output.write(classBytes);
+    } finally {
+      output.close();
+    }
+  }
+}
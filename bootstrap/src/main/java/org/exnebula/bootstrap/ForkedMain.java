@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Main class of a JVM forked by the bootstrap. It is started with the entry point followed by the application
+ * arguments, and appends the time it took to reach the entry point to the report file when one is given.
+ */
+public class ForkedMain {
+  public static final String REPORT_FILE_PROPERTY = "org.exnebula.bootstrap.report.file";
+  public static final String REPORT_LABEL_PROPERTY = "org.exnebula.bootstrap.report.label";
+  public static final String BOOT_START_PROPERTY = "org.exnebula.bootstrap.report.bootStart";
+  public static final String FORK_START_PROPERTY = "org.exnebula.bootstrap.report.forkStart";
+
+  public static void main(String[] args) throws Throwable {
+    long reachedMain = System.currentTimeMillis();
+    if (args.length == 0)
+      throw new IllegalArgumentException("Missing entry point");
+    Class<?> aClass = Class.forName(args[0]);
+    Method main = aClass.getMethod("main", String[].class);
+    if (!Modifier.isStatic(main.getModifiers()))
+      throw new NoSuchMethodException(aClass.getName() + ".main not static");
+    String[] arguments = new String[args.length - 1];
+    System.arraycopy(args, 1, arguments, 0, arguments.length);
+    reportTimeToMain(reachedMain);
+    try {
+      main.invoke(null, new Object[]{arguments});
+    } catch (InvocationTargetException e) {
+      throw e.getTargetException();
+    }
+  }
+
+  private static void reportTimeToMain(long reachedMain) {
+    String reportFile = System.getProperty(REPORT_FILE_PROPERTY);
+    if (reportFile == null)
+      return;
+    long bootStart = Long.getLong(BOOT_START_PROPERTY, reachedMain);
+    long forkStart = Long.getLong(FORK_START_PROPERTY, reachedMain);
+    String line = String.format("%d %s timeToMainMillis=%d forkedJvmToMainMillis=%d%n", reachedMain,
+      System.getProperty(REPORT_LABEL_PROPERTY, "forked"), reachedMain - bootStart, reachedMain - forkStart);
+    try {
+      Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile, true), "UTF-8");
+      try {
+        writer.write(line);
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      // Reporting must never stop the application
+    }
+  }
+}
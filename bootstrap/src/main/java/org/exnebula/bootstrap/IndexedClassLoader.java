@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Class loader that sends each lookup straight to the elements that own the package, instead of searching every
+ * jar in order like URLClassLoader. Entries that are not found are remembered so repeated probes stay cheap.
+ */
+public class IndexedClassLoader extends LauncherClassLoader {
+
+  static {
+    registerAsParallelCapable();
+  }
+
+  private final List<ClassPathElement> elements;
+  private final CodeSource[] codeSources;
+  private final Manifest[] manifests;
+  private final boolean[] manifestsRead;
+  private final PackageIndex index;
+  private final Set<String> missingEntries = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  public IndexedClassLoader(URL[] urls, ClassLoader parent) throws IOException {
+    this(urls, parent, null);
+  }
+
+  /**
+   * @param index Previously built index for the same URLs, or null to build one now.
+   */
+  public IndexedClassLoader(URL[] urls, ClassLoader parent, PackageIndex index) throws IOException {
+    this(urls, parent, index, openElements(urls));
+  }
+
+  /**
+   * @param elements One element for each URL, in the same order.
+   */
+  IndexedClassLoader(URL[] urls, ClassLoader parent, PackageIndex index, List<ClassPathElement> elements)
+    throws IOException {
+    super(urls, parent);
+    this.elements = elements;
+    this.codeSources = new CodeSource[urls.length];
+    this.manifests = new Manifest[urls.length];
+    this.manifestsRead = new boolean[urls.length];
+    if (index == null || index.getElementCount() != urls.length)
+      index = PackageIndex.build(elements, ClassPathValidator.DEFAULT_THREADS);
+    this.index = index;
+  }
+
+  public PackageIndex getPackageIndex() {
+    return index;
+  }
+
+  @Override
+  protected Class<?> findClass(String name) throws ClassNotFoundException {
+    String entryName = name.replace('.', '/').concat(".class");
+    if (!missingEntries.contains(entryName)) {
+      try {
+        for (int position : index.elementsFor(entryName)) {
+          ByteBuffer bytes = elements.get(position).read(entryName);
+          if (bytes != null)
+            return defineClassFrom(name, entryName, bytes, position);
+        }
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+      missingEntries.add(entryName);
+    }
+    throw new ClassNotFoundException(name);
+  }
+
+  @Override
+  public URL findResource(String name) {
+    if (missingEntries.contains(name))
+      return null;
+    for (int position : index.elementsFor(name)) {
+      URL url = elements.get(position).findResource(name);
+      if (url != null)
+        return url;
+    }
+    missingEntries.add(name);
+    return null;
+  }
+
+  @Override
+  public Enumeration<URL> findResources(String name) throws IOException {
+    List<URL> urls = new ArrayList<URL>();
+    if (!missingEntries.contains(name)) {
+      for (int position : index.elementsFor(name)) {
+        URL url = elements.get(position).findResource(name);
+        if (url != null)
+          urls.add(url);
+      }
+    }
+    return withMergedCopies(name, Collections.enumeration(urls));
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (ClassPathElement element : elements) {
+      element.close();
+    }
+    super.close();
+  }
+
+  private Class<?> defineClassFrom(String name, String entryName, ByteBuffer bytes, int position) throws IOException {
+    definePackageIfNeeded(name, position);
+    return defineClass(name, bytes, codeSourceFor(entryName, position));
+  }
+
+  /**
+   * Defines the package from the manifest of the element, like URLClassLoader, so it carries the specification and
+   * implementation attributes and the sealing of the jar.
+   */
+  @SuppressWarnings("deprecation")
+  private void definePackageIfNeeded(String className, int position) throws IOException {
+    int separator = className.lastIndexOf('.');
+    if (separator < 0)
+      return;
+    String packageName = className.substring(0, separator);
+    URL url = elements.get(position).getURL();
+    Manifest manifest = manifestFor(position);
+    Package existing = getPackage(packageName);
+    if (existing == null) {
+      try {
+        if (manifest != null)
+          definePackage(packageName, manifest, url);
+        else
+          definePackage(packageName, null, null, null, null, null, null, null);
+        return;
+      } catch (IllegalArgumentException e) {
+        // Another thread defined it first
+        existing = getPackage(packageName);
+      }
+    }
+    if (existing.isSealed() ? !existing.isSealed(url) : isSealed(packageName, manifest))
+      throw new SecurityException("Sealing violation in package " + packageName + " from " + url);
+  }
+
+  private Manifest manifestFor(int position) throws IOException {
+    synchronized (manifests) {
+      if (!manifestsRead[position]) {
+        manifests[position] = elements.get(position).readManifest();
+        manifestsRead[position] = true;
+      }
+      return manifests[position];
+    }
+  }
+
+  /**
+   * Classes of unsigned elements share one code source for each element.
+   */
+  private CodeSource codeSourceFor(String entryName, int position) throws IOException {
+    ClassPathElement element = elements.get(position);
+    CodeSigner[] signers = element.getCodeSigners(entryName);
+    if (signers != null)
+      return new CodeSource(element.getURL(), signers);
+    synchronized (codeSources) {
+      if (codeSources[position] == null)
+        codeSources[position] = new CodeSource(element.getURL(), (CodeSigner[]) null);
+      return codeSources[position];
+    }
+  }
+
+  private static boolean isSealed(String packageName, Manifest manifest) {
+    if (manifest == null)
+      return false;
+    String sealed = null;
+    Attributes attributes = manifest.getAttributes(packageName.replace('.', '/').concat("/"));
+    if (attributes != null)
+      sealed = attributes.getValue(Attributes.Name.SEALED);
+    if (sealed == null)
+      sealed = manifest.getMainAttributes().getValue(Attributes.Name.SEALED);
+    return "true".equalsIgnoreCase(sealed);
+  }
+
+  private static List<ClassPathElement> openElements(URL[] urls) throws IOException {
+    List<ClassPathElement> elements = new ArrayList<ClassPathElement>(urls.length);
+    for (URL url : urls) {
+      elements.add(ClassPathElement.open(url));
+    }
+    return elements;
+  }
+}
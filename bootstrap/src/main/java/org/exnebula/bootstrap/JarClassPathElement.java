@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.CodeSigner;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+class JarClassPathElement extends ClassPathElement {
+  private final File file;
+  private final URL jarBase;
+  private JarFile jarFile = null;
+  private Boolean signed = null;
+
+  JarClassPathElement(URL url, File file) throws MalformedURLException {
+    super(url);
+    this.file = file;
+    this.jarBase = new URL("jar:" + url + "!/");
+  }
+
+  @Override
+  public Set<String> listPackages() throws IOException {
+    Set<String> packages = new HashSet<String>();
+    Enumeration<? extends ZipEntry> entries = getJarFile().entries();
+    while (entries.hasMoreElements()) {
+      ZipEntry entry = entries.nextElement();
+      if (!entry.isDirectory())
+        packages.add(packageOf(entry.getName()));
+    }
+    return packages;
+  }
+
+  @Override
+  public ByteBuffer read(String name) throws IOException {
+    JarFile jar = getJarFile();
+    ZipEntry entry = jar.getEntry(name);
+    if (entry == null)
+      return null;
+    return ByteBuffer.wrap(readFully(jar.getInputStream(entry), entry.getSize()));
+  }
+
+  @Override
+  public URL findResource(String name) {
+    try {
+      if (getJarFile().getEntry(name) == null)
+        return null;
+      return new URL(jarBase, name);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public Manifest readManifest() throws IOException {
+    return getJarFile().getManifest();
+  }
+
+  @Override
+  public CodeSigner[] getCodeSigners(String name) throws IOException {
+    JarFile jar = getJarFile();
+    if (!isSigned(jar))
+      return null;
+    JarEntry entry = jar.getJarEntry(name);
+    if (entry == null)
+      return null;
+    readFully(jar.getInputStream(entry), entry.getSize());
+    return entry.getCodeSigners();
+  }
+
+  public synchronized void close() throws IOException {
+    if (jarFile != null) {
+      jarFile.close();
+      jarFile = null;
+    }
+  }
+
+  private synchronized boolean isSigned(JarFile jar) {
+    if (signed == null)
+      signed = hasSignatureFile(jar);
+    return signed;
+  }
+
+  private synchronized JarFile getJarFile() throws IOException {
+    if (jarFile == null)
+      jarFile = new JarFile(file);
+    return jarFile;
+  }
+}
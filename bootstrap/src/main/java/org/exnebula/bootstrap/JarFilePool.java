@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+/**
+ * Keeps at most a fixed number of jars open, closing the least recently used one when another has to open. Each
+ * open JarFile holds a file descriptor and the jar's central directory in memory, native memory before Java 9, so a
+ * bounded pool keeps the footprint flat however many jars are on the class path. A jar in use by a thread is never
+ * closed; while every open jar is in use the pool grows past its capacity and shrinks again on release.
+ */
+public class JarFilePool implements Closeable {
+  public static final String CAPACITY_PROPERTY = "org.exnebula.bootstrap.pool";
+  public static final int DEFAULT_CAPACITY = 32;
+
+  private final int capacity;
+  private final LinkedHashMap<File, OpenJar> open = new LinkedHashMap<File, OpenJar>(16, 0.75f, true);
+  private int peakOpenCount = 0;
+  private long openedCount = 0;
+  private long closedCount = 0;
+  private boolean closed = false;
+
+  public JarFilePool(int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Pool capacity must be at least 1");
+    this.capacity = capacity;
+  }
+
+  /**
+   * @return The capacity from the {@value #CAPACITY_PROPERTY} system property, {@value #DEFAULT_CAPACITY} if unset.
+   */
+  public static int defaultCapacity() {
+    return Math.max(1, Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+  }
+
+  /**
+   * Opens the jar if it is not open. Every call must be followed by {@link #release(File)}. The jar is opened outside
+   * the pool lock, so threads that need other jars are not held up; a thread that needs the same jar waits for it.
+   */
+  public JarFile acquire(File file) throws IOException {
+    OpenJar jar;
+    List<JarFile> evicted = null;
+    synchronized (this) {
+      if (closed)
+        throw new IOException("Jar pool closed");
+      jar = open.get(file);
+      if (jar == null) {
+        jar = new OpenJar();
+        open.put(file, jar);
+        evicted = removeIdleOver(capacity);
+      }
+      jar.users++;
+    }
+    if (evicted != null) {
+      closeAll(evicted);
+      openJar(file, jar);
+    }
+    return awaitOpen(file, jar);
+  }
+
+  public void release(File file) {
+    List<JarFile> evicted;
+    synchronized (this) {
+      OpenJar jar = open.get(file);
+      if (jar == null)
+        return;
+      jar.users--;
+      evicted = removeIdleOver(capacity);
+    }
+    closeAll(evicted);
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public synchronized int getOpenCount() {
+    return open.size();
+  }
+
+  public synchronized int getPeakOpenCount() {
+    return peakOpenCount;
+  }
+
+  /**
+   * @return How many times a jar was opened, reopens included.
+   */
+  public synchronized long getOpenedCount() {
+    return openedCount;
+  }
+
+  public synchronized long getClosedCount() {
+    return closedCount;
+  }
+
+  public synchronized void close() throws IOException {
+    closed = true;
+    for (OpenJar jar : open.values()) {
+      if (jar.jarFile != null) {
+        jar.jarFile.close();
+        closedCount++;
+      }
+    }
+    open.clear();
+    notifyAll();
+  }
+
+  private void openJar(File file, OpenJar jar) {
+    JarFile jarFile = null;
+    IOException failure = null;
+    try {
+      jarFile = new JarFile(file);
+    } catch (IOException e) {
+      failure = e;
+    }
+    synchronized (this) {
+      if (closed && jarFile != null) {
+        closeAll(Collections.singletonList(jarFile));
+        jarFile = null;
+        failure = new IOException("Jar pool closed");
+      }
+      jar.jarFile = jarFile;
+      jar.failure = failure;
+      jar.ready = true;
+      if (failure != null) {
+        if (open.get(file) == jar)
+          open.remove(file);
+      } else {
+        openedCount++;
+        peakOpenCount = Math.max(peakOpenCount, open.size());
+      }
+      notifyAll();
+    }
+  }
+
+  private synchronized JarFile awaitOpen(File file, OpenJar jar) throws IOException {
+    boolean interrupted = false;
+    while (!jar.ready && !closed) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+    if (jar.failure != null || jar.jarFile == null) {
+      jar.users--;
+      throw jar.failure != null ? jar.failure : new IOException("Jar pool closed");
+    }
+    return jar.jarFile;
+  }
+
+  /**
+   * @return The least recently used jars that no thread uses, removed until the pool is back to the limit.
+   */
+  private List<JarFile> removeIdleOver(int limit) {
+    List<JarFile> evicted = new ArrayList<JarFile>();
+    Iterator<Map.Entry<File, OpenJar>> eldest = open.entrySet().iterator();
+    while (open.size() > limit && eldest.hasNext()) {
+      OpenJar jar = eldest.next().getValue();
+      if (jar.users == 0 && jar.jarFile != null) {
+        eldest.remove();
+        evicted.add(jar.jarFile);
+        closedCount++;
+      }
+    }
+    return evicted;
+  }
+
+  private static void closeAll(List<JarFile> jarFiles) {
+    for (JarFile jarFile : jarFiles) {
+      try {
+        jarFile.close();
+      } catch (IOException e) {
+        // The descriptor is gone either way
+      }
+    }
+  }
+
+  /**
+   * Placeholder put in the pool before the jar opens, so only the thread that put it opens the jar.
+   */
+  private static class OpenJar {
+    private JarFile jarFile = null;
+    private IOException failure = null;
+    private boolean ready = false;
+    private int users = 0;
+  }
+}
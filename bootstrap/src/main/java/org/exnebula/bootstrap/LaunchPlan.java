@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.net.URL;
+
+/**
+ * Everything Boot needs to start the entry point: the configuration, the class path mapped to URLs and, when the
+ * indexed class loader is used, its package index.
+ */
+public class LaunchPlan {
+  private final BootConfig config;
+  private final URL[] urls;
+  private final PackageIndex packageIndex;
+  private final String fingerprint;
+
+  public LaunchPlan(BootConfig config, URL[] urls, PackageIndex packageIndex) {
+    this(config, urls, packageIndex, null);
+  }
+
+  LaunchPlan(BootConfig config, URL[] urls, PackageIndex packageIndex, String fingerprint) {
+    this.config = config;
+    this.urls = urls;
+    this.packageIndex = packageIndex;
+    this.fingerprint = fingerprint;
+  }
+
+  public BootConfig getConfig() {
+    return config;
+  }
+
+  public URL[] getURLs() {
+    return urls;
+  }
+
+  public PackageIndex getPackageIndex() {
+    return packageIndex;
+  }
+
+  /**
+   * @return Digest of boot.cfg and of the size and modification time of every class path file, or null when the
+   * plan was not loaded from or saved to a LaunchPlanCache.
+   */
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  public boolean isCached() {
+    return fingerprint != null;
+  }
+
+  LaunchPlan withPackageIndex(PackageIndex index) {
+    return new LaunchPlan(config, urls, index, fingerprint);
+  }
+
+  LaunchPlan withFingerprint(String fingerprint) {
+    return new LaunchPlan(config, urls, packageIndex, fingerprint);
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.*;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the last launch plan in a compact binary file next to boot.cfg. A plan is only reused when boot.cfg has
+ * the same content, Boot runs from the same working directory, every class path file has the same size and
+ * modification time as when the plan was saved and every wildcard entry still expands to the same files.
+ */
+public class LaunchPlanCache {
+  public static final String PLAN_FILE = "boot.plan";
+
+  private static final int MAGIC = 0x424f4f54;
+  private static final int VERSION = 9;
+
+  private final File configFile;
+  private final File planFile;
+
+  public LaunchPlanCache(File configFile) {
+    this.configFile = configFile;
+    this.planFile = new File(configFile.getAbsoluteFile().getParentFile(), PLAN_FILE);
+  }
+
+  public static LaunchPlanCache forConfigFile(File configFile) {
+    return configFile == null ? null : new LaunchPlanCache(configFile);
+  }
+
+  public File getDirectory() {
+    return planFile.getParentFile();
+  }
+
+  public File getConfigFile() {
+    return configFile;
+  }
+
+  public File getPlanFile() {
+    return planFile;
+  }
+
+  /**
+   * @return The saved plan if it still matches boot.cfg and the class path files, null otherwise.
+   */
+  public LaunchPlan loadValidPlan() {
+    if (!planFile.isFile())
+      return null;
+    try {
+      DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(planFile)));
+      try {
+        return readValidPlan(input, digestConfig());
+      } finally {
+        input.close();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Saves the plan, unless the class path has directories whose content cannot be fingerprinted cheaply.
+   *
+   * @return The plan with its fingerprint, or the same plan if it could not be saved.
+   */
+  public LaunchPlan save(LaunchPlan plan) {
+    List<String> classPath = plan.getConfig().getClassPath();
+    long[] sizes = new long[classPath.size()];
+    long[] modified = new long[classPath.size()];
+    for (int i = 0; i < sizes.length; i++) {
+      File file = new File(classPath.get(i));
+      if (!file.isFile())
+        return plan;
+      sizes[i] = file.length();
+      modified[i] = file.lastModified();
+    }
+    File temporary = new File(planFile.getPath() + ".tmp");
+    try {
+      byte[] configDigest = digestConfig();
+      String fingerprint = fingerprint(configDigest, sizes, modified);
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+      try {
+        writePlan(output, plan, configDigest, sizes, modified);
+      } finally {
+        output.close();
+      }
+      if (!temporary.renameTo(planFile)) {
+        planFile.delete();
+        if (!temporary.renameTo(planFile))
+          return plan;
+      }
+      return plan.withFingerprint(fingerprint);
+    } catch (IOException e) {
+      temporary.delete();
+      return plan;
+    }
+  }
+
+  private void writePlan(DataOutputStream output, LaunchPlan plan, byte[] configDigest, long[] sizes, long[] modified) throws IOException {
+    BootConfig config = plan.getConfig();
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    writeBytes(output, configDigest);
+    output.writeUTF(workingDirectory());
+    output.writeUTF(config.getEntryPoint());
+    output.writeUTF(config.getClassLoaderType().getConfigName());
+    output.writeBoolean(config.isClassDataSharing());
+    output.writeBoolean(config.isPreloadClasses());
+    output.writeBoolean(config.isFork());
+    output.writeInt(config.getJvmOptions().size());
+    for (String option : config.getJvmOptions()) {
+      output.writeUTF(option);
+    }
+    output.writeBoolean(config.isDaemon());
+    config.getSharedLibraryLayer().writeTo(output);
+    output.writeBoolean(config.isMergeClassPath());
+    output.writeBoolean(config.isReadahead());
+    output.writeInt(sizes.length);
+    for (int i = 0; i < sizes.length; i++) {
+      output.writeUTF(config.getClassPath().get(i));
+      output.writeUTF(plan.getURLs()[i].toString());
+      output.writeLong(sizes[i]);
+      output.writeLong(modified[i]);
+    }
+    Map<String, String[]> listings = new HashMap<String, String[]>();
+    output.writeInt(config.getClassPathWildcards().size());
+    for (String wildcard : config.getClassPathWildcards()) {
+      List<String> files = new ClassPathWildcard(wildcard).expand(listings);
+      output.writeUTF(wildcard);
+      output.writeInt(files == null ? -1 : files.size());
+      for (int i = 0; files != null && i < files.size(); i++) {
+        output.writeUTF(files.get(i));
+      }
+    }
+    output.writeBoolean(plan.getPackageIndex() != null);
+    if (plan.getPackageIndex() != null)
+      plan.getPackageIndex().writeTo(output);
+  }
+
+  private LaunchPlan readValidPlan(DataInputStream input, byte[] configDigest) throws IOException {
+    if (input.readInt() != MAGIC || input.readInt() != VERSION)
+      return null;
+    if (!MessageDigest.isEqual(configDigest, readBytes(input)) || !workingDirectory().equals(input.readUTF()))
+      return null;
+    String entryPoint = input.readUTF();
+    ClassLoaderType classLoaderType = ClassLoaderType.fromConfigName(input.readUTF());
+    boolean classDataSharing = input.readBoolean();
+    boolean preloadClasses = input.readBoolean();
+    boolean fork = input.readBoolean();
+    String[] jvmOptions = new String[input.readInt()];
+    for (int i = 0; i < jvmOptions.length; i++) {
+      jvmOptions[i] = input.readUTF();
+    }
+    boolean daemon = input.readBoolean();
+    SharedLibraryLayer sharedLibraryLayer = SharedLibraryLayer.readFrom(input);
+    boolean mergeClassPath = input.readBoolean();
+    boolean readahead = input.readBoolean();
+    int count = input.readInt();
+    if (classLoaderType == null || count < 0)
+      return null;
+    String[] classPath = new String[count];
+    URL[] urls = new URL[count];
+    long[] sizes = new long[count];
+    long[] modified = new long[count];
+    for (int i = 0; i < count; i++) {
+      classPath[i] = input.readUTF();
+      urls[i] = new URL(input.readUTF());
+      sizes[i] = input.readLong();
+      modified[i] = input.readLong();
+      File file = new File(classPath[i]);
+      if (file.length() != sizes[i] || file.lastModified() != modified[i] || !file.isFile())
+        return null;
+    }
+    Map<String, String[]> listings = new HashMap<String, String[]>();
+    String[] wildcards = new String[input.readInt()];
+    for (int i = 0; i < wildcards.length; i++) {
+      wildcards[i] = input.readUTF();
+      List<String> files = new ClassPathWildcard(wildcards[i]).expand(listings);
+      int savedCount = input.readInt();
+      if (files == null || files.size() != savedCount)
+        return null;
+      for (String file : files) {
+        if (!file.equals(input.readUTF()))
+          return null;
+      }
+    }
+    PackageIndex index = input.readBoolean() ? PackageIndex.readFrom(input) : null;
+    BootConfig config = new BootConfig.Builder(entryPoint, Arrays.asList(classPath))
+      .classLoaderType(classLoaderType)
+      .classDataSharing(classDataSharing)
+      .preloadClasses(preloadClasses)
+      .classPathWildcards(Arrays.asList(wildcards))
+      .fork(fork)
+      .jvmOptions(Arrays.asList(jvmOptions))
+      .daemon(daemon)
+      .sharedLibraryLayer(sharedLibraryLayer)
+      .mergeClassPath(mergeClassPath)
+      .readahead(readahead)
+      .build();
+    return new LaunchPlan(config, urls, index, fingerprint(configDigest, sizes, modified));
+  }
+
+  private byte[] digestConfig() throws IOException {
+    MessageDigest digest = newDigest();
+    InputStream input = new FileInputStream(configFile);
+    try {
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = input.read(buffer)) > 0) {
+        digest.update(buffer, 0, count);
+      }
+    } finally {
+      input.close();
+    }
+    return digest.digest();
+  }
+
+  private static String fingerprint(byte[] configDigest, long[] sizes, long[] modified) {
+    MessageDigest digest = newDigest();
+    digest.update(configDigest);
+    for (int i = 0; i < sizes.length; i++) {
+      updateWithLong(digest, sizes[i]);
+      updateWithLong(digest, modified[i]);
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  private static void updateWithLong(MessageDigest digest, long value) {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      digest.update((byte) (value >>> shift));
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is required by every JVM", e);
+    }
+  }
+
+  private static String workingDirectory() {
+    return new File("").getAbsolutePath();
+  }
+
+  private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+    output.writeShort(bytes.length);
+    output.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream input) throws IOException {
+    byte[] bytes = new byte[input.readUnsignedShort()];
+    input.readFully(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Base of the class loaders created by Boot. It is a plain URLClassLoader that can tell listeners which of its
+ * classes the application asks for, and add the entries of a {@link DeferredClassPath} as they appear.
+ */
+public class LauncherClassLoader extends URLClassLoader {
+
+  static {
+    registerAsParallelCapable();
+  }
+
+  private final List<ClassLoadListener> listeners = new CopyOnWriteArrayList<ClassLoadListener>();
+  private volatile DeferredClassPath deferredClassPath = null;
+  private volatile boolean mergedClassPath = false;
+
+  public LauncherClassLoader(URL[] urls, ClassLoader parent) {
+    super(urls, parent);
+  }
+
+  public void addClassLoadListener(ClassLoadListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeClassLoadListener(ClassLoadListener listener) {
+    listeners.remove(listener);
+  }
+
+  public void setDeferredClassPath(DeferredClassPath deferredClassPath) {
+    this.deferredClassPath = deferredClassPath;
+  }
+
+  /**
+   * @param mergedClassPath True if the class path is a {@link MergedClassPath} archive, so the copies it keeps of
+   *                        resources that several jars had are returned by findResources.
+   */
+  public void setMergedClassPath(boolean mergedClassPath) {
+    this.mergedClassPath = mergedClassPath;
+  }
+
+  void addDeferredURL(URL url) {
+    addURL(url);
+  }
+
+  @Override
+  protected Class<?> findClass(String name) throws ClassNotFoundException {
+    try {
+      return super.findClass(name);
+    } catch (ClassNotFoundException e) {
+      DeferredClassPath deferred = deferredClassPath;
+      while (deferred != null && deferred.awaitEntryFor(name, this)) {
+        try {
+          return super.findClass(name);
+        } catch (ClassNotFoundException notInArrived) {
+          // Wait for the next entry
+        }
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Resources never wait for a deferred entry, but see the entries that appeared so far.
+   */
+  @Override
+  public URL findResource(String name) {
+    URL url = super.findResource(name);
+    DeferredClassPath deferred = deferredClassPath;
+    if (url == null && deferred != null && deferred.addArrived(this))
+      url = super.findResource(name);
+    return url;
+  }
+
+  @Override
+  public Enumeration<URL> findResources(String name) throws IOException {
+    return withMergedCopies(name, super.findResources(name));
+  }
+
+  /**
+   * @return The resources found, followed by the copies of other jars a merged archive holds, in class path order.
+   */
+  protected Enumeration<URL> withMergedCopies(String name, Enumeration<URL> found) {
+    if (!mergedClassPath)
+      return found;
+    List<URL> urls = Collections.list(found);
+    URL copy;
+    for (int shadowed = 1; (copy = findResource(MergedClassPath.shadowedName(name, shadowed))) != null; shadowed++) {
+      urls.add(copy);
+    }
+    return Collections.enumeration(urls);
+  }
+
+  @Override
+  protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    Class<?> aClass = super.loadClass(name, resolve);
+    if (!listeners.isEmpty() && aClass.getClassLoader() == this) {
+      for (ClassLoadListener listener : listeners) {
+        listener.classLoaded(name);
+      }
+    }
+    return aClass;
+  }
+}
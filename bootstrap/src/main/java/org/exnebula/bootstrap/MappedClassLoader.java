@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Indexed class loader that memory maps its jars instead of opening them as JarFiles. Classes stored without
+ * compression are defined straight from the mapping; see {@link MappedJarClassPathElement}.
+ */
+public class MappedClassLoader extends IndexedClassLoader {
+
+  static {
+    registerAsParallelCapable();
+  }
+
+  public MappedClassLoader(URL[] urls, ClassLoader parent) throws IOException {
+    this(urls, parent, null);
+  }
+
+  /**
+   * @param index Previously built index for the same URLs, or null to build one now.
+   */
+  public MappedClassLoader(URL[] urls, ClassLoader parent, PackageIndex index) throws IOException {
+    super(urls, parent, index, openElements(urls));
+  }
+
+  private static List<ClassPathElement> openElements(URL[] urls) throws IOException {
+    List<ClassPathElement> elements = new ArrayList<ClassPathElement>(urls.length);
+    for (URL url : urls) {
+      elements.add(ClassPathElement.openMapped(url));
+    }
+    return elements;
+  }
+}
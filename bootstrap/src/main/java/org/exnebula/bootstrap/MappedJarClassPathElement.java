@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Jar read through a memory mapping of the whole file. The central directory is parsed once into parallel arrays
+ * and an open addressing table of name hashes, so lookups allocate no entry objects. Stored entries are returned as
+ * slices of the mapping without a copy; deflated entries go through one inflater per thread.
+ * <p>
+ * The mapping is released by the garbage collector, not by {@link #close()}. Zip64 jars are rejected with a
+ * ZipException so the caller can use a {@link JarClassPathElement} instead.
+ */
+class MappedJarClassPathElement extends ClassPathElement {
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int END_SIZE = 22;
+  private static final int CENTRAL_SIGNATURE = 0x02014b50;
+  private static final int CENTRAL_SIZE = 46;
+  private static final int LOCAL_SIGNATURE = 0x04034b50;
+  private static final int LOCAL_SIZE = 30;
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+
+  private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+    @Override
+    protected Inflater initialValue() {
+      return new Inflater(true);
+    }
+  };
+  private static final ThreadLocal<byte[]> inputBuffers = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[8192];
+    }
+  };
+
+  private final File file;
+  private final URL jarBase;
+  private volatile Directory directory = null;
+
+  MappedJarClassPathElement(URL url, File file) throws MalformedURLException {
+    super(url);
+    this.file = file;
+    this.jarBase = new URL("jar:" + url + "!/");
+  }
+
+  @Override
+  public Set<String> listPackages() throws IOException {
+    Directory jar = getDirectory();
+    Set<String> packages = new HashSet<String>();
+    for (int entry = 0; entry < jar.size; entry++) {
+      String name = jar.nameOf(entry);
+      if (!name.endsWith("/"))
+        packages.add(packageOf(name));
+    }
+    return packages;
+  }
+
+  @Override
+  public ByteBuffer read(String name) throws IOException {
+    Directory jar = getDirectory();
+    int entry = jar.find(name);
+    return entry < 0 ? null : jar.content(entry);
+  }
+
+  @Override
+  public URL findResource(String name) {
+    try {
+      if (getDirectory().find(name) < 0)
+        return null;
+      return new URL(jarBase, name);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  public void close() {
+    directory = null;
+  }
+
+  /**
+   * @return Number of entries, directories included.
+   */
+  int getEntryCount() throws IOException {
+    return getDirectory().size;
+  }
+
+  boolean isSigned() throws IOException {
+    Directory jar = getDirectory();
+    for (int entry = 0; entry < jar.size; entry++) {
+      if (isSignatureFile(jar.nameOf(entry)))
+        return true;
+    }
+    return false;
+  }
+
+  private Directory getDirectory() throws IOException {
+    Directory jar = directory;
+    if (jar == null) {
+      synchronized (this) {
+        jar = directory;
+        if (jar == null) {
+          jar = Directory.map(file);
+          directory = jar;
+        }
+      }
+    }
+    return jar;
+  }
+
+  private static class Directory {
+    private final MappedByteBuffer mapping;
+    private final int size;
+    private final int[] hashes;
+    private final int[] nameOffsets;
+    private final short[] nameLengths;
+    private final byte[] methods;
+    private final int[] localOffsets;
+    private final int[] compressedSizes;
+    private final int[] sizes;
+    private final int[] table;
+
+    private Directory(MappedByteBuffer mapping, int size) {
+      this.mapping = mapping;
+      this.size = size;
+      this.hashes = new int[size];
+      this.nameOffsets = new int[size];
+      this.nameLengths = new short[size];
+      this.methods = new byte[size];
+      this.localOffsets = new int[size];
+      this.compressedSizes = new int[size];
+      this.sizes = new int[size];
+      this.table = new int[tableSize(size)];
+    }
+
+    static Directory map(File file) throws IOException {
+      RandomAccessFile input = new RandomAccessFile(file, "r");
+      MappedByteBuffer mapping;
+      try {
+        if (input.length() > Integer.MAX_VALUE)
+          throw new ZipException("Jar too large to map: " + file);
+        mapping = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+      } finally {
+        input.close();
+      }
+      mapping.order(ByteOrder.LITTLE_ENDIAN);
+      try {
+        return parse(mapping);
+      } catch (IndexOutOfBoundsException e) {
+        throw new ZipException("Truncated jar: " + file);
+      }
+    }
+
+    private static Directory parse(MappedByteBuffer mapping) throws ZipException {
+      int end = findEnd(mapping);
+      int count = mapping.getShort(end + 10) & 0xffff;
+      int offset = mapping.getInt(end + 16);
+      if (count == 0xffff || offset == -1)
+        throw new ZipException("Zip64 jars are not supported");
+      Directory directory = new Directory(mapping, count);
+      for (int entry = 0; entry < count; entry++) {
+        if (mapping.getInt(offset) != CENTRAL_SIGNATURE)
+          throw new ZipException("Bad central directory entry " + entry);
+        int nameLength = mapping.getShort(offset + 28) & 0xffff;
+        int extraLength = mapping.getShort(offset + 30) & 0xffff;
+        int commentLength = mapping.getShort(offset + 32) & 0xffff;
+        directory.add(entry, offset + CENTRAL_SIZE, nameLength, mapping.getShort(offset + 10) & 0xffff,
+          mapping.getInt(offset + 42), mapping.getInt(offset + 20), mapping.getInt(offset + 24));
+        offset += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+      }
+      return directory;
+    }
+
+    private static int findEnd(ByteBuffer mapping) throws ZipException {
+      int last = mapping.limit() - END_SIZE;
+      int first = Math.max(0, last - 0xffff);
+      for (int position = last; position >= first; position--) {
+        if (mapping.getInt(position) == END_SIGNATURE)
+          return position;
+      }
+      throw new ZipException("No end of central directory");
+    }
+
+    private void add(int entry, int nameOffset, int nameLength, int method, int localOffset, int compressedSize,
+                     int size) {
+      int hash = hash(mapping, nameOffset, nameLength);
+      hashes[entry] = hash;
+      nameOffsets[entry] = nameOffset;
+      nameLengths[entry] = (short) nameLength;
+      methods[entry] = (byte) method;
+      localOffsets[entry] = localOffset;
+      compressedSizes[entry] = compressedSize;
+      sizes[entry] = size;
+      int mask = table.length - 1;
+      int slot = hash & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = entry + 1;
+    }
+
+    /**
+     * @return The entry number, -1 if the jar has no such entry. Duplicate names answer with the first entry.
+     */
+    int find(String name) {
+      byte[] bytes = utf8(name);
+      int hash = hash(bytes);
+      int mask = table.length - 1;
+      for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+        int entry = table[slot] - 1;
+        if (hashes[entry] == hash && nameEquals(entry, bytes))
+          return entry;
+      }
+      return -1;
+    }
+
+    String nameOf(int entry) {
+      byte[] bytes = new byte[nameLengths[entry] & 0xffff];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = mapping.get(nameOffsets[entry] + i);
+      }
+      try {
+        return new String(bytes, "UTF-8");
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    ByteBuffer content(int entry) throws IOException {
+      int local = localOffsets[entry];
+      if (mapping.getInt(local) != LOCAL_SIGNATURE)
+        throw new ZipException("Bad local header for " + nameOf(entry));
+      int start = local + LOCAL_SIZE + (mapping.getShort(local + 26) & 0xffff) + (mapping.getShort(local + 28) & 0xffff);
+      ByteBuffer data = mapping.duplicate();
+      data.limit(start + compressedSizes[entry]);
+      data.position(start);
+      if (methods[entry] == STORED)
+        return data.slice();
+      else if (methods[entry] == DEFLATED)
+        return ByteBuffer.wrap(inflate(data, sizes[entry], entry));
+      throw new ZipException("Unsupported compression method " + methods[entry] + " for " + nameOf(entry));
+    }
+
+    private byte[] inflate(ByteBuffer data, int size, int entry) throws ZipException {
+      int length = data.remaining();
+      byte[] input = inputBuffers.get();
+      if (input.length <= length) {
+        input = new byte[Integer.highestOneBit(length) << 1];
+        inputBuffers.set(input);
+      }
+      data.get(input, 0, length);
+      Inflater inflater = inflaters.get();
+      inflater.reset();
+      // The inflater reads one byte past the deflate stream when it is not wrapped, so give it a padding byte.
+      input[length] = 0;
+      inflater.setInput(input, 0, length + 1);
+      byte[] output = new byte[size];
+      try {
+        int count = 0;
+        while (count < size && !inflater.finished()) {
+          int inflated = inflater.inflate(output, count, size - count);
+          if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+            break;
+          count += inflated;
+        }
+        if (count != size)
+          throw new ZipException("Corrupt entry " + nameOf(entry));
+      } catch (DataFormatException e) {
+        throw new ZipException("Corrupt entry " + nameOf(entry) + ": " + e.getMessage());
+      }
+      return output;
+    }
+
+    private boolean nameEquals(int entry, byte[] name) {
+      if ((nameLengths[entry] & 0xffff) != name.length)
+        return false;
+      int offset = nameOffsets[entry];
+      for (int i = 0; i < name.length; i++) {
+        if (mapping.get(offset + i) != name[i])
+          return false;
+      }
+      return true;
+    }
+
+    private static int hash(ByteBuffer mapping, int offset, int length) {
+      int hash = 0;
+      for (int i = 0; i < length; i++) {
+        hash = 31 * hash + mapping.get(offset + i);
+      }
+      return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(byte[] bytes) {
+      int hash = 0;
+      for (byte b : bytes) {
+        hash = 31 * hash + b;
+      }
+      return hash ^ (hash >>> 16);
+    }
+
+    private static int tableSize(int size) {
+      return Integer.highestOneBit(Math.max(size, 1) * 2 + 1) << 1;
+    }
+
+    private static byte[] utf8(String name) {
+      try {
+        return name.getBytes("UTF-8");
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
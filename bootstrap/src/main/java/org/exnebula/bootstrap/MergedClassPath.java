@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Manages the merged archive of a launch plan: the class path jars copied, in class path order, into one jar of
+ * uncompressed entries, so a launch opens one file instead of every jar. Boot builds it on the launch that saves the
+ * plan. The jars stay the source of truth; the
+ * archive name is derived from the plan fingerprint, so any change to boot.cfg or to a jar makes the next launch
+ * build a new archive.
+ * <p>
+ * The first jar with an entry wins, as with a class loader lookup, except for {@value #SERVICES} files: those are
+ * concatenated in class path order so ServiceLoader finds the same providers. The other copies of a resource that
+ * several jars have, such as reference.conf or the manifest, are stored under {@value #SHADOWED}, and
+ * {@link LauncherClassLoader#setMergedClassPath} makes getResources return them after the first, in class path order.
+ * The archive manifest keeps the main attributes of the first jar and gives every package a section with the
+ * specification, implementation and sealing attributes of the jar it came from. Classes from the archive share its
+ * code source, so their protection domain names the archive rather than the jar. Signed jars, multi-release jars and
+ * jars with a Class-Path manifest attribute cannot be merged faithfully; for those a marker file records that the
+ * plan keeps its jars.
+ */
+public class MergedClassPath {
+  static final String SERVICES = "META-INF/services/";
+  static final String SHADOWED = "META-INF/boot-merged/";
+  private static final List<Attributes.Name> PACKAGE_ATTRIBUTES = Arrays.asList(
+    Attributes.Name.SPECIFICATION_TITLE, Attributes.Name.SPECIFICATION_VERSION, Attributes.Name.SPECIFICATION_VENDOR,
+    Attributes.Name.IMPLEMENTATION_TITLE, Attributes.Name.IMPLEMENTATION_VERSION,
+    Attributes.Name.IMPLEMENTATION_VENDOR, Attributes.Name.SEALED);
+  private static final String ARCHIVE_PREFIX = "boot-merged-";
+  private static final String ARCHIVE_SUFFIX = ".jar";
+  private static final String UNMERGEABLE_SUFFIX = ".none";
+
+  private final File directory;
+
+  public MergedClassPath(File directory) {
+    this.directory = directory;
+  }
+
+  public File archiveFor(LaunchPlan plan) {
+    return new File(directory, ARCHIVE_PREFIX + plan.getFingerprint().substring(0, 16) + ARCHIVE_SUFFIX);
+  }
+
+  /**
+   * @return True if the last build found jars that cannot be merged for the same plan.
+   */
+  public boolean isUnmergeable(LaunchPlan plan) {
+    return unmergeableMarkerFor(plan).isFile();
+  }
+
+  /**
+   * @return True if the archive exists or the class path is known not to merge, so there is nothing to build.
+   */
+  public boolean isBuilt(LaunchPlan plan) {
+    return archiveFor(plan).isFile() || isUnmergeable(plan);
+  }
+
+  /**
+   * @return True if the archive was built, false if the class path cannot be merged.
+   */
+  public boolean build(LaunchPlan plan, List<String> classPath) throws IOException {
+    File archive = archiveFor(plan);
+    File temporary = File.createTempFile(archive.getName(), ".tmp", directory);
+    boolean merged = false;
+    try {
+      ZipOutputStream output = new ZipOutputStream(new FileOutputStream(temporary));
+      try {
+        merged = copyEntries(classPath, output);
+      } finally {
+        output.close();
+      }
+      if (!merged) {
+        unmergeableMarkerFor(plan).createNewFile();
+      } else if (!temporary.renameTo(archive) && !archive.isFile()) {
+        throw new IOException("Could not rename " + temporary + " to " + archive);
+      }
+      removeFilesOtherThan(archive, unmergeableMarkerFor(plan));
+      return merged;
+    } finally {
+      temporary.delete();
+    }
+  }
+
+  private boolean copyEntries(List<String> classPath, ZipOutputStream output) throws IOException {
+    Map<String, Integer> copies = new HashMap<String, Integer>();
+    Map<String, ByteArrayOutputStream> services = new LinkedHashMap<String, ByteArrayOutputStream>();
+    Manifest merged = null;
+    for (String path : classPath) {
+      JarFile jar = new JarFile(path);
+      try {
+        if (!isMergeable(jar))
+          return false;
+        Manifest manifest = jar.getManifest();
+        if (merged == null && manifest != null)
+          merged = mainAttributesOf(manifest);
+        Set<String> packages = new HashSet<String>();
+        Enumeration<? extends ZipEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+          String name = entry.getName();
+          Integer count = copies.get(name);
+          if (name.startsWith(SERVICES) && !entry.isDirectory()) {
+            appendService(services, name, ClassPathElement.readFully(jar.getInputStream(entry), entry.getSize()));
+          } else if (count == null) {
+            copies.put(name, 1);
+            if (name.endsWith(".class") && name.indexOf('/') > 0)
+              packages.add(name.substring(0, name.lastIndexOf('/') + 1));
+            if (!name.equalsIgnoreCase(JarFile.MANIFEST_NAME))
+              putStored(output, name, contentOf(jar, entry));
+          } else if (!entry.isDirectory() && !name.endsWith(".class")) {
+            copies.put(name, count + 1);
+            putStored(output, shadowedName(name, count), contentOf(jar, entry));
+          }
+        }
+        if (manifest != null)
+          addPackageSections(merged, manifest, packages);
+      } finally {
+        jar.close();
+      }
+    }
+    for (Map.Entry<String, ByteArrayOutputStream> service : services.entrySet()) {
+      putStored(output, service.getKey(), service.getValue().toByteArray());
+    }
+    if (merged != null) {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      merged.write(content);
+      putStored(output, JarFile.MANIFEST_NAME, content.toByteArray());
+    }
+    return true;
+  }
+
+  /**
+   * @return Name under which the archive stores the copy of a resource from the class path jar that has it after
+   *         <code>shadowed</code> other jars.
+   */
+  static String shadowedName(String name, int shadowed) {
+    return SHADOWED + shadowed + "/" + name;
+  }
+
+  private static byte[] contentOf(JarFile jar, ZipEntry entry) throws IOException {
+    return entry.isDirectory() ? new byte[0] : ClassPathElement.readFully(jar.getInputStream(entry), entry.getSize());
+  }
+
+  /**
+   * @return Manifest with the main attributes of the first jar, less the package attributes, which only apply to
+   *         the packages of that jar.
+   */
+  private static Manifest mainAttributesOf(Manifest manifest) {
+    Manifest merged = new Manifest();
+    merged.getMainAttributes().putAll(manifest.getMainAttributes());
+    merged.getMainAttributes().keySet().removeAll(PACKAGE_ATTRIBUTES);
+    return merged;
+  }
+
+  /**
+   * Gives each package of a jar its own manifest section, so a class loader defines it with the specification,
+   * implementation and sealing attributes the jar declared, whether in its main attributes or in a section.
+   */
+  private static void addPackageSections(Manifest merged, Manifest manifest, Set<String> packages) {
+    for (String packagePath : packages) {
+      if (merged.getEntries().containsKey(packagePath))
+        continue;
+      Attributes section = new Attributes();
+      Attributes own = manifest.getAttributes(packagePath);
+      for (Attributes.Name attribute : PACKAGE_ATTRIBUTES) {
+        String value = own != null ? own.getValue(attribute) : null;
+        if (value == null)
+          value = manifest.getMainAttributes().getValue(attribute);
+        if (value != null)
+          section.put(attribute, value);
+      }
+      if (!section.isEmpty())
+        merged.getEntries().put(packagePath, section);
+    }
+  }
+
+  private static boolean isMergeable(JarFile jar) throws IOException {
+    Manifest manifest = jar.getManifest();
+    if (manifest != null) {
+      Attributes attributes = manifest.getMainAttributes();
+      if (attributes.getValue(Attributes.Name.CLASS_PATH) != null || "true".equalsIgnoreCase(
+        attributes.getValue("Multi-Release")))
+        return false;
+    }
+    Enumeration<? extends ZipEntry> entries = jar.entries();
+    while (entries.hasMoreElements()) {
+      String name = entries.nextElement().getName().toUpperCase();
+      if (name.startsWith("META-INF/") && name.indexOf('/', 9) < 0 &&
+        (name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC")))
+        return false;
+    }
+    return true;
+  }
+
+  private static void appendService(Map<String, ByteArrayOutputStream> services, String name, byte[] content) {
+    ByteArrayOutputStream merged = services.get(name);
+    if (merged == null) {
+      merged = new ByteArrayOutputStream();
+      services.put(name, merged);
+    }
+    merged.write(content, 0, content.length);
+    if (content.length > 0 && content[content.length - 1] != '\n')
+      merged.write('\n');
+  }
+
+  private static void putStored(ZipOutputStream output, String name, byte[] content) throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(content.length);
+    entry.setCompressedSize(content.length);
+    entry.setCrc(crc.getValue());
+    output.putNextEntry(entry);
+    output.write(content);
+    output.closeEntry();
+  }
+
+  private File unmergeableMarkerFor(LaunchPlan plan) {
+    return new File(archiveFor(plan).getPath() + UNMERGEABLE_SUFFIX);
+  }
+
+  /**
+   * Removes archives of older plans and temporary files left by builds that did not finish.
+   */
+  private void removeFilesOtherThan(final File archive, final File marker) {
+    File[] stale = directory.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.startsWith(ARCHIVE_PREFIX) && !name.equals(archive.getName()) && !name.equals(marker.getName());
+      }
+    });
+    if (stale != null) {
+      for (File file : stale) {
+        file.delete();
+      }
+    }
+  }
+}
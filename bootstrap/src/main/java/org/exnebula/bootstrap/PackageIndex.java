@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Maps each package (the '/' separated directory of an entry) to the class path elements that contain it, in class
+ * path order. Packages split across jars keep every owner.
+ */
+public class PackageIndex {
+  private static final int[] NO_ELEMENTS = new int[0];
+  private static final int MINIMUM_ELEMENTS_FOR_THREADS = 16;
+
+  private final int elementCount;
+  private final Map<String, int[]> owners;
+
+  private PackageIndex(int elementCount, Map<String, int[]> owners) {
+    this.elementCount = elementCount;
+    this.owners = owners;
+  }
+
+  public int getElementCount() {
+    return elementCount;
+  }
+
+  public int getPackageCount() {
+    return owners.size();
+  }
+
+  public int[] elementsFor(String entryName) {
+    int[] elements = owners.get(ClassPathElement.packageOf(entryName));
+    return elements == null ? NO_ELEMENTS : elements;
+  }
+
+  public void writeTo(DataOutputStream output) throws IOException {
+    output.writeInt(elementCount);
+    output.writeInt(owners.size());
+    for (Map.Entry<String, int[]> entry : owners.entrySet()) {
+      output.writeUTF(entry.getKey());
+      output.writeInt(entry.getValue().length);
+      for (int element : entry.getValue()) {
+        output.writeInt(element);
+      }
+    }
+  }
+
+  public static PackageIndex readFrom(DataInputStream input) throws IOException {
+    int elementCount = input.readInt();
+    int packageCount = input.readInt();
+    Map<String, int[]> owners = new HashMap<String, int[]>(packageCount * 2);
+    for (int i = 0; i < packageCount; i++) {
+      String packageName = input.readUTF();
+      int[] elements = new int[input.readInt()];
+      for (int j = 0; j < elements.length; j++) {
+        elements[j] = input.readInt();
+      }
+      owners.put(packageName, elements);
+    }
+    return new PackageIndex(elementCount, owners);
+  }
+
+  static PackageIndex build(List<ClassPathElement> elements, int maximumThreads) throws IOException {
+    List<Set<String>> packages = listAllPackages(elements, maximumThreads);
+    Map<String, List<Integer>> collected = new HashMap<String, List<Integer>>();
+    for (int i = 0; i < packages.size(); i++) {
+      for (String packageName : packages.get(i)) {
+        List<Integer> list = collected.get(packageName);
+        if (list == null) {
+          list = new ArrayList<Integer>(1);
+          collected.put(packageName, list);
+        }
+        list.add(i);
+      }
+    }
+    Map<String, int[]> owners = new HashMap<String, int[]>(collected.size() * 2);
+    for (Map.Entry<String, List<Integer>> entry : collected.entrySet()) {
+      int[] positions = new int[entry.getValue().size()];
+      for (int i = 0; i < positions.length; i++) {
+        positions[i] = entry.getValue().get(i);
+      }
+      owners.put(entry.getKey(), positions);
+    }
+    return new PackageIndex(elements.size(), owners);
+  }
+
+  private static List<Set<String>> listAllPackages(List<ClassPathElement> elements, int maximumThreads) throws IOException {
+    if (elements.size() < MINIMUM_ELEMENTS_FOR_THREADS || maximumThreads <= 1) {
+      List<Set<String>> packages = new ArrayList<Set<String>>(elements.size());
+      for (ClassPathElement element : elements) {
+        packages.add(element.listPackages());
+      }
+      return packages;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(maximumThreads, elements.size())), new DaemonThreadFactory("package-index"));
+    try {
+      List<Future<Set<String>>> results = new ArrayList<Future<Set<String>>>(elements.size());
+      for (final ClassPathElement element : elements) {
+        results.add(executor.submit(new Callable<Set<String>>() {
+          public Set<String> call() throws IOException {
+            return element.listPackages();
+          }
+        }));
+      }
+      List<Set<String>> packages = new ArrayList<Set<String>>(elements.size());
+      for (Future<Set<String>> result : results) {
+        packages.add(result.get());
+      }
+      return packages;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while indexing class path");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IOException("Failed to index class path", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Indexed class loader that keeps only the most recently used jars open, in a {@link JarFilePool}. Jars are reopened
+ * when a lookup needs them again; see {@link PooledJarClassPathElement}.
+ */
+public class PooledClassLoader extends IndexedClassLoader {
+
+  static {
+    registerAsParallelCapable();
+  }
+
+  private final JarFilePool pool;
+
+  public PooledClassLoader(URL[] urls, ClassLoader parent) throws IOException {
+    this(urls, parent, null);
+  }
+
+  /**
+   * @param index Previously built index for the same URLs, or null to build one now.
+   */
+  public PooledClassLoader(URL[] urls, ClassLoader parent, PackageIndex index) throws IOException {
+    this(urls, parent, index, new JarFilePool(JarFilePool.defaultCapacity()));
+  }
+
+  public PooledClassLoader(URL[] urls, ClassLoader parent, PackageIndex index, JarFilePool pool) throws IOException {
+    super(urls, parent, index, openElements(urls, pool));
+    this.pool = pool;
+  }
+
+  public JarFilePool getPool() {
+    return pool;
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    pool.close();
+  }
+
+  private static List<ClassPathElement> openElements(URL[] urls, JarFilePool pool) throws IOException {
+    List<ClassPathElement> elements = new ArrayList<ClassPathElement>(urls.length);
+    for (URL url : urls) {
+      elements.add(ClassPathElement.openPooled(url, pool));
+    }
+    return elements;
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.security.CodeSigner;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * Jar read through a {@link JarFilePool}, so it is open only while the pool has room for it. The hashes of its entry
+ * names are kept in a sorted array, so most lookups for entries it does not have never open the jar. Resource URLs
+ * read through the pool as well, instead of through the JDK's JarURLConnection that would keep the jar open for good;
+ * their connection is still a JarURLConnection.
+ */
+class PooledJarClassPathElement extends ClassPathElement {
+  private static final String SEPARATOR = "!/";
+
+  private final File file;
+  private final JarFilePool pool;
+  private final String jarBase;
+  private final URLStreamHandler handler = new PooledEntryHandler();
+  private volatile int[] nameHashes = null;
+  private volatile Boolean signed = null;
+
+  PooledJarClassPathElement(URL url, File file, JarFilePool pool) {
+    super(url);
+    this.file = file;
+    this.pool = pool;
+    this.jarBase = url + SEPARATOR;
+  }
+
+  @Override
+  public Set<String> listPackages() throws IOException {
+    Set<String> packages = new HashSet<String>();
+    readDirectory(packages);
+    return packages;
+  }
+
+  @Override
+  public ByteBuffer read(String name) throws IOException {
+    if (!mayContain(name))
+      return null;
+    JarFile jar = pool.acquire(file);
+    try {
+      ZipEntry entry = jar.getEntry(name);
+      if (entry == null)
+        return null;
+      return ByteBuffer.wrap(readFully(jar.getInputStream(entry), entry.getSize()));
+    } finally {
+      pool.release(file);
+    }
+  }
+
+  @Override
+  public URL findResource(String name) {
+    try {
+      if (!mayContain(name) || !contains(name))
+        return null;
+      return new URL("jar", null, -1, jarBase + name, handler);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public Manifest readManifest() throws IOException {
+    JarFile jar = pool.acquire(file);
+    try {
+      return jar.getManifest();
+    } finally {
+      pool.release(file);
+    }
+  }
+
+  /**
+   * Reads the entry again under the same acquisition, since the pool may have reopened the jar since it was read and
+   * a new JarFile only knows the signers of entries it verified itself.
+   */
+  @Override
+  public CodeSigner[] getCodeSigners(String name) throws IOException {
+    if (Boolean.FALSE.equals(signed) || !mayContain(name))
+      return null;
+    JarFile jar = pool.acquire(file);
+    try {
+      if (signed == null)
+        signed = hasSignatureFile(jar);
+      JarEntry entry = signed ? jar.getJarEntry(name) : null;
+      if (entry == null)
+        return null;
+      readFully(jar.getInputStream(entry), entry.getSize());
+      return entry.getCodeSigners();
+    } finally {
+      pool.release(file);
+    }
+  }
+
+  /**
+   * The pool owns the open jar.
+   */
+  public void close() {
+  }
+
+  private boolean contains(String name) throws IOException {
+    JarFile jar = pool.acquire(file);
+    try {
+      return jar.getEntry(name) != null;
+    } finally {
+      pool.release(file);
+    }
+  }
+
+  private boolean mayContain(String name) throws IOException {
+    int[] hashes = nameHashes;
+    if (hashes == null)
+      hashes = readDirectory(null);
+    return Arrays.binarySearch(hashes, name.hashCode()) >= 0;
+  }
+
+  /**
+   * Lists the entries once, for the name hashes and, when asked, the packages.
+   */
+  private int[] readDirectory(Set<String> packages) throws IOException {
+    JarFile jar = pool.acquire(file);
+    try {
+      int[] hashes = new int[jar.size()];
+      int count = 0;
+      Enumeration<? extends ZipEntry> entries = jar.entries();
+      while (entries.hasMoreElements() && count < hashes.length) {
+        ZipEntry entry = entries.nextElement();
+        hashes[count++] = entry.getName().hashCode();
+        if (packages != null && !entry.isDirectory())
+          packages.add(packageOf(entry.getName()));
+      }
+      hashes = Arrays.copyOf(hashes, count);
+      Arrays.sort(hashes);
+      nameHashes = hashes;
+      return hashes;
+    } finally {
+      pool.release(file);
+    }
+  }
+
+  private class PooledEntryHandler extends URLStreamHandler {
+    @Override
+    protected URLConnection openConnection(URL url) throws IOException {
+      return new PooledEntryConnection(url);
+    }
+  }
+
+  /**
+   * Reads the entry and the manifest through the pool. {@link #getJarFile()} has to hand out a JarFile the pool may
+   * not close, so it opens one of its own, as a JarURLConnection without caching does; the caller closes it.
+   */
+  private class PooledEntryConnection extends JarURLConnection {
+    private InputStream input = null;
+
+    PooledEntryConnection(URL url) throws MalformedURLException {
+      super(url);
+    }
+
+    @Override
+    public void connect() throws IOException {
+      if (input != null)
+        return;
+      ByteBuffer content = read(entryName());
+      if (content == null)
+        throw new FileNotFoundException(getURL().toString());
+      input = new ByteArrayInputStream(content.array(), content.arrayOffset(), content.remaining());
+      connected = true;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      connect();
+      return input;
+    }
+
+    @Override
+    public JarFile getJarFile() throws IOException {
+      return new JarFile(file);
+    }
+
+    @Override
+    public JarEntry getJarEntry() throws IOException {
+      JarFile jar = pool.acquire(file);
+      try {
+        JarEntry entry = jar.getJarEntry(entryName());
+        if (entry == null)
+          throw new FileNotFoundException(getURL().toString());
+        return entry;
+      } finally {
+        pool.release(file);
+      }
+    }
+
+    @Override
+    public Manifest getManifest() throws IOException {
+      JarFile jar = pool.acquire(file);
+      try {
+        return jar.getManifest();
+      } finally {
+        pool.release(file);
+      }
+    }
+
+    /**
+     * The name as the element was asked for it, where {@link #getEntryName()} would decode escapes.
+     */
+    private String entryName() {
+      return getURL().getFile().substring(jarBase.length());
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the class loader of each shared library layer, so the entry points started by one JVM load the layer once.
+ * A layer whose files changed size or modification time gets a new loader.
+ */
+public class SharedClassLoaders {
+  private final Map<String, LauncherClassLoader> loaders = new HashMap<String, LauncherClassLoader>();
+
+  public synchronized LauncherClassLoader loaderFor(URL[] urls, ClassLoader parent) throws MalformedURLException {
+    String key = keyOf(urls);
+    LauncherClassLoader loader = loaders.get(key);
+    if (loader == null) {
+      loader = new LauncherClassLoader(urls, parent);
+      loaders.put(key, loader);
+    }
+    return loader;
+  }
+
+  public synchronized int size() {
+    return loaders.size();
+  }
+
+  private static String keyOf(URL[] urls) throws MalformedURLException {
+    StringBuilder key = new StringBuilder();
+    for (URL url : urls) {
+      File file = ClassPathElement.toFile(url);
+      key.append(url).append(' ').append(file.length()).append(' ').append(file.lastModified()).append('\n');
+    }
+    return key.toString();
+  }
+}
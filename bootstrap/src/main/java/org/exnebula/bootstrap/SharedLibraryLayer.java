@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The {@code cp.shared=} entries of boot.cfg, loaded once by a parent of every entry point's class loader, and the
+ * named entry points declared with {@code ep.<name>=} and their own {@code cp.<name>=} entries.
+ */
+public class SharedLibraryLayer {
+  public static final SharedLibraryLayer NONE = new SharedLibraryLayer(Collections.<String>emptyList(),
+    Collections.<String, String>emptyMap(), Collections.<String, List<String>>emptyMap());
+
+  private final List<String> classPath;
+  private final Map<String, String> entryPoints;
+  private final Map<String, List<String>> entryClassPaths;
+
+  /**
+   * @param entryPoints     Class of each named entry point, in declaration order.
+   * @param entryClassPaths Own class path of each named entry point that has one.
+   */
+  public SharedLibraryLayer(List<String> classPath, Map<String, String> entryPoints,
+                            Map<String, List<String>> entryClassPaths) {
+    this.classPath = Collections.unmodifiableList(new ArrayList<String>(classPath));
+    this.entryPoints = Collections.unmodifiableMap(new LinkedHashMap<String, String>(entryPoints));
+    Map<String, List<String>> copy = new LinkedHashMap<String, List<String>>();
+    for (Map.Entry<String, List<String>> entry : entryClassPaths.entrySet()) {
+      copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+    }
+    this.entryClassPaths = Collections.unmodifiableMap(copy);
+  }
+
+  public boolean isEmpty() {
+    return classPath.isEmpty() && entryPoints.isEmpty();
+  }
+
+  public List<String> getClassPath() {
+    return classPath;
+  }
+
+  public Set<String> getEntryPointNames() {
+    return entryPoints.keySet();
+  }
+
+  /**
+   * @return Class of the named entry point, null if there is none by that name.
+   */
+  public String getEntryPoint(String name) {
+    return entryPoints.get(name);
+  }
+
+  public List<String> getClassPath(String name) {
+    List<String> entries = entryClassPaths.get(name);
+    return entries == null ? Collections.<String>emptyList() : entries;
+  }
+
+  /**
+   * @return The entries of the boot.cfg class path that belong to neither the layer nor a named entry point.
+   */
+  public List<String> mainClassPath(List<String> fullClassPath) {
+    if (isEmpty())
+      return fullClassPath;
+    Set<String> others = new HashSet<String>(classPath);
+    for (List<String> entries : entryClassPaths.values()) {
+      others.addAll(entries);
+    }
+    List<String> main = new ArrayList<String>();
+    for (String entry : fullClassPath) {
+      if (!others.contains(entry))
+        main.add(entry);
+    }
+    return main;
+  }
+
+  public void writeTo(DataOutputStream output) throws IOException {
+    writeList(output, classPath);
+    output.writeInt(entryPoints.size());
+    for (Map.Entry<String, String> entry : entryPoints.entrySet()) {
+      output.writeUTF(entry.getKey());
+      output.writeUTF(entry.getValue());
+      writeList(output, getClassPath(entry.getKey()));
+    }
+  }
+
+  public static SharedLibraryLayer readFrom(DataInputStream input) throws IOException {
+    List<String> classPath = readList(input);
+    int count = input.readInt();
+    Map<String, String> entryPoints = new LinkedHashMap<String, String>();
+    Map<String, List<String>> entryClassPaths = new HashMap<String, List<String>>();
+    for (int i = 0; i < count; i++) {
+      String name = input.readUTF();
+      entryPoints.put(name, input.readUTF());
+      entryClassPaths.put(name, readList(input));
+    }
+    return new SharedLibraryLayer(classPath, entryPoints, entryClassPaths);
+  }
+
+  private static void writeList(DataOutputStream output, List<String> list) throws IOException {
+    output.writeInt(list.size());
+    for (String item : list) {
+      output.writeUTF(item);
+    }
+  }
+
+  private static List<String> readList(DataInputStream input) throws IOException {
+    int size = input.readInt();
+    if (size < 0)
+      throw new IOException("Bad list size " + size);
+    List<String> list = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(input.readUTF());
+    }
+    return list;
+  }
+}
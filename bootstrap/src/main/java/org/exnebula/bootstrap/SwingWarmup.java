@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.AWTEventListener;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Initialises the AWT toolkit and the fonts on a thread of its own while the bootstrap checks the class path and
+ * builds the class loader, so the first window of the application does not wait for them after main starts.
+ * {@link BootSwing} starts it once the launch is known to stay in the bootstrap JVM; a forked application initialises
+ * its own toolkit and opens windows the splash cannot see. The look and feel
+ * and the UI delegates are loaded by a task queued on the event dispatch thread, which Swing requires. When the system
+ * property {@value #SPLASH_PROPERTY} names an image it is shown in a plain AWT window as soon as the toolkit is up,
+ * until the application opens a window of its own or {@value #SPLASH_TIMEOUT_MILLIS} ms pass.
+ * <p>
+ * The time from JVM start to the first window of the application is appended to {@value #REPORT_FILE}, labelled
+ * {@code warmup=true}. Setting the system property {@value #DISABLE_PROPERTY} to false leaves the toolkit to the
+ * application and logs {@code warmup=false} launches, to compare timings. Without a display only the look and feel and
+ * the fonts are warmed.
+ */
+public class SwingWarmup implements Runnable {
+  public static final String DISABLE_PROPERTY = "org.exnebula.bootstrap.warmup";
+  public static final String SPLASH_PROPERTY = "org.exnebula.bootstrap.splash";
+  public static final String REPORT_FILE = "boot-frame.log";
+  public static final String PHASE = "Swing warm-up";
+  static final long SPLASH_TIMEOUT_MILLIS = 15000;
+  private static final String LOOK_AND_FEEL_PROPERTY = "swing.defaultlaf";
+  private static final String[] FONT_KEYS = {"Label.font", "Button.font", "Menu.font", "TextField.font", "Table.font"};
+  private static final String SAMPLE_TEXT = "The quick brown fox jumps over the lazy dog 0123456789";
+
+  private final File reportDirectory;
+  private final BootTimeline timeline;
+  private final String splashImage;
+  private final boolean enabled;
+  private final long bootStartMillis;
+  private final AtomicBoolean firstFrameOpened = new AtomicBoolean(false);
+  private Window splash = null;
+
+  SwingWarmup(File reportDirectory, BootTimeline timeline, String splashImage, boolean enabled, long bootStartMillis) {
+    this.reportDirectory = reportDirectory;
+    this.timeline = timeline;
+    this.splashImage = splashImage;
+    this.enabled = enabled;
+    this.bootStartMillis = bootStartMillis;
+  }
+
+  /**
+   * Starts the warm-up on a daemon thread. With warm-up disabled only the first window is watched for, from this
+   * thread.
+   *
+   * @param reportDirectory Directory of {@value #REPORT_FILE}, null to not report
+   */
+  public static SwingWarmup start(File reportDirectory, BootTimeline timeline) {
+    SwingWarmup warmup = new SwingWarmup(reportDirectory, timeline, System.getProperty(SPLASH_PROPERTY),
+      !"false".equals(System.getProperty(DISABLE_PROPERTY)), System.currentTimeMillis());
+    if (warmup.enabled)
+      new DaemonThreadFactory("swing-warmup").newThread(warmup).start();
+    else if (!GraphicsEnvironment.isHeadless())
+      warmup.watchFirstFrame();
+    return warmup;
+  }
+
+  public void run() {
+    timeline.begin(PHASE);
+    try {
+      if (!GraphicsEnvironment.isHeadless()) {
+        watchFirstFrame();
+        showSplash();
+      }
+      warmFonts(Collections.singletonList(new Font(Font.DIALOG, Font.PLAIN, 12)));
+      FutureTask<List<Font>> lookAndFeel = new FutureTask<List<Font>>(new Callable<List<Font>>() {
+        public List<Font> call() {
+          return isLookAndFeelLoadable() ? warmLookAndFeel() : Collections.<Font>emptyList();
+        }
+      });
+      EventQueue.invokeLater(lookAndFeel);
+      warmFonts(lookAndFeel.get());
+    } catch (InterruptedException e) {
+      // Application is shutting down
+    } catch (ExecutionException e) {
+      // The application initialises the look and feel itself
+    } catch (RuntimeException e) {
+      // The application initialises whatever is left itself
+    } catch (AWTError e) {
+      // No display, the application reports it
+    } finally {
+      timeline.end(PHASE);
+    }
+  }
+
+  /**
+   * UIManager initialises only once, so a look and feel that only the application class path has is left to the
+   * application.
+   */
+  static boolean isLookAndFeelLoadable() {
+    String className = System.getProperty(LOOK_AND_FEEL_PROPERTY);
+    if (className == null)
+      return true;
+    try {
+      Class.forName(className, false, Thread.currentThread().getContextClassLoader());
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Loads the look and feel defaults and the UI delegates of common components, without realising any of them. Runs
+   * on the event dispatch thread, like the Swing code of the application.
+   *
+   * @return Fonts of the look and feel
+   */
+  private static List<Font> warmLookAndFeel() {
+    UIManager.getLookAndFeelDefaults();
+    JPanel panel = new JPanel(new BorderLayout());
+    panel.add(new JLabel(SAMPLE_TEXT), BorderLayout.NORTH);
+    panel.add(new JScrollPane(new JTextArea(SAMPLE_TEXT)), BorderLayout.CENTER);
+    panel.add(new JButton(SAMPLE_TEXT), BorderLayout.SOUTH);
+    panel.add(new JTextField(SAMPLE_TEXT), BorderLayout.EAST);
+    new JMenuBar().add(new JMenu(SAMPLE_TEXT)).add(new JMenuItem(SAMPLE_TEXT));
+    List<Font> fonts = new ArrayList<Font>();
+    for (String key : FONT_KEYS) {
+      Font font = UIManager.getFont(key);
+      if (font != null)
+        fonts.add(font);
+    }
+    return fonts;
+  }
+
+  /**
+   * Drawing text offscreen opens the font files and fills the glyph caches the first window uses.
+   */
+  private static void warmFonts(List<Font> fonts) {
+    Graphics2D graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+    try {
+      for (Font font : fonts) {
+        graphics.setFont(font);
+        graphics.drawString(SAMPLE_TEXT, 0, 0);
+      }
+    } finally {
+      graphics.dispose();
+    }
+  }
+
+  private void watchFirstFrame() {
+    Toolkit.getDefaultToolkit().addAWTEventListener(new AWTEventListener() {
+      public void eventDispatched(AWTEvent event) {
+        if (event.getID() == WindowEvent.WINDOW_OPENED && event.getSource() != splash)
+          windowOpened(this);
+      }
+    }, AWTEvent.WINDOW_EVENT_MASK);
+  }
+
+  private void windowOpened(AWTEventListener listener) {
+    if (!firstFrameOpened.compareAndSet(false, true))
+      return;
+    final long frameMillis = System.currentTimeMillis();
+    Toolkit.getDefaultToolkit().removeAWTEventListener(listener);
+    closeSplash();
+    if (reportDirectory == null)
+      return;
+    new DaemonThreadFactory("swing-first-frame").newThread(new Runnable() {
+      public void run() {
+        report(frameMillis, ManagementFactory.getRuntimeMXBean().getStartTime());
+      }
+    }).start();
+  }
+
+  void report(long frameMillis, long jvmStartMillis) {
+    String line = String.format("%d warmup=%s timeToFirstFrameMillis=%d bootToFirstFrameMillis=%d%n", frameMillis,
+      enabled, frameMillis - jvmStartMillis, frameMillis - bootStartMillis);
+    File reportFile = new File(reportDirectory, REPORT_FILE);
+    try {
+      Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile, true), "UTF-8");
+      try {
+        writer.write(line);
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      // Reporting must never stop the application
+    }
+  }
+
+  /**
+   * A splash screen of the JVM, from -splash or the jar manifest, is already up and closes by itself.
+   */
+  private void showSplash() {
+    if (splashImage == null || SplashScreen.getSplashScreen() != null)
+      return;
+    final Image image = Toolkit.getDefaultToolkit().createImage(splashImage);
+    MediaTracker tracker = new MediaTracker(new Canvas());
+    tracker.addImage(image, 0);
+    try {
+      tracker.waitForID(0);
+    } catch (InterruptedException e) {
+      return;
+    }
+    if (tracker.isErrorID(0))
+      return;
+    EventQueue.invokeLater(new Runnable() {
+      public void run() {
+        if (firstFrameOpened.get())
+          return;
+        splash = new Window((Window) null) {
+          @Override
+          public void paint(Graphics graphics) {
+            graphics.drawImage(image, 0, 0, this);
+          }
+        };
+        splash.setSize(image.getWidth(null), image.getHeight(null));
+        splash.setLocationRelativeTo(null);
+        splash.setVisible(true);
+      }
+    });
+    new Timer("swing-splash", true).schedule(new TimerTask() {
+      @Override
+      public void run() {
+        closeSplash();
+      }
+    }, SPLASH_TIMEOUT_MILLIS);
+  }
+
+  private void closeSplash() {
+    EventQueue.invokeLater(new Runnable() {
+      public void run() {
+        if (splash != null)
+          splash.dispose();
+        splash = null;
+      }
+    });
+  }
+}
@@ -16,14 +16,18 @@
  */
 package org.exnebula.bootstrap;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static org.junit.Assert.*;
 
@@ -119,6 +123,207 @@ public class BootConfigLoaderTest {
     assertNull(loadConfigFromString("ep=one\n" + badString));
   }
 
+  @Test
+  public void defaultToPlainClassLoader() throws Exception {
+    BootConfig config = loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar");
+    assertEquals(ClassLoaderType.DEFAULT, config.getClassLoaderType());
+  }
+
+  @Test
+  public void selectIndexedClassLoader() throws Exception {
+    BootConfig config = loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\ncl=indexed");
+    assertEquals(ClassLoaderType.INDEXED, config.getClassLoaderType());
+  }
+
+  @Test
+  public void selectMappedClassLoader() throws Exception {
+    BootConfig config = loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\ncl=mapped");
+    assertEquals(ClassLoaderType.MAPPED, config.getClassLoaderType());
+  }
+
+  @Test
+  public void selectPooledClassLoader() throws Exception {
+    BootConfig config = loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\ncl=pooled");
+    assertEquals(ClassLoaderType.POOLED, config.getClassLoaderType());
+  }
+
+  @Test
+  public void rejectUnknownClassLoader() throws Exception {
+    expectInvalidConfigurationException("Unknown class loader 'magic'");
+    loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\ncl=magic");
+  }
+
+  @Test
+  public void rejectMoreThanOneClassLoader() throws Exception {
+    expectInvalidConfigurationException("Must have at most one 'cl' entry");
+    loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\ncl=indexed\ncl=default");
+  }
+
+  @Test
+  public void classDataSharingIsOffByDefault() throws Exception {
+    assertFalse(loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar").isClassDataSharing());
+  }
+
+  @Test
+  public void enableClassDataSharing() throws Exception {
+    assertTrue(loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\ncds=true").isClassDataSharing());
+  }
+
+  @Test
+  public void rejectBadClassDataSharingValue() throws Exception {
+    expectInvalidConfigurationException("Entry 'cds' must be true or false");
+    loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\ncds=yes");
+  }
+
+  @Test
+  public void forkWithJvmOptionsInOrder() throws Exception {
+    BootConfig config = loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\nfork=true\njvm=-Xmx512m\n" +
+      "jvm=-XX:+UseG1GC\njvm=-Dvcc.mode=full screen");
+    assertTrue(config.isFork());
+    assertEquals(Arrays.asList("-Xmx512m", "-XX:+UseG1GC", "-Dvcc.mode=full screen"), config.getJvmOptions());
+    assertFalse(loadInNewLoader("ep=vcc.other.EP\ncp=lib/myLib.jar").isFork());
+  }
+
+  @Test
+  public void readSharedLayerAndNamedEntryPoints() throws Exception {
+    BootConfig config = loadConfigFromString("ep=vcc.Main\ncp.shared=lib/scala.jar\ncp=vcc.jar\n" +
+      "cp.tool=tool.jar\nep.tool=vcc.Tool\nep.report=vcc.Report");
+    SharedLibraryLayer layer = config.getSharedLibraryLayer();
+    assertEquals(Arrays.asList("lib/scala.jar", "vcc.jar", "tool.jar"), config.getClassPath());
+    assertEquals(Collections.singletonList("lib/scala.jar"), layer.getClassPath());
+    assertEquals("vcc.Tool", layer.getEntryPoint("tool"));
+    assertEquals(Collections.singletonList("tool.jar"), layer.getClassPath("tool"));
+    assertEquals(Collections.<String>emptyList(), layer.getClassPath("report"));
+    assertEquals(Collections.singletonList("vcc.jar"), layer.mainClassPath(config.getClassPath()));
+    assertTrue(loadInNewLoader("ep=vcc.other.EP\ncp=lib/myLib.jar").getSharedLibraryLayer().isEmpty());
+  }
+
+  @Test
+  public void rejectClassPathOfUndeclaredEntryPoint() throws Exception {
+    expectInvalidConfigurationException("Entry 'cp.tool' names no 'ep.tool' entry point");
+    loadConfigFromString("ep=vcc.Main\ncp=vcc.jar\ncp.tool=tool.jar");
+  }
+
+  @Test
+  public void rejectReservedEntryPointName() throws Exception {
+    expectInvalidConfigurationException("Entry point name 'shared' must be");
+    loadConfigFromString("ep=vcc.Main\ncp=vcc.jar\nep.shared=vcc.Tool");
+  }
+
+  @Test
+  public void enableDaemon() throws Exception {
+    assertTrue(loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\nfork=true\ndaemon=true").isDaemon());
+    assertFalse(loadInNewLoader("ep=vcc.other.EP\ncp=lib/myLib.jar").isDaemon());
+  }
+
+  @Test
+  public void rejectDaemonWithoutFork() throws Exception {
+    expectInvalidConfigurationException("Entry 'daemon=true' needs 'fork=true'");
+    loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\ndaemon=true");
+  }
+
+  @Test
+  public void enableMergedClassPath() throws Exception {
+    assertTrue(loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\nmerge=true").isMergeClassPath());
+    assertFalse(loadInNewLoader("ep=vcc.other.EP\ncp=lib/myLib.jar").isMergeClassPath());
+  }
+
+  @Test
+  public void enableReadahead() throws Exception {
+    assertTrue(loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\nreadahead=true").isReadahead());
+    assertFalse(loadInNewLoader("ep=vcc.other.EP\ncp=lib/myLib.jar").isReadahead());
+  }
+
+  @Test
+  public void rejectJvmEntryThatIsNotAnOption() throws Exception {
+    expectInvalidConfigurationException("Entry 'jvm=Xmx512m' must be an option starting with '-'");
+    loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\njvm=Xmx512m");
+  }
+
+  @Test
+  public void enableClassPreloading() throws Exception {
+    assertFalse(loadInNewLoader("ep=vcc.other.EP\ncp=lib/myLib.jar").isPreloadClasses());
+    assertTrue(loadConfigFromString("ep=vcc.other.EP\ncp=lib/myLib.jar\npreload=true").isPreloadClasses());
+  }
+
+  @Test
+  public void expandWildcardInNameOrder() throws Exception {
+    File directory = makeLibraryDirectory("b.jar", "a.jar", "notes.txt", "c.jar");
+    BootConfig config = loadConfigFromString("ep=vcc.other.EP\ncp=first.jar\ncp=" + directory.getPath() +
+      "/*.jar\ncp=last.jar");
+    assertEquals(Arrays.asList("first.jar", directory.getPath() + "/a.jar", directory.getPath() + "/b.jar",
+      directory.getPath() + "/c.jar", "last.jar"), config.getClassPath());
+    assertEquals(Collections.singletonList(directory.getPath() + "/*.jar"), config.getClassPathWildcards());
+  }
+
+  @Test
+  public void wildcardWithoutMatchesAddsNothing() throws Exception {
+    File directory = makeLibraryDirectory("notes.txt");
+    expectInvalidConfigurationException("Must have at least one 'cp' entry");
+    loadConfigFromString("ep=vcc.other.EP\ncp=" + directory.getPath() + "/*.jar");
+  }
+
+  @Test
+  public void rejectWildcardOnMissingDirectory() throws Exception {
+    expectInvalidConfigurationException("Directory of 'cp=does/not/exist/*.jar' does not exist");
+    loadConfigFromString("ep=vcc.other.EP\ncp=does/not/exist/*.jar");
+  }
+
+  @Test
+  public void rejectWildcardInDirectory() throws Exception {
+    expectInvalidConfigurationException("Wildcard is only allowed in the file name of 'cp=lib/*/a.jar'");
+    loadConfigFromString("ep=vcc.other.EP\ncp=lib/*/a.jar");
+  }
+
+  @Test
+  public void matchWildcardPatterns() {
+    assertTrue(ClassPathWildcard.matches("*.jar", "a.jar"));
+    assertTrue(ClassPathWildcard.matches("*", "a.jar"));
+    assertTrue(ClassPathWildcard.matches("vcc-*-*.jar", "vcc-core-1.0.jar"));
+    assertFalse(ClassPathWildcard.matches("*.jar", "a.jar.txt"));
+    assertFalse(ClassPathWildcard.matches("vcc-*.jar", "other.jar"));
+  }
+
+  /**
+   * Four times the entries take about four times as long when loading is linear and sixteen times when it is
+   * quadratic. The best of a few runs keeps garbage collection and compilation out of the ratio.
+   */
+  @Test
+  public void loadAndMapHugeClassPathInLinearTime() throws Exception {
+    int entries = 10000;
+    loadAndMapClassPathNanos(entries);
+    long small = loadAndMapClassPathNanos(entries);
+    long large = loadAndMapClassPathNanos(4 * entries);
+    assertTrue("Took " + large + "ns for " + 4 * entries + " entries, " + small + "ns for " + entries,
+      large < 10 * small);
+  }
+
+  private long loadAndMapClassPathNanos(int entries) throws IOException {
+    StringBuilder content = new StringBuilder("ep=vcc.other.EP\n");
+    for (int i = 0; i < entries; i++) {
+      content.append("cp=lib/generated-").append(i).append(".jar\n");
+    }
+    long best = Long.MAX_VALUE;
+    for (int run = 0; run < 3; run++) {
+      long start = System.nanoTime();
+      BootConfig config = loadInNewLoader(content.toString());
+      assertEquals(entries, Boot.mapFilesToURL(config).length);
+      best = Math.min(best, System.nanoTime() - start);
+      assertEquals(entries, config.getClassPath().size());
+    }
+    return best;
+  }
+
+  private File makeLibraryDirectory(String... names) throws IOException {
+    File directory = new File(TestHelper.getTargetDirectory(), "wildcard-lib");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    for (String name : names) {
+      FileUtils.touch(new File(directory, name));
+    }
+    return directory;
+  }
+
   private void expectInvalidConfigurationException(String message) {
     expectedException.expect(BootConfigLoader.InvalidConfigurationException.class);
     expectedException.expectMessage(message);
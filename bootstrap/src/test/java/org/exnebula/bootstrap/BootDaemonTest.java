@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class BootDaemonTest {
+  private static final int IDLE_SECONDS = 30;
+
+  private File configFile;
+  private File portFile;
+  private BootDaemon daemon;
+  private RecordingReporter reporter;
+  private Thread daemonThread;
+  private volatile String reason;
+
+  @Before
+  public void setUp() throws IOException {
+    File directory = new File(getTargetDirectory(), "daemon");
+    // A launch of the previous test may still be writing its timeline here
+    FileUtils.deleteQuietly(directory);
+    directory.mkdirs();
+    configFile = new File(directory, BootConfigLocator.BOOT_FILE);
+    FileUtils.writeStringToFile(configFile, "ep=sample.Good\ncp=" + new File(getTargetDirectory(), "test-classes") +
+      "\nfork=true\ndaemon=true\n");
+    portFile = BootDaemon.portFileFor(configFile);
+    reporter = new RecordingReporter();
+    System.clearProperty("sample.Good");
+  }
+
+  @After
+  public void tearDown() {
+    if (daemon != null)
+      daemon.close();
+  }
+
+  @Test
+  public void hostLaunchInSpareJvmWithStandardStreams() throws Exception {
+    writeConfig("sample.Echo");
+    spawnDaemon();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    Integer status = BootDaemonClient.launch(configFile, new String[]{"0", "two"}, reporter,
+      new ByteArrayInputStream("typed\n".getBytes("UTF-8")), new PrintStream(out, true), new PrintStream(err, true));
+    assertEquals(Integer.valueOf(0), status);
+    assertEquals("0 two", out.toString("UTF-8").trim());
+    assertEquals("typed", err.toString("UTF-8").trim());
+    assertNull(reporter.step);
+  }
+
+  /**
+   * Runtime.exit logs the status from Java 21 on.
+   */
+  @Test
+  public void passStatusOfSystemExit() throws Exception {
+    Assume.assumeTrue(javaVersion() >= 21);
+    writeConfig("sample.Echo");
+    spawnDaemon();
+    PrintStream ignored = new PrintStream(new ByteArrayOutputStream());
+    Integer status = BootDaemonClient.launch(configFile, new String[]{"3"}, reporter,
+      new ByteArrayInputStream(new byte[0]), ignored, ignored);
+    assertEquals(Integer.valueOf(3), status);
+  }
+
+  @Test
+  public void lostConnectionIsAbnormalExit() throws Exception {
+    final ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+    FileUtils.writeStringToFile(portFile, server.getLocalPort() + " token\n");
+    Thread killedDaemon = new DaemonThreadFactory("test-killed-daemon").newThread(new Runnable() {
+      public void run() {
+        try {
+          Socket socket = server.accept();
+          socket.getOutputStream().write(BootDaemon.STARTED);
+          socket.close();
+        } catch (IOException e) {
+          // The client reports the missing answer
+        }
+      }
+    });
+    killedDaemon.start();
+    try {
+      assertEquals(Integer.valueOf(1), BootDaemonClient.launch(configFile, new String[0], reporter,
+        new ByteArrayInputStream(new byte[0]), System.out, System.err));
+    } finally {
+      server.close();
+    }
+  }
+
+  @Test
+  public void reportFailureOfLaunchInDaemon() throws Exception {
+    writeConfig("sample.Missing");
+    spawnDaemon();
+    Integer status = BootDaemonClient.launch(configFile, new String[0], reporter, new ByteArrayInputStream(new byte[0]),
+      System.out, System.err);
+    assertEquals(Integer.valueOf(1), status);
+    assertEquals("Start entry point", reporter.step);
+  }
+
+  @Test
+  public void stopListeningOnceLaunchIsTaken() throws Exception {
+    startDaemon(60000);
+    Thread client = new DaemonThreadFactory("test-client").newThread(new Runnable() {
+      public void run() {
+        BootDaemonClient.launch(configFile, new String[]{"one"}, reporter);
+      }
+    });
+    client.start();
+    daemonThread.join(10000);
+    assertEquals(BootDaemon.LAUNCHED, reason);
+    assertFalse(portFile.exists());
+    assertNull(System.getProperty("sample.Good"));
+  }
+
+  @Test
+  public void startLocallyWithoutDaemon() {
+    assertNull(BootDaemonClient.launch(configFile, new String[0], reporter));
+    assertNull(BootDaemonClient.launch(null, new String[0], reporter));
+  }
+
+  @Test
+  public void deleteStalePortFile() throws IOException {
+    ServerSocket closed = new ServerSocket(0);
+    closed.close();
+    FileUtils.writeStringToFile(portFile, closed.getLocalPort() + " token\n");
+    assertNull(BootDaemonClient.launch(configFile, new String[0], reporter));
+    assertFalse(portFile.exists());
+  }
+
+  @Test
+  public void declineWrongToken() throws Exception {
+    startDaemon(60000);
+    FileUtils.writeStringToFile(portFile, daemon.getPort() + " wrong\n");
+    assertNull(BootDaemonClient.launch(configFile, new String[]{"one"}, reporter));
+    assertNull(System.getProperty("sample.Good"));
+  }
+
+  @Test
+  public void stopWhenIdle() throws Exception {
+    daemon = new BootDaemon(configFile, 100);
+    assertEquals("idle", daemon.run());
+    assertFalse(portFile.exists());
+  }
+
+  private static int javaVersion() {
+    return Integer.parseInt(System.getProperty("java.specification.version").replaceFirst("^1\\.", ""));
+  }
+
+  private void startDaemon(long idleMillis) throws IOException {
+    daemon = new BootDaemon(configFile, idleMillis);
+    daemonThread = new DaemonThreadFactory("test-daemon").newThread(new Runnable() {
+      public void run() {
+        reason = daemon.run();
+      }
+    });
+    daemonThread.start();
+  }
+
+  private void spawnDaemon() throws Exception {
+    BootDaemonClient.spawn(configFile, Arrays.asList("-D" + BootDaemon.IDLE_PROPERTY + "=" + IDLE_SECONDS));
+    long deadline = System.currentTimeMillis() + 30000;
+    while (!portFile.isFile() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertTrue(portFile.isFile());
+  }
+
+  /**
+   * Without daemon=true the hosted launch spawns no spare that would outlive the test.
+   */
+  private void writeConfig(String entryPoint) throws IOException {
+    FileUtils.writeStringToFile(configFile, "ep=" + entryPoint + "\ncp=" +
+      new File(getTargetDirectory(), "test-classes") + "\n");
+  }
+
+  private static class RecordingReporter implements BootErrorReporter {
+    private String step;
+
+    public void reportFailure(String contextMessage, Exception exception) {
+      step = contextMessage;
+    }
+  }
+}
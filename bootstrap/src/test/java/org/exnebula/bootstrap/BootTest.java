@@ -22,6 +22,7 @@ import sample.Good;
 import sample.NoStaticMain;
 
 import java.io.*;
+import java.util.Arrays;
 
 import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
 import static org.junit.Assert.*;
@@ -81,6 +82,7 @@ public class BootTest {
     when(checker.fileExists(jarTwo)).thenReturn(true);
     when(checker.fileExists(realTestClasses)).thenReturn(true);
     when(checker.fileExists(localPathThatDoesNotExist)).thenReturn(true);
+    when(checker.isCompleteArchive(anyString())).thenReturn(true);
   }
 
   @Test
@@ -118,10 +120,24 @@ public class BootTest {
 
     verify(checker, atLeastOnce()).fileExists(jarOne);
     verify(checker, atLeastOnce()).fileExists(missingJar);
-    verify(checker, never()).fileExists(jarTwo);
+    verify(checker, atLeastOnce()).fileExists(jarTwo);
     errorReporter.verifyCrashReportChained("Check class path files", FileNotFoundException.class, "File " + missingJar + " not found");
   }
 
+  @Test
+  public void reportAllBadClassPathFilesAtOnce() throws Exception {
+    String otherMissingJar = "lib/other-missing.jar";
+    when(checker.fileExists(otherMissingJar)).thenReturn(false);
+    when(checker.isCompleteArchive(jarTwo)).thenReturn(false);
+    setConfigStream(makeConfig("org.pack.obj", missingJar, jarOne, jarTwo, otherMissingJar));
+
+    boot.start(emptyArguments);
+
+    errorReporter.verifyCrashReportChained("Check class path files", FileNotFoundException.class,
+      "File " + missingJar + " not found; File " + jarTwo + " is not a complete archive; File " +
+        otherMissingJar + " not found");
+  }
+
   @Test
   public void allPathsAreFoundButClassNotInPath() throws Exception {
     setConfigStream(makeConfig("sample.Good", localPathThatDoesNotExist));
@@ -149,6 +165,27 @@ public class BootTest {
     assertFalse("Good class does not share loader", Good.hasMainSetStaticVariable());
   }
 
+  @Test
+  public void runEntryPointThroughIndexedClassLoader() throws Exception {
+    setConfigStream(makeConfig("sample.Good", localPathThatDoesNotExist, realTestClasses) + "cl=indexed\n");
+
+    String[] realArguments = {"indexed", "other" + System.currentTimeMillis()};
+    boot.start(realArguments);
+    errorReporter.throwIfErrorReported();
+    assertTrue("Set System property", Good.hasSetSystemProperty(realArguments));
+    assertFalse("Good class does not share loader", Good.hasMainSetStaticVariable());
+  }
+
+  @Test
+  public void recordEachStepInTimeline() throws Exception {
+    setConfigStream(makeConfig("sample.Good", realTestClasses));
+
+    boot.start(new String[]{"timeline", "other" + System.currentTimeMillis()});
+    errorReporter.throwIfErrorReported();
+    assertEquals(Arrays.asList("Locate config file", "Read config file", "Check class path files",
+      "Start entry point", "Create class loader", "Load entry class"), boot.getTimeline().getPhaseNames());
+  }
+
   @Test
   public void classExistsButDoesNotHaveMain() throws Exception {
     setConfigStream(makeConfig(sample.NoMain.class.getName(), realTestClasses));
@@ -167,6 +204,76 @@ public class BootTest {
       NoSuchMethodException.class, "sample.NoStaticMain.main not static");
   }
 
+  @Test
+  public void runLocalLaunchHookWhenApplicationStartsInThisJvm() throws Exception {
+    Runnable hook = mock(Runnable.class);
+    setConfigStream(makeConfig(Good.class.getName(), realTestClasses));
+    boot.setLocalLaunchHook(hook);
+
+    boot.start(new String[]{"local"});
+    errorReporter.throwIfErrorReported();
+    verify(hook).run();
+  }
+
+  @Test
+  public void skipLocalLaunchHookWhenApplicationIsForked() throws Exception {
+    Runnable hook = mock(Runnable.class);
+    setConfigStream(makeConfig(Good.class.getName(), realTestClasses) + "fork=true\n");
+    boot.setLocalLaunchHook(hook);
+
+    boot.start(new String[]{"forked"});
+    errorReporter.throwIfErrorReported();
+    verify(hook, never()).run();
+  }
+
+  @Test
+  public void secondStartReusesLaunchPlan() throws Exception {
+    File directory = new File(getTargetDirectory(), "boot-plan");
+    directory.mkdirs();
+    File goodJar = new File(directory, "good.jar");
+    TestHelper.makeMiniJar(goodJar, new File(realTestClasses), "sample/Good.class");
+    File configFile = new File(directory, "boot.cfg");
+    String config = makeConfig("sample.Good", goodJar.getPath()) + "cl=indexed\n";
+    writeFile(configFile, config);
+    new File(directory, LaunchPlanCache.PLAN_FILE).delete();
+
+    setConfigStream(config);
+    startWithPlanCache(bis, configFile, "first");
+    verify(bis).getConfigInputStream();
+
+    BootInputSource unusedSource = mock(BootInputSource.class);
+    startWithPlanCache(unusedSource, configFile, "second");
+    verify(unusedSource, never()).getConfigInputStream();
+  }
+
+  @Test
+  public void writeTimelineBeforeControlPassesOn() throws Exception {
+    File directory = new File(getTargetDirectory(), "boot-plan-timeline");
+    directory.mkdirs();
+    File configFile = new File(directory, "boot.cfg");
+    String config = makeConfig("sample.Good", realTestClasses);
+    writeFile(configFile, config);
+    File timelineFile = new File(directory, BootTimeline.TIMELINE_FILE);
+    timelineFile.delete();
+
+    setConfigStream(config);
+    startWithPlanCache(bis, configFile, "timeline");
+    assertTrue("Timeline written", timelineFile.isFile());
+  }
+
+  private void startWithPlanCache(BootInputSource source, File configFile, String argument) throws Exception {
+    String[] realArguments = {argument, "other" + System.currentTimeMillis()};
+    new Boot(errorReporter, source, new FileChecker(), new LaunchPlanCache(configFile)).start(realArguments);
+    errorReporter.throwIfErrorReported();
+    assertTrue("Set System property", Good.hasSetSystemProperty(realArguments));
+  }
+
+  private void writeFile(File file, String content) throws IOException {
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    writer.write(content);
+    writer.close();
+  }
+
   private InputStream makeStreamThatThrowsIOException() {
     return new InputStream() {
       @Override
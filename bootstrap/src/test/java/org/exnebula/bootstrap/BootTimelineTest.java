@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class BootTimelineTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(getTargetDirectory(), "boot-timeline");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+  }
+
+  @Test
+  public void recordNestedPhasesInStartOrder() {
+    BootTimeline timeline = new BootTimeline();
+    timeline.begin("outer");
+    timeline.begin("inner");
+    timeline.end("inner");
+    timeline.end("outer");
+    assertEquals(Arrays.asList("outer", "inner"), timeline.getPhaseNames());
+    String json = timeline.toJson();
+    assertTrue(json, json.contains("\"name\":\"outer\",\"thread\":\"" + Thread.currentThread().getName() + "\""));
+    assertFalse(json, json.contains("\"endNanos\":-1"));
+  }
+
+  @Test
+  public void leaveUnfinishedPhaseOpen() {
+    BootTimeline timeline = new BootTimeline();
+    timeline.begin("open");
+    timeline.end("unknown");
+    assertTrue(timeline.toJson().contains("\"endNanos\":-1,\"durationNanos\":-1"));
+  }
+
+  @Test
+  public void measureAllocationOnlyWhenAsked() {
+    BootTimeline measured = new BootTimeline(true);
+    measured.begin("allocate");
+    byte[][] garbage = new byte[16][];
+    for (int i = 0; i < garbage.length; i++) {
+      garbage[i] = new byte[64 * 1024];
+    }
+    measured.end("allocate");
+    assertFalse(measured.toJson().contains("\"allocatedBytes\":-1"));
+
+    BootTimeline unmeasured = new BootTimeline(false);
+    unmeasured.begin("allocate");
+    unmeasured.end("allocate");
+    assertTrue(unmeasured.toJson().contains("\"allocatedBytes\":-1"));
+  }
+
+  @Test
+  public void escapeAttributesAndSumCounters() {
+    BootTimeline timeline = new BootTimeline();
+    timeline.attribute("path", "c:\\boot \"x\"\n");
+    timeline.count("hits", 2);
+    timeline.count("hits", 3);
+    assertEquals(5, timeline.getCount("hits"));
+    assertEquals(0, timeline.getCount("misses"));
+    String json = timeline.toJson();
+    assertTrue(json, json.contains("\"path\":\"c:\\\\boot \\\"x\\\"\\u000a\""));
+    assertTrue(json, json.contains("\"counters\":{\"hits\":5}"));
+  }
+
+  @Test
+  public void keepOnlyRecentHistory() throws IOException {
+    for (int i = 0; i < BootTimeline.HISTORY_SIZE + 5; i++) {
+      BootTimeline timeline = new BootTimeline();
+      timeline.attribute("run", Integer.toString(i));
+      timeline.writeTo(directory);
+    }
+    List<String> history = FileUtils.readLines(new File(directory, BootTimeline.HISTORY_FILE), "UTF-8");
+    assertEquals(BootTimeline.HISTORY_SIZE, history.size());
+    assertTrue(history.get(0).contains("\"run\":\"5\""));
+    String latest = FileUtils.readFileToString(new File(directory, BootTimeline.TIMELINE_FILE), "UTF-8");
+    assertEquals(history.get(history.size() - 1), latest.trim());
+  }
+
+  @Test
+  public void keepEveryLineOfConcurrentWrites() throws Exception {
+    final List<IOException> failures = new ArrayList<IOException>();
+    List<Thread> writers = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      final String writer = Integer.toString(i);
+      writers.add(new Thread(new Runnable() {
+        public void run() {
+          for (int run = 0; run < 5; run++) {
+            BootTimeline timeline = new BootTimeline();
+            timeline.attribute("writer", writer);
+            try {
+              timeline.writeTo(directory);
+            } catch (IOException e) {
+              synchronized (failures) {
+                failures.add(e);
+              }
+            }
+          }
+        }
+      }));
+    }
+    for (Thread thread : writers) {
+      thread.start();
+    }
+    for (Thread thread : writers) {
+      thread.join();
+    }
+    assertEquals(Collections.<IOException>emptyList(), failures);
+    assertEquals(40, FileUtils.readLines(new File(directory, BootTimeline.HISTORY_FILE), "UTF-8").size());
+  }
+}
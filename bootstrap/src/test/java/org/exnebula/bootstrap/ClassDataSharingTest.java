@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class ClassDataSharingTest {
+
+  private File directory;
+  private ClassDataSharing classDataSharing;
+  private LaunchPlan plan;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(getTargetDirectory(), "cds");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    classDataSharing = new ClassDataSharing(directory);
+    File jar = new File(directory, "hello.jar");
+    TestHelper.makeMiniJar(jar, new File(getTargetDirectory(), "test-classes"), "sample/Hello.class");
+    BootConfig config = new BootConfig("sample.Hello", new String[]{jar.getPath()});
+    plan = new LaunchPlan(config, Boot.mapFilesToURL(config), null, "fingerprint-1");
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(ClassDataSharing.DISABLE_PROPERTY);
+  }
+
+  @Test
+  public void parseJavaVersions() {
+    assertEquals(8, ClassDataSharing.javaFeatureVersion("1.8"));
+    assertEquals(13, ClassDataSharing.javaFeatureVersion("13"));
+    assertEquals(21, ClassDataSharing.javaFeatureVersion("21-ea"));
+    assertEquals(0, ClassDataSharing.javaFeatureVersion("unknown"));
+  }
+
+  @Test
+  public void archiveDependsOnFingerprint() {
+    LaunchPlan other = new LaunchPlan(plan.getConfig(), plan.getURLs(), null, "fingerprint-2");
+    assertEquals(directory, classDataSharing.archiveFor(plan).getParentFile());
+    assertFalse(classDataSharing.archiveFor(plan).equals(classDataSharing.archiveFor(other)));
+    assertEquals("boot-fingerprint-1-" + System.getProperty("java.vm.version") + ".jsa",
+      classDataSharing.archiveFor(plan).getName());
+  }
+
+  @Test
+  public void createArchiveWhenMissing() {
+    List<String> options = classDataSharing.jvmOptions(plan);
+    assertTrue(options.contains("-XX:ArchiveClassesAtExit=" + classDataSharing.archiveFor(plan).getPath()));
+    assertTrue(options.contains("-D" + ForkedMain.REPORT_LABEL_PROPERTY + "=archive=created"));
+  }
+
+  @Test
+  public void useExistingArchive() throws IOException {
+    FileUtils.touch(classDataSharing.archiveFor(plan));
+    List<String> options = classDataSharing.jvmOptions(plan);
+    assertTrue(options.contains("-XX:SharedArchiveFile=" + classDataSharing.archiveFor(plan).getPath()));
+    assertTrue(options.contains("-D" + ForkedMain.REPORT_LABEL_PROPERTY + "=archive=used"));
+  }
+
+  @Test
+  public void removeStaleArchivesWhenCreating() throws IOException {
+    LaunchPlan old = new LaunchPlan(plan.getConfig(), plan.getURLs(), null, "fingerprint-old");
+    FileUtils.touch(classDataSharing.archiveFor(old));
+    classDataSharing.jvmOptions(plan);
+    assertFalse(classDataSharing.archiveFor(old).exists());
+  }
+
+  @Test
+  public void skipArchiveWhenDisabled() {
+    System.setProperty(ClassDataSharing.DISABLE_PROPERTY, "false");
+    List<String> options = classDataSharing.jvmOptions(plan);
+    for (String option : options) {
+      assertFalse(option, option.startsWith("-XX:"));
+    }
+    assertTrue(options.contains("-D" + ForkedMain.REPORT_LABEL_PROPERTY + "=archive=none"));
+  }
+
+  @Test
+  public void dumpArchiveThenReuseIt() throws Exception {
+    Assume.assumeTrue(ClassDataSharing.isSupported());
+    ForkedLauncher launcher = new ForkedLauncher(ForkedLauncher.defaultJavaExecutable(), directory);
+
+    assertEquals(0, launcher.run(launcher.buildCommand(classDataSharing.jvmOptions(plan), plan, new String[]{"cds"})));
+    assertTrue("Archive should be dumped at exit", classDataSharing.archiveFor(plan).isFile());
+    assertEquals(0, launcher.run(launcher.buildCommand(classDataSharing.jvmOptions(plan), plan, new String[]{"cds"})));
+
+    List<String> report = FileUtils.readLines(classDataSharing.getReportFile());
+    assertEquals(2, report.size());
+    assertTrue(report.get(0), report.get(0).contains("archive=created timeToMainMillis="));
+    assertTrue(report.get(1), report.get(1).contains("archive=used timeToMainMillis="));
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class ClassLoadTraceTest {
+
+  private File directory;
+  private InspectableClassLoader loader;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(getTargetDirectory(), "class-trace");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    loader = new InspectableClassLoader(new File(getTargetDirectory(), "test-classes").toURI().toURL());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    loader.close();
+  }
+
+  @Test
+  public void recordFirstRequestOfEachApplicationClass() throws Exception {
+    ClassLoadTrace trace = new ClassLoadTrace(directory);
+    trace.startRecording("fingerprint", loader, 60000);
+    loader.loadClass("sample.Hello");
+    loader.loadClass("java.lang.String");
+    loader.loadClass("sample.Good");
+    loader.loadClass("sample.Hello");
+    trace.stopRecording();
+
+    ClassLoadTrace saved = new ClassLoadTrace(directory);
+    saved.readTrace();
+    assertEquals("fingerprint", saved.getSavedFingerprint());
+    assertEquals(Arrays.asList("sample.Hello", "sample.Good"), saved.getSavedClasses());
+  }
+
+  @Test
+  public void stopRecordingAfterDeadline() throws Exception {
+    ClassLoadRecorder recorder = new ClassLoadRecorder(0, 100);
+    Thread.sleep(2);
+    recorder.classLoaded("sample.Hello");
+    assertTrue(recorder.getRecordedClasses().isEmpty());
+  }
+
+  @Test
+  public void recordUpToMaximumClasses() {
+    ClassLoadRecorder recorder = new ClassLoadRecorder(60000, 1);
+    recorder.classLoaded("sample.Hello");
+    recorder.classLoaded("sample.Good");
+    assertEquals(Collections.singletonList("sample.Hello"), recorder.getRecordedClasses());
+  }
+
+  @Test
+  public void preloadSkipsStaleEntries() {
+    ClassPreloader preloader = new ClassPreloader(Arrays.asList("sample.Missing", "sample.Hello", "sample.NoMain"), loader);
+    assertEquals(2, preloader.preload());
+    assertTrue(loader.isLoaded("sample.Hello"));
+    assertTrue(loader.isLoaded("sample.NoMain"));
+  }
+
+  @Test
+  public void preloadIsNotRecorded() {
+    ClassLoadRecorder recorder = new ClassLoadRecorder(60000, 100);
+    loader.addClassLoadListener(recorder);
+    new ClassPreloader(Collections.singletonList("sample.Hello"), loader).preload();
+    assertTrue(recorder.getRecordedClasses().isEmpty());
+  }
+
+  @Test
+  public void preloadSavedTraceWithoutRecordingWhenFingerprintMatches() throws Exception {
+    ClassLoadTrace first = new ClassLoadTrace(directory);
+    first.startRecording("same", loader, 60000);
+    loader.loadClass("sample.Hello");
+    first.stopRecording();
+    long saved = first.getTraceFile().lastModified();
+
+    InspectableClassLoader nextLoader = new InspectableClassLoader(loader.getURLs()[0]);
+    new ClassLoadTrace(directory).start(planWithFingerprint("same"), nextLoader);
+    waitUntilLoaded(nextLoader, "sample.Hello");
+    nextLoader.loadClass("sample.Good");
+    nextLoader.close();
+
+    ClassLoadTrace reread = new ClassLoadTrace(directory);
+    reread.readTrace();
+    assertEquals(Collections.singletonList("sample.Hello"), reread.getSavedClasses());
+    assertEquals(saved, first.getTraceFile().lastModified());
+  }
+
+  @Test
+  public void keepPreloadedClassesWhenRecordingForNewFingerprint() throws Exception {
+    ClassLoadTrace first = new ClassLoadTrace(directory);
+    first.startRecording("old", loader, 60000);
+    loader.loadClass("sample.Hello");
+    loader.loadClass("sample.Good");
+    first.stopRecording();
+
+    InspectableClassLoader nextLoader = new InspectableClassLoader(loader.getURLs()[0]);
+    ClassLoadTrace second = new ClassLoadTrace(directory);
+    second.start(planWithFingerprint("new"), nextLoader);
+    waitUntilLoaded(nextLoader, "sample.Hello");
+    waitUntilLoaded(nextLoader, "sample.Good");
+    nextLoader.loadClass("sample.NoMain");
+    second.stopRecording();
+    nextLoader.close();
+
+    ClassLoadTrace reread = new ClassLoadTrace(directory);
+    reread.readTrace();
+    assertEquals("new", reread.getSavedFingerprint());
+    assertEquals(Arrays.asList("sample.Hello", "sample.Good", "sample.NoMain"), reread.getSavedClasses());
+  }
+
+  @Test
+  public void ignoreCorruptTrace() throws IOException {
+    FileUtils.writeStringToFile(new File(directory, ClassLoadTrace.TRACE_FILE), "sample.Hello\n");
+    ClassLoadTrace trace = new ClassLoadTrace(directory);
+    trace.readTrace();
+    assertNull(trace.getSavedFingerprint());
+    assertTrue(trace.getSavedClasses().isEmpty());
+  }
+
+  private LaunchPlan planWithFingerprint(String fingerprint) {
+    BootConfig config = new BootConfig("sample.Hello", new String[]{"test-classes"});
+    return new LaunchPlan(config, loader.getURLs(), null, fingerprint);
+  }
+
+  private void waitUntilLoaded(InspectableClassLoader classLoader, String className) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!classLoader.isLoaded(className) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertTrue(className + " should be preloaded", classLoader.isLoaded(className));
+  }
+
+  private static class InspectableClassLoader extends LauncherClassLoader {
+    InspectableClassLoader(URL url) {
+      super(new URL[]{url}, null);
+    }
+
+    boolean isLoaded(String className) {
+      return findLoadedClass(className) != null;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class ClassPathReadaheadTest {
+
+  private File directory;
+  private File small;
+  private File large;
+  private File hello;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(getTargetDirectory(), "readahead");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    small = new File(directory, "small.jar");
+    TestHelper.makeJarWithEntries(small, "a.txt", "a");
+    large = new File(directory, "large.jar");
+    TestHelper.makeJarWithEntries(large, "a.txt", "a", "b.txt", "b", "c.txt", "c");
+    hello = new File(directory, "hello.jar");
+    TestHelper.makeMiniJar(hello, new File(getTargetDirectory(), "test-classes"), "sample/Hello.class");
+  }
+
+  @Test
+  public void readLargestFirstWithoutProfile() {
+    ClassPathReadahead readahead = new ClassPathReadahead(directory);
+    assertEquals(Arrays.asList(hello, large, small), readahead.order(paths(small, hello, large)));
+  }
+
+  @Test
+  public void leaveOutMissingFilesAndDirectories() {
+    ClassPathReadahead readahead = new ClassPathReadahead(null);
+    assertEquals(Arrays.asList(small), readahead.order(paths(new File(directory, "missing.jar"), directory, small)));
+  }
+
+  @Test
+  public void readProfiledFilesFirst() throws IOException {
+    FileUtils.writeStringToFile(new File(directory, ClassPathReadahead.PROFILE_FILE),
+      "#fingerprint=abc\n10 " + small.getAbsolutePath() + "\n2 " + large.getAbsolutePath() + "\n", "UTF-8");
+    ClassPathReadahead readahead = new ClassPathReadahead(directory);
+    assertEquals(Arrays.asList(small, large, hello), readahead.order(paths(hello, large, small)));
+  }
+
+  @Test
+  public void readEveryFile() throws InterruptedException {
+    ClassPathReadahead readahead = new ClassPathReadahead(null);
+    readahead.start(paths(small, large, hello));
+    for (int i = 0; i < 100 && !readahead.isFinished(); i++) {
+      Thread.sleep(50);
+    }
+    assertTrue(readahead.isFinished());
+    assertEquals(small.length() + large.length() + hello.length(), readahead.getBytesRead());
+    assertTrue(readahead.describe(), readahead.describe().startsWith("3/3 files, 0 MB in "));
+  }
+
+  @Test
+  public void pauseWhileReadsAreSlowAndResumeWhenFast() {
+    ClassPathReadahead readahead = new ClassPathReadahead(null);
+    assertEquals(0, readahead.nextPause(0, 1000));
+    assertEquals(0, readahead.nextPause(0, 2000));
+    long pause = readahead.nextPause(0, 100000);
+    assertEquals(1000000, pause);
+    pause = readahead.nextPause(pause, 100000);
+    assertEquals(2000000, pause);
+    pause = readahead.nextPause(pause, 100000);
+    assertEquals(4000000, pause);
+    pause = readahead.nextPause(pause, 1000);
+    assertEquals(2000000, pause);
+    pause = readahead.nextPause(pause, 1000);
+    pause = readahead.nextPause(pause, 1000);
+    assertEquals(0, pause);
+  }
+
+  @Test
+  public void stopPausingWhenReadsAreSlowThroughout() {
+    ClassPathReadahead readahead = new ClassPathReadahead(null);
+    long pause = readahead.nextPause(0, 1000);
+    for (int i = 0; i < 100; i++) {
+      pause = readahead.nextPause(pause, 100000);
+    }
+    assertEquals(0, pause);
+  }
+
+  @Test
+  public void recordFilesOfLoadedClassesIncludingPreloaded() throws Exception {
+    ClassPathReadahead readahead = new ClassPathReadahead(directory);
+    LauncherClassLoader loader = new LauncherClassLoader(new URL[]{small.toURI().toURL(), hello.toURI().toURL()},
+      null);
+    readahead.record(new LaunchPlan(new BootConfig("sample.Hello", new String[0]), new URL[0], null, "abc"), loader,
+      200);
+    new ClassPreloader(Collections.singletonList("sample.Hello"), loader).preload();
+    File profile = new File(directory, ClassPathReadahead.PROFILE_FILE);
+    for (int i = 0; i < 100 && !profile.isFile(); i++) {
+      Thread.sleep(50);
+    }
+    assertEquals(Arrays.asList("#fingerprint=abc", "1 " + hello.getAbsolutePath()),
+      FileUtils.readLines(profile, "UTF-8"));
+    assertEquals(Arrays.asList(hello, small), new ClassPathReadahead(directory).order(paths(small, hello)));
+    loader.close();
+  }
+
+  private static List<String> paths(File... files) {
+    String[] paths = new String[files.length];
+    for (int i = 0; i < files.length; i++) {
+      paths[i] = files[i].getPath();
+    }
+    return Arrays.asList(paths);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClassPathValidatorTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Test
+  public void acceptGoodClassPath() throws Exception {
+    ClassPathValidator validator = new ClassPathValidator(new FixedFileChecker());
+    assertTrue(validator.findProblems(Arrays.asList("a.jar", "b.jar", "c.jar")).isEmpty());
+  }
+
+  @Test
+  public void reportProblemsInClassPathOrder() throws Exception {
+    ClassPathValidator validator = new ClassPathValidator(new FixedFileChecker(), 4);
+    assertEquals(
+      Arrays.asList("File missing-1.jar not found", "File broken.jar is not a complete archive",
+        "File missing-2.jar not found"),
+      validator.findProblems(Arrays.asList("missing-1.jar", "a.jar", "broken.jar", "b.jar", "missing-2.jar")));
+  }
+
+  @Test
+  public void failWithAllProblemsInOneException() throws Exception {
+    expectedException.expect(FileNotFoundException.class);
+    expectedException.expectMessage("File missing-1.jar not found; File missing-2.jar not found");
+    new ClassPathValidator(new FixedFileChecker()).validate(Arrays.asList("missing-1.jar", "missing-2.jar"));
+  }
+
+  @Test
+  public void checkEntriesConcurrently() throws Exception {
+    final CountDownLatch allStarted = new CountDownLatch(3);
+    FileChecker blockingChecker = new FixedFileChecker() {
+      @Override
+      boolean fileExists(String pathToFile) {
+        allStarted.countDown();
+        try {
+          return allStarted.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          return false;
+        }
+      }
+    };
+    ClassPathValidator validator = new ClassPathValidator(blockingChecker, 3);
+    assertTrue(validator.findProblems(Arrays.asList("a.jar", "b.jar", "c.jar")).isEmpty());
+  }
+
+  @Test
+  public void serialValidationReportsSameProblems() throws Exception {
+    ClassPathValidator validator = new ClassPathValidator(new FixedFileChecker(), 1);
+    assertEquals(Arrays.asList("File missing-1.jar not found", "File broken.jar is not a complete archive"),
+      validator.findProblems(Arrays.asList("missing-1.jar", "broken.jar", "a.jar")));
+  }
+
+  private static class FixedFileChecker extends FileChecker {
+    @Override
+    boolean fileExists(String pathToFile) {
+      return !pathToFile.startsWith("missing");
+    }
+
+    @Override
+    boolean isCompleteArchive(String pathToFile) {
+      return !pathToFile.startsWith("broken");
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class DeferredClassPathTest {
+
+  private File directory;
+  private File resourceJar;
+  private File helloJar;
+  private File deferredJar;
+  private LauncherClassLoader loader;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(getTargetDirectory(), "deferred");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    resourceJar = new File(directory, "resources.jar");
+    TestHelper.makeJarWithEntries(resourceJar, "config/present.txt", "present");
+    helloJar = new File(directory, "hello.jar");
+    TestHelper.makeMiniJar(helloJar, new File(getTargetDirectory(), "test-classes"), "sample/Hello.class");
+    deferredJar = new File(directory, "deferred.jar");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (loader != null)
+      loader.close();
+  }
+
+  @Test
+  public void readDeferredEntriesAsPartOfClassPath() throws IOException {
+    BootConfig config = load("ep=sample.Hello\ncp=" + resourceJar + "\ncp.deferred=" + deferredJar +
+      "\npkg.deferred=sample\n");
+    assertEquals(Arrays.asList(resourceJar.getPath(), deferredJar.getPath()), config.getClassPath());
+    assertEquals(Collections.singletonList(deferredJar.getPath()), config.getDeferredClassPath());
+    assertEquals(Collections.singletonList("sample"), config.getDeferredPackages());
+    assertEquals(Collections.singletonList(resourceJar.getPath()), DeferredClassPath.presentClassPath(config));
+    assertEquals(1, DeferredClassPath.findMissing(config).getPendingCount());
+  }
+
+  @Test
+  public void presentDeferredEntryIsNotMissing() throws IOException {
+    BootConfig config = load("ep=sample.Hello\ncp=" + resourceJar + "\ncp.deferred=" + helloJar + "\n");
+    assertNull(DeferredClassPath.findMissing(config));
+    assertEquals(config.getClassPath(), DeferredClassPath.presentClassPath(config));
+  }
+
+  @Test(expected = BootConfigLoader.InvalidConfigurationException.class)
+  public void rejectDeferredWildcard() throws IOException {
+    load("ep=sample.Hello\ncp.deferred=" + directory + "/*.jar\n");
+  }
+
+  @Test(timeout = 10000)
+  public void classLoadWaitsForDeferredJar() throws Exception {
+    loader = makeLoader(60000);
+    Thread copier = new Thread(new Runnable() {
+      public void run() {
+        try {
+          Thread.sleep(200);
+          // Downloads arrive by renaming a complete file, so the loader never sees a partial jar
+          File partial = new File(deferredJar.getPath() + ".part");
+          FileUtils.copyFile(helloJar, partial);
+          assertTrue(partial.renameTo(deferredJar));
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    });
+    copier.start();
+    Class<?> hello = loader.loadClass("sample.Hello");
+    assertSame(loader, hello.getClassLoader());
+    assertTrue(Arrays.asList(loader.getURLs()).contains(deferredJar.toURI().toURL()));
+    copier.join();
+  }
+
+  @Test(timeout = 10000)
+  public void missingClassOfLoadedPackageDoesNotWait() throws Exception {
+    TestHelper.makeMiniJar(resourceJar, new File(getTargetDirectory(), "test-classes"), "sample/Hello.class");
+    loader = makeLoader(60000);
+    assertClassNotFound("sample.Missing");
+  }
+
+  @Test(timeout = 10000)
+  public void giveUpAfterTimeout() throws Exception {
+    loader = makeLoader(100);
+    assertClassNotFound("sample.Hello");
+  }
+
+  @Test(timeout = 10000)
+  public void waitOnlyForClassesOfDeferredPackages() throws Exception {
+    loader = makeLoader(60000, "org.exnebula.help");
+    assertClassNotFound("sample.Hello");
+    FileUtils.copyFile(helloJar, deferredJar);
+    assertSame(loader, loader.loadClass("sample.Hello").getClassLoader());
+  }
+
+  @Test(timeout = 10000)
+  public void missesShareOneDeadline() throws Exception {
+    loader = makeLoader(500);
+    assertClassNotFound("sample.Hello");
+    long start = System.currentTimeMillis();
+    assertClassNotFound("sample.Other");
+    assertClassNotFound("other.Missing");
+    assertTrue(System.currentTimeMillis() - start < 500);
+  }
+
+  @Test
+  public void resourcesSeeArrivedJarsWithoutWaiting() throws Exception {
+    loader = makeLoader(60000);
+    assertNull(loader.getResource("sample/Hello.class"));
+    FileUtils.copyFile(helloJar, deferredJar);
+    URL url = loader.getResource("sample/Hello.class");
+    assertNotNull(url);
+    assertNotNull(loader.getResource("config/present.txt"));
+  }
+
+  private LauncherClassLoader makeLoader(long timeoutMillis, String... deferredPackages) throws IOException {
+    LauncherClassLoader classLoader = new LauncherClassLoader(new URL[]{resourceJar.toURI().toURL()},
+      ClassLoader.getSystemClassLoader().getParent());
+    classLoader.setDeferredClassPath(new DeferredClassPath(Collections.singletonList(deferredJar),
+      Arrays.asList(deferredPackages), timeoutMillis));
+    return classLoader;
+  }
+
+  private void assertClassNotFound(String name) {
+    try {
+      loader.loadClass(name);
+      fail("Expected ClassNotFoundException for " + name);
+    } catch (ClassNotFoundException e) {
+      // Expected
+    }
+  }
+
+  private static BootConfig load(String content) throws IOException {
+    BootConfigLoader loader = new BootConfigLoader();
+    loader.load(new ByteArrayInputStream(content.getBytes("UTF-8")));
+    return loader.getConfiguration();
+  }
+}
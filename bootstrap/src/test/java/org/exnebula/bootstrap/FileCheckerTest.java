@@ -18,6 +18,11 @@ package org.exnebula.bootstrap;
 
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -32,4 +37,59 @@ public class FileCheckerTest {
   public void returnFalse_whenFileIsNotPresent() {
     assertFalse("not-found.txt should not exist", new FileChecker().fileExists("not-found.txt"));
   }
+
+  @Test
+  public void directoryIsCompleteArchive() {
+    assertTrue("test-classes is usable", new FileChecker().isCompleteArchive(getTestClasses().getPath()));
+  }
+
+  @Test
+  public void jarIsCompleteArchive() throws IOException {
+    File jar = makeJar("complete.jar");
+    assertTrue("jar should be complete", new FileChecker().isCompleteArchive(jar.getPath()));
+  }
+
+  @Test
+  public void truncatedJarIsNotCompleteArchive() throws IOException {
+    File jar = makeJar("truncated.jar");
+    truncate(jar, 10);
+    assertFalse("truncated jar is not complete", new FileChecker().isCompleteArchive(jar.getPath()));
+  }
+
+  @Test
+  public void jarWithCommentIsCompleteArchive() throws IOException {
+    File jar = makeJar("commented.jar");
+    appendComment(jar, "a comment");
+    assertTrue("jar with comment should be complete", new FileChecker().isCompleteArchive(jar.getPath()));
+  }
+
+  @Test
+  public void plainFileIsNotCompleteArchive() {
+    assertFalse("pom.xml is not an archive", new FileChecker().isCompleteArchive("pom.xml"));
+  }
+
+  private File getTestClasses() {
+    return new File(getTargetDirectory(), "test-classes");
+  }
+
+  private File makeJar(String name) throws IOException {
+    File jar = new File(getTargetDirectory(), name);
+    TestHelper.makeMiniJar(jar, getTestClasses(), "sample/Hello.class");
+    return jar;
+  }
+
+  private void truncate(File file, int bytesToRemove) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(raf.length() - bytesToRemove);
+    raf.close();
+  }
+
+  private void appendComment(File file, String comment) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.seek(raf.length() - 2);
+    raf.write(comment.length() & 0xFF);
+    raf.write(comment.length() >> 8);
+    raf.write(comment.getBytes("UTF-8"));
+    raf.close();
+  }
 }
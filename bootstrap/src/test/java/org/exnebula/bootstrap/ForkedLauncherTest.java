@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class ForkedLauncherTest {
+
+  private File directory;
+  private LaunchPlan plan;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(getTargetDirectory(), "fork");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    File jar = new File(directory, "exit.jar");
+    TestHelper.makeMiniJar(jar, new File(getTargetDirectory(), "test-classes"), "sample/ExitWith.class");
+    BootConfig config = new BootConfig("sample.ExitWith", new String[]{jar.getPath()});
+    plan = new LaunchPlan(config, Boot.mapFilesToURL(config), null);
+  }
+
+  @Test
+  public void putJvmOptionsBeforeMainClass() throws IOException {
+    ForkedLauncher launcher = new ForkedLauncher(new File("java"));
+    List<String> command = launcher.buildCommand(Arrays.asList("-Xmx64m", "-Dsample.exit=3"), plan,
+      new String[]{"one"});
+    assertEquals(Arrays.asList("java", "-Xmx64m", "-Dsample.exit=3", "-cp"), command.subList(0, 4));
+    assertEquals(Arrays.asList(ForkedMain.class.getName(), "sample.ExitWith", "one"),
+      command.subList(5, command.size()));
+  }
+
+  @Test
+  public void putOnlyForkedMainAheadOfApplicationJars() throws IOException {
+    List<String> command = new ForkedLauncher(new File("java")).buildCommand(Collections.<String>emptyList(), plan,
+      new String[0]);
+    String first = command.get(2).split(File.pathSeparator)[0];
+    JarFile jar = new JarFile(first);
+    try {
+      assertEquals(1, jar.size());
+      assertNotNull(jar.getEntry(ForkedMain.class.getName().replace('.', '/') + ".class"));
+    } finally {
+      jar.close();
+    }
+  }
+
+  @Test
+  public void keepForkedMainJarInDirectoryAndReplaceOtherContent() throws IOException {
+    ForkedLauncher launcher = new ForkedLauncher(new File("java"), directory);
+    File jar = new File(directory, ForkedLauncher.FORKED_MAIN_JAR);
+    assertEquals(jar, launcher.forkedMainLocation());
+    long modified = jar.lastModified() - 10000;
+    jar.setLastModified(modified);
+    assertEquals(jar, launcher.forkedMainLocation());
+    assertEquals(modified, jar.lastModified());
+
+    TestHelper.makeJarWithEntries(jar, ForkedMain.class.getName().replace('.', '/') + ".class", "planted");
+    launcher.forkedMainLocation();
+    JarFile jarFile = new JarFile(jar);
+    try {
+      assertTrue(jarFile.getEntry(ForkedMain.class.getName().replace('.', '/') + ".class").getSize() > 100);
+    } finally {
+      jarFile.close();
+    }
+  }
+
+  @Test
+  public void returnExitCodeOfForkedJvm() throws Exception {
+    ForkedLauncher launcher = new ForkedLauncher();
+    assertEquals(3, launcher.run(launcher.buildCommand(Collections.singletonList("-Dsample.exit=3"), plan,
+      new String[0])));
+    assertEquals(0, launcher.run(launcher.buildCommand(Collections.<String>emptyList(), plan, new String[0])));
+  }
+}
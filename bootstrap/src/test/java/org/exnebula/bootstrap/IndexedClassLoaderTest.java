@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class IndexedClassLoaderTest {
+
+  private File testClasses;
+  private File helloJar;
+  private File resourceJarOne;
+  private File resourceJarTwo;
+  private IndexedClassLoader loader;
+
+  @Before
+  public void setUp() throws IOException {
+    testClasses = new File(getTargetDirectory(), "test-classes");
+    helloJar = new File(getTargetDirectory(), "indexed-hello.jar");
+    TestHelper.makeMiniJar(helloJar, testClasses, "sample/Hello.class");
+    resourceJarOne = new File(getTargetDirectory(), "indexed-one.jar");
+    TestHelper.makeJarWithEntries(resourceJarOne, "config/shared.txt", "one", "config/only-one.txt", "only");
+    resourceJarTwo = new File(getTargetDirectory(), "indexed-two.jar");
+    TestHelper.makeJarWithEntries(resourceJarTwo, "config/shared.txt", "two", "root.txt", "root");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (loader != null)
+      loader.close();
+  }
+
+  @Test
+  public void loadClassFromJar() throws Exception {
+    loader = makeLoader(resourceJarOne, helloJar);
+    Class<?> hello = loader.loadClass("sample.Hello");
+    assertSame(loader, hello.getClassLoader());
+    assertEquals(helloJar.toURI().toURL(), hello.getProtectionDomain().getCodeSource().getLocation());
+    assertNotNull(hello.getPackage());
+  }
+
+  @Test
+  public void loadClassFromDirectory() throws Exception {
+    loader = makeLoader(resourceJarOne, testClasses);
+    assertSame(loader, loader.loadClass("sample.Good").getClassLoader());
+  }
+
+  @Test(expected = ClassNotFoundException.class)
+  public void missingClassIsNotFound() throws Exception {
+    loader = makeLoader(helloJar);
+    loader.loadClass("sample.Missing");
+  }
+
+  @Test
+  public void missingClassIsNotFoundOnSecondLookup() throws Exception {
+    loader = makeLoader(helloJar);
+    assertClassNotFound("sample.Missing");
+    assertClassNotFound("sample.Missing");
+  }
+
+  @Test
+  public void definePackageFromJarManifest() throws Exception {
+    File sealedJar = makeSealedJar("indexed-sealed.jar");
+    loader = makeLoader(resourceJarOne, sealedJar);
+    Package sample = loader.loadClass("sample.Hello").getPackage();
+    assertEquals("Hello", sample.getImplementationTitle());
+    assertEquals("1.2", sample.getImplementationVersion());
+    assertTrue(sample.isSealed(sealedJar.toURI().toURL()));
+  }
+
+  @Test(expected = SecurityException.class)
+  public void sealedPackageRejectsClassesOfOtherElements() throws Exception {
+    loader = makeLoader(makeSealedJar("indexed-sealed.jar"), testClasses);
+    loader.loadClass("sample.Hello");
+    loader.loadClass("sample.Good");
+  }
+
+  @Test
+  public void keepCodeSignersOfSignedJar() throws Exception {
+    File signedJar = new File(getTargetDirectory(), "indexed-signed.jar");
+    TestHelper.makeMiniJar(signedJar, testClasses, "sample/Hello.class");
+    TestHelper.signJar(signedJar);
+    loader = makeLoader(resourceJarOne, signedJar);
+    assertNotNull(loader.loadClass("sample.Hello").getProtectionDomain().getCodeSource().getCodeSigners());
+  }
+
+  @Test
+  public void findFirstResourceInClassPathOrder() throws Exception {
+    loader = makeLoader(resourceJarOne, resourceJarTwo);
+    assertEquals("one", readResource(loader.getResource("config/shared.txt")));
+    assertEquals("root", readResource(loader.getResource("root.txt")));
+  }
+
+  @Test
+  public void findAllResourcesInClassPathOrder() throws Exception {
+    loader = makeLoader(resourceJarOne, helloJar, resourceJarTwo);
+    List<URL> urls = Collections.list(loader.findResources("config/shared.txt"));
+    assertEquals(2, urls.size());
+    assertEquals("one", readResource(urls.get(0)));
+    assertEquals("two", readResource(urls.get(1)));
+  }
+
+  @Test
+  public void missingResourceStaysMissing() throws Exception {
+    loader = makeLoader(resourceJarOne, resourceJarTwo);
+    assertNull(loader.getResource("config/missing.txt"));
+    assertNull(loader.getResource("config/missing.txt"));
+    assertFalse(loader.findResources("config/missing.txt").hasMoreElements());
+  }
+
+  @Test
+  public void reusePersistedIndex() throws Exception {
+    loader = makeLoader(resourceJarOne, helloJar);
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    loader.getPackageIndex().writeTo(new DataOutputStream(buffer));
+    PackageIndex index = PackageIndex.readFrom(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+    assertEquals(loader.getPackageIndex().getPackageCount(), index.getPackageCount());
+
+    IndexedClassLoader reloaded = new IndexedClassLoader(loader.getURLs(), null, index);
+    assertSame(index, reloaded.getPackageIndex());
+    assertSame(reloaded, reloaded.loadClass("sample.Hello").getClassLoader());
+    reloaded.close();
+  }
+
+  @Test
+  public void rebuildIndexThatDoesNotMatchClassPath() throws Exception {
+    loader = makeLoader(helloJar);
+    IndexedClassLoader other = new IndexedClassLoader(makeLoader(resourceJarOne, helloJar).getURLs(), null,
+      loader.getPackageIndex());
+    assertNotSame(loader.getPackageIndex(), other.getPackageIndex());
+    assertSame(other, other.loadClass("sample.Hello").getClassLoader());
+    other.close();
+  }
+
+  private void assertClassNotFound(String className) {
+    try {
+      loader.loadClass(className);
+      fail("Should not find " + className);
+    } catch (ClassNotFoundException e) {
+      assertEquals(className, e.getMessage());
+    }
+  }
+
+  private File makeSealedJar(String name) throws IOException {
+    Manifest manifest = new Manifest();
+    Attributes attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.put(Attributes.Name.IMPLEMENTATION_TITLE, "Hello");
+    attributes.put(Attributes.Name.IMPLEMENTATION_VERSION, "1.2");
+    attributes.put(Attributes.Name.SEALED, "true");
+    File jar = new File(getTargetDirectory(), name);
+    TestHelper.makeMiniJar(jar, testClasses, "sample/Hello.class", manifest);
+    return jar;
+  }
+
+  private IndexedClassLoader makeLoader(File... files) throws IOException {
+    URL[] urls = new URL[files.length];
+    for (int i = 0; i < files.length; i++) {
+      urls[i] = files[i].toURI().toURL();
+    }
+    return new IndexedClassLoader(urls, null);
+  }
+
+  private String readResource(URL url) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), "UTF-8"));
+    try {
+      return reader.readLine();
+    } finally {
+      reader.close();
+    }
+  }
+}
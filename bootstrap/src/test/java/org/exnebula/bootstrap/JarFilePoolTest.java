@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.jar.JarFile;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class JarFilePoolTest {
+
+  private File[] jars;
+  private JarFilePool pool;
+
+  @Before
+  public void setUp() throws IOException {
+    File directory = new File(getTargetDirectory(), "jar-pool");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    jars = new File[3];
+    for (int i = 0; i < jars.length; i++) {
+      jars[i] = new File(directory, "pool-" + i + ".jar");
+      TestHelper.makeJarWithEntries(jars[i], "entry.txt", String.valueOf(i));
+    }
+    pool = new JarFilePool(2);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    pool.close();
+  }
+
+  @Test
+  public void reuseOpenJar() throws IOException {
+    JarFile first = use(jars[0]);
+    assertSame(first, use(jars[0]));
+    assertEquals(1, pool.getOpenedCount());
+  }
+
+  @Test
+  public void closeLeastRecentlyUsedJarOverCapacity() throws IOException {
+    use(jars[0]);
+    use(jars[1]);
+    use(jars[0]);
+    use(jars[2]);
+    assertEquals(2, pool.getOpenCount());
+    assertEquals(1, pool.getClosedCount());
+    use(jars[0]);
+    assertEquals(3, pool.getOpenedCount());
+    use(jars[1]);
+    assertEquals(4, pool.getOpenedCount());
+    assertEquals(2, pool.getPeakOpenCount());
+  }
+
+  @Test
+  public void neverCloseJarInUse() throws IOException {
+    JarFile first = pool.acquire(jars[0]);
+    JarFile second = pool.acquire(jars[1]);
+    JarFile third = pool.acquire(jars[2]);
+    assertEquals(3, pool.getOpenCount());
+    assertNotNull(first.getEntry("entry.txt"));
+    assertNotNull(second.getEntry("entry.txt"));
+    assertNotNull(third.getEntry("entry.txt"));
+    pool.release(jars[0]);
+    pool.release(jars[1]);
+    pool.release(jars[2]);
+    assertEquals(2, pool.getOpenCount());
+    assertEquals(3, pool.getPeakOpenCount());
+  }
+
+  @Test(expected = IOException.class)
+  public void refuseJarsAfterClose() throws IOException {
+    use(jars[0]);
+    pool.close();
+    assertEquals(0, pool.getOpenCount());
+    pool.acquire(jars[0]);
+  }
+
+  @Test
+  public void failedOpenLeavesNoPlaceholder() throws IOException {
+    File missing = new File(jars[0].getParentFile(), "missing.jar");
+    for (int attempt = 0; attempt < 2; attempt++) {
+      try {
+        pool.acquire(missing);
+        fail("Expected IOException for " + missing);
+      } catch (IOException e) {
+        // Expected
+      }
+    }
+    assertEquals(0, pool.getOpenCount());
+    assertEquals(0, pool.getOpenedCount());
+  }
+
+  @Test
+  public void threadsOpeningTheSameJarShareIt() throws Exception {
+    final JarFile[] opened = new JarFile[8];
+    Thread[] threads = new Thread[opened.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] = new Thread(new Runnable() {
+        public void run() {
+          try {
+            opened[index] = use(jars[0]);
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (JarFile jarFile : opened) {
+      assertSame(opened[0], jarFile);
+    }
+    assertEquals(1, pool.getOpenedCount());
+  }
+
+  private JarFile use(File jar) throws IOException {
+    JarFile jarFile = pool.acquire(jar);
+    pool.release(jar);
+    return jarFile;
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class LaunchPlanCacheTest {
+
+  private File directory;
+  private File configFile;
+  private File jar;
+  private LaunchPlanCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(getTargetDirectory(), "plan-cache");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    configFile = new File(directory, "boot.cfg");
+    jar = new File(directory, "hello.jar");
+    TestHelper.makeMiniJar(jar, new File(getTargetDirectory(), "test-classes"), "sample/Hello.class");
+    FileUtils.writeStringToFile(configFile, "ep=sample.Hello\ncp=" + jar.getPath() + "\n");
+    cache = new LaunchPlanCache(configFile);
+  }
+
+  @Test
+  public void noPlanBeforeFirstSave() {
+    assertNull(cache.loadValidPlan());
+  }
+
+  @Test
+  public void planIsWrittenNextToConfig() {
+    cache.save(makePlan(ClassLoaderType.DEFAULT, null));
+    assertEquals(new File(directory, LaunchPlanCache.PLAN_FILE).getAbsoluteFile(), cache.getPlanFile());
+    assertTrue(cache.getPlanFile().isFile());
+  }
+
+  @Test
+  public void reuseSavedPlan() throws IOException {
+    LaunchPlan saved = cache.save(makePlan(ClassLoaderType.DEFAULT, null));
+    assertTrue(saved.isCached());
+
+    LaunchPlan plan = cache.loadValidPlan();
+    assertNotNull(plan);
+    assertEquals("sample.Hello", plan.getConfig().getEntryPoint());
+    assertEquals(jar.getPath(), plan.getConfig().getClassPath().get(0));
+    assertEquals(ClassLoaderType.DEFAULT, plan.getConfig().getClassLoaderType());
+    assertArrayEquals(new URL[]{jar.toURI().toURL()}, plan.getURLs());
+    assertNull(plan.getPackageIndex());
+    assertEquals(saved.getFingerprint(), plan.getFingerprint());
+  }
+
+  @Test
+  public void reusePackageIndex() throws IOException {
+    URL[] urls = {jar.toURI().toURL()};
+    IndexedClassLoader loader = new IndexedClassLoader(urls, null);
+    cache.save(makePlan(ClassLoaderType.INDEXED, loader.getPackageIndex()));
+    loader.close();
+
+    LaunchPlan plan = cache.loadValidPlan();
+    assertEquals(ClassLoaderType.INDEXED, plan.getConfig().getClassLoaderType());
+    assertEquals(1, plan.getPackageIndex().getElementCount());
+    assertEquals(1, plan.getPackageIndex().elementsFor("sample/Hello.class").length);
+  }
+
+  @Test
+  public void reuseForkOptions() throws IOException {
+    BootConfig config = new BootConfig.Builder("sample.Hello", Arrays.asList(jar.getPath())).fork(true)
+      .jvmOptions(Arrays.asList("-Xmx256m", "-XX:+UseSerialGC")).build();
+    cache.save(new LaunchPlan(config, Boot.mapFilesToURL(config), null));
+
+    LaunchPlan plan = cache.loadValidPlan();
+    assertTrue(plan.getConfig().isFork());
+    assertEquals(Arrays.asList("-Xmx256m", "-XX:+UseSerialGC"), plan.getConfig().getJvmOptions());
+  }
+
+  @Test
+  public void changedConfigInvalidatesPlan() throws IOException {
+    cache.save(makePlan(ClassLoaderType.DEFAULT, null));
+    FileUtils.writeStringToFile(configFile, "ep=sample.Other\ncp=" + jar.getPath() + "\n");
+    assertNull(cache.loadValidPlan());
+  }
+
+  @Test
+  public void touchedJarInvalidatesPlan() {
+    cache.save(makePlan(ClassLoaderType.DEFAULT, null));
+    assertTrue(jar.setLastModified(jar.lastModified() - 10000));
+    assertNull(cache.loadValidPlan());
+  }
+
+  @Test
+  public void resizedJarInvalidatesPlan() throws IOException {
+    cache.save(makePlan(ClassLoaderType.DEFAULT, null));
+    long modified = jar.lastModified();
+    RandomAccessFile file = new RandomAccessFile(jar, "rw");
+    file.setLength(file.length() + 1);
+    file.close();
+    jar.setLastModified(modified);
+    assertNull(cache.loadValidPlan());
+  }
+
+  @Test
+  public void removedJarInvalidatesPlan() {
+    cache.save(makePlan(ClassLoaderType.DEFAULT, null));
+    assertTrue(jar.delete());
+    assertNull(cache.loadValidPlan());
+  }
+
+  @Test
+  public void corruptPlanIsIgnored() throws IOException {
+    cache.save(makePlan(ClassLoaderType.DEFAULT, null));
+    FileUtils.writeStringToFile(cache.getPlanFile(), "garbage");
+    assertNull(cache.loadValidPlan());
+  }
+
+  @Test
+  public void doNotSavePlanWithDirectories() throws IOException {
+    BootConfig config = new BootConfig("sample.Hello", new String[]{directory.getPath()});
+    LaunchPlan plan = cache.save(new LaunchPlan(config, Boot.mapFilesToURL(config), null));
+    assertFalse(plan.isCached());
+    assertFalse(cache.getPlanFile().exists());
+  }
+
+  @Test
+  public void fingerprintChangesWithClassPath() throws IOException {
+    String first = cache.save(makePlan(ClassLoaderType.DEFAULT, null)).getFingerprint();
+    assertTrue(jar.setLastModified(jar.lastModified() - 10000));
+    assertFalse(first.equals(cache.save(makePlan(ClassLoaderType.DEFAULT, null)).getFingerprint()));
+  }
+
+  @Test
+  public void newWildcardMatchInvalidatesPlan() throws IOException {
+    String wildcard = directory.getPath() + "/*.jar";
+    BootConfig config = new BootConfig.Builder("sample.Hello", Arrays.asList(jar.getPath()))
+      .classPathWildcards(Arrays.asList(wildcard)).build();
+    cache.save(new LaunchPlan(config, Boot.mapFilesToURL(config), null));
+    assertEquals(wildcard, cache.loadValidPlan().getConfig().getClassPathWildcards().get(0));
+
+    FileUtils.touch(new File(directory, "other.txt"));
+    assertNotNull(cache.loadValidPlan());
+    FileUtils.copyFile(jar, new File(directory, "other.jar"));
+    assertNull(cache.loadValidPlan());
+  }
+
+  private LaunchPlan makePlan(ClassLoaderType type, PackageIndex index) {
+    try {
+      BootConfig config = new BootConfig("sample.Hello", new String[]{jar.getPath()}, type);
+      return new LaunchPlan(config, Boot.mapFilesToURL(config), index);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Enumeration;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class MappedClassLoaderTest {
+
+  private File testClasses;
+  private File deflatedJar;
+  private File storedJar;
+  private MappedClassLoader loader;
+
+  @Before
+  public void setUp() throws IOException {
+    testClasses = new File(getTargetDirectory(), "test-classes");
+    deflatedJar = new File(getTargetDirectory(), "mapped-deflated.jar");
+    TestHelper.makeMiniJar(deflatedJar, testClasses, "sample/Hello.class");
+    storedJar = new File(getTargetDirectory(), "mapped-stored.jar");
+    makeStoredJar(storedJar, "sample/Good.class", "config/stored.txt");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (loader != null)
+      loader.close();
+  }
+
+  @Test
+  public void loadDeflatedClass() throws Exception {
+    loader = makeLoader(storedJar, deflatedJar);
+    Class<?> hello = loader.loadClass("sample.Hello");
+    assertSame(loader, hello.getClassLoader());
+    assertEquals(deflatedJar.toURI().toURL(), hello.getProtectionDomain().getCodeSource().getLocation());
+  }
+
+  @Test
+  public void loadStoredClass() throws Exception {
+    loader = makeLoader(deflatedJar, storedJar);
+    assertSame(loader, loader.loadClass("sample.Good").getClassLoader());
+  }
+
+  @Test
+  public void readStoredEntryFromMapping() throws Exception {
+    ClassPathElement element = ClassPathElement.openMapped(storedJar.toURI().toURL());
+    ByteBuffer content = element.read("config/stored.txt");
+    assertTrue(content.isDirect());
+    byte[] bytes = new byte[content.remaining()];
+    content.get(bytes);
+    assertEquals("config/stored.txt", new String(bytes, "UTF-8"));
+    assertNull(element.read("config/missing.txt"));
+    element.close();
+  }
+
+  @Test
+  public void findResourceInMappedJar() throws Exception {
+    loader = makeLoader(storedJar);
+    assertNotNull(loader.getResource("config/stored.txt"));
+    assertNull(loader.getResource("config/missing.txt"));
+  }
+
+  @Test
+  public void readSameEntriesAsJarFile() throws Exception {
+    File jar = ClassPathElement.toFile(Test.class.getProtectionDomain().getCodeSource().getLocation());
+    URL url = jar.toURI().toURL();
+    ClassPathElement mapped = ClassPathElement.openMapped(url);
+    ClassPathElement plain = ClassPathElement.open(url);
+    assertTrue(mapped instanceof MappedJarClassPathElement);
+    assertEquals(plain.listPackages(), mapped.listPackages());
+    JarFile jarFile = new JarFile(jar);
+    try {
+      Enumeration<JarEntry> entries = jarFile.entries();
+      while (entries.hasMoreElements()) {
+        String name = entries.nextElement().getName();
+        assertEquals(name, plain.read(name), mapped.read(name));
+      }
+    } finally {
+      jarFile.close();
+      mapped.close();
+      plain.close();
+    }
+  }
+
+  @Test
+  public void readJarThatCannotBeMappedWithJarFile() throws Exception {
+    File notAJar = new File(getTargetDirectory(), "mapped-broken.jar");
+    FileWriter writer = new FileWriter(notAJar);
+    writer.write("not a jar");
+    writer.close();
+    assertTrue(ClassPathElement.openMapped(notAJar.toURI().toURL()) instanceof JarClassPathElement);
+  }
+
+  @Test
+  public void definePackageFromManifestInMapping() throws Exception {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, "2.0");
+    File versionedJar = new File(getTargetDirectory(), "mapped-versioned.jar");
+    TestHelper.makeMiniJar(versionedJar, testClasses, "sample/Hello.class", manifest);
+    loader = makeLoader(versionedJar);
+    assertEquals("2.0", loader.loadClass("sample.Hello").getPackage().getImplementationVersion());
+  }
+
+  @Test
+  public void readSignedJarWithJarFile() throws Exception {
+    File signedJar = new File(getTargetDirectory(), "mapped-signed.jar");
+    TestHelper.makeMiniJar(signedJar, testClasses, "sample/Hello.class");
+    TestHelper.signJar(signedJar);
+    assertTrue(ClassPathElement.openMapped(signedJar.toURI().toURL()) instanceof JarClassPathElement);
+    loader = makeLoader(signedJar);
+    assertNotNull(loader.loadClass("sample.Hello").getProtectionDomain().getCodeSource().getCodeSigners());
+  }
+
+  private MappedClassLoader makeLoader(File... files) throws IOException {
+    URL[] urls = new URL[files.length];
+    for (int i = 0; i < files.length; i++) {
+      urls[i] = files[i].toURI().toURL();
+    }
+    return new MappedClassLoader(urls, null);
+  }
+
+  private void makeStoredJar(File targetJar, String classFile, String textFile) throws IOException {
+    ZipOutputStream jar = new ZipOutputStream(new FileOutputStream(targetJar));
+    try {
+      putStored(jar, classFile, ClassPathElement.readFully(new FileInputStream(new File(testClasses, classFile)), 0));
+      putStored(jar, textFile, textFile.getBytes("UTF-8"));
+    } finally {
+      jar.close();
+    }
+  }
+
+  private static void putStored(ZipOutputStream jar, String name, byte[] content) throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(content.length);
+    entry.setCompressedSize(content.length);
+    entry.setCrc(crc.getValue());
+    jar.putNextEntry(entry);
+    jar.write(content);
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class MergedClassPathTest {
+
+  private static final String SERVICE = MergedClassPath.SERVICES + Runnable.class.getName();
+
+  private File directory;
+  private File helloJar;
+  private File firstJar;
+  private File secondJar;
+  private MergedClassPath merged;
+  private URLClassLoader loader;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(getTargetDirectory(), "merged-class-path");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    helloJar = new File(directory, "hello.jar");
+    TestHelper.makeMiniJar(helloJar, new File(getTargetDirectory(), "test-classes"), "sample/Hello.class");
+    firstJar = new File(directory, "first.jar");
+    TestHelper.makeJarWithEntries(firstJar, "config/shared.txt", "first", SERVICE, "sample.First");
+    secondJar = new File(directory, "second.jar");
+    TestHelper.makeJarWithEntries(secondJar, "config/shared.txt", "second", SERVICE, "sample.Second\n",
+      "config/second.txt", "only");
+    merged = new MergedClassPath(directory);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (loader != null)
+      loader.close();
+  }
+
+  @Test
+  public void mergeJarsIntoStoredEntries() throws Exception {
+    LaunchPlan plan = makePlan("1123456789abcdef0123", helloJar, firstJar, secondJar);
+    assertTrue(merged.build(plan, plan.getConfig().getClassPath()));
+    File archive = merged.archiveFor(plan);
+    JarFile jar = new JarFile(archive);
+    try {
+      for (ZipEntry entry : Collections.list(jar.entries())) {
+        assertEquals(entry.getName(), ZipEntry.STORED, entry.getMethod());
+      }
+    } finally {
+      jar.close();
+    }
+    loader = new URLClassLoader(new URL[]{archive.toURI().toURL()}, null);
+    assertSame(loader, loader.loadClass("sample.Hello").getClassLoader());
+    assertEquals("only", readResource(loader.getResource("config/second.txt")));
+  }
+
+  @Test
+  public void firstJarWinsForDuplicateEntries() throws Exception {
+    LaunchPlan plan = makePlan("2123456789abcdef0123", firstJar, secondJar);
+    merged.build(plan, plan.getConfig().getClassPath());
+    loader = new URLClassLoader(new URL[]{merged.archiveFor(plan).toURI().toURL()}, null);
+    assertEquals("first", readResource(loader.getResource("config/shared.txt")));
+  }
+
+  @Test
+  public void returnEveryCopyOfDuplicateResourcesInClassPathOrder() throws Exception {
+    File thirdJar = new File(directory, "third.jar");
+    TestHelper.makeJarWithEntries(firstJar, "reference.conf", "first = 1", "config/shared.txt", "first");
+    TestHelper.makeJarWithEntries(secondJar, "reference.conf", "second = 2");
+    TestHelper.makeJarWithEntries(thirdJar, "reference.conf", "third = 3", "config/shared.txt", "third");
+    LaunchPlan plan = makePlan("6123456789abcdef0123", firstJar, secondJar, thirdJar);
+    assertTrue(merged.build(plan, plan.getConfig().getClassPath()));
+    LauncherClassLoader merging = new LauncherClassLoader(new URL[]{merged.archiveFor(plan).toURI().toURL()}, null);
+    loader = merging;
+    merging.setMergedClassPath(true);
+    assertEquals(Arrays.asList("first = 1", "second = 2", "third = 3"), readResources(merging, "reference.conf"));
+    assertEquals(Arrays.asList("first", "third"), readResources(merging, "config/shared.txt"));
+    assertEquals("first = 1", readResource(merging.getResource("reference.conf")));
+  }
+
+  @Test
+  public void keepPackageAttributesOfEachJar() throws Exception {
+    File attributed = new File(directory, "attributed.jar");
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "sample.Hello");
+    manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, "1.2");
+    JarOutputStream output = new JarOutputStream(new FileOutputStream(attributed), manifest);
+    output.putNextEntry(new ZipEntry("other/Thing.class"));
+    output.write(new byte[]{1});
+    output.close();
+    LaunchPlan plan = makePlan("7123456789abcdef0123", helloJar, attributed);
+    assertTrue(merged.build(plan, plan.getConfig().getClassPath()));
+    JarFile jar = new JarFile(merged.archiveFor(plan));
+    try {
+      Manifest mergedManifest = jar.getManifest();
+      assertEquals("sample.Hello", mergedManifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS));
+      assertNull(mergedManifest.getMainAttributes().getValue(Attributes.Name.IMPLEMENTATION_VERSION));
+      assertEquals("1.2", mergedManifest.getAttributes("other/").getValue(Attributes.Name.IMPLEMENTATION_VERSION));
+      assertNull(mergedManifest.getAttributes("sample/"));
+    } finally {
+      jar.close();
+    }
+  }
+
+  @Test
+  public void concatenateServiceFilesInClassPathOrder() throws Exception {
+    LaunchPlan plan = makePlan("3123456789abcdef0123", secondJar, firstJar);
+    merged.build(plan, plan.getConfig().getClassPath());
+    loader = new URLClassLoader(new URL[]{merged.archiveFor(plan).toURI().toURL()}, null);
+    assertEquals("sample.Second\nsample.First\n", readResource(loader.getResource(SERVICE)));
+  }
+
+  @Test
+  public void newFingerprintReplacesOldArchive() throws Exception {
+    LaunchPlan old = makePlan("0123456789abcdef0123", firstJar);
+    merged.build(old, old.getConfig().getClassPath());
+    LaunchPlan plan = makePlan("fedcba98765432100123", firstJar);
+    assertFalse(merged.archiveFor(old).equals(merged.archiveFor(plan)));
+    assertTrue(merged.isBuilt(old));
+    merged.build(plan, plan.getConfig().getClassPath());
+    assertFalse(merged.archiveFor(old).exists());
+    assertTrue(merged.archiveFor(plan).isFile());
+  }
+
+  @Test
+  public void keepSignedJars() throws Exception {
+    File signed = new File(directory, "signed.jar");
+    TestHelper.makeJarWithEntries(signed, "META-INF/SIGNER.SF", "Signature-Version: 1.0\n", "a.txt", "a");
+    LaunchPlan plan = makePlan("4123456789abcdef0123", firstJar, signed);
+    assertFalse(merged.build(plan, plan.getConfig().getClassPath()));
+    assertFalse(merged.archiveFor(plan).exists());
+    assertTrue(merged.isUnmergeable(plan));
+    assertTrue(merged.isBuilt(plan));
+  }
+
+  @Test
+  public void removeTemporaryFilesOfUnfinishedBuilds() throws Exception {
+    File unfinished = new File(directory, "boot-merged-5123456789abcdef.jar123.tmp");
+    FileUtils.touch(unfinished);
+    LaunchPlan plan = makePlan("5123456789abcdef0123", helloJar);
+    assertFalse(merged.isBuilt(plan));
+    merged.build(plan, plan.getConfig().getClassPath());
+    assertFalse(unfinished.exists());
+    assertTrue(merged.isBuilt(plan));
+  }
+
+  private LaunchPlan makePlan(String fingerprint, File... jars) throws IOException {
+    List<String> classPath = new ArrayList<String>();
+    for (File jar : jars) {
+      classPath.add(jar.getPath());
+    }
+    BootConfig config = new BootConfig("sample.Hello", classPath.toArray(new String[classPath.size()]));
+    return new LaunchPlan(config, Boot.mapFilesToURL(config), null, fingerprint);
+  }
+
+  private static List<String> readResources(ClassLoader loader, String name) throws IOException {
+    List<String> contents = new ArrayList<String>();
+    for (URL url : Collections.list(loader.getResources(name))) {
+      contents.add(readResource(url));
+    }
+    return contents;
+  }
+
+  private static String readResource(URL url) throws IOException {
+    InputStream input = url.openStream();
+    try {
+      return IOUtils.toString(input, "UTF-8");
+    } finally {
+      input.close();
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.util.jar.JarFile;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class PooledClassLoaderTest {
+
+  private File helloJar;
+  private File[] resourceJars;
+  private JarFilePool pool;
+  private PooledClassLoader loader;
+
+  @Before
+  public void setUp() throws IOException {
+    File directory = new File(getTargetDirectory(), "pooled-loader");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    helloJar = new File(directory, "hello.jar");
+    TestHelper.makeMiniJar(helloJar, new File(getTargetDirectory(), "test-classes"), "sample/Hello.class");
+    resourceJars = new File[4];
+    for (int i = 0; i < resourceJars.length; i++) {
+      resourceJars[i] = new File(directory, "resource-" + i + ".jar");
+      TestHelper.makeJarWithEntries(resourceJars[i], "config/r" + i + ".txt", "resource " + i);
+    }
+    pool = new JarFilePool(2);
+    URL[] urls = new URL[resourceJars.length + 1];
+    for (int i = 0; i < resourceJars.length; i++) {
+      urls[i] = resourceJars[i].toURI().toURL();
+    }
+    urls[resourceJars.length] = helloJar.toURI().toURL();
+    loader = new PooledClassLoader(urls, null, null, pool);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    loader.close();
+  }
+
+  @Test
+  public void keepOpenJarsWithinCapacity() throws Exception {
+    assertEquals(2, pool.getOpenCount());
+    Class<?> hello = loader.loadClass("sample.Hello");
+    assertSame(loader, hello.getClassLoader());
+    assertEquals(helloJar.toURI().toURL(), hello.getProtectionDomain().getCodeSource().getLocation());
+    for (int i = 0; i < resourceJars.length; i++) {
+      assertEquals("resource " + i, read(loader.getResource("config/r" + i + ".txt")));
+    }
+    assertEquals(2, pool.getOpenCount());
+    assertEquals(2, pool.getPeakOpenCount());
+  }
+
+  @Test
+  public void readResourceAfterItsJarWasClosed() throws Exception {
+    URL url = loader.getResource("config/r0.txt");
+    assertEquals("jar:" + resourceJars[0].toURI().toURL() + "!/config/r0.txt", url.toString());
+    loader.getResource("config/r1.txt");
+    loader.getResource("config/r2.txt");
+    long opened = pool.getOpenedCount();
+    assertEquals("resource 0", read(url));
+    assertEquals(opened + 1, pool.getOpenedCount());
+  }
+
+  @Test
+  public void resourceConnectionIsJarURLConnectionThroughThePool() throws Exception {
+    URL url = loader.getResource("config/r0.txt");
+    JarURLConnection connection = (JarURLConnection) url.openConnection();
+    assertEquals(resourceJars[0].toURI().toURL(), connection.getJarFileURL());
+    assertEquals("config/r0.txt", connection.getJarEntry().getName());
+    JarFile jarFile = connection.getJarFile();
+    try {
+      assertNotNull(jarFile.getEntry("config/r0.txt"));
+    } finally {
+      jarFile.close();
+    }
+    assertEquals(2, pool.getOpenCount());
+  }
+
+  @Test
+  public void missingEntryDoesNotOpenJar() throws Exception {
+    long opened = pool.getOpenedCount();
+    assertNull(loader.findResource("config/r9.txt"));
+    assertNull(loader.getResource("config/missing.txt"));
+    assertEquals(opened, pool.getOpenedCount());
+  }
+
+  @Test
+  public void keepCodeSignersOfSignedJar() throws Exception {
+    loader.close();
+    TestHelper.signJar(helloJar);
+    pool = new JarFilePool(2);
+    loader = new PooledClassLoader(loader.getURLs(), null, null, pool);
+    Class<?> hello = loader.loadClass("sample.Hello");
+    assertNotNull(hello.getProtectionDomain().getCodeSource().getCodeSigners());
+    assertEquals(2, pool.getOpenCount());
+  }
+
+  private static String read(URL url) throws IOException {
+    InputStream input = url.openStream();
+    try {
+      return IOUtils.toString(input, "UTF-8");
+    } finally {
+      input.close();
+    }
+  }
+}
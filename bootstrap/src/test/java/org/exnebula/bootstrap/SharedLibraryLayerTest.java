@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sample.LoaderProbe;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class SharedLibraryLayerTest {
+
+  private File directory;
+  private File configFile;
+  private SharedClassLoaders sharedClassLoaders;
+  private Exception failure;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(getTargetDirectory(), "shared-layer");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    File classes = new File(getTargetDirectory(), "test-classes");
+    TestHelper.makeMiniJar(new File(directory, "library.jar"), classes, "sample/Hello.class");
+    TestHelper.makeMiniJar(new File(directory, "client.jar"), classes, "sample/LoaderProbe.class");
+    TestHelper.makeMiniJar(new File(directory, "tool.jar"), classes, "sample/LoaderProbe.class");
+    configFile = new File(directory, BootConfigLocator.BOOT_FILE);
+    FileUtils.writeStringToFile(configFile, "ep=sample.LoaderProbe\ncp.shared=" + jar("library") + "\ncp=" +
+      jar("client") + "\nep.tool=sample.LoaderProbe\ncp.tool=" + jar("tool") + "\n");
+    sharedClassLoaders = new SharedClassLoaders();
+  }
+
+  @After
+  public void tearDown() {
+    System.getProperties().remove(LoaderProbe.PROBE_LOADER);
+    System.getProperties().remove(LoaderProbe.LIBRARY_LOADER);
+  }
+
+  @Test
+  public void separateMainClassPathFromLayerAndNamedEntryPoints() {
+    Map<String, List<String>> entryClassPaths = new HashMap<String, List<String>>();
+    entryClassPaths.put("tool", Collections.singletonList("tool.jar"));
+    SharedLibraryLayer layer = new SharedLibraryLayer(Collections.singletonList("library.jar"),
+      Collections.singletonMap("tool", "a.Tool"), entryClassPaths);
+    assertEquals(Arrays.asList("client.jar", "extra.jar"),
+      layer.mainClassPath(Arrays.asList("library.jar", "client.jar", "tool.jar", "extra.jar")));
+    assertEquals(Collections.singletonList("tool.jar"), layer.getClassPath("tool"));
+    assertEquals(Collections.<String>emptyList(), layer.getClassPath("other"));
+    assertNull(layer.getEntryPoint("other"));
+  }
+
+  @Test
+  public void writeAndReadLayer() throws IOException {
+    Map<String, String> entryPoints = new LinkedHashMap<String, String>();
+    entryPoints.put("tool", "a.Tool");
+    entryPoints.put("report", "a.Report");
+    SharedLibraryLayer layer = new SharedLibraryLayer(Arrays.asList("scala-library.jar", "lib.jar"), entryPoints,
+      Collections.singletonMap("tool", Collections.singletonList("tool.jar")));
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    layer.writeTo(new DataOutputStream(buffer));
+
+    SharedLibraryLayer read = SharedLibraryLayer.readFrom(new DataInputStream(
+      new ByteArrayInputStream(buffer.toByteArray())));
+    assertEquals(layer.getClassPath(), read.getClassPath());
+    assertEquals(Arrays.asList("tool", "report"), Arrays.asList(read.getEntryPointNames().toArray()));
+    assertEquals(Collections.singletonList("tool.jar"), read.getClassPath("tool"));
+    assertEquals("a.Report", read.getEntryPoint("report"));
+  }
+
+  @Test
+  public void loadLayerOnceForEveryEntryPoint() throws Exception {
+    start(null);
+    ClassLoader client = (ClassLoader) System.getProperties().get(LoaderProbe.PROBE_LOADER);
+    ClassLoader library = (ClassLoader) System.getProperties().get(LoaderProbe.LIBRARY_LOADER);
+    start("tool");
+    ClassLoader tool = (ClassLoader) System.getProperties().get(LoaderProbe.PROBE_LOADER);
+
+    assertNotSame(client, tool);
+    assertSame(library, client.getParent());
+    assertSame(library, tool.getParent());
+    assertSame(library, System.getProperties().get(LoaderProbe.LIBRARY_LOADER));
+    assertEquals(1, sharedClassLoaders.size());
+  }
+
+  @Test
+  public void reportUnknownEntryPoint() throws Exception {
+    start("missing");
+    assertEquals("No entry point 'ep.missing' in configuration", failure.getMessage());
+  }
+
+  private void start(String entryPointName) throws Exception {
+    Boot boot = new Boot(new BootErrorReporter() {
+      public void reportFailure(String contextMessage, Exception exception) {
+        failure = exception;
+      }
+    }, new FileBootInputSource(configFile), new FileChecker(), new LaunchPlanCache(configFile));
+    boot.setEntryPointName(entryPointName);
+    boot.setSharedClassLoaders(sharedClassLoaders);
+    boot.start(new String[0]);
+  }
+
+  private String jar(String name) {
+    return new File(directory, name + ".jar").getPath();
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.exnebula.bootstrap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.exnebula.bootstrap.TestHelper.getTargetDirectory;
+import static org.junit.Assert.*;
+
+public class SwingWarmupTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(getTargetDirectory(), "warmup");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty("swing.defaultlaf");
+  }
+
+  @Test
+  public void recordWarmupPhase() {
+    BootTimeline timeline = new BootTimeline();
+    new SwingWarmup(null, timeline, null, true, 0).run();
+    assertTrue(timeline.getPhaseNames().contains(SwingWarmup.PHASE));
+    assertTrue(timeline.toJson().matches(".*\"name\":\"Swing warm-up\".*\"durationNanos\":[0-9]+.*"));
+  }
+
+  @Test
+  public void leaveLookAndFeelOfApplicationClassPathToApplication() {
+    assertTrue(SwingWarmup.isLookAndFeelLoadable());
+    System.setProperty("swing.defaultlaf", "javax.swing.plaf.metal.MetalLookAndFeel");
+    assertTrue(SwingWarmup.isLookAndFeelLoadable());
+    System.setProperty("swing.defaultlaf", "com.example.ApplicationLookAndFeel");
+    assertFalse(SwingWarmup.isLookAndFeelLoadable());
+  }
+
+  @Test
+  public void appendTimeToFirstFrame() throws IOException {
+    new SwingWarmup(directory, new BootTimeline(), null, true, 1500).report(2000, 1000);
+    new SwingWarmup(directory, new BootTimeline(), null, false, 3200).report(4000, 3000);
+    assertEquals("2000 warmup=true timeToFirstFrameMillis=1000 bootToFirstFrameMillis=500\n" +
+      "4000 warmup=false timeToFirstFrameMillis=1000 bootToFirstFrameMillis=800\n",
+      FileUtils.readFileToString(new File(directory, SwingWarmup.REPORT_FILE), "UTF-8"));
+  }
+}
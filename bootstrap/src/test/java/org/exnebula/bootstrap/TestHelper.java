@@ -17,10 +17,12 @@
 package org.exnebula.bootstrap;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 import java.io.*;
 import java.util.Arrays;
 import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 
 public class TestHelper {
@@ -34,7 +36,13 @@ public class TestHelper {
   }
 
   public static void makeMiniJar(File targetJar, File baseDirectory, String classFile) throws IOException {
-    JarOutputStream jar = new JarOutputStream(new FileOutputStream(targetJar));
+    makeMiniJar(targetJar, baseDirectory, classFile, null);
+  }
+
+  public static void makeMiniJar(File targetJar, File baseDirectory, String classFile, Manifest manifest)
+    throws IOException {
+    FileOutputStream output = new FileOutputStream(targetJar);
+    JarOutputStream jar = manifest == null ? new JarOutputStream(output) : new JarOutputStream(output, manifest);
     jar.putNextEntry(new ZipEntry(classFile));
     byte[] buffer = new byte[4 * 1024];
     InputStream in = new FileInputStream(new File(baseDirectory, classFile));
@@ -45,6 +53,37 @@ public class TestHelper {
     jar.close();
   }
 
+  public static void makeJarWithEntries(File targetJar, String... namesAndContents) throws IOException {
+    JarOutputStream jar = new JarOutputStream(new FileOutputStream(targetJar));
+    for (int i = 0; i < namesAndContents.length; i += 2) {
+      jar.putNextEntry(new ZipEntry(namesAndContents[i]));
+      jar.write(namesAndContents[i + 1].getBytes("UTF-8"));
+    }
+    jar.close();
+  }
+
+  /**
+   * Signs the jar in place with jarsigner, using a key generated once in the target directory.
+   */
+  public static void signJar(File jar) throws IOException, InterruptedException {
+    File keyStore = new File(getTargetDirectory(), "test-signing.p12");
+    if (!keyStore.exists())
+      runJdkTool("keytool", "-genkeypair", "-keystore", keyStore.getPath(), "-storetype", "PKCS12",
+        "-storepass", "secret", "-alias", "test", "-keyalg", "RSA", "-dname", "CN=Test", "-validity", "365");
+    runJdkTool("jarsigner", "-keystore", keyStore.getPath(), "-storetype", "PKCS12", "-storepass", "secret",
+      jar.getPath(), "test");
+  }
+
+  private static void runJdkTool(String tool, String... arguments) throws IOException, InterruptedException {
+    String[] command = new String[arguments.length + 1];
+    command[0] = new File(new File(System.getProperty("java.home"), "bin"), tool).getPath();
+    System.arraycopy(arguments, 0, command, 1, arguments.length);
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    String output = IOUtils.toString(process.getInputStream(), "UTF-8");
+    if (process.waitFor() != 0)
+      throw new IOException(tool + " failed: " + output);
+  }
+
   public static File getConfigFileAssociatedWithBoot() {
     return new File(getTargetDirectory(), BootConfigLocator.BOOT_FILE);
   }
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2013-2013 - Thomas Santana <tms@exnebula.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package sample;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+public class Echo {
+  static public void main(String[] args) throws IOException {
+    StringBuilder line = new StringBuilder();
+    for (String arg : args) {
+      line.append(line.length() == 0 ? "" : " ").append(arg);
+    }
+    System.out.println(line);
+    System.err.println(new BufferedReader(new InputStreamReader(System.in)).readLine());
+    int status = Integer.parseInt(args[0]);
+    if (status != 0)
+      System.exit(status);
+  }
+}